@@ -16,28 +16,60 @@
 package nl.knaw.dans.dvingest;
 
 import io.dropwizard.configuration.ConfigurationException;
-import lombok.AllArgsConstructor;
 import nl.knaw.dans.dvingest.core.DataverseIngestBag;
 import nl.knaw.dans.dvingest.core.bagprocessor.BagProcessor;
 import nl.knaw.dans.dvingest.core.bagprocessor.BagProcessorFactory;
+import nl.knaw.dans.dvingest.core.bagprocessor.DatasetFileIndexCache;
+import nl.knaw.dans.dvingest.core.metrics.IngestMetrics;
+import nl.knaw.dans.dvingest.core.report.DepositReport;
+import nl.knaw.dans.dvingest.core.service.AsyncDataverseService;
 import nl.knaw.dans.dvingest.core.service.DataverseService;
+import nl.knaw.dans.dvingest.core.service.TabularIngestQueue;
 import nl.knaw.dans.dvingest.core.service.UtilityServices;
 
 import java.io.IOException;
 import java.util.UUID;
 
-@AllArgsConstructor
 public class BagProcessorFactoryImpl implements BagProcessorFactory {
     private final DataverseService dataverseService;
     private final UtilityServices utilityServices;
+    private final IngestMetrics metrics;
+    private final TabularIngestQueue tabularIngestQueue;
+    private final DatasetFileIndexCache datasetFileIndexCache;
+    private final AsyncDataverseService asyncDataverseService;
+
+    public BagProcessorFactoryImpl(DataverseService dataverseService, UtilityServices utilityServices, IngestMetrics metrics, TabularIngestQueue tabularIngestQueue,
+        DatasetFileIndexCache datasetFileIndexCache) {
+        this(dataverseService, utilityServices, metrics, tabularIngestQueue, datasetFileIndexCache, null);
+    }
+
+    /**
+     * Creates a factory for bag processors that send independent requests concurrently through the given asynchronous service.
+     */
+    public BagProcessorFactoryImpl(DataverseService dataverseService, UtilityServices utilityServices, IngestMetrics metrics, TabularIngestQueue tabularIngestQueue,
+        DatasetFileIndexCache datasetFileIndexCache, AsyncDataverseService asyncDataverseService) {
+        this.dataverseService = dataverseService;
+        this.utilityServices = utilityServices;
+        this.metrics = metrics;
+        this.tabularIngestQueue = tabularIngestQueue;
+        this.datasetFileIndexCache = datasetFileIndexCache;
+        this.asyncDataverseService = asyncDataverseService;
+    }
 
     @Override
-    public BagProcessor createBagProcessor(UUID depositId, DataverseIngestBag bag) throws ConfigurationException, IOException {
+    public BagProcessor createBagProcessor(UUID depositId, DataverseIngestBag bag, DepositReport report, boolean deferTabularIngest)
+        throws ConfigurationException, IOException {
         return BagProcessor.builder()
             .depositId(depositId)
             .bag(bag)
             .dataverseService(dataverseService)
             .utilityServices(utilityServices)
+            .metrics(metrics)
+            .report(report)
+            .tabularIngestQueue(tabularIngestQueue)
+            .deferTabularIngest(deferTabularIngest)
+            .datasetFileIndexCache(datasetFileIndexCache)
+            .asyncDataverseService(asyncDataverseService)
             .build();
     }
 }
@@ -21,7 +21,7 @@ import nl.knaw.dans.dvingest.core.dansbag.DansDepositSupportFactory;
 
 public class DansDepositSupportDisabledFactory implements DansDepositSupportFactory {
     @Override
-    public Deposit addDansDepositSupportIfEnabled(DataverseIngestDeposit deposit) {
+    public Deposit addDansDepositSupportIfEnabled(DataverseIngestDeposit deposit, boolean onlyConvertDansDeposit) {
         return deposit;
     }
 }
@@ -20,12 +20,15 @@ import lombok.extern.slf4j.Slf4j;
 import nl.knaw.dans.dvingest.client.ValidateDansBagService;
 import nl.knaw.dans.dvingest.core.DataverseIngestDeposit;
 import nl.knaw.dans.dvingest.core.Deposit;
+import nl.knaw.dans.dvingest.core.dansbag.ConvertedYamlWriting;
 import nl.knaw.dans.dvingest.core.dansbag.DansBagMappingService;
 import nl.knaw.dans.dvingest.core.dansbag.DansDepositSupport;
 import nl.knaw.dans.dvingest.core.dansbag.DansDepositSupportFactory;
 import nl.knaw.dans.dvingest.core.service.DataverseService;
 import nl.knaw.dans.dvingest.core.service.YamlService;
 
+import java.util.concurrent.Executor;
+
 @Slf4j
 @AllArgsConstructor
 public class DansDepositSupportFactoryImpl implements DansDepositSupportFactory {
@@ -33,9 +36,14 @@ public class DansDepositSupportFactoryImpl implements DansDepositSupportFactory
     private final DansBagMappingService dansBagMappingService;
     private final DataverseService dataverseService;
     private final YamlService yamlService;
+    private final ConvertedYamlWriting convertedYamlWriting;
+    // Only used with ConvertedYamlWriting.ASYNC
+    private final Executor yamlWriteExecutor;
 
     @Override
-    public Deposit addDansDepositSupportIfEnabled(DataverseIngestDeposit deposit) {
-        return new DansDepositSupport(deposit, validateDansBagService, dansBagMappingService, dataverseService, yamlService);
+    public Deposit addDansDepositSupportIfEnabled(DataverseIngestDeposit deposit, boolean onlyConvertDansDeposit) {
+        // When only converting, the YAML files are the result
+        var writing = onlyConvertDansDeposit ? ConvertedYamlWriting.SYNC : convertedYamlWriting;
+        return new DansDepositSupport(deposit, validateDansBagService, dansBagMappingService, dataverseService, yamlService, writing, yamlWriteExecutor);
     }
 }
@@ -19,37 +19,74 @@ package nl.knaw.dans.dvingest;
 import io.dropwizard.core.Application;
 import io.dropwizard.core.setup.Bootstrap;
 import io.dropwizard.core.setup.Environment;
+import io.dropwizard.lifecycle.AutoCloseableManager;
+import io.dropwizard.lifecycle.ExecutorServiceManager;
+import io.dropwizard.util.Duration;
+import lombok.Setter;
 import lombok.extern.slf4j.Slf4j;
+import nl.knaw.dans.dvingest.cli.BenchCommand;
+import nl.knaw.dans.dvingest.cli.GenerateDepositsCommand;
 import nl.knaw.dans.dvingest.client.ValidateDansBagServiceImpl;
 import nl.knaw.dans.dvingest.config.DansDepositConversionConfig;
 import nl.knaw.dans.dvingest.config.DdDataverseIngestConfiguration;
 import nl.knaw.dans.dvingest.config.IngestAreaConfig;
+import nl.knaw.dans.dvingest.config.IngestConfig;
+import nl.knaw.dans.dvingest.config.LeaseConfig;
 import nl.knaw.dans.dvingest.core.AutoIngestArea;
+import nl.knaw.dans.dvingest.core.ImportJobFactory;
 import nl.knaw.dans.dvingest.core.IngestArea;
+import nl.knaw.dans.dvingest.core.VirtualThreads;
+import nl.knaw.dans.dvingest.core.bagprocessor.BagProcessorFactory;
+import nl.knaw.dans.dvingest.core.bagprocessor.DatasetFileIndexCache;
+import nl.knaw.dans.dvingest.core.dansbag.ConvertedYamlWriting;
 import nl.knaw.dans.dvingest.core.dansbag.DansBagMappingService;
 import nl.knaw.dans.dvingest.core.dansbag.DansBagMappingServiceImpl;
 import nl.knaw.dans.dvingest.core.dansbag.DansDepositSupportFactory;
+import nl.knaw.dans.dvingest.core.dansbag.MappingContext;
+import nl.knaw.dans.dvingest.core.dansbag.MappingContextLoader;
 import nl.knaw.dans.dvingest.core.dansbag.SupportedLicenses;
 import nl.knaw.dans.dvingest.core.dansbag.mapper.DepositToDvDatasetMetadataMapper;
+import nl.knaw.dans.dvingest.core.lease.LeaseManager;
+import nl.knaw.dans.dvingest.core.lease.LeaseManagerDisabled;
+import nl.knaw.dans.dvingest.core.lease.LeaseManagerImpl;
+import nl.knaw.dans.dvingest.core.metrics.IngestMetrics;
+import nl.knaw.dans.dvingest.core.service.AsyncDataverseServiceImpl;
+import nl.knaw.dans.dvingest.core.service.ConcurrencyLimitingDataverseService;
 import nl.knaw.dans.dvingest.core.service.DataverseService;
 import nl.knaw.dans.dvingest.core.service.DataverseServiceImpl;
+import nl.knaw.dans.dvingest.core.service.InstrumentedDataverseService;
+import nl.knaw.dans.dvingest.core.service.LockAwareDataverseService;
+import nl.knaw.dans.dvingest.core.service.RecordingDataverseService;
+import nl.knaw.dans.dvingest.core.service.TabularIngestQueue;
+import nl.knaw.dans.dvingest.core.service.UploadBatchPlanner;
 import nl.knaw.dans.dvingest.core.service.UtilityServicesImpl;
 import nl.knaw.dans.dvingest.core.service.YamlServiceImpl;
 import nl.knaw.dans.dvingest.resources.DefaultApiResource;
 import nl.knaw.dans.dvingest.resources.IllegalArgumentExceptionMapper;
 import nl.knaw.dans.dvingest.resources.IngestApiResource;
+import nl.knaw.dans.dvingest.resources.IngestEventsResource;
 import nl.knaw.dans.lib.dataverse.DataverseException;
-import nl.knaw.dans.lib.util.MappingLoader;
 import nl.knaw.dans.lib.util.inbox.Inbox;
-import org.apache.commons.io.FileUtils;
 
 import java.io.IOException;
-import java.nio.charset.StandardCharsets;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.SynchronousQueue;
 import java.util.regex.Pattern;
 
 @Slf4j
 public class DdDataverseIngestApplication extends Application<DdDataverseIngestConfiguration> {
 
+    // Used instead of the Dataverse client if set, by the bench command when it replays a recorded traffic log
+    @Setter
+    private DataverseService replayDataverseService;
+    private final Map<String, IngestArea> ingestAreas = new ConcurrentHashMap<>();
+
     public static void main(final String[] args) throws Exception {
         new DdDataverseIngestApplication().run(args);
     }
@@ -61,6 +98,22 @@ public class DdDataverseIngestApplication extends Application<DdDataverseIngestC
 
     @Override
     public void initialize(final Bootstrap<DdDataverseIngestConfiguration> bootstrap) {
+        bootstrap.addCommand(new GenerateDepositsCommand());
+        bootstrap.addCommand(new BenchCommand(this));
+    }
+
+    /**
+     * Returns the ingest area with the given name, after the application has been run.
+     *
+     * @param name 'import' or 'migration'
+     * @return the ingest area
+     */
+    public IngestArea getIngestArea(String name) {
+        var ingestArea = ingestAreas.get(name);
+        if (ingestArea == null) {
+            throw new IllegalStateException("No ingest area " + name);
+        }
+        return ingestArea;
     }
 
     @Override
@@ -68,57 +121,95 @@ public class DdDataverseIngestApplication extends Application<DdDataverseIngestC
         /*
          * Create service components
          */
-        var dataverseClient = configuration.getDataverse().build(environment, "dataverse");
-        var dataverseService = DataverseServiceImpl.builder()
-            .dataverseClient(dataverseClient)
-            .metadataKeys(configuration.getIngest().getMetadataKeys())
-            .millisecondsBetweenChecks(configuration.getIngest().getWaitForReleasedState().getTimeBetweenChecks().toMilliseconds())
-            .maxNumberOfRetries(configuration.getIngest().getWaitForReleasedState().getMaxNumberOfRetries())
-            .build();
+        var metrics = new IngestMetrics(environment.metrics());
+        DataverseService dataverseServiceImpl = createDataverseService(configuration, environment);
+        if (configuration.getIngest().getDataverseTrafficLog() != null) {
+            var recordingDataverseService = createRecordingDataverseService(dataverseServiceImpl, configuration.getIngest().getDataverseTrafficLog());
+            environment.lifecycle().manage(new AutoCloseableManager(recordingDataverseService));
+            dataverseServiceImpl = recordingDataverseService;
+        }
+        DataverseService instrumentedDataverseService = new InstrumentedDataverseService(dataverseServiceImpl, metrics);
+        if (configuration.getIngest().getMaxConcurrentDataverseCalls() > 0) {
+            instrumentedDataverseService = new ConcurrencyLimitingDataverseService(instrumentedDataverseService, metrics,
+                configuration.getIngest().getMaxConcurrentDataverseCalls());
+        }
+        var dataverseService = new LockAwareDataverseService(instrumentedDataverseService, metrics,
+            configuration.getIngest().getWaitForUnlock().getMaxNumberOfRetries(),
+            configuration.getIngest().getWaitForUnlock().getTimeBetweenChecks().toMilliseconds());
         var utilityServices = UtilityServicesImpl.builder()
             .tempDir(configuration.getIngest().getTempDir())
             .maxNumberOfFilesPerUpload(configuration.getIngest().getMaxNumberOfFilesPerUploadBatch())
             .maxUploadSize(configuration.getIngest().getMaxByteSizePerUploadBatch().toBytes())
+            .directUploadThreshold(configuration.getIngest().getDirectUploadThreshold() == null ? 0 : configuration.getIngest().getDirectUploadThreshold().toBytes())
+            .uploadBatchPlanner(createUploadBatchPlanner(configuration.getIngest(), metrics))
             .build();
         var yamlService = new YamlServiceImpl();
+        var leaseManager = createLeaseManager(configuration.getIngest().getLeases(), environment);
         var dataverseIngestDepositFactory = new DataverseIngestDepositFactoryImpl(yamlService);
-        var bagProcessorFactory = new BagProcessorFactoryImpl(dataverseService, utilityServices);
+        var tabularIngestQueue = new TabularIngestQueue(dataverseService, environment.lifecycle().executorService("tabular-ingest").minThreads(1).maxThreads(1)
+            .threadFactory(runnable -> {
+                var thread = new Thread(runnable, "tabular-ingest");
+                thread.setPriority(Thread.MIN_PRIORITY);
+                return thread;
+            }).build());
+        var datasetFileIndexCache = configuration.getIngest().getDatasetFileIndexCacheSize() == 0 ? null :
+            new DatasetFileIndexCache(dataverseService, configuration.getIngest().getDatasetFileIndexCacheSize());
+        var bagProcessorFactory = new BagProcessorFactoryImpl(dataverseService, utilityServices, metrics, tabularIngestQueue, datasetFileIndexCache);
+        // For the areas that run on virtual threads: independent requests of a deposit are also sent concurrently, on virtual threads
+        BagProcessorFactory concurrentBagProcessorFactory = bagProcessorFactory;
+        if (configuration.getIngest().getImportConfig().isVirtualThreads() || configuration.getIngest().getMigration().isVirtualThreads()) {
+            var asyncDataverseService = new AsyncDataverseServiceImpl(dataverseService, createVirtualThreadExecutor("dataverse-async", environment));
+            concurrentBagProcessorFactory = new BagProcessorFactoryImpl(dataverseService, utilityServices, metrics, tabularIngestQueue, datasetFileIndexCache,
+                asyncDataverseService);
+        }
 
         /*
          *  Import area
          */
         DansDepositConversionConfig dansDepositConversionConfig = configuration.getDansDepositConversion();
+        MappingContext mappingContext = null;
+        if (dansDepositConversionConfig != null) {
+            mappingContext = loadMappingContext(dansDepositConversionConfig, dataverseService);
+        }
         DansDepositSupportFactory dansDepositSupportFactoryImport = new DansDepositSupportDisabledFactory();
         if (dansDepositConversionConfig != null) {
-            var dansBagMappingServiceImport = createDansBagMappingService(false, dansDepositConversionConfig, dataverseService);
+            var dansBagMappingServiceImport = createDansBagMappingService(false, dansDepositConversionConfig, mappingContext, dataverseService, datasetFileIndexCache);
             var validateDansBagImportImport = new ValidateDansBagServiceImpl(dansDepositConversionConfig.getValidateDansBag(), false);
-            dansDepositSupportFactoryImport = new DansDepositSupportFactoryImpl(validateDansBagImportImport, dansBagMappingServiceImport, dataverseService, yamlService);
+            dansDepositSupportFactoryImport = new DansDepositSupportFactoryImpl(validateDansBagImportImport, dansBagMappingServiceImport, dataverseService, yamlService,
+                dansDepositConversionConfig.getConvertedYamlWriting(), createYamlWriteExecutor("import", dansDepositConversionConfig, environment));
         }
-        var depositTaskFactoryImport = new DepositTaskFactoryImpl(bagProcessorFactory, dansDepositSupportFactoryImport);
-        var importJobFactory = new ImportJobFactoryImpl(dataverseIngestDepositFactory, depositTaskFactoryImport);
         IngestAreaConfig importConfig = configuration.getIngest().getImportConfig();
-        var importArea = new IngestArea(importJobFactory, importConfig.getInbox(), importConfig.getOutbox(),
-            environment.lifecycle().executorService("import").minThreads(1).maxThreads(1).build());
+        var depositTaskFactoryImport = new DepositTaskFactoryImpl(importConfig.isVirtualThreads() ? concurrentBagProcessorFactory : bagProcessorFactory,
+            dansDepositSupportFactoryImport, metrics, "import", importConfig.isDeferTabularIngest());
+        var importJobFactory = new ImportJobFactoryImpl(dataverseIngestDepositFactory, depositTaskFactoryImport, leaseManager,
+            createDepositExecutor("import", importConfig, environment), importConfig.getMaxConcurrentDeposits());
+        var importArea = createIngestArea("import", importJobFactory, importConfig, environment);
+        metrics.registerQueueDepth("import", importArea::getQueueDepth);
 
         /*
          * Migration area
          */
         DansDepositSupportFactory dansDepositSupportFactoryMigration = new DansDepositSupportDisabledFactory();
         if (dansDepositConversionConfig != null) {
-            var dansBagMappingService = createDansBagMappingService(true, dansDepositConversionConfig, dataverseService);
+            var dansBagMappingService = createDansBagMappingService(true, dansDepositConversionConfig, mappingContext, dataverseService, datasetFileIndexCache);
             var validateDansBagImport = new ValidateDansBagServiceImpl(dansDepositConversionConfig.getValidateDansBag(), true);
-            dansDepositSupportFactoryMigration = new DansDepositSupportFactoryImpl(validateDansBagImport, dansBagMappingService, dataverseService, yamlService);
+            dansDepositSupportFactoryMigration = new DansDepositSupportFactoryImpl(validateDansBagImport, dansBagMappingService, dataverseService, yamlService,
+                dansDepositConversionConfig.getConvertedYamlWriting(), createYamlWriteExecutor("migration", dansDepositConversionConfig, environment));
         }
-        var depositTaskFactoryMigration = new DepositTaskFactoryImpl(bagProcessorFactory, dansDepositSupportFactoryMigration);
-        var migrationJobFactory = new ImportJobFactoryImpl(dataverseIngestDepositFactory, depositTaskFactoryMigration);
         IngestAreaConfig migrationConfig = configuration.getIngest().getMigration();
-        var migrationArea = new IngestArea(migrationJobFactory, migrationConfig.getInbox(), migrationConfig.getOutbox(),
-            environment.lifecycle().executorService("migration").minThreads(1).maxThreads(1).build());
+        var depositTaskFactoryMigration = new DepositTaskFactoryImpl(migrationConfig.isVirtualThreads() ? concurrentBagProcessorFactory : bagProcessorFactory,
+            dansDepositSupportFactoryMigration, metrics, "migration", migrationConfig.isDeferTabularIngest());
+        var migrationJobFactory = new ImportJobFactoryImpl(dataverseIngestDepositFactory, depositTaskFactoryMigration, leaseManager,
+            createDepositExecutor("migration", migrationConfig, environment), migrationConfig.getMaxConcurrentDeposits());
+        var migrationArea = createIngestArea("migration", migrationJobFactory, migrationConfig, environment);
+        metrics.registerQueueDepth("migration", migrationArea::getQueueDepth);
         /*
          * Auto ingest area
          */
         var autoIngestConfig = configuration.getIngest().getAutoIngest();
-        var inboxTaskFactory = new InboxTaskFactoryImpl(dataverseIngestDepositFactory, depositTaskFactoryImport, autoIngestConfig.getOutbox());
+        var depositTaskFactoryAutoIngest = new DepositTaskFactoryImpl(bagProcessorFactory, dansDepositSupportFactoryImport, metrics, "auto-ingest",
+            autoIngestConfig.isDeferTabularIngest());
+        var inboxTaskFactory = new InboxTaskFactoryImpl(dataverseIngestDepositFactory, depositTaskFactoryAutoIngest, autoIngestConfig.getOutbox(), leaseManager);
         var inbox = Inbox.builder().inbox(autoIngestConfig.getInbox()).taskFactory(inboxTaskFactory).build();
         var autoIngestArea = new AutoIngestArea(inbox, autoIngestConfig.getOutbox());
 
@@ -127,53 +218,149 @@ public class DdDataverseIngestApplication extends Application<DdDataverseIngestC
          */
         environment.jersey().register(new DefaultApiResource());
         environment.jersey().register(new IngestApiResource(importArea, migrationArea));
+        environment.jersey().register(new IngestEventsResource(List.of(importArea, migrationArea),
+            environment.lifecycle().scheduledExecutorService("ingest-events").build(), configuration.getIngest().getProgressEventInterval()));
         environment.lifecycle().manage(autoIngestArea);
         environment.jersey().register(new IllegalArgumentExceptionMapper());
     }
 
-    private DansBagMappingService createDansBagMappingService(boolean isMigration, DansDepositConversionConfig dansDepositConversionConfig, DataverseService dataverseService) {
-        log.info("Configuring DANS Deposit conversion");
+    /**
+     * Creates the service that talks to Dataverse, or replays a recorded traffic log for the bench command, without the decorators for metrics, locks and recording,
+     * which are added around it.
+     *
+     * @param configuration the configuration
+     * @param environment   the environment
+     * @return the service
+     */
+    private DataverseService createDataverseService(DdDataverseIngestConfiguration configuration, Environment environment) {
+        if (replayDataverseService != null) {
+            return replayDataverseService;
+        }
+        return DataverseServiceImpl.builder()
+            .dataverseClient(configuration.getDataverse().build(environment, "dataverse"))
+            .metadataKeys(configuration.getIngest().getMetadataKeys())
+            .millisecondsBetweenChecks(configuration.getIngest().getWaitForReleasedState().getTimeBetweenChecks().toMilliseconds())
+            .maxNumberOfRetries(configuration.getIngest().getWaitForReleasedState().getMaxNumberOfRetries())
+            .build();
+    }
+
+    private IngestArea createIngestArea(String name, ImportJobFactory importJobFactory, IngestAreaConfig ingestAreaConfig, Environment environment) {
+        // One job at a time, so that the deposits for a dataset are processed in the order in which their jobs were submitted
+        var jobExecutor = environment.lifecycle().executorService(name).minThreads(1).maxThreads(1).build();
+        var ingestArea = new IngestArea(importJobFactory, ingestAreaConfig.getInbox(), ingestAreaConfig.getOutbox(), jobExecutor);
+        ingestAreas.put(name, ingestArea);
+        return ingestArea;
+    }
+
+    private ExecutorService createDepositExecutor(String area, IngestAreaConfig ingestAreaConfig, Environment environment) {
+        if (ingestAreaConfig.isVirtualThreads()) {
+            return createVirtualThreadExecutor(area + "-deposit", environment);
+        }
+        // A thread for every dataset of which deposits are in progress; the import job limits their number
+        return environment.lifecycle().executorService(area + "-deposit-%d").minThreads(0).maxThreads(Integer.MAX_VALUE).workQueue(new SynchronousQueue<>())
+            .build();
+    }
+
+    private ExecutorService createVirtualThreadExecutor(String name, Environment environment) {
+        var executor = VirtualThreads.newThreadPerTaskExecutor(name);
+        environment.lifecycle().manage(new ExecutorServiceManager(executor, Duration.seconds(5), name));
+        return executor;
+    }
+
+    private LeaseManager createLeaseManager(LeaseConfig leaseConfig, Environment environment) {
+        if (leaseConfig == null) {
+            return new LeaseManagerDisabled();
+        }
+        var instanceId = leaseConfig.getInstanceId() != null ? leaseConfig.getInstanceId() : getDefaultInstanceId();
+        log.info("Sharing inboxes with other instances as {}, using lease directory {}", instanceId, leaseConfig.getDirectory());
+        var leaseManager = new LeaseManagerImpl(leaseConfig.getDirectory(), instanceId, leaseConfig.getDuration().toMilliseconds(),
+            environment.lifecycle().scheduledExecutorService("lease-renewal").build());
+        environment.lifecycle().manage(leaseManager);
+        return leaseManager;
+    }
+
+    private String getDefaultInstanceId() {
         try {
-            var mapper = createMapper(isMigration, dansDepositConversionConfig, dataverseService);
-            return new DansBagMappingServiceImpl(
-                mapper,
-                dataverseService,
-                new SupportedLicenses(dataverseService),
-                dansDepositConversionConfig.getFileExclusionPattern() == null ? null :
-                    Pattern.compile(dansDepositConversionConfig.getFileExclusionPattern()),
-                dansDepositConversionConfig.getEmbargoExclusions());
+            return InetAddress.getLocalHost().getHostName() + "-" + ProcessHandle.current().pid();
+        }
+        catch (UnknownHostException e) {
+            throw new IllegalStateException("Cannot determine the host name; set ingest.leases.instanceId", e);
+        }
+    }
+
+    private ExecutorService createYamlWriteExecutor(String area, DansDepositConversionConfig dansDepositConversionConfig, Environment environment) {
+        if (dansDepositConversionConfig.getConvertedYamlWriting() != ConvertedYamlWriting.ASYNC) {
+            return null;
+        }
+        return environment.lifecycle().executorService("converted-yaml-" + area).minThreads(1).maxThreads(1).build();
+    }
+
+    private RecordingDataverseService createRecordingDataverseService(DataverseService dataverseService, Path trafficLog) {
+        try {
+            return new RecordingDataverseService(dataverseService, trafficLog);
         }
         catch (IOException e) {
-            throw new IllegalStateException("Failed to read configuration files", e);
+            throw new IllegalStateException("Cannot create Dataverse traffic log " + trafficLog, e);
         }
-        catch (DataverseException e) {
-            throw new IllegalStateException("Failed to read supported licenses", e);
+    }
+
+    private UploadBatchPlanner createUploadBatchPlanner(IngestConfig ingestConfig, IngestMetrics metrics) {
+        var adaptiveConfig = ingestConfig.getAdaptiveUploadBatch();
+        if (adaptiveConfig == null) {
+            return null;
         }
+        var planner = UploadBatchPlanner.builder()
+            .minNumberOfFiles(adaptiveConfig.getMinNumberOfFilesPerUploadBatch())
+            .maxNumberOfFiles(ingestConfig.getMaxNumberOfFilesPerUploadBatch())
+            .minNumberOfBytes(adaptiveConfig.getMinByteSizePerUploadBatch().toBytes())
+            .maxNumberOfBytes(ingestConfig.getMaxByteSizePerUploadBatch().toBytes())
+            .targetDurationMillis(adaptiveConfig.getTargetDuration().toMilliseconds())
+            .windowSize(adaptiveConfig.getWindowSize())
+            .build();
+        metrics.registerUploadBatchPlanner(planner);
+        return planner;
     }
 
-    private DepositToDvDatasetMetadataMapper createMapper(boolean isMigration, DansDepositConversionConfig dansDepositConversionConfig, DataverseService dataverseService) {
-        var mappingDefsDir = dansDepositConversionConfig.getMappingDefsDir();
+    private MappingContext loadMappingContext(DansDepositConversionConfig dansDepositConversionConfig, DataverseService dataverseService) {
         try {
-            return new DepositToDvDatasetMetadataMapper(
-                isMigration,
-                dansDepositConversionConfig.isDeduplicate(),
-                dataverseService.getActiveMetadataBlockNames(),
-                MappingLoader.builder().csvFile(mappingDefsDir.resolve("iso639-1-to-dv.csv")).keyColumn("ISO639-1").valueColumn("Dataverse-language").build().load(),
-                MappingLoader.builder().csvFile(mappingDefsDir.resolve("iso639-2-to-dv.csv")).keyColumn("ISO639-2").valueColumn("Dataverse-language").build().load(),
-                MappingLoader.builder().csvFile(mappingDefsDir.resolve("abr-report-code-to-term.csv")).keyColumn("code").valueColumn("subject").build().load(),
-                MappingLoader.builder().csvFile(mappingDefsDir.resolve("verwervingswijzen-code-to-term.csv")).keyColumn("code").valueColumn("subject").build().load(),
-                MappingLoader.builder().csvFile(mappingDefsDir.resolve("abr-complextype-code-to-term.csv")).keyColumn("code").valueColumn("subject").build().load(),
-                MappingLoader.builder().csvFile(mappingDefsDir.resolve("abr-artifact-code-to-term.csv")).keyColumn("code").valueColumn("subject").build().load(),
-                MappingLoader.builder().csvFile(mappingDefsDir.resolve("abr-period-code-to-term.csv")).keyColumn("code").valueColumn("subject").build().load(),
-                FileUtils.readLines(mappingDefsDir.resolve("spatial-coverage-country-terms.txt").toFile(), StandardCharsets.UTF_8),
-                dansDepositConversionConfig.getDataSuppliers(),
-                dansDepositConversionConfig.getSkipFields());
+            return new MappingContextLoader(dansDepositConversionConfig.getMappingDefsDir(), dataverseService).load();
         }
         catch (IOException e) {
             throw new IllegalStateException("Failed to read configuration files", e);
         }
         catch (DataverseException e) {
-            throw new IllegalStateException("Failed to read supported licenses", e);
+            throw new IllegalStateException("Failed to read metadata blocks or supported licenses", e);
         }
     }
+
+    private DansBagMappingService createDansBagMappingService(boolean isMigration, DansDepositConversionConfig dansDepositConversionConfig, MappingContext mappingContext,
+        DataverseService dataverseService, DatasetFileIndexCache datasetFileIndexCache) {
+        log.info("Configuring DANS Deposit conversion");
+        return new DansBagMappingServiceImpl(
+            createMapper(isMigration, dansDepositConversionConfig, mappingContext),
+            dataverseService,
+            new SupportedLicenses(mappingContext.getSupportedLicenses()),
+            dansDepositConversionConfig.getFileExclusionPattern() == null ? null :
+                Pattern.compile(dansDepositConversionConfig.getFileExclusionPattern()),
+            dansDepositConversionConfig.getEmbargoExclusions(),
+            isMigration && dansDepositConversionConfig.isNativeImportForMigration(),
+            datasetFileIndexCache);
+    }
+
+    private DepositToDvDatasetMetadataMapper createMapper(boolean isMigration, DansDepositConversionConfig dansDepositConversionConfig, MappingContext mappingContext) {
+        return new DepositToDvDatasetMetadataMapper(
+            isMigration,
+            dansDepositConversionConfig.isDeduplicate(),
+            mappingContext.getActiveMetadataBlocks(),
+            mappingContext.getIso1ToDataverseLanguage(),
+            mappingContext.getIso2ToDataverseLanguage(),
+            mappingContext.getAbrReportCodeToTerm(),
+            mappingContext.getAbrAcquisitionMethodCodeToTerm(),
+            mappingContext.getAbrComplexCodeToTerm(),
+            mappingContext.getAbrArtifactCodeToTerm(),
+            mappingContext.getAbrPeriodCodeToTerm(),
+            mappingContext.getSpatialCoverageCountryTerms(),
+            dansDepositConversionConfig.getDataSuppliers(),
+            dansDepositConversionConfig.getSkipFields());
+    }
 }
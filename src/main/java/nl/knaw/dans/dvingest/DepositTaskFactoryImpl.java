@@ -21,6 +21,7 @@ import nl.knaw.dans.dvingest.core.DepositTask;
 import nl.knaw.dans.dvingest.core.DepositTaskFactory;
 import nl.knaw.dans.dvingest.core.bagprocessor.BagProcessorFactory;
 import nl.knaw.dans.dvingest.core.dansbag.DansDepositSupportFactory;
+import nl.knaw.dans.dvingest.core.metrics.IngestMetrics;
 
 import java.nio.file.Path;
 
@@ -28,9 +29,12 @@ import java.nio.file.Path;
 public class DepositTaskFactoryImpl implements DepositTaskFactory {
     private final BagProcessorFactory bagProcessorFactory;
     private final DansDepositSupportFactory dansDepositSupportFactory;
+    private final IngestMetrics metrics;
+    private final String area;
+    private final boolean deferTabularIngest;
 
     @Override
-    public Runnable createDepositTask(DataverseIngestDeposit deposit, Path outputDir, boolean onlyConvertDansDeposit) {
-        return new DepositTask(deposit, outputDir, onlyConvertDansDeposit, bagProcessorFactory, dansDepositSupportFactory);
+    public DepositTask createDepositTask(DataverseIngestDeposit deposit, Path outputDir, boolean onlyConvertDansDeposit) {
+        return new DepositTask(deposit, outputDir, onlyConvertDansDeposit, bagProcessorFactory, dansDepositSupportFactory, metrics, area, deferTabularIngest);
     }
 }
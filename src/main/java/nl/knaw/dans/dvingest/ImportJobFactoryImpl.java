@@ -22,8 +22,10 @@ import nl.knaw.dans.dvingest.core.DataverseIngestDepositFactory;
 import nl.knaw.dans.dvingest.core.DepositTaskFactory;
 import nl.knaw.dans.dvingest.core.ImportJob;
 import nl.knaw.dans.dvingest.core.ImportJobFactory;
+import nl.knaw.dans.dvingest.core.lease.LeaseManager;
 
 import java.nio.file.Path;
+import java.util.concurrent.Executor;
 
 @AllArgsConstructor
 public class ImportJobFactoryImpl implements ImportJobFactory {
@@ -31,9 +33,15 @@ public class ImportJobFactoryImpl implements ImportJobFactory {
     private final DataverseIngestDepositFactory dataverseIngestDepositFactory;
     @NonNull
     private final DepositTaskFactory depositTaskFactory;
+    @NonNull
+    private final LeaseManager leaseManager;
+    // Null to process the deposits of a job one by one on the thread of the job
+    private final Executor depositExecutor;
+    private final int maxConcurrentDeposits;
 
     @Override
     public ImportJob createImportJob(ImportCommandDto importCommand, Path outputDir, boolean onlyConvertDansDeposit) {
-        return new ImportJob(importCommand, outputDir, onlyConvertDansDeposit, dataverseIngestDepositFactory, depositTaskFactory);
+        return new ImportJob(importCommand, outputDir, onlyConvertDansDeposit, dataverseIngestDepositFactory, depositTaskFactory, leaseManager, depositExecutor,
+            maxConcurrentDeposits);
     }
 }
@@ -16,21 +16,67 @@
 package nl.knaw.dans.dvingest;
 
 import lombok.AllArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
 import nl.knaw.dans.dvingest.core.DataverseIngestDepositFactory;
 import nl.knaw.dans.dvingest.core.DepositTaskFactory;
+import nl.knaw.dans.dvingest.core.lease.Lease;
+import nl.knaw.dans.dvingest.core.lease.LeaseManager;
 import nl.knaw.dans.lib.util.inbox.InboxTaskFactory;
 
+import java.io.IOException;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.Optional;
 
+@Slf4j
 @AllArgsConstructor
 public class InboxTaskFactoryImpl implements InboxTaskFactory {
+    // How often to check whether the lease held by another instance has become available
+    private static final long LEASE_POLL_INTERVAL_MILLIS = 5_000;
+
     private final DataverseIngestDepositFactory dataverseIngestDepositFactory;
     private final DepositTaskFactory depositTaskFactory;
     private final Path outputDir;
+    private final LeaseManager leaseManager;
 
     @Override
     public Runnable createInboxTask(Path path) {
-        var dataVerseIngestDeposit = dataverseIngestDepositFactory.createDataverseIngestDeposit(path);
-        return depositTaskFactory.createDepositTask(dataVerseIngestDeposit, outputDir, false);
+        return () -> {
+            var dataVerseIngestDeposit = dataverseIngestDepositFactory.createDataverseIngestDeposit(path);
+            var datasetKey = dataVerseIngestDeposit.getDatasetKey();
+            try {
+                // The inbox processes deposits in order, so wait for the lease instead of skipping the deposit
+                var lease = waitForLease(path, datasetKey);
+                if (lease.isEmpty()) {
+                    log.info("SKIP deposit {}: processed by another instance", dataVerseIngestDeposit.getId());
+                    return;
+                }
+                try (var ignored = lease.get()) {
+                    if (!Files.isDirectory(path)) {
+                        log.info("SKIP deposit {}: processed by another instance", dataVerseIngestDeposit.getId());
+                        return;
+                    }
+                    var task = depositTaskFactory.createDepositTask(dataVerseIngestDeposit, outputDir, false);
+                    task.setLease(lease.get());
+                    task.run();
+                }
+            }
+            catch (IOException e) {
+                log.error("Could not lease dataset {} for deposit {}; leaving it in the inbox", datasetKey, dataVerseIngestDeposit.getId(), e);
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        };
+    }
+
+    private Optional<Lease> waitForLease(Path path, String datasetKey) throws IOException, InterruptedException {
+        var lease = leaseManager.tryAcquire(datasetKey);
+        while (lease.isEmpty() && Files.isDirectory(path)) {
+            log.debug("Dataset {} is leased by another instance; waiting", datasetKey);
+            Thread.sleep(LEASE_POLL_INTERVAL_MILLIS);
+            lease = leaseManager.tryAcquire(datasetKey);
+        }
+        return lease;
     }
 }
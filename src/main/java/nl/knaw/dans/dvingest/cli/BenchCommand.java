@@ -0,0 +1,239 @@
+/*
+ * Copyright (C) 2024 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.dvingest.cli;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import io.dropwizard.core.cli.EnvironmentCommand;
+import io.dropwizard.core.setup.Bootstrap;
+import io.dropwizard.core.setup.Environment;
+import io.dropwizard.util.Duration;
+import lombok.AccessLevel;
+import lombok.Setter;
+import lombok.extern.slf4j.Slf4j;
+import net.sourceforge.argparse4j.impl.Arguments;
+import net.sourceforge.argparse4j.inf.Namespace;
+import net.sourceforge.argparse4j.inf.Subparser;
+import nl.knaw.dans.dvingest.DdDataverseIngestApplication;
+import nl.knaw.dans.dvingest.api.ImportCommandDto;
+import nl.knaw.dans.dvingest.api.ImportJobStatusDto.StatusEnum;
+import nl.knaw.dans.dvingest.config.DdDataverseIngestConfiguration;
+import nl.knaw.dans.dvingest.config.IngestAreaConfig;
+import nl.knaw.dans.dvingest.core.IngestArea;
+import nl.knaw.dans.dvingest.core.fakedataverse.FakeDataverseConfig;
+import nl.knaw.dans.dvingest.core.fakedataverse.FakeDataverseServer;
+import nl.knaw.dans.dvingest.core.report.ImportJobSummary;
+import nl.knaw.dans.dvingest.core.service.ReplayDataverseService;
+import org.eclipse.jetty.util.component.ContainerLifeCycle;
+
+import java.io.File;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+
+/**
+ * <p>
+ * Measures the end-to-end throughput of the service. The command processes one batch in the import or migration area, using the configuration file of the service, and prints the throughput,
+ * the percentiles of the phase durations and the peak heap usage when the batch is done. The batch is either an existing batch in the inbox of the area or one that is generated first, with
+ * the same options as {@link GenerateDepositsCommand}.
+ * </p>
+ * <p>
+ * The service talks to the Dataverse in the configuration file ('real'), to a {@link FakeDataverseServer} that is started by the command ('fake') or to a recorded traffic log ('replay').
+ * </p>
+ */
+@Slf4j
+public class BenchCommand extends EnvironmentCommand<DdDataverseIngestConfiguration> {
+    private static final long MEBIBYTE = 1024 * 1024;
+
+    private final DdDataverseIngestApplication application;
+    private FakeDataverseServer fakeDataverseServer;
+    @Setter(AccessLevel.PACKAGE)
+    private long pollIntervalMillis = 1000;
+
+    public BenchCommand(DdDataverseIngestApplication application) {
+        super(application, "bench", "Processes a batch of deposits and reports the throughput");
+        this.application = application;
+    }
+
+    @Override
+    public void configure(Subparser subparser) {
+        super.configure(subparser);
+        subparser.addArgument("--area")
+            .choices("import", "migration")
+            .setDefault("import")
+            .help("The ingest area to process the batch in");
+        subparser.addArgument("--batch")
+            .type(Arguments.fileType())
+            .help("An existing batch in the inbox of the area");
+        subparser.addArgument("--generate")
+            .action(Arguments.storeTrue())
+            .help("Generate a new batch in the inbox of the area, using the generator options below");
+        subparser.addArgument("--dataverse")
+            .choices("real", "fake", "replay")
+            .setDefault("fake")
+            .help("The Dataverse to use: the one in the configuration file, an in-process fake or a recorded traffic log");
+        subparser.addArgument("--fake-latency")
+            .type(String.class)
+            .setDefault("0ms")
+            .help("Latency of every call to the fake Dataverse, e.g., 50ms");
+        subparser.addArgument("--fake-latency-per-mebibyte")
+            .type(String.class)
+            .setDefault("0ms")
+            .help("Latency per mebibyte uploaded to the fake Dataverse, e.g., 10ms");
+        subparser.addArgument("--replay-log")
+            .type(Arguments.fileType())
+            .help("The traffic log to replay, for --dataverse replay");
+        subparser.addArgument("--time-scale")
+            .type(Double.class)
+            .setDefault(1.0)
+            .help("Factor for the recorded durations when replaying; 0 means no waiting");
+        GenerateDepositsCommand.addGeneratorArguments(subparser);
+    }
+
+    @Override
+    protected void run(Bootstrap<DdDataverseIngestConfiguration> bootstrap, Namespace namespace, DdDataverseIngestConfiguration configuration) throws Exception {
+        if (namespace.get("batch") == null && !namespace.getBoolean("generate")) {
+            throw new IllegalArgumentException("Specify either --batch or --generate");
+        }
+        switch (namespace.getString("dataverse")) {
+            case "fake" -> {
+                var fakeConfig = new FakeDataverseConfig();
+                fakeConfig.setLatency(Duration.parse(namespace.getString("fake_latency")));
+                fakeConfig.setLatencyPerMebibyte(Duration.parse(namespace.getString("fake_latency_per_mebibyte")));
+                fakeDataverseServer = new FakeDataverseServer(fakeConfig, bootstrap.getObjectMapper());
+                fakeDataverseServer.start();
+                configuration.getDataverse().setBaseUrl(fakeDataverseServer.getBaseUrl());
+            }
+            case "replay" -> {
+                File replayLog = namespace.get("replay_log");
+                if (replayLog == null) {
+                    throw new IllegalArgumentException("--replay-log is required for --dataverse replay");
+                }
+                application.setReplayDataverseService(new ReplayDataverseService(replayLog.toPath(), namespace.getDouble("time_scale")));
+            }
+            default -> log.info("Using Dataverse at {}", configuration.getDataverse().getBaseUrl());
+        }
+        try {
+            super.run(bootstrap, namespace, configuration);
+        }
+        finally {
+            if (fakeDataverseServer != null) {
+                fakeDataverseServer.close();
+            }
+        }
+    }
+
+    @Override
+    protected void run(Environment environment, Namespace namespace, DdDataverseIngestConfiguration configuration) throws Exception {
+        var areaName = namespace.getString("area");
+        var area = application.getIngestArea(areaName);
+        var areaConfig = "migration".equals(areaName) ? configuration.getIngest().getMigration() : configuration.getIngest().getImportConfig();
+        var batch = getBatch(namespace, areaConfig);
+
+        // The command does not run the server, so the managed objects must be started and stopped here
+        var lifecycle = new ContainerLifeCycle();
+        environment.lifecycle().attach(lifecycle);
+        lifecycle.start();
+        StatusEnum status;
+        try {
+            resetPeakHeapUsage();
+            log.info("Start processing batch {}", batch);
+            status = runToCompletion(area, batch);
+            log.info("End processing batch {} with status {}", batch, status);
+        }
+        finally {
+            lifecycle.stop();
+        }
+
+        var relativeBatch = areaConfig.getInbox().toAbsolutePath().toRealPath().relativize(batch);
+        var summaryFile = areaConfig.getOutbox().toAbsolutePath().toRealPath().resolve(relativeBatch).resolve(ImportJobSummary.FILENAME);
+        printReport(status, summaryFile, environment);
+    }
+
+    private Path getBatch(Namespace namespace, IngestAreaConfig areaConfig) throws Exception {
+        if (namespace.getBoolean("generate")) {
+            var batch = areaConfig.getInbox().toAbsolutePath().toRealPath()
+                .resolve("bench-" + LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss")));
+            GenerateDepositsCommand.createGenerator(namespace).generate(batch);
+            return batch;
+        }
+        File batch = namespace.get("batch");
+        return batch.toPath().toAbsolutePath().toRealPath();
+    }
+
+    private StatusEnum runToCompletion(IngestArea area, Path batch) throws InterruptedException {
+        area.submit(new ImportCommandDto()
+            .path(batch.toString())
+            .singleObject(false)
+            .onlyConvertDansBag(false));
+        while (true) {
+            Thread.sleep(pollIntervalMillis);
+            var status = area.getStatus(batch.toString()).get(0).getStatus();
+            if (List.of(StatusEnum.DONE, StatusEnum.FAILED).contains(status)) {
+                return status;
+            }
+            var progress = area.getProgress(batch.toString()).get(0);
+            log.info("Progress: {}", progress);
+        }
+    }
+
+    private void resetPeakHeapUsage() {
+        ManagementFactory.getMemoryPoolMXBeans().stream()
+            .filter(pool -> pool.getType() == MemoryType.HEAP)
+            .forEach(MemoryPoolMXBean::resetPeakUsage);
+    }
+
+    // The sum of the peaks of the heap pools, which is an upper bound of the peak heap usage
+    private long getPeakHeapUsage() {
+        return ManagementFactory.getMemoryPoolMXBeans().stream()
+            .filter(pool -> pool.getType() == MemoryType.HEAP)
+            .mapToLong(pool -> pool.getPeakUsage().getUsed())
+            .sum();
+    }
+
+    private void printReport(StatusEnum status, Path summaryFile, Environment environment) throws Exception {
+        var out = System.out;
+        out.println();
+        out.println("Status:            " + status);
+        out.printf("Peak heap:         %d MiB%n", getPeakHeapUsage() / MEBIBYTE);
+        if (!Files.exists(summaryFile)) {
+            out.println("No summary found at " + summaryFile);
+            return;
+        }
+        JsonNode summary = environment.getObjectMapper().readTree(summaryFile.toFile());
+        out.println("Deposits:          " + summary.path("depositsByStatus"));
+        out.printf("Wall clock:        %.1f s%n", summary.path("wallClockMillis").asLong() / 1000.0);
+        out.printf("Throughput:        %.2f deposits/s, %.2f MB/s%n", summary.path("depositsPerSecond").asDouble(), summary.path("megabytesPerSecond").asDouble());
+        out.println("Files uploaded:    " + summary.path("filesUploaded").asLong());
+        out.println("Dataverse calls:   " + summary.path("dataverseApiCalls").asLong());
+        out.println();
+        out.printf("%-16s %8s %8s %8s %8s %8s %8s%n", "phase (ms)", "count", "p50", "p90", "p95", "p99", "max");
+        printPercentiles(out, "deposit", summary.path("depositDurationMillis"));
+        summary.path("phaseDurationMillis").fields().forEachRemaining(phase -> printPercentiles(out, phase.getKey(), phase.getValue()));
+        out.println();
+        out.println("Full summary in " + summaryFile);
+    }
+
+    private void printPercentiles(PrintStream out, String name, JsonNode percentiles) {
+        out.printf("%-16s %8d %8d %8d %8d %8d %8d%n", name, percentiles.path("count").asLong(), percentiles.path("p50").asLong(), percentiles.path("p90").asLong(),
+            percentiles.path("p95").asLong(), percentiles.path("p99").asLong(), percentiles.path("max").asLong());
+    }
+}
@@ -0,0 +1,139 @@
+/*
+ * Copyright (C) 2024 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.dvingest.cli;
+
+import io.dropwizard.core.cli.Command;
+import io.dropwizard.core.setup.Bootstrap;
+import net.sourceforge.argparse4j.impl.Arguments;
+import net.sourceforge.argparse4j.inf.Namespace;
+import net.sourceforge.argparse4j.inf.Subparser;
+import nl.knaw.dans.dvingest.core.generator.DepositGenerator;
+import nl.knaw.dans.dvingest.core.generator.DepositGenerator.DepositType;
+import nl.knaw.dans.dvingest.core.generator.DepositGenerator.SizeDistribution;
+
+import java.io.File;
+
+/**
+ * Writes a batch of synthetic deposits that can be put in the import inbox. See {@link DepositGenerator} for the parameters.
+ */
+public class GenerateDepositsCommand extends Command {
+
+    public GenerateDepositsCommand() {
+        super("generate-deposits", "Generates a batch of synthetic deposits for scale tests and benchmarks");
+    }
+
+    @Override
+    public void configure(Subparser subparser) {
+        subparser.addArgument("batch-dir")
+            .type(Arguments.fileType())
+            .help("The directory to write the deposits to");
+        addGeneratorArguments(subparser);
+    }
+
+    /**
+     * Adds the parameters of the {@link DepositGenerator} as options, so that they can be shared with other commands.
+     *
+     * @param subparser the subparser of the command
+     */
+    static void addGeneratorArguments(Subparser subparser) {
+        subparser.addArgument("--type")
+            .type(Arguments.caseInsensitiveEnumType(DepositType.class))
+            .setDefault(DepositType.DATAVERSE_INGEST)
+            .help("The deposit format");
+        subparser.addArgument("--datasets")
+            .type(Integer.class)
+            .setDefault(10)
+            .help("The number of datasets");
+        subparser.addArgument("--versions")
+            .type(Integer.class)
+            .setDefault(1)
+            .help("The number of versions per dataset");
+        subparser.addArgument("--files")
+            .type(Integer.class)
+            .setDefault(100)
+            .help("The number of files in the first version of each dataset");
+        subparser.addArgument("--size-distribution")
+            .type(Arguments.caseInsensitiveEnumType(SizeDistribution.class))
+            .setDefault(SizeDistribution.LOG_UNIFORM)
+            .help("The distribution of the file sizes");
+        subparser.addArgument("--min-file-size")
+            .type(Long.class)
+            .setDefault(0L)
+            .help("The minimum file size in bytes");
+        subparser.addArgument("--max-file-size")
+            .type(Long.class)
+            .setDefault(1024L * 1024)
+            .help("The maximum file size in bytes");
+        subparser.addArgument("--directory-depth")
+            .type(Integer.class)
+            .setDefault(2)
+            .help("The number of directory levels");
+        subparser.addArgument("--files-per-directory")
+            .type(Integer.class)
+            .setDefault(100)
+            .help("The number of files per directory");
+        subparser.addArgument("--unsanitized-names")
+            .type(Double.class)
+            .setDefault(0.01)
+            .help("The fraction of file names that contain characters that Dataverse does not allow");
+        subparser.addArgument("--restricted")
+            .type(Double.class)
+            .setDefault(0.1)
+            .help("The fraction of files that are restricted");
+        subparser.addArgument("--embargoed")
+            .type(Double.class)
+            .setDefault(0.0)
+            .help("The fraction of files (Dataverse ingest) or datasets (DANS bag) that are embargoed");
+        subparser.addArgument("--changed")
+            .type(Double.class)
+            .setDefault(0.1)
+            .help("The fraction of files that are replaced in each update; half as many are deleted and as many are added");
+        subparser.addArgument("--metadata-richness")
+            .type(Integer.class)
+            .setDefault(5)
+            .help("The number of repetitions of the repeatable metadata fields");
+        subparser.addArgument("--seed")
+            .type(Long.class)
+            .setDefault(0L)
+            .help("The seed of the random generator");
+    }
+
+    @Override
+    public void run(Bootstrap<?> bootstrap, Namespace namespace) throws Exception {
+        var deposits = createGenerator(namespace).generate(namespace.<File> get("batch_dir").toPath());
+        System.out.println("Generated " + deposits.size() + " deposits");
+    }
+
+    static DepositGenerator createGenerator(Namespace namespace) {
+        return DepositGenerator.builder()
+            .depositType(namespace.get("type"))
+            .numberOfDatasets(namespace.getInt("datasets"))
+            .versionsPerDataset(namespace.getInt("versions"))
+            .filesPerDataset(namespace.getInt("files"))
+            .sizeDistribution(namespace.get("size_distribution"))
+            .minFileSize(namespace.getLong("min_file_size"))
+            .maxFileSize(namespace.getLong("max_file_size"))
+            .directoryDepth(namespace.getInt("directory_depth"))
+            .filesPerDirectory(namespace.getInt("files_per_directory"))
+            .unsanitizedNameFraction(namespace.getDouble("unsanitized_names"))
+            .restrictedFraction(namespace.getDouble("restricted"))
+            .embargoedFraction(namespace.getDouble("embargoed"))
+            .changedFileFraction(namespace.getDouble("changed"))
+            .metadataRichness(namespace.getInt("metadata_richness"))
+            .seed(namespace.getLong("seed"))
+            .build();
+    }
+}
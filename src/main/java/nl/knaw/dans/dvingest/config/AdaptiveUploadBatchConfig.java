@@ -0,0 +1,40 @@
+/*
+ * Copyright (C) 2024 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.dvingest.config;
+
+import io.dropwizard.util.DataSize;
+import io.dropwizard.util.Duration;
+import lombok.Data;
+
+import javax.validation.constraints.Min;
+import javax.validation.constraints.NotNull;
+
+@Data
+public class AdaptiveUploadBatchConfig {
+    // The duration that an upload call should take
+    @NotNull
+    private Duration targetDuration = Duration.minutes(2);
+
+    @Min(1)
+    private int minNumberOfFilesPerUploadBatch = 10;
+
+    @NotNull
+    private DataSize minByteSizePerUploadBatch = DataSize.mebibytes(10);
+
+    // The number of recent uploads from which the costs per file and per byte are estimated
+    @Min(5)
+    private int windowSize = 20;
+}
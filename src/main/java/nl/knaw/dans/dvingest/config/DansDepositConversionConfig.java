@@ -16,6 +16,7 @@
 package nl.knaw.dans.dvingest.config;
 
 import lombok.Data;
+import nl.knaw.dans.dvingest.core.dansbag.ConvertedYamlWriting;
 
 import javax.validation.Valid;
 import javax.validation.constraints.NotNull;
@@ -33,11 +34,18 @@ public class DansDepositConversionConfig {
 
     private boolean deduplicate;
 
+    // Migration only: create new datasets with the native import API, using the PID from the vault metadata, and publish with the original publication date
+    private boolean nativeImportForMigration;
+
     @NotNull
     private Path mappingDefsDir;
 
     private List<String> skipFields = List.of();
 
+    // When to write the YAML files of a converted deposit: SYNC, ASYNC (while the deposit is processed) or NONE. The bag processor does not read them
+    @NotNull
+    private ConvertedYamlWriting convertedYamlWriting = ConvertedYamlWriting.SYNC;
+
     @NotNull
     @Valid
     private ValidateDansBagConfig validateDansBag;
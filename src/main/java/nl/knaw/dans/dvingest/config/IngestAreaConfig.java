@@ -17,6 +17,7 @@ package nl.knaw.dans.dvingest.config;
 
 import lombok.Data;
 
+import javax.validation.constraints.Min;
 import javax.validation.constraints.NotNull;
 import java.nio.file.Path;
 
@@ -26,4 +27,12 @@ public class IngestAreaConfig {
     private Path inbox;
     @NotNull
     private Path outbox;
+    // Upload files with tabular ingest disabled and ingest the tabular files in the background after the deposit is processed. Can be overridden per deposit.
+    private boolean deferTabularIngest;
+    // Process the deposits of an import job on virtual threads instead of platform threads, and send the role assignments of a deposit concurrently. Not
+    // supported for the auto-ingest area
+    private boolean virtualThreads;
+    // The maximum number of datasets of which the deposits in an import job are processed at the same time. Not supported for the auto-ingest area
+    @Min(1)
+    private int maxConcurrentDeposits = 1;
 }
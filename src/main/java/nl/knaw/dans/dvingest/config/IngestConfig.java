@@ -17,9 +17,11 @@ package nl.knaw.dans.dvingest.config;
 
 import com.fasterxml.jackson.annotation.JsonProperty;
 import io.dropwizard.util.DataSize;
+import io.dropwizard.util.Duration;
 import lombok.Data;
 
 import javax.validation.Valid;
+import javax.validation.constraints.Min;
 import javax.validation.constraints.NotNull;
 import java.nio.file.Path;
 import java.util.HashMap;
@@ -45,9 +47,40 @@ public class IngestConfig {
 
     DataSize maxByteSizePerUploadBatch = DataSize.gibibytes(1);
 
+    // Files of this size or larger are uploaded on their own, without zipping them first. If not set, all files are zipped
+    private DataSize directUploadThreshold;
+
+    // If set, the upload batches are sized after the observed upload durations, within the limits above
+    @Valid
+    private AdaptiveUploadBatchConfig adaptiveUploadBatch;
+
+    // The number of datasets for which the file index is kept for the next deposit for the same dataset. If 0, the file list is downloaded for every deposit
+    @Min(0)
+    private int datasetFileIndexCacheSize = 0;
+
+    // If set, every call to Dataverse is recorded in this file, so that the traffic can be replayed later for benchmarks
+    private Path dataverseTrafficLog;
+
+    // The maximum number of calls to Dataverse that are in progress at the same time. If 0, the number is not limited
+    @Min(0)
+    private int maxConcurrentDataverseCalls = 0;
+
+    // If set, several instances can process the same inboxes; each deposit is processed by the instance that holds the lease on its dataset
+    @Valid
+    private LeaseConfig leases;
+
     private Map<String, String> metadataKeys = new HashMap<>();
 
     @Valid
     @NotNull
     private WaitForReleasedStateConfig waitForReleasedState;
+
+    // Before modifying a dataset that may have been locked by an upload or publication, wait until Dataverse has released the lock
+    @Valid
+    @NotNull
+    private WaitForUnlockConfig waitForUnlock = new WaitForUnlockConfig();
+
+    // How often the progress of the import jobs is checked for changes to send to the subscribers of the progress events
+    @NotNull
+    private Duration progressEventInterval = Duration.seconds(5);
 }
@@ -0,0 +1,36 @@
+/*
+ * Copyright (C) 2024 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.dvingest.config;
+
+import io.dropwizard.util.Duration;
+import lombok.Data;
+
+import javax.validation.constraints.NotNull;
+import java.nio.file.Path;
+
+@Data
+public class LeaseConfig {
+    // Directory for the lease files, shared by all instances that process the same inboxes
+    @NotNull
+    private Path directory;
+
+    // Identifies this instance in the lease files; must be unique among the instances. If not set, the host name and process id are used
+    private String instanceId;
+
+    // A lease that has not been renewed for this long is taken over by another instance. Leases are renewed three times per duration
+    @NotNull
+    private Duration duration = Duration.minutes(5);
+}
@@ -17,13 +17,13 @@ package nl.knaw.dans.dvingest.core;
 
 import io.dropwizard.configuration.ConfigurationException;
 import nl.knaw.dans.dvingest.core.service.YamlService;
-import nl.knaw.dans.dvingest.core.service.YamlServiceImpl;
 import nl.knaw.dans.dvingest.core.yaml.EditFiles;
 import nl.knaw.dans.dvingest.core.yaml.EditFilesRoot;
 import nl.knaw.dans.dvingest.core.yaml.EditMetadata;
 import nl.knaw.dans.dvingest.core.yaml.EditMetadataRoot;
 import nl.knaw.dans.dvingest.core.yaml.EditPermissions;
 import nl.knaw.dans.dvingest.core.yaml.EditPermissionsRoot;
+import nl.knaw.dans.dvingest.core.yaml.Init;
 import nl.knaw.dans.dvingest.core.yaml.UpdateState;
 import nl.knaw.dans.lib.dataverse.model.dataset.Dataset;
 
@@ -32,9 +32,15 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.Collections;
 
+/**
+ * A bag in a deposit. The YAML files in the bag are read and validated on first access; the result, including the absence of a file, is kept and returned on
+ * every later call. The files must therefore be complete before they are first accessed, i.e., a DANS bag must be converted before its YAML is read. A bag
+ * belongs to the task that processes its deposit and is not meant to be shared between threads.
+ */
 public class DataverseIngestBag implements Comparable<DataverseIngestBag> {
-    private final YamlServiceImpl yamService;
+    private final YamlService yamService;
 
+    public static final String INIT_YML = "init.yml";
     public static final String DATASET_YML = "dataset.yml";
     public static final String EDIT_FILES_YML = "edit-files.yml";
     public static final String EDIT_METADATA_YML = "edit-metadata.yml";
@@ -43,9 +49,47 @@ public class DataverseIngestBag implements Comparable<DataverseIngestBag> {
 
     private final Path bagDir;
 
+    private final ParsedYaml<Init> init = new ParsedYaml<>(INIT_YML, this::readInit);
+    private final ParsedYaml<Dataset> datasetMetadata = new ParsedYaml<>(DATASET_YML, this::readDatasetMetadata);
+    private final ParsedYaml<EditFiles> editFiles = new ParsedYaml<>(EDIT_FILES_YML, this::readEditFiles);
+    private final ParsedYaml<EditMetadata> editMetadata = new ParsedYaml<>(EDIT_METADATA_YML, this::readEditMetadata);
+    private final ParsedYaml<EditPermissions> editPermissions = new ParsedYaml<>(EDIT_PERMISSIONS_YML, this::readEditPermissions);
+    private final ParsedYaml<UpdateState> updateState = new ParsedYaml<>(UPDATE_STATE_YML, this::readUpdateState);
+
+    @FunctionalInterface
+    private interface YamlReader<T> {
+        T read(Path yamlFile) throws IOException, ConfigurationException;
+    }
+
+    private class ParsedYaml<T> {
+        private final String fileName;
+        private final YamlReader<T> reader;
+        private boolean parsed;
+        private T value;
+
+        private ParsedYaml(String fileName, YamlReader<T> reader) {
+            this.fileName = fileName;
+            this.reader = reader;
+        }
+
+        private void set(T value) {
+            this.value = value;
+            parsed = true;
+        }
+
+        private T get() throws IOException, ConfigurationException {
+            if (!parsed) {
+                var yamlFile = bagDir.resolve(fileName);
+                value = Files.exists(yamlFile) ? reader.read(yamlFile) : null;
+                parsed = true;
+            }
+            return value;
+        }
+    }
+
     public DataverseIngestBag(Path bagDir, YamlService yamlService) {
         this.bagDir = bagDir;
-        this.yamService = (YamlServiceImpl) yamlService;
+        this.yamService = yamlService;
         // Minimal check to see if it is a bag
         if (!Files.exists(bagDir.resolve("bagit.txt"))) {
             throw new IllegalStateException("Not a bag: " + bagDir);
@@ -56,44 +100,75 @@ public class DataverseIngestBag implements Comparable<DataverseIngestBag> {
         return Files.exists(bagDir.resolve("metadata/dataset.xml"));
     }
 
+    public Init getInit() throws IOException, ConfigurationException {
+        return init.get();
+    }
+
     public Dataset getDatasetMetadata() throws IOException, ConfigurationException {
-        if (!Files.exists(bagDir.resolve(DATASET_YML))) {
-            return null;
-        }
-        var dataset = yamService.readYaml(bagDir.resolve(DATASET_YML), Dataset.class);
-        dataset.getDatasetVersion().setFiles(Collections.emptyList()); // files = null or a list of files is not allowed
-        return dataset;
+        return datasetMetadata.get();
     }
 
     public EditFiles getEditFiles() throws IOException, ConfigurationException {
-        if (!Files.exists(bagDir.resolve(EDIT_FILES_YML))) {
-            return null;
-        }
-        var editFilesRoot = yamService.readYaml(bagDir.resolve(EDIT_FILES_YML), EditFilesRoot.class);
-        return editFilesRoot.getEditFiles();
+        return editFiles.get();
     }
 
     public EditMetadata getEditMetadata() throws IOException, ConfigurationException {
-        if (!Files.exists(bagDir.resolve(EDIT_METADATA_YML))) {
-            return null;
-        }
-        var editMetadataRoot = yamService.readYaml(bagDir.resolve(EDIT_METADATA_YML), EditMetadataRoot.class);
-        return editMetadataRoot.getEditMetadata();
+        return editMetadata.get();
     }
 
     public EditPermissions getEditPermissions() throws IOException, ConfigurationException {
-        if (!Files.exists(bagDir.resolve(EDIT_PERMISSIONS_YML))) {
-            return null;
-        }
-        var editPermissionsRoot = yamService.readYaml(bagDir.resolve(EDIT_PERMISSIONS_YML), EditPermissionsRoot.class);
-        return editPermissionsRoot.getEditPermissions();
+        return editPermissions.get();
     }
 
     public UpdateState getUpdateState() throws IOException, ConfigurationException {
-        if (!Files.exists(bagDir.resolve(UPDATE_STATE_YML))) {
-            return null;
-        }
-        return yamService.readYaml(bagDir.resolve(UPDATE_STATE_YML), UpdateState.class);
+        return updateState.get();
+    }
+
+    /**
+     * Sets the contents of the YAML files that were created in memory by converting a DANS bag, so that they are not read from disk. The objects are normalized
+     * in the same way as when they are read from YAML. They are not validated, as the converter creates them.
+     *
+     * @param init            the contents of init.yml, or null if there is none
+     * @param dataset         the contents of dataset.yml
+     * @param editFiles       the contents of edit-files.yml
+     * @param editPermissions the contents of edit-permissions.yml
+     * @param updateState     the contents of update-state.yml
+     */
+    public void setConvertedYaml(Init init, Dataset dataset, EditFiles editFiles, EditPermissions editPermissions, UpdateState updateState) {
+        dataset.getDatasetVersion().setFiles(Collections.emptyList()); // files = null or a list of files is not allowed
+        // The restricted flag of a file is not written to YAML; whether a file is restricted is determined by the list it is added from
+        editFiles.getUpdateFileMetas().forEach(fileMeta -> fileMeta.setRestricted(null));
+        this.init.set(init);
+        this.datasetMetadata.set(dataset);
+        this.editFiles.set(editFiles);
+        this.editPermissions.set(editPermissions);
+        this.updateState.set(updateState);
+    }
+
+    private Init readInit(Path yamlFile) throws IOException, ConfigurationException {
+        return yamService.readYaml(yamlFile, Init.class);
+    }
+
+    private Dataset readDatasetMetadata(Path yamlFile) throws IOException, ConfigurationException {
+        var dataset = yamService.readYaml(yamlFile, Dataset.class);
+        dataset.getDatasetVersion().setFiles(Collections.emptyList()); // files = null or a list of files is not allowed
+        return dataset;
+    }
+
+    private EditFiles readEditFiles(Path yamlFile) throws IOException, ConfigurationException {
+        return yamService.readYaml(yamlFile, EditFilesRoot.class).getEditFiles();
+    }
+
+    private EditMetadata readEditMetadata(Path yamlFile) throws IOException, ConfigurationException {
+        return yamService.readYaml(yamlFile, EditMetadataRoot.class).getEditMetadata();
+    }
+
+    private EditPermissions readEditPermissions(Path yamlFile) throws IOException, ConfigurationException {
+        return yamService.readYaml(yamlFile, EditPermissionsRoot.class).getEditPermissions();
+    }
+
+    private UpdateState readUpdateState(Path yamlFile) throws IOException, ConfigurationException {
+        return yamService.readYaml(yamlFile, UpdateState.class);
     }
 
     @Override
@@ -36,6 +36,8 @@ import java.util.UUID;
 @Slf4j
 @ToString
 public class DataverseIngestDeposit implements Comparable<DataverseIngestDeposit>, Deposit {
+    private static final String SWORD_TOKEN_KEY = "dataverse.sword-token";
+
     private final OffsetDateTime creationTimestamp;
 
     private final UUID id;
@@ -44,6 +46,9 @@ public class DataverseIngestDeposit implements Comparable<DataverseIngestDeposit
 
     private final Properties depositProperties;
     private final YamlService yamlService;
+    // Listed once, so that the YAML files of each bag are also parsed only once; reset when the deposit is moved
+    @ToString.Exclude
+    private List<DataverseIngestBag> bags;
 
     public DataverseIngestDeposit(@NonNull Path location, @NonNull YamlService yamlService) {
         this.location = location;
@@ -68,6 +73,31 @@ public class DataverseIngestDeposit implements Comparable<DataverseIngestDeposit
         return depositProperties.getProperty(UPDATES_DATASET_KEY);
     }
 
+    /**
+     * Returns a key that is the same for all deposits for one dataset and that is known before the deposit is processed: the dataset to update, if set;
+     * otherwise the SWORD token, which the DANS deposits for one dataset share; otherwise the SWORD token that later deposits for the dataset that this deposit
+     * creates will carry.
+     *
+     * @return the key
+     */
+    public String getDatasetKey() {
+        var updatesDataset = getUpdatesDataset();
+        if (updatesDataset != null) {
+            return updatesDataset;
+        }
+        var swordToken = depositProperties.getProperty(SWORD_TOKEN_KEY);
+        if (swordToken != null && !swordToken.isBlank()) {
+            return swordToken;
+        }
+        return "sword:" + id;
+    }
+
+    @Override
+    public Boolean getDeferTabularIngest() {
+        var value = depositProperties.getProperty(DEFER_TABULAR_INGEST_KEY);
+        return value == null ? null : Boolean.valueOf(value);
+    }
+
     @Override
     public boolean convertDansDepositIfNeeded() {
         return false;
@@ -75,13 +105,16 @@ public class DataverseIngestDeposit implements Comparable<DataverseIngestDeposit
 
     @Override
     public List<DataverseIngestBag> getBags() throws IOException {
-        try (var files = Files.list(location)) {
-            return files
-                .filter(Files::isDirectory)
-                .map(path -> new DataverseIngestBag(path, yamlService))
-                .sorted()
-                .toList();
+        if (bags == null) {
+            try (var files = Files.list(location)) {
+                bags = files
+                    .filter(Files::isDirectory)
+                    .map(path -> new DataverseIngestBag(path, yamlService))
+                    .sorted()
+                    .toList();
+            }
         }
+        return bags;
     }
 
     public void updateProperties(Map<String, String> properties) {
@@ -134,6 +167,7 @@ public class DataverseIngestDeposit implements Comparable<DataverseIngestDeposit
         log.debug("Moving deposit {} to {}", location, targetDir);
         Files.move(location, targetDir.resolve(location.getFileName()));
         location = targetDir.resolve(location.getFileName());
+        bags = null;
     }
 
     @Override
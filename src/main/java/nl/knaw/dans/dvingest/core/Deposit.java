@@ -24,11 +24,19 @@ import java.util.UUID;
 
 public interface Deposit {
     String UPDATES_DATASET_KEY = "updates-dataset";
+    String DEFER_TABULAR_INGEST_KEY = "defer-tabular-ingest";
 
     boolean convertDansDepositIfNeeded();
 
     String getUpdatesDataset();
 
+    /**
+     * Returns whether the tabular ingest of the files in this deposit must be deferred until after the deposit has been processed.
+     *
+     * @return true or false if specified in the deposit, null to use the setting of the ingest area
+     */
+    Boolean getDeferTabularIngest();
+
     List<DataverseIngestBag> getBags() throws IOException;
 
     UUID getId();
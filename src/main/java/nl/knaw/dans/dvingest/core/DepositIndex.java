@@ -0,0 +1,173 @@
+/*
+ * Copyright (C) 2024 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.dvingest.core;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Objects;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Compact index of the deposits in a batch, in the order in which they must be processed: by creation timestamp, and by directory name for deposits with the
+ * same timestamp. Only the timestamp and the directory name of each deposit are kept; the {@link DataverseIngestDeposit} objects are created by the caller when
+ * it claims a deposit for processing.
+ *
+ * The index is built in one pass over the batch directory, reading only the <code>creation.timestamp</code> from each <code>deposit.properties</code>. If the
+ * batch directory contains a file {@value #MANIFEST_FILENAME}, the index is read from that file instead. Each line in the manifest consists of the name of a
+ * deposit directory and its creation timestamp, separated by a comma. Empty lines and lines starting with <code>#</code> are ignored.
+ */
+@Slf4j
+public class DepositIndex {
+    public static final String MANIFEST_FILENAME = "batch-manifest.csv";
+
+    private final Path batchDir;
+    private final List<Entry> entries;
+    private final AtomicInteger nextToClaim = new AtomicInteger();
+
+    private static class Entry {
+        private final long timestamp; // nanoseconds since the epoch
+        private final String name;
+
+        private Entry(long timestamp, String name) {
+            this.timestamp = timestamp;
+            this.name = name;
+        }
+
+        private Entry(OffsetDateTime timestamp, String name) {
+            this(timestamp.toInstant().getEpochSecond() * 1_000_000_000L + timestamp.toInstant().getNano(), name);
+        }
+    }
+
+    private DepositIndex(Path batchDir, List<Entry> entries) {
+        this.batchDir = batchDir;
+        this.entries = entries;
+        this.entries.sort(Comparator.<Entry> comparingLong(e -> e.timestamp).thenComparing(e -> e.name));
+    }
+
+    /**
+     * Creates an index for a batch directory, using the manifest if present.
+     *
+     * @param batchDir the batch directory
+     * @return the index
+     * @throws IOException if the batch directory or the manifest could not be read
+     */
+    public static DepositIndex forBatch(Path batchDir) throws IOException {
+        var manifest = batchDir.resolve(MANIFEST_FILENAME);
+        if (Files.exists(manifest)) {
+            log.debug("Reading deposit index from manifest {}", manifest);
+            return new DepositIndex(batchDir, readManifest(manifest));
+        }
+        log.debug("Building deposit index for batch {}", batchDir);
+        List<Path> depositDirs;
+        try (var paths = Files.list(batchDir)) {
+            depositDirs = paths.filter(Files::isDirectory).toList();
+        }
+        // Reading the properties files is dominated by I/O latency, especially on network file systems, so do it in parallel
+        var entries = depositDirs.parallelStream()
+            .map(DepositIndex::toEntry)
+            .filter(Objects::nonNull)
+            .collect(ArrayList<Entry>::new, ArrayList::add, ArrayList::addAll);
+        return new DepositIndex(batchDir, entries);
+    }
+
+    /**
+     * Creates an index for a single deposit. The deposit properties are not read.
+     *
+     * @param depositDir the deposit directory
+     * @return the index
+     */
+    public static DepositIndex forSingleDeposit(Path depositDir) {
+        var entries = new ArrayList<Entry>();
+        entries.add(new Entry(0L, depositDir.getFileName().toString()));
+        return new DepositIndex(depositDir.getParent(), entries);
+    }
+
+    private static List<Entry> readManifest(Path manifest) throws IOException {
+        var entries = new ArrayList<Entry>();
+        try (var lines = Files.lines(manifest)) {
+            lines.map(String::trim)
+                .filter(line -> !line.isEmpty() && !line.startsWith("#"))
+                .forEach(line -> {
+                    var fields = line.split(",", 2);
+                    if (fields.length != 2) {
+                        throw new IllegalStateException("Invalid line in " + manifest + ": " + line);
+                    }
+                    entries.add(new Entry(OffsetDateTime.parse(fields[1].trim()), fields[0].trim()));
+                });
+        }
+        return entries;
+    }
+
+    private static Entry toEntry(Path depositDir) {
+        try {
+            return new Entry(readCreationTimestamp(depositDir), depositDir.getFileName().toString());
+        }
+        catch (UncheckedIOException e) {
+            // Another instance that shares the inbox may have processed the deposit and moved it to the outbox in the meantime
+            if (!Files.exists(depositDir)) {
+                log.debug("Deposit {} disappeared while indexing the batch; skipping it", depositDir);
+                return null;
+            }
+            throw e;
+        }
+    }
+
+    private static OffsetDateTime readCreationTimestamp(Path depositDir) {
+        var propertiesFile = depositDir.resolve("deposit.properties");
+        var properties = new Properties();
+        try (var reader = Files.newBufferedReader(propertiesFile)) {
+            properties.load(reader);
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException("Error loading deposit properties from " + propertiesFile, e);
+        }
+        var creationTimestamp = properties.getProperty("creation.timestamp");
+        if (creationTimestamp == null) {
+            throw new IllegalStateException("Deposit " + depositDir + " does not contain a creation timestamp");
+        }
+        return OffsetDateTime.parse(creationTimestamp);
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * Claims the next deposit to process. Safe to call from multiple threads; each deposit is handed out only once.
+     *
+     * @return the path of the deposit, or null if all deposits have been claimed
+     */
+    public Path claimNext() {
+        var index = nextToClaim.getAndIncrement();
+        if (index >= entries.size()) {
+            return null;
+        }
+        return batchDir.resolve(entries.get(index).name);
+    }
+
+    public int getUnclaimedCount() {
+        return Math.max(entries.size() - nextToClaim.get(), 0);
+    }
+}
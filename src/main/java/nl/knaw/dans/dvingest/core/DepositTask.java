@@ -16,10 +16,17 @@
 package nl.knaw.dans.dvingest.core;
 
 import lombok.Getter;
+import lombok.Setter;
 import lombok.extern.slf4j.Slf4j;
 import nl.knaw.dans.dvingest.core.bagprocessor.BagProcessorFactory;
+import nl.knaw.dans.dvingest.core.bagprocessor.FileIndexValidations;
 import nl.knaw.dans.dvingest.core.dansbag.DansDepositSupportFactory;
 import nl.knaw.dans.dvingest.core.dansbag.exception.RejectedDepositException;
+import nl.knaw.dans.dvingest.core.lease.Lease;
+import nl.knaw.dans.dvingest.core.metrics.DataverseCallCounter;
+import nl.knaw.dans.dvingest.core.metrics.IngestMetrics;
+import nl.knaw.dans.dvingest.core.report.DepositReport;
+import nl.knaw.dans.dvingest.core.service.DatasetLockChecks;
 
 import java.io.IOException;
 import java.nio.file.Path;
@@ -28,6 +35,8 @@ import java.nio.file.Path;
 public class DepositTask implements Runnable {
     public enum Status {
         TODO,
+        // Only converted to a Dataverse ingest deposit, which is left in place
+        CONVERTED,
         SUCCESS,
         REJECTED,
         FAILED
@@ -37,43 +46,94 @@ public class DepositTask implements Runnable {
     private final Path outputDir;
     private final boolean onlyConvertDansDeposit;
     private final BagProcessorFactory bagProcessorFactory;
+    private final IngestMetrics metrics;
+    private final String area;
+    private final boolean deferTabularIngest;
 
     @Getter
     private Status status = Status.TODO;
+    @Getter
+    private final DepositReport report;
+    // The lease on the dataset, if the deposit is processed under one; checked before every step that changes the dataset or moves the deposit
+    @Setter
+    private Lease lease;
 
     public DepositTask(DataverseIngestDeposit dataverseIngestDeposit, Path outputDir, boolean onlyConvertDansDeposit, BagProcessorFactory bagProcessorFactory,
-        DansDepositSupportFactory dansDepositSupportFactory) {
-        this.deposit = dansDepositSupportFactory.addDansDepositSupportIfEnabled(dataverseIngestDeposit);
+        DansDepositSupportFactory dansDepositSupportFactory, IngestMetrics metrics, String area, boolean deferTabularIngest) {
+        this.deposit = dansDepositSupportFactory.addDansDepositSupportIfEnabled(dataverseIngestDeposit, onlyConvertDansDeposit);
         this.outputDir = outputDir;
         this.onlyConvertDansDeposit = onlyConvertDansDeposit;
         this.bagProcessorFactory = bagProcessorFactory;
+        this.metrics = metrics;
+        this.area = area;
+        this.deferTabularIngest = deferTabularIngest;
+        this.report = new DepositReport(dataverseIngestDeposit.getId(), area);
     }
 
     @Override
     public void run() {
+        var activeWorkers = metrics.activeWorkers(area);
+        activeWorkers.incrementAndGet();
+        var dataverseCalls = new DataverseCallCounter();
+        report.start();
+        try (var ignored = dataverseCalls.bind(); var ignored2 = new DatasetLockChecks().bind(); var ignored3 = new FileIndexValidations().bind()) {
+            processDeposit();
+        }
+        finally {
+            activeWorkers.decrementAndGet();
+            report.finish();
+            report.setStatus(status.name());
+            report.setDataverseApiCalls(dataverseCalls.getCount());
+            // Also for a deposit that was only converted, or could not be moved to the outbox (status TODO), so that every run is accounted for
+            metrics.deposits(area).mark();
+            metrics.depositOutcome(area, status.name().toLowerCase()).inc();
+            writeReport();
+        }
+    }
+
+    private void writeReport() {
+        try {
+            report.writeTo(deposit.getLocation().resolve(DepositReport.FILENAME));
+        }
+        catch (IOException e) {
+            log.warn("Failed to write timing report for deposit {}", deposit.getId(), e);
+        }
+    }
+
+    private void processDeposit() {
         String pid = null;
         try {
-            deposit.validate();
-            if (deposit.convertDansDepositIfNeeded() && onlyConvertDansDeposit) {
+            try (var ignored = report.startPhase("validate")) {
+                deposit.validate();
+            }
+            boolean converted;
+            try (var ignored = report.startPhase("convert")) {
+                converted = deposit.convertDansDepositIfNeeded();
+            }
+            if (converted && onlyConvertDansDeposit) {
                 log.info("Only converting DANS deposit, LEAVING CONVERTED DEPOSIT IN PLACE");
+                status = Status.CONVERTED;
                 return;
             }
             pid = deposit.getUpdatesDataset();
+            var deferTabularIngestForDeposit = deposit.getDeferTabularIngest() == null ? deferTabularIngest : deposit.getDeferTabularIngest();
 
             for (DataverseIngestBag bag : deposit.getBags()) {
                 log.info("START processing deposit / bag: {} / {}", deposit.getId(), bag);
-                pid = bagProcessorFactory.createBagProcessor(deposit.getId(), bag).run(pid);
+                pid = bagProcessorFactory.createBagProcessor(deposit.getId(), bag, report, deferTabularIngestForDeposit).run(pid, this::checkLease);
                 log.info("END processing deposit / bag: {} / {}", deposit.getId(), bag);
             }
+            checkLease();
             deposit.onSuccess(pid, "Deposit processed successfully");
-            deposit.moveTo(outputDir.resolve("processed"));
+            moveTo("processed");
+            status = Status.SUCCESS;
         }
         // TODO: move RejectedDepositException to a package that is not specific to DANS
         catch (RejectedDepositException e) {
             try {
                 log.error("Deposit rejected", e);
                 deposit.onRejected(pid, e.getMessage());
-                deposit.moveTo(outputDir.resolve("rejected"));
+                moveTo("rejected");
                 status = Status.REJECTED;
             }
             catch (Exception e2) {
@@ -84,7 +144,7 @@ public class DepositTask implements Runnable {
             try {
                 log.error("Failed to ingest deposit", e);
                 deposit.onFailed(pid, e.getMessage());
-                deposit.moveTo(outputDir.resolve("failed"));
+                moveTo("failed");
                 status = Status.FAILED;
             }
             catch (IOException ioException) {
@@ -92,4 +152,16 @@ public class DepositTask implements Runnable {
             }
         }
     }
-}
\ No newline at end of file
+
+    private void checkLease() {
+        if (lease != null && lease.isLost()) {
+            throw new IllegalStateException("Lost the lease on the dataset of deposit " + deposit.getId() + "; another instance may be processing deposits for it");
+        }
+    }
+
+    private void moveTo(String subdir) throws IOException {
+        try (var ignored = report.startPhase("move-deposit")) {
+            deposit.moveTo(outputDir.resolve(subdir));
+        }
+    }
+}
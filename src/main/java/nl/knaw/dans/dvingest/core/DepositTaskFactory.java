@@ -19,5 +19,5 @@ import java.nio.file.Path;
 
 public interface DepositTaskFactory {
 
-    Runnable createDepositTask(DataverseIngestDeposit deposit, Path outputDir, boolean onlyConvertDansDeposit);
+    DepositTask createDepositTask(DataverseIngestDeposit deposit, Path outputDir, boolean onlyConvertDansDeposit);
 }
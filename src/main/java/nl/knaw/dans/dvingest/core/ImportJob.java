@@ -15,21 +15,40 @@
  */
 package nl.knaw.dans.dvingest.core;
 
-import lombok.AllArgsConstructor;
+import lombok.AccessLevel;
 import lombok.Getter;
 import lombok.NonNull;
+import lombok.Setter;
 import lombok.extern.slf4j.Slf4j;
 import nl.knaw.dans.dvingest.api.ImportCommandDto;
 import nl.knaw.dans.dvingest.api.ImportJobStatusDto;
 import nl.knaw.dans.dvingest.api.ImportJobStatusDto.StatusEnum;
+import nl.knaw.dans.dvingest.core.lease.LeaseManager;
+import nl.knaw.dans.dvingest.core.lease.LeaseManagerDisabled;
+import nl.knaw.dans.dvingest.core.report.DepositReport;
+import nl.knaw.dans.dvingest.core.report.ImportJobSummary;
+import nl.knaw.dans.dvingest.core.service.DepositSlot;
 
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.util.TreeSet;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
 @Slf4j
-@AllArgsConstructor
 public class ImportJob implements Runnable {
     @NonNull
     @Getter
@@ -39,10 +58,92 @@ public class ImportJob implements Runnable {
     private boolean onlyConvertDansDeposit;
     private final DataverseIngestDepositFactory depositFactory;
     private final DepositTaskFactory depositTaskFactory;
+    private final LeaseManager leaseManager;
+    // Runs the deposits for different datasets at the same time; null to run the deposits one by one on the thread of the job
+    private final Executor depositExecutor;
 
     @Getter
     private final ImportJobStatusDto status = new ImportJobStatusDto();
 
+    private static final int THROUGHPUT_WINDOW = 50;
+    private static final long LEASE_POLL_INTERVAL_MILLIS = 5_000;
+    // Deposits that may be claimed ahead per running deposit, to find deposits for other datasets while some datasets have several deposits in the batch
+    private static final int CLAIMED_PER_RUNNING_DEPOSIT = 4;
+
+    private final AtomicInteger totalDeposits = new AtomicInteger();
+    private volatile DepositIndex depositIndex;
+    private final AtomicInteger processedDeposits = new AtomicInteger();
+    private final AtomicInteger rejectedDeposits = new AtomicInteger();
+    private final AtomicInteger failedDeposits = new AtomicInteger();
+    // Deposits that were processed by another instance
+    private final AtomicInteger skippedDeposits = new AtomicInteger();
+    // Deposits of which the dataset was leased by another instance or job; they are processed after the other deposits, once the lease is acquired
+    private final Queue<ClaimedDeposit> deferredDeposits = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger deferredDepositCount = new AtomicInteger();
+    // Datasets with a deferred deposit; their later deposits must be deferred as well, to keep them in order
+    private final Set<String> deferredDatasets = ConcurrentHashMap.newKeySet();
+    // Per dataset with a deposit in progress, the later deposits for it; they are processed in order by the thread that processes the first one
+    private final Map<String, Queue<ClaimedDeposit>> datasetQueues = new ConcurrentHashMap<>();
+    private final AtomicInteger queuedDepositCount = new AtomicInteger();
+    private final int claimLimit;
+    // Deposits that have been claimed and are not finished yet; bounds the number of deposit objects in memory
+    private final Semaphore claimedDeposits;
+    // Slots for the datasets of which the deposits are being processed; a deposit that waits for its dataset to be unlocked gives up its slot meanwhile
+    private final Semaphore runningDatasets;
+    private final AtomicReference<Exception> failure = new AtomicReference<>();
+    @Setter(AccessLevel.PACKAGE)
+    private long leasePollIntervalMillis = LEASE_POLL_INTERVAL_MILLIS;
+    // Wall-clock times at which the most recent deposits finished, preceded by the start time of the job as long as the window is not full
+    private final Deque<Long> finishTimes = new ArrayDeque<>();
+    // In the order in which they were started
+    private final Queue<DepositTask> runningTasks = new ConcurrentLinkedQueue<>();
+    // Deferred tabular ingests of the processed deposits; their failures are added to the summary when they finish
+    private final Queue<CompletableFuture<Void>> pendingTabularIngests = new ConcurrentLinkedQueue<>();
+
+    @Getter
+    private final ImportJobSummary summary = new ImportJobSummary();
+
+    public ImportJob(@NonNull ImportCommandDto importCommand, @NonNull Path outputDir, boolean onlyConvertDansDeposit, DataverseIngestDepositFactory depositFactory,
+        DepositTaskFactory depositTaskFactory) {
+        this(importCommand, outputDir, onlyConvertDansDeposit, depositFactory, depositTaskFactory, new LeaseManagerDisabled());
+    }
+
+    public ImportJob(@NonNull ImportCommandDto importCommand, @NonNull Path outputDir, boolean onlyConvertDansDeposit, DataverseIngestDepositFactory depositFactory,
+        DepositTaskFactory depositTaskFactory, @NonNull LeaseManager leaseManager) {
+        this(importCommand, outputDir, onlyConvertDansDeposit, depositFactory, depositTaskFactory, leaseManager, null, 1);
+    }
+
+    /**
+     * Creates an import job that processes the deposits for up to <code>maxConcurrentDeposits</code> datasets at the same time, each on its own thread of the
+     * given executor. The deposits for one dataset are processed one after the other, in the order of the batch.
+     *
+     * @param importCommand          the import command
+     * @param outputDir              the outbox of the job
+     * @param onlyConvertDansDeposit whether to only convert DANS deposits
+     * @param depositFactory         the factory for the deposits
+     * @param depositTaskFactory     the factory for the tasks that process the deposits
+     * @param leaseManager           the lease manager
+     * @param depositExecutor        the executor that runs the deposits, which must start a thread for every task; null to process the deposits one by one
+     * @param maxConcurrentDeposits  the maximum number of datasets of which deposits are processed at the same time
+     */
+    public ImportJob(@NonNull ImportCommandDto importCommand, @NonNull Path outputDir, boolean onlyConvertDansDeposit, DataverseIngestDepositFactory depositFactory,
+        DepositTaskFactory depositTaskFactory, @NonNull LeaseManager leaseManager, Executor depositExecutor, int maxConcurrentDeposits) {
+        if (maxConcurrentDeposits < 1) {
+            throw new IllegalArgumentException("maxConcurrentDeposits must be at least 1");
+        }
+        this.importCommand = importCommand;
+        this.outputDir = outputDir;
+        this.onlyConvertDansDeposit = onlyConvertDansDeposit;
+        this.depositFactory = depositFactory;
+        this.depositTaskFactory = depositTaskFactory;
+        this.leaseManager = leaseManager;
+        this.depositExecutor = depositExecutor;
+        var maxRunning = depositExecutor == null ? 1 : maxConcurrentDeposits;
+        this.claimLimit = maxRunning * CLAIMED_PER_RUNNING_DEPOSIT;
+        this.claimedDeposits = new Semaphore(claimLimit);
+        this.runningDatasets = new Semaphore(maxRunning);
+    }
+
     @Override
     public void run() {
         try {
@@ -50,35 +151,354 @@ public class ImportJob implements Runnable {
             status.setStatus(StatusEnum.RUNNING);
             status.setPath(importCommand.getPath());
             status.setSingleObject(importCommand.getSingleObject());
-            var deposits = new TreeSet<DataverseIngestDeposit>();
+            var index = importCommand.getSingleObject()
+                ? DepositIndex.forSingleDeposit(Path.of(importCommand.getPath()))
+                : DepositIndex.forBatch(Path.of(importCommand.getPath()));
+            log.debug("Indexed {} deposits", index.size());
+
+            initOutputDir();
+            totalDeposits.set(index.size());
+            depositIndex = index;
+            recordFinishTime();
+
+            Path depositPath;
+            while (failure.get() == null && (depositPath = claimNext(index)) != null) {
+                startOrQueue(depositPath);
+            }
+            awaitClaimedDeposits();
+            if (failure.get() != null) {
+                throw failure.get();
+            }
+            processDeferredDeposits();
+
+            if (!importCommand.getSingleObject()) {
+                awaitTabularIngests();
+                writeSummary();
+            }
+            status.setStatus(StatusEnum.DONE);
+        }
+        catch (Exception e) {
+            log.error("Failed to process import job", e);
+            status.setStatus(StatusEnum.FAILED);
+        }
+    }
+
+    private record ClaimedDeposit(Path path, DataverseIngestDeposit deposit) {
+    }
 
-            if (importCommand.getSingleObject()) {
-                deposits.add(depositFactory.createDataverseIngestDeposit(Path.of(importCommand.getPath())));
+    /*
+     * Waits until the number of claimed deposits is below the limit, and then claims the next deposit of the batch. Returns null if there are no more deposits.
+     */
+    private Path claimNext(DepositIndex index) throws InterruptedException {
+        claimedDeposits.acquire();
+        var depositPath = index.claimNext();
+        if (depositPath == null) {
+            claimedDeposits.release();
+        }
+        return depositPath;
+    }
+
+    /*
+     * Starts processing the claimed deposit, or queues it behind the deposit for the same dataset that is in progress.
+     */
+    private void startOrQueue(Path depositPath) throws InterruptedException {
+        ClaimedDeposit claimed;
+        try {
+            claimed = createDeposit(depositPath);
+        }
+        catch (RuntimeException e) {
+            claimedDeposits.release();
+            throw e;
+        }
+        if (claimed == null) {
+            claimedDeposits.release();
+            return;
+        }
+        var datasetKey = claimed.deposit().getDatasetKey();
+        var inProgress = new boolean[1];
+        datasetQueues.compute(datasetKey, (key, queue) -> {
+            if (queue == null) {
+                return new ArrayDeque<>();
+            }
+            inProgress[0] = true;
+            queue.add(claimed);
+            queuedDepositCount.incrementAndGet();
+            return queue;
+        });
+        if (!inProgress[0]) {
+            runningDatasets.acquire();
+            if (depositExecutor == null) {
+                processDepositsForDataset(datasetKey, claimed);
             }
             else {
-                try (var depositPaths = Files.list(Path.of(importCommand.getPath()))) {
-                    depositPaths.filter(Files::isDirectory)
-                        .sorted()
-                        .map(depositFactory::createDataverseIngestDeposit)
-                        .forEach(deposits::add);
+                try {
+                    depositExecutor.execute(() -> processDepositsForDataset(datasetKey, claimed));
+                }
+                catch (RejectedExecutionException e) {
+                    datasetQueues.remove(datasetKey);
+                    runningDatasets.release();
+                    claimedDeposits.release();
+                    throw e;
                 }
             }
+        }
+    }
 
-            initOutputDir();
+    /*
+     * Returns null if the deposit was processed by another instance.
+     */
+    private ClaimedDeposit createDeposit(Path depositPath) {
+        if (isProcessedElsewhere(depositPath)) {
+            return null;
+        }
+        // The deposit object is only created when it is claimed, so that the index stays small for large batches
+        try {
+            return new ClaimedDeposit(depositPath, depositFactory.createDataverseIngestDeposit(depositPath));
+        }
+        catch (IllegalStateException e) {
+            if (isProcessedElsewhere(depositPath)) {
+                return null;
+            }
+            throw e;
+        }
+    }
+
+    /*
+     * Processes the given deposit and then the deposits for the same dataset that were queued behind it in the meantime. After a failure, the remaining
+     * deposits are left in the batch, and the job fails.
+     */
+    private void processDepositsForDataset(String datasetKey, ClaimedDeposit first) {
+        try (var ignored = DepositSlot.bind(runningDatasets)) {
+            var next = first;
+            while (next != null) {
+                try {
+                    if (failure.get() == null) {
+                        processDeposit(next);
+                    }
+                }
+                catch (Exception e) {
+                    failure.compareAndSet(null, e);
+                }
+                finally {
+                    claimedDeposits.release();
+                }
+                next = pollQueuedDeposit(datasetKey);
+            }
+        }
+        finally {
+            runningDatasets.release();
+        }
+    }
+
+    private ClaimedDeposit pollQueuedDeposit(String datasetKey) {
+        var next = new ClaimedDeposit[1];
+        datasetQueues.compute(datasetKey, (key, queue) -> {
+            next[0] = queue.poll();
+            if (next[0] == null) {
+                return null;
+            }
+            queuedDepositCount.decrementAndGet();
+            return queue;
+        });
+        return next[0];
+    }
+
+    private void awaitClaimedDeposits() throws InterruptedException {
+        claimedDeposits.acquire(claimLimit);
+        claimedDeposits.release(claimLimit);
+    }
+
+    private void processDeposit(ClaimedDeposit claimed) throws IOException {
+        var depositPath = claimed.path();
+        var dataverseIngestDeposit = claimed.deposit();
+        var datasetKey = dataverseIngestDeposit.getDatasetKey();
+        if (deferredDatasets.contains(datasetKey)) {
+            log.info("DEFER deposit {}: an earlier deposit for dataset {} is waiting for the lease on it", dataverseIngestDeposit.getId(), datasetKey);
+            defer(depositPath, dataverseIngestDeposit);
+            return;
+        }
+        if (!tryProcessDeposit(depositPath, dataverseIngestDeposit)) {
+            log.info("DEFER deposit {}: dataset {} is leased by another instance or job", dataverseIngestDeposit.getId(), datasetKey);
+            deferredDatasets.add(datasetKey);
+            defer(depositPath, dataverseIngestDeposit);
+        }
+    }
+
+    private void defer(Path depositPath, DataverseIngestDeposit dataverseIngestDeposit) {
+        deferredDeposits.add(new ClaimedDeposit(depositPath, dataverseIngestDeposit));
+        deferredDepositCount.incrementAndGet();
+    }
 
-            for (DataverseIngestDeposit dataverseIngestDeposit : deposits) {
-                log.info("START Processing deposit: {}", dataverseIngestDeposit.getId());
-                var task = depositTaskFactory.createDepositTask(dataverseIngestDeposit, outputDir, onlyConvertDansDeposit);
+    /*
+     * Processes the deferred deposits in order, as soon as the leases on their datasets can be acquired. A lease that was left behind by a stopped instance is
+     * taken over when it expires. A deposit that another instance processed in the meantime is gone from the batch, and is skipped.
+     */
+    private void processDeferredDeposits() throws IOException {
+        if (!deferredDeposits.isEmpty()) {
+            log.info("Waiting for the leases on the datasets of {} deferred deposits", deferredDeposits.size());
+        }
+        while (!deferredDeposits.isEmpty()) {
+            try {
+                Thread.sleep(leasePollIntervalMillis);
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while waiting for the leases on the datasets of deferred deposits");
+            }
+            var stillLeased = new HashSet<String>();
+            var iterator = deferredDeposits.iterator();
+            while (iterator.hasNext()) {
+                var deferred = iterator.next();
+                var datasetKey = deferred.deposit().getDatasetKey();
+                if (stillLeased.contains(datasetKey)) {
+                    continue;
+                }
+                if (isProcessedElsewhere(deferred.path()) || tryProcessDeposit(deferred.path(), deferred.deposit())) {
+                    iterator.remove();
+                    deferredDepositCount.decrementAndGet();
+                }
+                else {
+                    stillLeased.add(datasetKey);
+                }
+            }
+        }
+    }
+
+    /*
+     * Returns false if the lease on the dataset could not be acquired; true if the deposit was processed, or turned out to be processed by another instance.
+     */
+    private boolean tryProcessDeposit(Path depositPath, DataverseIngestDeposit dataverseIngestDeposit) throws IOException {
+        var datasetKey = dataverseIngestDeposit.getDatasetKey();
+        var lease = leaseManager.tryAcquire(datasetKey);
+        if (lease.isEmpty()) {
+            return false;
+        }
+        try (var ignored = lease.get()) {
+            // Another instance may have finished the deposit between indexing and leasing
+            if (isProcessedElsewhere(depositPath)) {
+                return true;
+            }
+            log.info("START Processing deposit: {}", dataverseIngestDeposit.getId());
+            var task = depositTaskFactory.createDepositTask(dataverseIngestDeposit, outputDir, onlyConvertDansDeposit);
+            task.setLease(lease.get());
+            runningTasks.add(task);
+            try {
                 task.run();
-                log.info("END Processing deposit: {}", dataverseIngestDeposit.getId());
-                // TODO: record number of processed/rejected/failed deposits in ImportJob status
             }
+            finally {
+                runningTasks.remove(task);
+            }
+            countOutcome(task.getStatus());
+            recordFinishTime();
+            summary.add(task.getReport());
+            trackTabularIngests(task.getReport());
+            log.info("END Processing deposit: {}", dataverseIngestDeposit.getId());
+        }
+        return true;
+    }
 
-            status.setStatus(StatusEnum.DONE);
+    private boolean isProcessedElsewhere(Path depositPath) {
+        if (leaseManager.isShared() && !Files.isDirectory(depositPath)) {
+            log.info("SKIP deposit {}: no longer in the batch; processed by another instance", depositPath.getFileName());
+            skippedDeposits.incrementAndGet();
+            return true;
         }
-        catch (Exception e) {
-            log.error("Failed to process import job", e);
-            status.setStatus(StatusEnum.FAILED);
+        return false;
+    }
+
+    /**
+     * Returns the number of deposits in this job that have not been processed yet, and are not being processed. This includes the deposits that wait for the
+     * lease on their dataset, or for an earlier deposit for their dataset to finish.
+     *
+     * @return the number of pending deposits
+     */
+    public int getPendingDepositCount() {
+        var index = depositIndex;
+        return (index == null ? 0 : index.getUnclaimedCount()) + deferredDepositCount.get() + queuedDepositCount.get();
+    }
+
+    /**
+     * Returns the progress of this job, including counts per outcome, the deposit that has been processed the longest of the ones that are currently being
+     * processed and an estimate of the time of completion.
+     *
+     * @return the progress
+     */
+    public ImportJobProgress getProgress() {
+        var task = runningTasks.peek();
+        var running = runningTasks.size();
+        var pending = getPendingDepositCount();
+        double depositsPerMinute = 0;
+        String estimatedCompletion = null;
+        synchronized (finishTimes) {
+            if (finishTimes.size() > 1) {
+                long first = finishTimes.getFirst();
+                long last = finishTimes.getLast();
+                depositsPerMinute = (finishTimes.size() - 1) * 60_000.0 / Math.max(last - first, 1);
+                // Counting from the last finished deposit keeps the estimate stable between deposits
+                long remaining = pending + running;
+                estimatedCompletion = Instant.ofEpochMilli(last + (long) (remaining * 60_000.0 / depositsPerMinute)).toString();
+            }
+        }
+        return ImportJobProgress.builder()
+            .path(importCommand.getPath())
+            .singleObject(importCommand.getSingleObject())
+            .status(status.getStatus())
+            .total(totalDeposits.get())
+            .pending(pending)
+            .processed(processedDeposits.get())
+            .rejected(rejectedDeposits.get())
+            .failed(failedDeposits.get())
+            .skipped(skippedDeposits.get())
+            .running(running)
+            .currentDeposit(task == null ? null : new ImportJobProgress.CurrentDeposit(task.getReport().getDepositId(),
+                task.getReport().getFilesUploaded(), task.getReport().getBytesUploaded()))
+            .depositsPerMinute(depositsPerMinute)
+            .estimatedCompletion(estimatedCompletion)
+            .build();
+    }
+
+    private void countOutcome(DepositTask.Status outcome) {
+        switch (outcome) {
+            case SUCCESS -> processedDeposits.incrementAndGet();
+            case REJECTED -> rejectedDeposits.incrementAndGet();
+            case FAILED -> failedDeposits.incrementAndGet();
+            default -> {
+                // Not moved to the outbox, e.g., when only converting
+            }
+        }
+    }
+
+    private void recordFinishTime() {
+        synchronized (finishTimes) {
+            finishTimes.addLast(System.currentTimeMillis());
+            if (finishTimes.size() > THROUGHPUT_WINDOW + 1) {
+                finishTimes.removeFirst();
+            }
+        }
+    }
+
+    private void trackTabularIngests(DepositReport report) {
+        if (!report.getDeferredTabularIngestFileIds().isEmpty()) {
+            pendingTabularIngests.add(report.getTabularIngestCompletion().thenRun(() -> summary.addTabularIngestOutcome(report)));
+        }
+    }
+
+    private void awaitTabularIngests() {
+        var pending = pendingTabularIngests.stream().filter(tabularIngest -> !tabularIngest.isDone()).count();
+        if (pending > 0) {
+            log.info("Waiting for the deferred tabular ingest of {} deposits to finish before writing the summary", pending);
+        }
+        CompletableFuture.allOf(pendingTabularIngests.toArray(CompletableFuture[]::new)).join();
+    }
+
+    private void writeSummary() {
+        try {
+            summary.writeTo(outputDir.resolve(leaseManager.isShared()
+                ? ImportJobSummary.FILENAME.replace(".json", "-" + leaseManager.getInstanceId() + ".json")
+                : ImportJobSummary.FILENAME));
+        }
+        catch (IOException e) {
+            log.warn("Failed to write import job summary to {}", outputDir, e);
         }
     }
 
@@ -88,7 +508,8 @@ public class ImportJob implements Runnable {
         createDirectoryIfNotExists(outputDir.resolve("processed"));
         createDirectoryIfNotExists(outputDir.resolve("failed"));
         createDirectoryIfNotExists(outputDir.resolve("rejected"));
-        if (!importCommand.getSingleObject()) {
+        // Other instances put their deposits in the same outbox
+        if (!importCommand.getSingleObject() && !leaseManager.isShared()) {
             checkDirectoryEmpty(outputDir.resolve("processed"));
             checkDirectoryEmpty(outputDir.resolve("failed"));
             checkDirectoryEmpty(outputDir.resolve("rejected"));
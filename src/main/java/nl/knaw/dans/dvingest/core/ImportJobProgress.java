@@ -0,0 +1,59 @@
+/*
+ * Copyright (C) 2024 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.dvingest.core;
+
+import lombok.Builder;
+import lombok.Value;
+import nl.knaw.dans.dvingest.api.ImportJobStatusDto.StatusEnum;
+
+import java.util.UUID;
+
+/**
+ * Progress of an import job. The first three fields are the same as those of {@link nl.knaw.dans.dvingest.api.ImportJobStatusDto}, so that clients of the status
+ * API can read this object as an extended status.
+ */
+@Value
+@Builder
+public class ImportJobProgress {
+    String path;
+    Boolean singleObject;
+    StatusEnum status;
+    int total;
+    int pending;
+    int processed;
+    int rejected;
+    int failed;
+    // Processed by other instances that share the inbox
+    int skipped;
+    // Deposits that are being processed; the one that has been processed the longest is the current deposit
+    int running;
+    CurrentDeposit currentDeposit;
+    // Rolling average over the most recently finished deposits
+    double depositsPerMinute;
+    // ISO-8601 timestamp, or null if not enough deposits have finished yet
+    String estimatedCompletion;
+
+    @Value
+    public static class CurrentDeposit {
+        UUID depositId;
+        long filesUploaded;
+        long bytesUploaded;
+    }
+
+    public int getDone() {
+        return processed + rejected + failed + skipped;
+    }
+}
@@ -79,6 +79,27 @@ public class IngestArea {
         }
     }
 
+    public List<ImportJobProgress> getProgress(String path) {
+        if (path == null) {
+            return importJobs.values().stream().map(ImportJob::getProgress).toList();
+        }
+        else {
+            if (importJobs.get(path) == null) {
+                throw new IllegalArgumentException("No job found for path: " + path);
+            }
+            return List.of(importJobs.get(path).getProgress());
+        }
+    }
+
+    /**
+     * Returns the number of deposits that are waiting to be processed in all the import jobs of this area.
+     *
+     * @return the queue depth
+     */
+    public int getQueueDepth() {
+        return importJobs.values().stream().mapToInt(ImportJob::getPendingDepositCount).sum();
+    }
+
     private ImportJob createImportJob(ImportCommandDto importCommand) {
         Path relativePath;
         if (importCommand.getSingleObject()) {
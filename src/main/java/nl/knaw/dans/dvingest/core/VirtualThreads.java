@@ -0,0 +1,90 @@
+/*
+ * Copyright (C) 2024 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.dvingest.core;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.lang.reflect.InvocationTargetException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Creates executors that start a new virtual thread for every task. Virtual threads are only available from Java 21 on, while this project is built for Java
+ * 17, so the API is looked up at runtime. On older runtimes the executors start a new platform thread for every task instead, which gives the same semantics at
+ * a higher cost per thread.
+ */
+@Slf4j
+public final class VirtualThreads {
+    private static final ThreadFactory VIRTUAL_THREAD_FACTORY = lookUpVirtualThreadFactory();
+
+    private VirtualThreads() {
+    }
+
+    /**
+     * Returns whether the runtime supports virtual threads.
+     *
+     * @return true if virtual threads are used, false if platform threads are used instead
+     */
+    public static boolean isSupported() {
+        return VIRTUAL_THREAD_FACTORY != null;
+    }
+
+    /**
+     * Creates an executor that starts a new thread for every task, a virtual one if the runtime supports it. The threads are named after the given prefix.
+     *
+     * @param namePrefix the prefix of the thread names
+     * @return the executor
+     */
+    public static ExecutorService newThreadPerTaskExecutor(String namePrefix) {
+        var counter = new AtomicLong();
+        if (VIRTUAL_THREAD_FACTORY == null) {
+            log.warn("Virtual threads are not supported by this Java runtime; using platform threads for {}", namePrefix);
+            return Executors.newCachedThreadPool(runnable -> {
+                var thread = new Thread(runnable, namePrefix + "-" + counter.getAndIncrement());
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        ThreadFactory threadFactory = runnable -> {
+            var thread = VIRTUAL_THREAD_FACTORY.newThread(runnable);
+            thread.setName(namePrefix + "-" + counter.getAndIncrement());
+            return thread;
+        };
+        try {
+            // Equivalent to Executors.newThreadPerTaskExecutor(threadFactory); virtual threads are cheap and should not be pooled
+            return (ExecutorService) Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class).invoke(null, threadFactory);
+        }
+        catch (NoSuchMethodException | IllegalAccessException | InvocationTargetException e) {
+            throw new IllegalStateException("Cannot create virtual thread executor", e);
+        }
+    }
+
+    private static ThreadFactory lookUpVirtualThreadFactory() {
+        try {
+            // Equivalent to Thread.ofVirtual().factory()
+            var builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            return (ThreadFactory) Class.forName("java.lang.Thread$Builder").getMethod("factory").invoke(builder);
+        }
+        catch (NoSuchMethodException | ClassNotFoundException e) {
+            return null;
+        }
+        catch (IllegalAccessException | InvocationTargetException e) {
+            throw new IllegalStateException("Cannot create virtual thread factory", e);
+        }
+    }
+}
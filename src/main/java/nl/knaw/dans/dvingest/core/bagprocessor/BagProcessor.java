@@ -19,7 +19,11 @@ import io.dropwizard.configuration.ConfigurationException;
 import lombok.Builder;
 import lombok.extern.slf4j.Slf4j;
 import nl.knaw.dans.dvingest.core.DataverseIngestBag;
+import nl.knaw.dans.dvingest.core.metrics.IngestMetrics;
+import nl.knaw.dans.dvingest.core.report.DepositReport;
+import nl.knaw.dans.dvingest.core.service.AsyncDataverseService;
 import nl.knaw.dans.dvingest.core.service.DataverseService;
+import nl.knaw.dans.dvingest.core.service.TabularIngestQueue;
 import nl.knaw.dans.dvingest.core.service.UtilityServices;
 import nl.knaw.dans.lib.dataverse.DataverseException;
 
@@ -36,22 +40,93 @@ public class BagProcessor {
     private final MetadataEditor metadataEditor;
     private final PermissionsEditor permissionsEditor;
     private final StateUpdater stateUpdater;
+    private final IngestMetrics metrics;
+    private final DepositReport report;
+    private final TabularIngestQueue tabularIngestQueue;
+    private final DatasetFileIndexCache datasetFileIndexCache;
 
     @Builder
-    private BagProcessor(UUID depositId, DataverseIngestBag bag, DataverseService dataverseService, UtilityServices utilityServices) throws IOException, ConfigurationException {
-        this.datasetVersionCreator = new DatasetVersionCreator(depositId, dataverseService, bag.getDatasetMetadata());
-        this.filesEditor = new FilesEditor(depositId, bag.getDataDir(), bag.getEditFiles(), dataverseService, utilityServices);
+    private BagProcessor(UUID depositId, DataverseIngestBag bag, DataverseService dataverseService, UtilityServices utilityServices, IngestMetrics metrics,
+        DepositReport report, TabularIngestQueue tabularIngestQueue, boolean deferTabularIngest, DatasetFileIndexCache datasetFileIndexCache,
+        AsyncDataverseService asyncDataverseService) throws IOException, ConfigurationException {
+        if (deferTabularIngest && tabularIngestQueue == null) {
+            throw new IllegalArgumentException("Deferred tabular ingest requires a tabular ingest queue");
+        }
+        this.metrics = metrics == null ? IngestMetrics.unregistered() : metrics;
+        this.report = report == null ? new DepositReport(depositId, null) : report;
+        this.tabularIngestQueue = tabularIngestQueue;
+        this.datasetFileIndexCache = datasetFileIndexCache;
+        this.datasetVersionCreator = new DatasetVersionCreator(depositId, dataverseService, bag.getDatasetMetadata(), bag.getInit());
+        this.filesEditor = new FilesEditor(depositId, bag.getDataDir(), bag.getEditFiles(), dataverseService, utilityServices, this.metrics, this.report,
+            deferTabularIngest);
         this.metadataEditor = new MetadataEditor(depositId, bag.getEditMetadata(), dataverseService);
         this.permissionsEditor = new PermissionsEditor(depositId, bag.getEditPermissions(), dataverseService);
-        this.stateUpdater = new StateUpdater(depositId, bag.getUpdateState(), dataverseService);
+        if (asyncDataverseService != null) {
+            this.permissionsEditor.sendRequestsConcurrently(asyncDataverseService);
+        }
+        this.stateUpdater = new StateUpdater(depositId, bag.getUpdateState(), dataverseService, this.report);
     }
 
     public String run(String targetPid) throws IOException, DataverseException {
-        targetPid = datasetVersionCreator.createDatasetVersion(targetPid);
-        filesEditor.editFiles(targetPid);
-        metadataEditor.editMetadata(targetPid);
-        permissionsEditor.editPermissions(targetPid);
-        stateUpdater.updateState(targetPid);
+        return run(targetPid, () -> {
+        });
+    }
+
+    /**
+     * Processes the bag, running the given check before each stage that changes the dataset. The check stops the processing by throwing an exception, e.g.,
+     * when the lease on the dataset was lost.
+     *
+     * @param targetPid       the pid of the dataset to update, or null to create a new dataset
+     * @param beforeEachStage the check
+     * @return the pid of the dataset
+     * @throws IOException        if the bag could not be read
+     * @throws DataverseException if a call to Dataverse failed
+     */
+    public String run(String targetPid, Runnable beforeEachStage) throws IOException, DataverseException {
+        if (targetPid != null && datasetFileIndexCache != null) {
+            // Must be done before the dataset is changed by this deposit, otherwise the cached index looks stale
+            datasetFileIndexCache.take(targetPid).ifPresent(filesEditor::reuseFileIndex);
+        }
+        beforeEachStage.run();
+        try (var timer = metrics.bagProcessorStage("create").time(); var phase = report.startPhase("create")) {
+            targetPid = datasetVersionCreator.createDatasetVersion(targetPid);
+        }
+        beforeEachStage.run();
+        try (var timer = metrics.bagProcessorStage("files").time(); var phase = report.startPhase("files")) {
+            filesEditor.editFiles(targetPid);
+        }
+        beforeEachStage.run();
+        try (var timer = metrics.bagProcessorStage("metadata").time(); var phase = report.startPhase("metadata")) {
+            metadataEditor.editMetadata(targetPid);
+        }
+        beforeEachStage.run();
+        try (var timer = metrics.bagProcessorStage("permissions").time(); var phase = report.startPhase("permissions")) {
+            permissionsEditor.editPermissions(targetPid);
+        }
+        beforeEachStage.run();
+        try (var timer = metrics.bagProcessorStage("state").time(); var phase = report.startPhase("state")) {
+            stateUpdater.updateState(targetPid);
+        }
+        if (datasetFileIndexCache != null) {
+            cacheFileIndex(targetPid);
+        }
+        if (!filesEditor.getDeferredTabularIngestFileIds().isEmpty()) {
+            tabularIngestQueue.submit(targetPid, filesEditor.getDeferredTabularIngestFileIds(), report);
+        }
         return targetPid;
     }
+
+    private void cacheFileIndex(String targetPid) {
+        var fileIndex = filesEditor.getFileIndexForReuse();
+        if (fileIndex.isEmpty()) {
+            return;
+        }
+        try {
+            datasetFileIndexCache.put(targetPid, fileIndex.get());
+        }
+        catch (IOException | DataverseException e) {
+            // Not worth failing the deposit for; the next deposit will download the file list
+            log.warn("Could not cache file index for dataset {}", targetPid, e);
+        }
+    }
 }
@@ -17,6 +17,7 @@ package nl.knaw.dans.dvingest.core.bagprocessor;
 
 import io.dropwizard.configuration.ConfigurationException;
 import nl.knaw.dans.dvingest.core.DataverseIngestBag;
+import nl.knaw.dans.dvingest.core.report.DepositReport;
 
 import java.io.IOException;
 import java.util.UUID;
@@ -31,10 +32,12 @@ public interface BagProcessorFactory {
      *
      * @param depositId the deposit id
      * @param bag       the bag
+     * @param report             the timing report of the deposit, to which the bag processor adds its phases
+     * @param deferTabularIngest whether to upload the files with tabular ingest disabled and queue the tabular ingest until after the bag has been processed
      * @return the BagProcessor
      * @throws ConfigurationException if the Yaml files in the bag are not valid
      * @throws IOException            if there was a problem readin the bag files
      */
-    BagProcessor createBagProcessor(UUID depositId, DataverseIngestBag bag) throws ConfigurationException, IOException;
+    BagProcessor createBagProcessor(UUID depositId, DataverseIngestBag bag, DepositReport report, boolean deferTabularIngest) throws ConfigurationException, IOException;
 
 }
@@ -0,0 +1,167 @@
+/*
+ * Copyright (C) 2024 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.dvingest.core.bagprocessor;
+
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import nl.knaw.dans.dvingest.core.service.DataverseService;
+import nl.knaw.dans.lib.dataverse.DataverseException;
+import nl.knaw.dans.lib.dataverse.model.dataset.DatasetVersion;
+import nl.knaw.dans.lib.dataverse.model.file.FileMeta;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * <p>
+ * Keeps the file index of the most recently processed datasets, so that the next deposit for the same dataset does not have to download the file list again. This is typically the case in
+ * migration, where version N+1 of a dataset follows right after version N.
+ * </p>
+ * <p>
+ * An index is stored together with the id, state and last update time of the latest dataset version at the moment it was stored. Before an index is reused, these are compared with the
+ * current latest version, which is retrieved without its files, once per deposit (see {@link FileIndexValidations}). If they differ, the dataset was changed by someone else and the index
+ * is discarded. When the cache is full, the least recently used index is evicted.
+ * </p>
+ */
+@Slf4j
+public class DatasetFileIndexCache {
+    private final DataverseService dataverseService;
+    private final Map<String, CachedFileIndex> cache;
+    // Guards the access-ordered map; never held during calls to Dataverse
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private static class CachedFileIndex {
+        private final FileIndex fileIndex;
+        private final String versionSignature;
+
+        private CachedFileIndex(FileIndex fileIndex, String versionSignature) {
+            this.fileIndex = fileIndex;
+            this.versionSignature = versionSignature;
+        }
+    }
+
+    public DatasetFileIndexCache(@NonNull DataverseService dataverseService, int maxNumberOfDatasets) {
+        if (maxNumberOfDatasets < 1) {
+            throw new IllegalArgumentException("maxNumberOfDatasets must be at least 1");
+        }
+        this.dataverseService = dataverseService;
+        this.cache = new LinkedHashMap<>(16, 0.75f, true) {
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CachedFileIndex> eldest) {
+                return size() > maxNumberOfDatasets;
+            }
+        };
+    }
+
+    /**
+     * Stores the file index of a dataset. It must reflect the latest version of the dataset at the moment of the call.
+     *
+     * @param pid       the persistent identifier of the dataset
+     * @param fileIndex the file index
+     */
+    void put(@NonNull String pid, @NonNull FileIndex fileIndex) throws IOException, DataverseException {
+        var versionSignature = getVersionSignature(pid);
+        FileIndexValidations.setVersionSignature(pid, versionSignature);
+        lock.lock();
+        try {
+            cache.put(pid, new CachedFileIndex(fileIndex, versionSignature));
+        }
+        finally {
+            lock.unlock();
+        }
+        log.debug("Cached index of {} files for dataset {}", fileIndex.size(), pid);
+    }
+
+    /**
+     * Removes the file index of a dataset from the cache and returns it, if the dataset has not changed since it was stored. The caller becomes the owner of the index; it is up to the caller to
+     * store it again when done.
+     *
+     * @param pid the persistent identifier of the dataset
+     * @return the file index, or empty if there is none or it is stale
+     */
+    Optional<FileIndex> take(@NonNull String pid) throws IOException, DataverseException {
+        CachedFileIndex cached;
+        lock.lock();
+        try {
+            cached = cache.remove(pid);
+        }
+        finally {
+            lock.unlock();
+        }
+        if (cached == null || !isCurrent(pid, cached)) {
+            return Optional.empty();
+        }
+        return Optional.of(cached.fileIndex);
+    }
+
+    /**
+     * Returns a read-only view of the files in the cached file index of a dataset, if the dataset has not changed since it was stored. The index stays in the cache.
+     *
+     * @param pid the persistent identifier of the dataset
+     * @return map from filepath to FileMeta object, or empty if there is no index or it is stale
+     */
+    public Optional<Map<String, FileMeta>> peek(@NonNull String pid) throws IOException, DataverseException {
+        CachedFileIndex cached;
+        lock.lock();
+        try {
+            cached = cache.get(pid);
+        }
+        finally {
+            lock.unlock();
+        }
+        if (cached == null) {
+            return Optional.empty();
+        }
+        if (!isCurrent(pid, cached)) {
+            lock.lock();
+            try {
+                cache.remove(pid, cached);
+            }
+            finally {
+                lock.unlock();
+            }
+            return Optional.empty();
+        }
+        return Optional.of(cached.fileIndex.asMap());
+    }
+
+    /*
+     * The latest version is retrieved once per deposit (see FileIndexValidations), and without holding the lock, so that the cache is not blocked for deposits
+     * for other datasets while Dataverse answers.
+     */
+    private boolean isCurrent(String pid, CachedFileIndex cached) throws IOException, DataverseException {
+        var versionSignature = FileIndexValidations.getVersionSignature(pid);
+        if (versionSignature == null) {
+            versionSignature = getVersionSignature(pid);
+            FileIndexValidations.setVersionSignature(pid, versionSignature);
+        }
+        if (!cached.versionSignature.equals(versionSignature)) {
+            log.debug("Dataset {} has changed since its file index was cached; discarding it", pid);
+            return false;
+        }
+        log.debug("Reusing cached file index for dataset {}", pid);
+        return true;
+    }
+
+    private String getVersionSignature(String pid) throws IOException, DataverseException {
+        DatasetVersion version = dataverseService.getLatestVersionWithoutFiles(pid);
+        return version.getId() + "/" + version.getVersionState() + "/" + version.getLastUpdateTime();
+    }
+}
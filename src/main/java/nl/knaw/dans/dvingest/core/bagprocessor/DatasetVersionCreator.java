@@ -19,6 +19,7 @@ import lombok.AllArgsConstructor;
 import lombok.NonNull;
 import lombok.extern.slf4j.Slf4j;
 import nl.knaw.dans.dvingest.core.service.DataverseService;
+import nl.knaw.dans.dvingest.core.yaml.Init;
 import nl.knaw.dans.lib.dataverse.DataverseException;
 import nl.knaw.dans.lib.dataverse.model.dataset.Dataset;
 
@@ -26,7 +27,8 @@ import java.io.IOException;
 import java.util.UUID;
 
 /**
- * Creates a new dataset version in Dataverse. If the target dataset does not exist, a new dataset is created.
+ * Creates a new dataset version in Dataverse. If the target dataset does not exist, a new dataset is created. If an import PID is specified in the init
+ * instructions, the new dataset is created with the native import API.
  */
 @Slf4j
 @AllArgsConstructor
@@ -38,12 +40,22 @@ public class DatasetVersionCreator {
 
     private final Dataset dataset;
 
+    private final Init init;
+
+    public DatasetVersionCreator(UUID depositId, DataverseService dataverseService, Dataset dataset) {
+        this(depositId, dataverseService, dataset, null);
+    }
+
     public String createDatasetVersion(String targetPid) throws IOException, DataverseException {
         var pid = targetPid;
         if (targetPid == null) {
             if (dataset == null) {
                 throw new IllegalArgumentException("Must have dataset metadata to create a new dataset.");
             }
+            if (init != null && init.getImportPid() != null) {
+                // The import API stores the complete metadata, so no update is needed
+                return importDataset(init.getImportPid());
+            }
             pid = createDataset();
         }
         // Even if we just created the dataset, we still need to update the metadata, because Dataverse ignores some things
@@ -61,6 +73,13 @@ public class DatasetVersionCreator {
         return pid;
     }
 
+    private String importDataset(String importPid) throws IOException, DataverseException {
+        log.debug("Start importing dataset with PID {} for deposit {}", importPid, depositId);
+        var pid = dataverseService.importDataset(importPid, dataset);
+        log.debug("End importing dataset for deposit {}", depositId);
+        return pid;
+    }
+
     private void updateDataset(String pid) throws IOException, DataverseException {
         log.debug("Start updating dataset for deposit {}", depositId);
         dataverseService.updateMetadata(pid, dataset.getDatasetVersion());
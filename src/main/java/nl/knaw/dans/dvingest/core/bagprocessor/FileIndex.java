@@ -0,0 +1,345 @@
+/*
+ * Copyright (C) 2024 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.dvingest.core.bagprocessor;
+
+import lombok.NonNull;
+import nl.knaw.dans.lib.dataverse.model.file.Checksum;
+import nl.knaw.dans.lib.dataverse.model.file.DataFile;
+import nl.knaw.dans.lib.dataverse.model.file.FileMeta;
+import org.apache.commons.codec.DecoderException;
+import org.apache.commons.codec.binary.Hex;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * <p>
+ * A compact index of the files in a dataset, keyed by filepath. Only the fields that the ingest needs are kept: the database id, the filepath, the checksum, the file size, whether the file is
+ * restricted, and the description and categories, which must be preserved when the file is replaced or moved. Checksums are stored as bytes rather than hex strings, and checksum types and
+ * categories, which are shared by many files, are stored only once.
+ * </p>
+ * <p>
+ * Filepaths are not stored as strings. Each path segment is stored once and given an int id; a directory is identified by the id of its parent directory and the id of its last segment. A file
+ * is then identified by a long made up of the id of its directory and the id of its label, which is the key of a {@link LongIntMap} into the list of entries. Segments and directories are kept
+ * when the files in them are removed; there are few of them compared to the files.
+ * </p>
+ * <p>
+ * The {@link FileMeta} objects returned by this class are created on request; changing them does not change the index.
+ * </p>
+ */
+class FileIndex {
+    private static final int ROOT = 0;
+    private static final long NOT_FOUND = -1L;
+
+    private final Map<String, Integer> segmentIds = new HashMap<>();
+    private final List<String> segments = new ArrayList<>();
+    private final Map<Directory, Integer> directoryIds = new HashMap<>();
+    // The root directory has no parent or segment
+    private final List<Directory> directories = new ArrayList<>(List.of(new Directory(-1, -1)));
+    private final LongIntMap positions = new LongIntMap();
+    private final List<Entry> entries = new ArrayList<>();
+    private final Map<String, String> checksumTypes = new HashMap<>();
+    private final Map<List<String>, List<String>> categoryLists = new HashMap<>();
+
+    private record Directory(int parent, int segment) {
+    }
+
+    private static class Entry {
+        private final long key;
+        private final boolean hasDataFile;
+        private final int id;
+        private final long filesize;
+        private final String checksumType;
+        // Either a byte array, for hexadecimal checksums, or the original string
+        private final Object checksumValue;
+        private final boolean restricted;
+        private final String description;
+        private final List<String> categories;
+
+        private Entry(long key, boolean hasDataFile, int id, long filesize, String checksumType, Object checksumValue, boolean restricted, String description, List<String> categories) {
+            this.key = key;
+            this.hasDataFile = hasDataFile;
+            this.id = id;
+            this.filesize = filesize;
+            this.checksumType = checksumType;
+            this.checksumValue = checksumValue;
+            this.restricted = restricted;
+            this.description = description;
+            this.categories = categories;
+        }
+    }
+
+    public void put(@NonNull String filepath, @NonNull FileMeta fileMeta) {
+        var dataFile = fileMeta.getDataFile();
+        String checksumType = null;
+        Object checksumValue = null;
+        if (dataFile != null && dataFile.getChecksum() != null) {
+            checksumType = internChecksumType(dataFile.getChecksum().getType());
+            checksumValue = compact(dataFile.getChecksum().getValue());
+        }
+        var key = internPath(filepath);
+        var entry = new Entry(
+            key,
+            dataFile != null,
+            dataFile == null ? 0 : getId(dataFile),
+            dataFile == null ? 0 : getFilesize(dataFile),
+            checksumType,
+            checksumValue,
+            Boolean.TRUE.equals(fileMeta.getRestricted()),
+            fileMeta.getDescription(),
+            internCategories(fileMeta.getCategories()));
+        var position = positions.get(key);
+        if (position == -1) {
+            positions.put(key, entries.size());
+            entries.add(entry);
+        }
+        else {
+            entries.set(position, entry);
+        }
+    }
+
+    public FileMeta get(@NonNull String filepath) {
+        var position = positionOf(filepath);
+        if (position == -1) {
+            return null;
+        }
+        return toFileMeta(filepath, entries.get(position));
+    }
+
+    public void remove(@NonNull String filepath) {
+        var position = positionOf(filepath);
+        if (position == -1) {
+            return;
+        }
+        positions.remove(entries.get(position).key);
+        // Fill the gap with the last entry, so that the list stays dense
+        var last = entries.remove(entries.size() - 1);
+        if (position < entries.size()) {
+            entries.set(position, last);
+            positions.put(last.key, position);
+        }
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * Returns a read-only view of the index as a map from filepath to FileMeta. The filepaths and FileMeta objects are created when they are accessed.
+     *
+     * @return the view
+     */
+    public Map<String, FileMeta> asMap() {
+        return new AbstractMap<>() {
+
+            @Override
+            public Set<Map.Entry<String, FileMeta>> entrySet() {
+                return new AbstractSet<>() {
+
+                    @Override
+                    public Iterator<Map.Entry<String, FileMeta>> iterator() {
+                        var iterator = entries.iterator();
+                        return new Iterator<>() {
+
+                            @Override
+                            public boolean hasNext() {
+                                return iterator.hasNext();
+                            }
+
+                            @Override
+                            public Map.Entry<String, FileMeta> next() {
+                                var next = iterator.next();
+                                var filepath = pathOf(next.key);
+                                return Map.entry(filepath, toFileMeta(filepath, next));
+                            }
+                        };
+                    }
+
+                    @Override
+                    public int size() {
+                        return entries.size();
+                    }
+                };
+            }
+
+            @Override
+            public FileMeta get(Object key) {
+                return key instanceof String ? FileIndex.this.get((String) key) : null;
+            }
+
+            @Override
+            public boolean containsKey(Object key) {
+                return key instanceof String && positionOf((String) key) != -1;
+            }
+
+            @Override
+            public Set<String> keySet() {
+                return new AbstractSet<>() {
+
+                    @Override
+                    public Iterator<String> iterator() {
+                        var iterator = entries.iterator();
+                        return new Iterator<>() {
+
+                            @Override
+                            public boolean hasNext() {
+                                return iterator.hasNext();
+                            }
+
+                            @Override
+                            public String next() {
+                                return pathOf(iterator.next().key);
+                            }
+                        };
+                    }
+
+                    @Override
+                    public boolean contains(Object o) {
+                        return containsKey(o);
+                    }
+
+                    @Override
+                    public int size() {
+                        return entries.size();
+                    }
+                };
+            }
+        };
+    }
+
+    private int positionOf(String filepath) {
+        var key = findPath(filepath);
+        return key == NOT_FOUND ? -1 : positions.get(key);
+    }
+
+    private long internPath(String filepath) {
+        var pathSegments = filepath.split("/", -1);
+        var directory = ROOT;
+        for (int i = 0; i < pathSegments.length - 1; i++) {
+            var directoryKey = new Directory(directory, internSegment(pathSegments[i]));
+            directory = directoryIds.computeIfAbsent(directoryKey, d -> {
+                directories.add(d);
+                return directories.size() - 1;
+            });
+        }
+        return toKey(directory, internSegment(pathSegments[pathSegments.length - 1]));
+    }
+
+    // Like internPath, but without adding segments or directories; NOT_FOUND if the path contains one that is not in the index
+    private long findPath(String filepath) {
+        var pathSegments = filepath.split("/", -1);
+        var directory = ROOT;
+        for (int i = 0; i < pathSegments.length - 1; i++) {
+            var segment = segmentIds.get(pathSegments[i]);
+            var next = segment == null ? null : directoryIds.get(new Directory(directory, segment));
+            if (next == null) {
+                return NOT_FOUND;
+            }
+            directory = next;
+        }
+        var label = segmentIds.get(pathSegments[pathSegments.length - 1]);
+        return label == null ? NOT_FOUND : toKey(directory, label);
+    }
+
+    private String pathOf(long key) {
+        var path = new StringBuilder(segments.get((int) key));
+        for (int directory = (int) (key >>> 32); directory != ROOT; directory = directories.get(directory).parent()) {
+            path.insert(0, '/').insert(0, segments.get(directories.get(directory).segment()));
+        }
+        return path.toString();
+    }
+
+    private static long toKey(int directory, int label) {
+        return ((long) directory << 32) | label;
+    }
+
+    private int internSegment(String segment) {
+        return segmentIds.computeIfAbsent(segment, s -> {
+            segments.add(s);
+            return segments.size() - 1;
+        });
+    }
+
+    private FileMeta toFileMeta(String filepath, Entry entry) {
+        var dataversePath = new DataversePath(filepath);
+        var fileMeta = new FileMeta();
+        fileMeta.setDirectoryLabel(dataversePath.getDirectoryLabel());
+        fileMeta.setLabel(dataversePath.getLabel());
+        fileMeta.setRestricted(entry.restricted);
+        fileMeta.setDescription(entry.description);
+        if (entry.categories != null) {
+            fileMeta.setCategories(new ArrayList<>(entry.categories));
+        }
+        if (entry.hasDataFile) {
+            var dataFile = new DataFile();
+            dataFile.setId(entry.id);
+            dataFile.setFilesize(entry.filesize);
+            if (entry.checksumType != null || entry.checksumValue != null) {
+                var checksum = new Checksum();
+                checksum.setType(entry.checksumType);
+                checksum.setValue(expand(entry.checksumValue));
+                dataFile.setChecksum(checksum);
+            }
+            fileMeta.setDataFile(dataFile);
+        }
+        return fileMeta;
+    }
+
+    private static int getId(DataFile dataFile) {
+        Integer id = dataFile.getId();
+        return id == null ? 0 : id;
+    }
+
+    private static long getFilesize(DataFile dataFile) {
+        Long filesize = dataFile.getFilesize();
+        return filesize == null ? 0 : filesize;
+    }
+
+    private String internChecksumType(String value) {
+        return value == null ? null : checksumTypes.computeIfAbsent(value, v -> v);
+    }
+
+    private List<String> internCategories(List<String> categories) {
+        return categories == null ? null : categoryLists.computeIfAbsent(List.copyOf(categories), c -> c);
+    }
+
+    private static Object compact(String checksumValue) {
+        if (checksumValue == null) {
+            return null;
+        }
+        try {
+            var bytes = Hex.decodeHex(checksumValue);
+            // Only store as bytes if the string can be restored exactly, e.g. not for upper case hex
+            return Hex.encodeHexString(bytes).equals(checksumValue) ? bytes : checksumValue;
+        }
+        catch (DecoderException e) {
+            return checksumValue;
+        }
+    }
+
+    private static String expand(Object checksumValue) {
+        if (checksumValue instanceof byte[]) {
+            return Hex.encodeHexString((byte[]) checksumValue);
+        }
+        return (String) checksumValue;
+    }
+}
@@ -0,0 +1,70 @@
+/*
+ * Copyright (C) 2024 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.dvingest.core.bagprocessor;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The version signatures that {@link DatasetFileIndexCache} has retrieved for one deposit. A deposit looks at the cached file index of its dataset when it
+ * composes the file edits and takes it when it starts editing the dataset; the dataset is validated once, on the first of these. The thread that processes
+ * the deposit binds the validations with {@link #bind()}. Without a binding, every use of the cache validates the dataset.
+ */
+public class FileIndexValidations {
+    private static final ThreadLocal<FileIndexValidations> bound = new ThreadLocal<>();
+
+    // Key: pid of the dataset, value: signature of its latest version when it was first validated in the deposit
+    private final Map<String, String> versionSignatures = new ConcurrentHashMap<>();
+
+    /**
+     * A binding of the validations to the current thread. Closing it restores the validations that were bound before.
+     */
+    public static class Binding implements AutoCloseable {
+        private final FileIndexValidations previous;
+
+        private Binding(FileIndexValidations validations) {
+            this.previous = bound.get();
+            bound.set(validations);
+        }
+
+        @Override
+        public void close() {
+            bound.set(previous);
+        }
+    }
+
+    /*
+     * Returns the signature recorded for the dataset in the deposit of the current thread, or null if there is none.
+     */
+    static String getVersionSignature(String pid) {
+        var validations = bound.get();
+        return validations == null ? null : validations.versionSignatures.get(pid);
+    }
+
+    /*
+     * Records the signature of the dataset for the deposit of the current thread.
+     */
+    static void setVersionSignature(String pid, String versionSignature) {
+        var validations = bound.get();
+        if (validations != null) {
+            validations.versionSignatures.put(pid, versionSignature);
+        }
+    }
+
+    public Binding bind() {
+        return new Binding(this);
+    }
+}
@@ -15,34 +15,48 @@
  */
 package nl.knaw.dans.dvingest.core.bagprocessor;
 
-import lombok.AllArgsConstructor;
 import nl.knaw.dans.dvingest.core.yaml.EditFiles;
 import org.apache.commons.collections4.Predicate;
 
 import java.io.File;
 import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.Set;
 
-@AllArgsConstructor
+/**
+ * Selects the files in the data directory of a bag that must be uploaded as restricted or as unrestricted files. The lists from the edit-files instructions
+ * are put in sets once, because the predicate is evaluated for every file in the bag.
+ */
 public class FileUploadInclusionPredicate implements Predicate<File> {
-    private final EditFiles editFiles;
     private final Path dataDir;
-    private final boolean restrictedFiles;
+    // Null if there are no edit-files instructions, in which case no file is included
+    private final Set<String> filesToAdd;
+    private final Set<String> replacedFiles;
+    private final Set<String> excludedFiles;
 
-    @Override
-    public boolean evaluate(File file) {
-        return editFiles != null && (restrictedFiles ? isRestricted(file) : notRestricted(file))
-            && notReplaced(file);
+    public FileUploadInclusionPredicate(EditFiles editFiles, Path dataDir, boolean restrictedFiles) {
+        this(editFiles, dataDir, restrictedFiles, Set.of());
     }
 
-    private boolean notReplaced(File file) {
-        return !editFiles.getReplaceFiles().contains(dataDir.relativize(file.toPath()).toString());
+    /**
+     * @param editFiles       the edit-files instructions
+     * @param dataDir         the data directory of the bag
+     * @param restrictedFiles whether to include the restricted or the unrestricted files
+     * @param excludedFiles   files (relative to dataDir) that are uploaded in some other way
+     */
+    public FileUploadInclusionPredicate(EditFiles editFiles, Path dataDir, boolean restrictedFiles, Set<String> excludedFiles) {
+        this.dataDir = dataDir;
+        this.filesToAdd = editFiles == null ? null : new HashSet<>(restrictedFiles ? editFiles.getAddRestrictedFiles() : editFiles.getAddUnrestrictedFiles());
+        this.replacedFiles = editFiles == null ? Set.of() : new HashSet<>(editFiles.getReplaceFiles());
+        this.excludedFiles = excludedFiles;
     }
 
-    private boolean isRestricted(File file) {
-        return editFiles.getAddRestrictedFiles().contains(dataDir.relativize(file.toPath()).toString());
-    }
-
-    private boolean notRestricted(File file) {
-        return editFiles.getAddUnrestrictedFiles().contains(dataDir.relativize(file.toPath()).toString());
+    @Override
+    public boolean evaluate(File file) {
+        if (filesToAdd == null) {
+            return false;
+        }
+        var path = dataDir.relativize(file.toPath()).toString();
+        return filesToAdd.contains(path) && !replacedFiles.contains(path) && !excludedFiles.contains(path);
     }
-}
\ No newline at end of file
+}
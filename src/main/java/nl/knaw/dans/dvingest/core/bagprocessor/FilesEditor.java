@@ -15,29 +15,46 @@
  */
 package nl.knaw.dans.dvingest.core.bagprocessor;
 
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.AccessLevel;
 import lombok.Getter;
 import lombok.NonNull;
 import lombok.extern.slf4j.Slf4j;
+import nl.knaw.dans.dvingest.core.metrics.IngestMetrics;
+import nl.knaw.dans.dvingest.core.report.DepositReport;
+import nl.knaw.dans.dvingest.core.service.ChecksummingZipper;
 import nl.knaw.dans.dvingest.core.service.DataverseService;
 import nl.knaw.dans.dvingest.core.service.UtilityServices;
 import nl.knaw.dans.dvingest.core.yaml.EditFiles;
 import nl.knaw.dans.dvingest.core.yaml.FromTo;
 import nl.knaw.dans.lib.dataverse.DataverseException;
 import nl.knaw.dans.lib.dataverse.model.dataset.Embargo;
+import nl.knaw.dans.lib.dataverse.model.dataset.FileList;
 import nl.knaw.dans.lib.dataverse.model.file.FileMeta;
-import nl.knaw.dans.lib.util.PathIterator;
+import org.apache.commons.codec.digest.DigestUtils;
 import org.apache.commons.collections4.IteratorUtils;
+import org.apache.commons.collections4.iterators.PeekingIterator;
 import org.apache.commons.io.FileUtils;
 
 import java.io.File;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
 import java.util.stream.Collectors;
 
 @Slf4j
@@ -46,23 +63,56 @@ import java.util.stream.Collectors;
  * Edits files in a dataset in Dataverse, based on the edit-files.yml file, which has been read and parsed into an EditFiles object.
  */
 public class FilesEditor {
+    // Extensions of the file formats for which Dataverse performs tabular ingest
+    private static final Set<String> TABULAR_EXTENSIONS = Set.of("csv", "tsv", "sav", "por", "dta", "rdata", "xlsx");
+    // The checksum algorithms that Dataverse can be configured to use
+    private static final Set<String> CHECKSUM_ALGORITHMS = Set.of("MD5", "SHA-1", "SHA-256", "SHA-512");
+    // The default of Dataverse's :FileFixityChecksumAlgorithm setting
+    private static final String DEFAULT_CHECKSUM_ALGORITHM = "MD5";
+    // Copies updateFileMetas entries into the metadata of uploads
+    private static final ObjectMapper objectMapper = new ObjectMapper().disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES);
+
     private final UUID depositId;
     private final Path dataDir;
     private final EditFiles editFiles;
     private final DataverseService dataverseService;
     private final UtilityServices utilityServices;
+    private final IngestMetrics metrics;
+    private final DepositReport report;
+    private final boolean deferTabularIngest;
     @Getter(AccessLevel.PACKAGE) // for testing
     private final FilesInDatasetCache filesInDatasetCache;
+    @Getter
+    private final List<Integer> deferredTabularIngestFileIds = new ArrayList<>();
+    /*
+     * Key: filepath in the bag / Value: the metadata from updateFileMetas that is sent along with the upload of the file, if any
+     */
+    private final Map<String, Optional<FileMeta>> filesToUploadSeparately = new LinkedHashMap<>();
+    /*
+     * Filepaths in the dataset (after auto-rename) of the files whose updateFileMetas entry was fully applied by the upload
+     */
+    private final Set<String> filesUploadedWithMetadata = new HashSet<>();
 
     private String pid;
+    private String checksumAlgorithm;
+    // The file index kept from the previous deposit for the same dataset, if any
+    private FileIndex reusedFileIndex;
+    /*
+     * The file index can be kept for the next deposit only if it still describes the dataset after this deposit. That is not the case if files were replaced,
+     * because they get a new id, or if tabular files were added, because Dataverse changes their labels after ingest.
+     */
+    private boolean fileIndexReusable = true;
 
     public FilesEditor(@NonNull UUID depositId, @NonNull Path dataDir, @NonNull EditFiles editFiles, @NonNull DataverseService dataverseService,
-        @NonNull UtilityServices utilityServices) {
+        @NonNull UtilityServices utilityServices, @NonNull IngestMetrics metrics, @NonNull DepositReport report, boolean deferTabularIngest) {
         this.depositId = depositId;
         this.dataDir = dataDir;
         this.editFiles = editFiles;
         this.dataverseService = dataverseService;
         this.utilityServices = utilityServices;
+        this.metrics = metrics;
+        this.report = report;
+        this.deferTabularIngest = deferTabularIngest;
         this.filesInDatasetCache = new FilesInDatasetCache(dataverseService, getRenameMap(editFiles.getAutoRenameFiles()));
     }
 
@@ -89,19 +139,47 @@ public class FilesEditor {
 
         log.debug("Start editing files for deposit {}", depositId);
         this.pid = pid;
-        filesInDatasetCache.downloadFromDataset(pid);
+        if (reusedFileIndex != null) {
+            filesInDatasetCache.initialize(reusedFileIndex);
+        }
+        else {
+            filesInDatasetCache.downloadFromDataset(pid);
+        }
+        checksumAlgorithm = detectChecksumAlgorithm();
         if (editFiles != null) {
             deleteFiles();
             replaceFiles();
+            selectFilesToUploadSeparately();
+            addFilesSeparately();
             addRestrictedFiles();
             addUnrestrictedFiles();
-            moveFiles();
+            try (var ignored = report.startPhase("move-files")) {
+                moveFiles();
+            }
             updateFileMetas();
             addEmbargoes();
         }
         log.debug("End editing files for deposit {}", depositId);
     }
 
+    /**
+     * Uses the given file index, kept from the previous deposit for the same dataset, instead of downloading the file metadata from the dataset.
+     *
+     * @param fileIndex the file index
+     */
+    void reuseFileIndex(@NonNull FileIndex fileIndex) {
+        this.reusedFileIndex = fileIndex;
+    }
+
+    /**
+     * Returns the file index after the files were edited, if it can be reused by the next deposit for the same dataset.
+     *
+     * @return the file index, or empty if it cannot be reused
+     */
+    Optional<FileIndex> getFileIndexForReuse() {
+        return fileIndexReusable ? filesInDatasetCache.getFileIndex() : Optional.empty();
+    }
+
     private boolean isEmptyDir(Path dir) throws IOException {
         try (var stream = Files.list(dir)) {
             return stream.findAny().isEmpty();
@@ -110,13 +188,17 @@ public class FilesEditor {
 
     private void deleteFiles() throws IOException, DataverseException {
         log.debug("Start deleting {} files for deposit {}", depositId, editFiles.getDeleteFiles().size());
+        /*
+         * Dataverse updates the draft version of the dataset for each deletion, so the deletions are sent one by one; concurrent updates of the same draft
+         * fail with an optimistic lock error.
+         */
         for (var filepath : editFiles.getDeleteFiles()) {
             log.debug("Deleting file: {}", filepath);
             var fileToDelete = filesInDatasetCache.get(filepath);
             if (fileToDelete == null) {
                 throw new IllegalArgumentException("File to delete not found in dataset: " + filepath);
             }
-            dataverseService.deleteFile(fileToDelete.getDataFile().getId());
+            dataverseService.deleteFile(pid, fileToDelete.getDataFile().getId());
             filesInDatasetCache.remove(filepath);
         }
         log.debug("End deleting files for deposit {}", depositId);
@@ -128,69 +210,271 @@ public class FilesEditor {
             log.debug("Replacing file: {}", filepath);
             var fileMeta = filesInDatasetCache.get(filepath);
             dataverseService.replaceFile(pid, fileMeta, dataDir.resolve(filepath));
+            fileIndexReusable = false;
         }
         log.debug("End replacing files for deposit {}", depositId);
     }
 
+    /*
+     * Files that are too large to be worth zipping are uploaded one by one, so that they are streamed from the bag without an intermediate copy. Smaller files
+     * always go into a zip file, even if they have an entry in updateFileMetas: an upload per file costs more round trips than one batch upload followed by an
+     * update per file. Zip files are never uploaded directly, because Dataverse would unpack them.
+     */
+    private void selectFilesToUploadSeparately() throws IOException {
+        var metadataByPath = new HashMap<String, FileMeta>();
+        for (var fileMeta : editFiles.getUpdateFileMetas()) {
+            metadataByPath.put(getPath(fileMeta), fileMeta);
+        }
+        var filesToAdd = new LinkedHashSet<>(editFiles.getAddRestrictedFiles());
+        filesToAdd.addAll(editFiles.getAddUnrestrictedFiles());
+        editFiles.getReplaceFiles().forEach(filesToAdd::remove);
+        var autoRenamedFiles = filesInDatasetCache.getAutoRenamedFiles();
+        for (var filepath : filesToAdd) {
+            if (filepath.toLowerCase(Locale.ROOT).endsWith(".zip")) {
+                continue;
+            }
+            if (utilityServices.isUploadWithoutZipping(dataDir.resolve(filepath))) {
+                filesToUploadSeparately.put(filepath, Optional.ofNullable(metadataByPath.get(autoRenamedFiles.getOrDefault(filepath, filepath))));
+            }
+        }
+    }
+
+    private void addFilesSeparately() throws IOException, DataverseException {
+        log.debug("Start uploading {} files separately for deposit {}", filesToUploadSeparately.size(), depositId);
+        var restrictedFiles = new HashSet<>(editFiles.getAddRestrictedFiles());
+        var autoRenamedFiles = filesInDatasetCache.getAutoRenamedFiles();
+        for (var entry : filesToUploadSeparately.entrySet()) {
+            var filepath = entry.getKey();
+            var file = dataDir.resolve(filepath);
+            var datasetPath = new DataversePath(autoRenamedFiles.getOrDefault(filepath, filepath));
+            var fileMeta = createUploadFileMeta(datasetPath, entry.getValue().orElse(null), restrictedFiles.contains(filepath));
+            var algorithm = checksumAlgorithm;
+            var checksumTask = startComputingChecksum(file, algorithm);
+            var start = System.nanoTime();
+            FileList addedFileMetaList;
+            String computedChecksum;
+            try {
+                addedFileMetaList = dataverseService.addFile(pid, file, fileMeta);
+                computedChecksum = awaitChecksum(checksumTask);
+            }
+            finally {
+                checksumTask.cancel(true); // no-op if already done
+            }
+            var durationMillis = (System.nanoTime() - start) / 1_000_000;
+            var fileSize = Files.size(file);
+            metrics.bytesHashed().mark(fileSize);
+            metrics.uploadBatchBytes().update(fileSize);
+            metrics.uploadBatchFiles().update(1);
+            report.recordUploadBatch(1, fileSize, durationMillis);
+            for (var fm : addedFileMetaList.getFiles()) {
+                verifyChecksum(fm, algorithm, computedChecksum);
+                if (autoRenamedFiles.containsKey(filepath)) {
+                    fm.setLabel(datasetPath.getLabel());
+                    dataverseService.updateFileMetadata(pid, fm.getDataFile().getId(), fm);
+                }
+                filesInDatasetCache.put(fm);
+                recordDeferredTabularIngest(fm);
+            }
+            entry.getValue()
+                .filter(metadata -> isCoveredByUpload(metadata, datasetPath))
+                .ifPresent(metadata -> filesUploadedWithMetadata.add(getPath(metadata)));
+        }
+        log.debug("End uploading files separately for deposit {}", depositId);
+    }
+
+    /*
+     * The upload carries the whole updateFileMetas entry, if there is one. The directory label is that of the file in the dataset; the restriction is that of
+     * the entry if it sets one, otherwise that of the list that the file is added from.
+     */
+    /*
+     * The checksum of a file that is uploaded separately is computed on a thread of its own while the file is being uploaded, so that verifying it does not add
+     * the time of reading the file once more to the upload. Both read the same file at about the same time, so most of it is read from the page cache.
+     */
+    private FutureTask<String> startComputingChecksum(Path file, String algorithm) {
+        var checksumTask = new FutureTask<>(() -> new DigestUtils(algorithm).digestAsHex(file.toFile()));
+        var thread = new Thread(checksumTask, "checksum-" + depositId);
+        thread.setDaemon(true);
+        thread.start();
+        return checksumTask;
+    }
+
+    private String awaitChecksum(FutureTask<String> checksumTask) throws IOException {
+        try {
+            return checksumTask.get();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while computing checksum", e);
+        }
+        catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException ioException) {
+                throw ioException;
+            }
+            throw new IllegalStateException("Cannot compute checksum", e.getCause());
+        }
+    }
+
+    private FileMeta createUploadFileMeta(DataversePath datasetPath, FileMeta metadata, boolean restrict) {
+        FileMeta fileMeta;
+        if (metadata == null) {
+            fileMeta = deferTabularIngest ? new NoTabularIngestFileMeta() : new FileMeta();
+        }
+        else {
+            fileMeta = objectMapper.convertValue(metadata, deferTabularIngest ? NoTabularIngestFileMeta.class : FileMeta.class);
+        }
+        fileMeta.setDirectoryLabel(datasetPath.getDirectoryLabel());
+        fileMeta.setRestricted(metadata != null && metadata.getRestricted() != null ? metadata.getRestricted() : restrict);
+        return fileMeta;
+    }
+
+    /*
+     * Dataverse takes the label of an uploaded file from its name and ignores a label in the upload metadata. An entry that sets another label still needs its
+     * update after the upload. Auto-renamed files get their label with the rename right after the upload.
+     */
+    private boolean isCoveredByUpload(FileMeta metadata, DataversePath datasetPath) {
+        return metadata.getLabel() == null || metadata.getLabel().equals(datasetPath.getLabel());
+    }
+
+    /*
+     * The files in the dataset tell which checksum algorithm the Dataverse installation uses. For a new dataset the default is assumed; if Dataverse reports
+     * another algorithm, that one is used from the next upload batch on.
+     */
+    private String detectChecksumAlgorithm() {
+        return filesInDatasetCache.getFilesInDataset().values().stream()
+            .map(fileMeta -> fileMeta.getDataFile() == null ? null : fileMeta.getDataFile().getChecksum())
+            .filter(checksum -> checksum != null && CHECKSUM_ALGORITHMS.contains(checksum.getType()))
+            .map(checksum -> checksum.getType())
+            .findFirst()
+            .orElse(DEFAULT_CHECKSUM_ALGORITHM);
+    }
+
     private void addRestrictedFiles() throws IOException, DataverseException {
         log.debug("Start adding {} restricted files for deposit {}", editFiles.getAddRestrictedFiles().size(), depositId);
-        var iterator = new PathIterator(getRestrictedFilesToUpload());
+        var iterator = new PeekingIterator<>(getRestrictedFilesToUpload());
+        var count = 0;
         while (iterator.hasNext()) {
-            uploadFileBatch(iterator, true);
+            count += uploadFileBatch(iterator, true);
         }
-        log.debug("End adding {} restricted files for deposit {}", iterator.getIteratedCount(), depositId);
+        log.debug("End adding {} restricted files for deposit {}", count, depositId);
     }
 
     private void addUnrestrictedFiles() throws IOException, DataverseException {
         log.debug("Start uploading files for deposit {}", depositId);
-        var iterator = new PathIterator(getUnrestrictedFilesToUpload());
+        var iterator = new PeekingIterator<>(getUnrestrictedFilesToUpload());
+        var count = 0;
         while (iterator.hasNext()) {
-            uploadFileBatch(iterator, false);
+            count += uploadFileBatch(iterator, false);
         }
-        log.debug("End uploading {} unrestricted files for deposit {}", iterator.getIteratedCount(), depositId);
+        log.debug("End uploading {} unrestricted files for deposit {}", count, depositId);
     }
 
     private Iterator<File> getUnrestrictedFilesToUpload() {
         return IteratorUtils.filteredIterator(
             FileUtils.iterateFiles(dataDir.toFile(), null, true),
-            new FileUploadInclusionPredicate(editFiles, dataDir, false));
+            new FileUploadInclusionPredicate(editFiles, dataDir, false, filesToUploadSeparately.keySet()));
     }
 
     private Iterator<File> getRestrictedFilesToUpload() {
         return IteratorUtils.filteredIterator(
             FileUtils.iterateFiles(dataDir.toFile(), null, true),
-            new FileUploadInclusionPredicate(editFiles, dataDir, true));
+            new FileUploadInclusionPredicate(editFiles, dataDir, true, filesToUploadSeparately.keySet()));
     }
 
-    private void uploadFileBatch(PathIterator iterator, boolean restrict) throws IOException, DataverseException {
+    private int uploadFileBatch(PeekingIterator<File> iterator, boolean restrict) throws IOException, DataverseException {
         var tempZipFile = utilityServices.createTempZipFile();
         try {
-            var zipFile = utilityServices.createPathIteratorZipperBuilder(filesInDatasetCache.getAutoRenamedFiles())
+            var zipResult = utilityServices.createChecksummingZipperBuilder(filesInDatasetCache.getAutoRenamedFiles())
                 .rootDir(dataDir)
                 .sourceIterator(iterator)
                 .targetZipFile(tempZipFile)
+                .checksumAlgorithm(checksumAlgorithm)
                 .build()
                 .zip();
-            var fileMeta = new FileMeta();
+            metrics.bytesHashed().mark(zipResult.getBytesHashed());
+            var zipFile = zipResult.getZipFile();
+            var fileMeta = deferTabularIngest ? new NoTabularIngestFileMeta() : new FileMeta();
             fileMeta.setRestricted(restrict);
             log.debug("Start uploading zip file at {} for deposit {}", zipFile, depositId);
-            var addedFileMetaList = dataverseService.addFile(pid, zipFile, fileMeta);
-            log.debug("Uploaded {} files, {} cumulative)", addedFileMetaList.getFiles().size(), iterator.getIteratedCount());
+            var start = System.nanoTime();
+            FileList addedFileMetaList;
+            try {
+                addedFileMetaList = dataverseService.addFile(pid, zipFile, fileMeta);
+            }
+            catch (IOException | DataverseException e) {
+                utilityServices.recordUploadFailure();
+                throw e;
+            }
+            var durationMillis = (System.nanoTime() - start) / 1_000_000;
+            log.debug("Uploaded {} files for deposit {}", addedFileMetaList.getFiles().size(), depositId);
+            var zipFileSize = Files.size(zipFile);
+            utilityServices.recordUploadBatch(addedFileMetaList.getFiles().size(), zipFileSize, durationMillis);
+            metrics.uploadBatchBytes().update(zipFileSize);
+            metrics.uploadBatchFiles().update(addedFileMetaList.getFiles().size());
+            report.recordUploadBatch(addedFileMetaList.getFiles().size(), zipFileSize, durationMillis);
+            verifyChecksums(zipResult, addedFileMetaList);
             for (var fm : addedFileMetaList.getFiles()) {
-                filesInDatasetCache.put(fm); // auto-rename is done by PathIteratorZipper
+                filesInDatasetCache.put(fm); // auto-rename is done by ChecksummingZipper
+                recordDeferredTabularIngest(fm);
             }
+            return addedFileMetaList.getFiles().size();
         }
         finally {
             Files.deleteIfExists(tempZipFile);
         }
     }
 
+    private void verifyChecksums(ChecksummingZipper.Result zipResult, FileList addedFileMetaList) {
+        for (var fm : addedFileMetaList.getFiles()) {
+            verifyChecksum(fm, zipResult.getChecksumAlgorithm(), zipResult.getChecksums().get(getPath(fm)));
+        }
+    }
+
+    private void verifyChecksum(FileMeta fm, String algorithm, String computed) {
+        var checksum = fm.getDataFile().getChecksum();
+        if (checksum == null) {
+            return;
+        }
+        if (!algorithm.equals(checksum.getType())) {
+            if (CHECKSUM_ALGORITHMS.contains(checksum.getType())) {
+                log.info("Dataverse uses checksum algorithm {}; switching from {} for deposit {}", checksum.getType(), algorithm, depositId);
+                checksumAlgorithm = checksum.getType();
+            }
+            return;
+        }
+        var path = getPath(fm);
+        if (computed == null) {
+            // Dataverse changed the name of the file, e.g., because of a duplicate; it cannot be matched with the zip entry
+            log.debug("Cannot verify checksum of {}: not found in zip file", path);
+            return;
+        }
+        if (!computed.equalsIgnoreCase(checksum.getValue())) {
+            throw new IllegalStateException(String.format("Checksum mismatch for %s: computed %s %s, but Dataverse reported %s", path, checksum.getType(), computed,
+                checksum.getValue()));
+        }
+    }
+
+    private void recordDeferredTabularIngest(FileMeta fileMeta) {
+        if (isTabular(fileMeta)) {
+            fileIndexReusable = false;
+        }
+        if (deferTabularIngest && isTabular(fileMeta)) {
+            deferredTabularIngestFileIds.add(fileMeta.getDataFile().getId());
+            report.recordDeferredTabularIngest(fileMeta.getDataFile().getId());
+        }
+    }
+
+    private boolean isTabular(FileMeta fileMeta) {
+        var label = fileMeta.getLabel();
+        var dot = label.lastIndexOf('.');
+        return dot >= 0 && TABULAR_EXTENSIONS.contains(label.substring(dot + 1).toLowerCase(Locale.ROOT));
+    }
+
     private void moveFiles() throws IOException, DataverseException {
         log.debug("Start moving files {} for deposit {}", editFiles.getMoveFiles().size(), depositId);
         for (var move : editFiles.getMoveFiles()) {
             var fileMeta = filesInDatasetCache.get(move.getFrom());
             fileMeta = filesInDatasetCache.createFileMetaForMovedFile(move.getTo(), fileMeta);
-            dataverseService.updateFileMetadata(fileMeta.getDataFile().getId(), fileMeta);
+            dataverseService.updateFileMetadata(pid, fileMeta.getDataFile().getId(), fileMeta);
             filesInDatasetCache.remove(move.getFrom());
             filesInDatasetCache.put(fileMeta); // auto-rename is done by getMovedFile
         }
@@ -199,9 +483,24 @@ public class FilesEditor {
 
     private void updateFileMetas() throws IOException, DataverseException {
         log.debug("Start updating {} file metas for deposit {}", editFiles.getUpdateFileMetas().size(), depositId);
+        // Sent one by one for the same reason as the deletions
         for (var fileMeta : editFiles.getUpdateFileMetas()) {
-            var id = filesInDatasetCache.get(getPath(fileMeta)).getDataFile().getId();
-            dataverseService.updateFileMetadata(id, fileMeta);
+            if (filesUploadedWithMetadata.contains(getPath(fileMeta))) {
+                continue;
+            }
+            var fileInDataset = filesInDatasetCache.get(getPath(fileMeta));
+            dataverseService.updateFileMetadata(pid, fileInDataset.getDataFile().getId(), fileMeta);
+            // Keep the cache in line with the dataset; Dataverse only changes the fields that are in the update
+            if (fileMeta.getDescription() != null) {
+                fileInDataset.setDescription(fileMeta.getDescription());
+            }
+            if (fileMeta.getCategories() != null) {
+                fileInDataset.setCategories(fileMeta.getCategories());
+            }
+            if (fileMeta.getRestricted() != null) {
+                fileInDataset.setRestricted(fileMeta.getRestricted());
+            }
+            filesInDatasetCache.put(fileInDataset);
         }
         log.debug("End updating file metadata for deposit {}", depositId);
     }
@@ -25,11 +25,16 @@ import nl.knaw.dans.lib.dataverse.model.file.FileMeta;
 import java.io.IOException;
 import java.util.Collections;
 import java.util.Map;
+import java.util.Optional;
 
 /**
  * <p>
  * Keeps track of the FileMeta objects of files in a dataset. The cache is initialized by downloading the files from the dataset.
  * </p>
+ * <p>
+ * The file metadata is stored in a compact {@link FileIndex}, so that datasets with many files do not take up large amounts of memory for the duration of the deposit. The FileMeta objects
+ * returned by the cache are copies; changes to them must be stored with {@link #put(FileMeta)}.
+ * </p>
  */
 @Slf4j
 public class FilesInDatasetCache {
@@ -37,8 +42,7 @@ public class FilesInDatasetCache {
     /*
      * Key: filepath after auto-rename / Value: FileMeta object
      */
-    @Getter
-    private final Map<String, FileMeta> filesInDataset = new java.util.HashMap<>();
+    private FileIndex filesInDataset = new FileIndex();
     @Getter
     private final Map<String, String> autoRenamedFiles;
     private boolean initialized = false;
@@ -48,6 +52,15 @@ public class FilesInDatasetCache {
         this.autoRenamedFiles = Collections.unmodifiableMap(autoRenamedFiles);
     }
 
+    /**
+     * Returns a read-only view of the files in the dataset, keyed by filepath after auto-rename.
+     *
+     * @return map from filepath to FileMeta object
+     */
+    public Map<String, FileMeta> getFilesInDataset() {
+        return filesInDataset.asMap();
+    }
+
     /**
      * Returns the cached FileMeta object for the given filepath. The filepath will be auto-renamed if it is in the renamedFiles map, so the local path from the bag is used.
      *
@@ -114,9 +127,34 @@ public class FilesInDatasetCache {
         for (var file : files) {
             filesInDataset.put(getPath(file), file);
         }
+        log.debug("Indexed {} files of dataset {}", filesInDataset.size(), pid);
         initialized = true;
     }
 
+    /**
+     * Initializes the cache with a file index that was kept from a previous deposit for the same dataset, instead of downloading the file metadata. This method can only be called on a cache that
+     * is not yet initialized.
+     *
+     * @param fileIndex the file index
+     * @throws IllegalStateException if the cache is already initialized
+     */
+    void initialize(@NonNull FileIndex fileIndex) {
+        if (initialized) {
+            throw new IllegalStateException("Cache already initialized");
+        }
+        filesInDataset = fileIndex;
+        initialized = true;
+    }
+
+    /**
+     * Returns the file index, if the cache was initialized.
+     *
+     * @return the file index
+     */
+    Optional<FileIndex> getFileIndex() {
+        return initialized ? Optional.of(filesInDataset) : Optional.empty();
+    }
+
     private String getPath(@NonNull FileMeta file) {
         var dataversePath = new DataversePath(file.getDirectoryLabel(), file.getLabel());
         return dataversePath.toString();
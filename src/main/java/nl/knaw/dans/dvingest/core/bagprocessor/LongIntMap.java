@@ -0,0 +1,130 @@
+/*
+ * Copyright (C) 2024 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.dvingest.core.bagprocessor;
+
+import java.util.Arrays;
+
+/**
+ * A hash table from long keys to non-negative int values that does not box its keys or values. It uses open addressing with linear probing, and removes entries by shifting the entries after
+ * them back, so that no tombstones are left behind.
+ */
+class LongIntMap {
+    private static final int FREE = -1;
+
+    private long[] keys;
+    private int[] values;
+    private int mask;
+    private int size;
+
+    LongIntMap() {
+        allocate(16);
+    }
+
+    /**
+     * Returns the value for the key.
+     *
+     * @param key the key
+     * @return the value, or -1 if the key is not in the map
+     */
+    int get(long key) {
+        var slot = slotOf(key);
+        return slot == -1 ? -1 : values[slot];
+    }
+
+    void put(long key, int value) {
+        if (value < 0) {
+            throw new IllegalArgumentException("value must not be negative");
+        }
+        if ((size + 1) * 4L > keys.length * 3L) {
+            rehash(keys.length * 2);
+        }
+        var slot = home(key);
+        while (values[slot] != FREE) {
+            if (keys[slot] == key) {
+                values[slot] = value;
+                return;
+            }
+            slot = (slot + 1) & mask;
+        }
+        keys[slot] = key;
+        values[slot] = value;
+        size++;
+    }
+
+    void remove(long key) {
+        var free = slotOf(key);
+        if (free == -1) {
+            return;
+        }
+        values[free] = FREE;
+        size--;
+        // Move back the entries that would no longer be found because of the new gap in their probe sequence
+        var slot = free;
+        while (true) {
+            slot = (slot + 1) & mask;
+            if (values[slot] == FREE) {
+                return;
+            }
+            var home = home(keys[slot]);
+            var reachableWithoutGap = free < slot ? free < home && home <= slot : free < home || home <= slot;
+            if (!reachableWithoutGap) {
+                keys[free] = keys[slot];
+                values[free] = values[slot];
+                values[slot] = FREE;
+                free = slot;
+            }
+        }
+    }
+
+    int size() {
+        return size;
+    }
+
+    private int slotOf(long key) {
+        var slot = home(key);
+        while (values[slot] != FREE) {
+            if (keys[slot] == key) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    private int home(long key) {
+        var hash = key * 0x9E3779B97F4A7C15L;
+        return (int) (hash ^ (hash >>> 32)) & mask;
+    }
+
+    private void rehash(int capacity) {
+        var oldKeys = keys;
+        var oldValues = values;
+        allocate(capacity);
+        size = 0;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldValues[i] != FREE) {
+                put(oldKeys[i], oldValues[i]);
+            }
+        }
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        values = new int[capacity];
+        Arrays.fill(values, FREE);
+        mask = capacity - 1;
+    }
+}
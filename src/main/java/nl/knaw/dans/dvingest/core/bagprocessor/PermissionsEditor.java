@@ -15,8 +15,11 @@
  */
 package nl.knaw.dans.dvingest.core.bagprocessor;
 
+import lombok.NonNull;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import nl.knaw.dans.dvingest.core.service.AsyncDataverseService;
+import nl.knaw.dans.dvingest.core.service.BlockingDataverseService;
 import nl.knaw.dans.dvingest.core.service.DataverseService;
 import nl.knaw.dans.dvingest.core.yaml.EditPermissions;
 import nl.knaw.dans.lib.dataverse.DataverseException;
@@ -32,6 +35,17 @@ public class PermissionsEditor {
     private final DataverseService dataverseService;
 
     private String pid;
+    // Used to send all additions, and all deletions, at once; if null, they are sent one by one
+    private AsyncDataverseService asyncDataverseService;
+
+    /**
+     * Sends the role assignments to add, and those to delete, concurrently through the given service.
+     *
+     * @param asyncDataverseService the asynchronous Dataverse service
+     */
+    void sendRequestsConcurrently(@NonNull AsyncDataverseService asyncDataverseService) {
+        this.asyncDataverseService = asyncDataverseService;
+    }
 
     public void editPermissions(String pid) throws IOException, DataverseException {
         if (editPermissions == null) {
@@ -48,18 +62,32 @@ public class PermissionsEditor {
 
     private void addRoleAssignments() throws IOException, DataverseException {
         log.debug("Start adding {} role assignments for deposit {}", depositId, editPermissions.getAddRoleAssignments().size());
-        for (var roleAssignment : editPermissions.getAddRoleAssignments()) {
-            log.debug("Adding role assignment: {}", roleAssignment);
-            dataverseService.addRoleAssignment(pid, roleAssignment);
+        if (asyncDataverseService != null) {
+            BlockingDataverseService.awaitAll(editPermissions.getAddRoleAssignments().stream()
+                .map(roleAssignment -> asyncDataverseService.addRoleAssignment(pid, roleAssignment))
+                .toList());
+        }
+        else {
+            for (var roleAssignment : editPermissions.getAddRoleAssignments()) {
+                log.debug("Adding role assignment: {}", roleAssignment);
+                dataverseService.addRoleAssignment(pid, roleAssignment);
+            }
         }
         log.debug("End adding role assignments for deposit {}", depositId);
     }
 
     private void deleteRoleAssignments() throws IOException, DataverseException {
         log.debug("Start deleting {} role assignments for deposit {}", depositId, editPermissions.getDeleteRoleAssignments().size());
-        for (var roleAssignment : editPermissions.getDeleteRoleAssignments()) {
-            log.debug("Deleting role assignment: {}", roleAssignment);
-            dataverseService.deleteRoleAssignment(pid, roleAssignment);
+        if (asyncDataverseService != null) {
+            BlockingDataverseService.awaitAll(editPermissions.getDeleteRoleAssignments().stream()
+                .map(roleAssignment -> asyncDataverseService.deleteRoleAssignment(pid, roleAssignment))
+                .toList());
+        }
+        else {
+            for (var roleAssignment : editPermissions.getDeleteRoleAssignments()) {
+                log.debug("Deleting role assignment: {}", roleAssignment);
+                dataverseService.deleteRoleAssignment(pid, roleAssignment);
+            }
         }
         log.debug("End deleting role assignments for deposit {}", depositId);
     }
@@ -17,6 +17,7 @@ package nl.knaw.dans.dvingest.core.bagprocessor;
 
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import nl.knaw.dans.dvingest.core.report.DepositReport;
 import nl.knaw.dans.dvingest.core.service.DataverseService;
 import nl.knaw.dans.dvingest.core.yaml.UpdateState;
 import nl.knaw.dans.lib.dataverse.DataverseException;
@@ -31,6 +32,7 @@ public class StateUpdater {
     private final UUID depositId;
     private final UpdateState updateState;
     private final DataverseService dataverseService;
+    private final DepositReport report;
 
     private String pid;
 
@@ -46,6 +48,9 @@ public class StateUpdater {
         else if ("publish-minor".equals(updateState.getAction())) {
             publishVersion(UpdateType.minor);
         }
+        else if ("release-migrated".equals(updateState.getAction())) {
+            releaseMigrated();
+        }
         else if ("submit-for-review".equals(updateState.getAction())) {
             // TODO: Implement submit for review
             throw new UnsupportedOperationException("Submit for review not yet implemented");
@@ -57,9 +62,23 @@ public class StateUpdater {
 
     private void publishVersion(UpdateType updateType) throws DataverseException, IOException {
         log.debug("Start publishing version for deposit {}", depositId);
-        dataverseService.publishDataset(pid, updateType);
-        dataverseService.waitForState(pid, "RELEASED");
+        try (var ignored = report.startPhase("publish")) {
+            dataverseService.publishDataset(pid, updateType);
+        }
+        try (var ignored = report.startPhase("publish-wait")) {
+            dataverseService.waitForState(pid, "RELEASED");
+        }
         log.debug("End publishing version for deposit {}", depositId);
     }
 
+    private void releaseMigrated() throws DataverseException, IOException {
+        if (updateState.getReleaseDate() == null) {
+            throw new IllegalArgumentException("Release date is required for action release-migrated");
+        }
+        log.debug("Start releasing migrated dataset for deposit {}", depositId);
+        try (var ignored = report.startPhase("publish")) {
+            dataverseService.releaseMigratedDataset(pid, updateState.getReleaseDate());
+        }
+        log.debug("End releasing migrated dataset for deposit {}", depositId);
+    }
 }
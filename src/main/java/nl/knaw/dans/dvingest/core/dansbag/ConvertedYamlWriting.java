@@ -0,0 +1,29 @@
+/*
+ * Copyright (C) 2024 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.dvingest.core.dansbag;
+
+/**
+ * When to write the YAML files of a converted DANS bag. The bag processor always receives the converted metadata in memory; the files are only a record of
+ * the conversion.
+ */
+public enum ConvertedYamlWriting {
+    // Write the files before processing the bag
+    SYNC,
+    // Write the files while the bag is being processed; the deposit is not moved to the outbox before they are written
+    ASYNC,
+    // Do not write the files
+    NONE
+}
@@ -19,6 +19,8 @@ import nl.knaw.dans.dvingest.core.dansbag.deposit.DansBagDeposit;
 import nl.knaw.dans.dvingest.core.dansbag.exception.InvalidDepositException;
 import nl.knaw.dans.dvingest.core.yaml.EditFiles;
 import nl.knaw.dans.dvingest.core.yaml.EditPermissions;
+import nl.knaw.dans.dvingest.core.yaml.Init;
+import nl.knaw.dans.dvingest.core.yaml.UpdateState;
 import nl.knaw.dans.lib.dataverse.DataverseException;
 import nl.knaw.dans.lib.dataverse.model.dataset.Dataset;
 import nl.knaw.dans.lib.dataverse.model.dataset.DatasetVersion;
@@ -77,6 +79,25 @@ public interface DansBagMappingService {
      */
     EditPermissions getEditPermissionsFromDansDeposit(DansBagDeposit dansDeposit, String updatesDataset);
 
+    /**
+     * Returns the init instructions for a new dataset. In migration with native import, the dataset is imported with the PID from the vault metadata. In all
+     * other cases, this method returns null.
+     *
+     * @param dansDeposit    the DANS deposit
+     * @param updatesDataset the DOI of the dataset that needs to be updated, or null if the deposit is to create a new dataset
+     * @return the init instructions, or null if Dataverse must mint the PID
+     */
+    Init getInitFromDansDeposit(DansBagDeposit dansDeposit, String updatesDataset);
+
+    /**
+     * Returns the state that the dataset version must be put in after it has been created. In migration with native import, this is a release of the migrated
+     * dataset with the original publication date; otherwise it is a major version publication.
+     *
+     * @param dansDeposit the DANS deposit
+     * @return the update state
+     */
+    UpdateState getUpdateStateFromDansDeposit(DansBagDeposit dansDeposit);
+
     /**
      * Packages the original metadata of the DANS bag into a ZIP file and returns the local path to the ZIP file.
      *
@@ -17,12 +17,14 @@ package nl.knaw.dans.dvingest.core.dansbag;
 
 import gov.loc.repository.bagit.reader.BagReader;
 import lombok.extern.slf4j.Slf4j;
+import nl.knaw.dans.dvingest.core.bagprocessor.DatasetFileIndexCache;
 import nl.knaw.dans.dvingest.core.dansbag.deposit.DansBagDeposit;
 import nl.knaw.dans.dvingest.core.dansbag.deposit.DansBagDepositReader;
 import nl.knaw.dans.dvingest.core.dansbag.deposit.DansBagDepositReaderImpl;
 import nl.knaw.dans.dvingest.core.dansbag.deposit.FileInfo;
 import nl.knaw.dans.dvingest.core.dansbag.exception.InvalidDepositException;
 import nl.knaw.dans.dvingest.core.dansbag.mapper.DepositToDvDatasetMetadataMapper;
+import nl.knaw.dans.dvingest.core.dansbag.mapper.mapping.Amd;
 import nl.knaw.dans.dvingest.core.dansbag.mapper.mapping.FileElement;
 import nl.knaw.dans.dvingest.core.dansbag.xml.XPathEvaluator;
 import nl.knaw.dans.dvingest.core.dansbag.xml.XmlReader;
@@ -30,6 +32,8 @@ import nl.knaw.dans.dvingest.core.dansbag.xml.XmlReaderImpl;
 import nl.knaw.dans.dvingest.core.service.DataverseService;
 import nl.knaw.dans.dvingest.core.yaml.EditFiles;
 import nl.knaw.dans.dvingest.core.yaml.EditPermissions;
+import nl.knaw.dans.dvingest.core.yaml.Init;
+import nl.knaw.dans.dvingest.core.yaml.UpdateState;
 import nl.knaw.dans.lib.dataverse.DataverseException;
 import nl.knaw.dans.lib.dataverse.model.RoleAssignment;
 import nl.knaw.dans.lib.dataverse.model.dataset.Dataset;
@@ -67,9 +71,24 @@ public class DansBagMappingServiceImpl implements DansBagMappingService {
     private final SupportedLicenses supportedLicenses;
     private final Pattern fileExclusionPattern;
     private final List<String> embargoExclusions;
+    private final boolean nativeImport;
+    private final DatasetFileIndexCache datasetFileIndexCache;
 
     public DansBagMappingServiceImpl(DepositToDvDatasetMetadataMapper depositToDvDatasetMetadataMapper, DataverseService dataverseService, SupportedLicenses supportedLicenses,
         Pattern fileExclusionPattern, List<String> embargoExclusions) {
+        this(depositToDvDatasetMetadataMapper, dataverseService, supportedLicenses, fileExclusionPattern, embargoExclusions, false);
+    }
+
+    public DansBagMappingServiceImpl(DepositToDvDatasetMetadataMapper depositToDvDatasetMetadataMapper, DataverseService dataverseService, SupportedLicenses supportedLicenses,
+        Pattern fileExclusionPattern, List<String> embargoExclusions, boolean nativeImport) {
+        this(depositToDvDatasetMetadataMapper, dataverseService, supportedLicenses, fileExclusionPattern, embargoExclusions, nativeImport, null);
+    }
+
+    public DansBagMappingServiceImpl(DepositToDvDatasetMetadataMapper depositToDvDatasetMetadataMapper, DataverseService dataverseService, SupportedLicenses supportedLicenses,
+        Pattern fileExclusionPattern, List<String> embargoExclusions, boolean nativeImport, DatasetFileIndexCache datasetFileIndexCache) {
+        if (nativeImport && !depositToDvDatasetMetadataMapper.isMigration()) {
+            throw new IllegalArgumentException("Native import is only supported for migration");
+        }
         this.depositToDvDatasetMetadataMapper = depositToDvDatasetMetadataMapper;
         this.dataverseService = dataverseService;
         BagReader bagReader = new BagReader();
@@ -79,6 +98,8 @@ public class DansBagMappingServiceImpl implements DansBagMappingService {
         this.supportedLicenses = supportedLicenses;
         this.fileExclusionPattern = fileExclusionPattern;
         this.embargoExclusions = embargoExclusions;
+        this.nativeImport = nativeImport;
+        this.datasetFileIndexCache = datasetFileIndexCache;
     }
 
     @Override
@@ -156,7 +177,8 @@ public class DansBagMappingServiceImpl implements DansBagMappingService {
             return new EditFilesComposer(files, dateAvailable, fileExclusionPattern, embargoExclusions).composeEditFiles();
         }
         else {
-            return new EditFilesComposerForUpdate(files, dateAvailable, updatesDataset, fileExclusionPattern, embargoExclusions, dataverseService).composeEditFiles();
+            return new EditFilesComposerForUpdate(files, dateAvailable, updatesDataset, fileExclusionPattern, embargoExclusions, dataverseService,
+                ManifestUtil.getPayloadChecksumsByAlgorithm(dansDeposit.getBag()), datasetFileIndexCache).composeEditFiles();
         }
     }
 
@@ -176,6 +198,33 @@ public class DansBagMappingServiceImpl implements DansBagMappingService {
         }
     }
 
+    @Override
+    public Init getInitFromDansDeposit(DansBagDeposit dansDeposit, String updatesDataset) {
+        if (!nativeImport || updatesDataset != null) {
+            return null;
+        }
+        var init = new Init();
+        init.setImportPid(dansDeposit.getVaultMetadata().getPid());
+        return init;
+    }
+
+    @Override
+    public UpdateState getUpdateStateFromDansDeposit(DansBagDeposit dansDeposit) {
+        var updateState = new UpdateState();
+        if (nativeImport) {
+            if (dansDeposit.getAmd() == null) {
+                throw new IllegalArgumentException("Migration deposit without amd.xml; cannot determine the publication date");
+            }
+            updateState.setAction("release-migrated");
+            updateState.setReleaseDate(Amd.toPublicationDate(dansDeposit.getAmd())
+                .orElseThrow(() -> new IllegalArgumentException("No publication date found in amd.xml")));
+        }
+        else {
+            updateState.setAction("publish-major");
+        }
+        return updateState;
+    }
+
     @Override
     public String packageOriginalMetadata(DansBagDeposit dansDeposit) throws IOException {
         // Zip the contents of the metadata directory of the bag
@@ -16,11 +16,16 @@
 package nl.knaw.dans.dvingest.core.dansbag;
 
 import lombok.AllArgsConstructor;
+import nl.knaw.dans.dvingest.core.DataverseIngestBag;
 import nl.knaw.dans.dvingest.core.dansbag.deposit.DansBagDeposit;
 import nl.knaw.dans.dvingest.core.service.YamlService;
+import nl.knaw.dans.dvingest.core.yaml.EditFiles;
 import nl.knaw.dans.dvingest.core.yaml.EditFilesRoot;
+import nl.knaw.dans.dvingest.core.yaml.EditPermissions;
 import nl.knaw.dans.dvingest.core.yaml.EditPermissionsRoot;
+import nl.knaw.dans.dvingest.core.yaml.Init;
 import nl.knaw.dans.dvingest.core.yaml.UpdateState;
+import nl.knaw.dans.lib.dataverse.model.dataset.Dataset;
 import nl.knaw.dans.lib.dataverse.model.dataset.DatasetVersion;
 
 import java.io.IOException;
@@ -33,21 +38,60 @@ public class DansDepositConverter {
     private final DansBagMappingService mappingService;
     private final YamlService yamlService;
 
+    /**
+     * The Dataverse ingest metadata that a DANS bag is converted to. The objects can be handed to the bag processor directly, see
+     * {@link DataverseIngestBag#setConvertedYaml(Init, Dataset, EditFiles, EditPermissions, UpdateState)}, and written to the YAML files of the bag with
+     * {@link #writeYaml(Result)}.
+     *
+     * @param init            the contents of init.yml, or null if there is none
+     * @param dataset         the contents of dataset.yml
+     * @param editFiles       the contents of edit-files.yml
+     * @param editPermissions the contents of edit-permissions.yml
+     * @param updateState     the contents of update-state.yml
+     */
+    public record Result(Init init, Dataset dataset, EditFiles editFiles, EditPermissions editPermissions, UpdateState updateState) {
+    }
+
+    /**
+     * Converts the deposit and writes the result to the YAML files in the bag.
+     *
+     * @throws IOException if the original metadata or the YAML files could not be written
+     */
     public void run() throws IOException {
+        writeYaml(convert());
+    }
+
+    /**
+     * Converts the deposit without writing the YAML files. The original metadata is packaged in the bag, because it is uploaded as a file.
+     *
+     * @return the converted metadata
+     * @throws IOException if the original metadata could not be packaged
+     */
+    public Result convert() throws IOException {
         // TODO: pass to getEditFilesFromDansDeposit so that update-deposit can register it as a replaced file
         var originalMetadataPath = mappingService.packageOriginalMetadata(dansDeposit);
 
-        var dataset = mappingService.getDatasetMetadataFromDansDeposit(dansDeposit, currentMetadata);
-        yamlService.writeYaml(dataset, dansDeposit.getBagDir().resolve("dataset.yml"));
-
-        var editFiles = mappingService.getEditFilesFromDansDeposit(dansDeposit, updatesDataset);
-        yamlService.writeYaml(new EditFilesRoot(editFiles), dansDeposit.getBagDir().resolve("edit-files.yml"));
-
-        var editPermissions = mappingService.getEditPermissionsFromDansDeposit(dansDeposit, updatesDataset);
-        yamlService.writeYaml(new EditPermissionsRoot(editPermissions), dansDeposit.getBagDir().resolve("edit-permissions.yml"));
+        return new Result(
+            mappingService.getInitFromDansDeposit(dansDeposit, updatesDataset),
+            mappingService.getDatasetMetadataFromDansDeposit(dansDeposit, currentMetadata),
+            mappingService.getEditFilesFromDansDeposit(dansDeposit, updatesDataset),
+            mappingService.getEditPermissionsFromDansDeposit(dansDeposit, updatesDataset),
+            mappingService.getUpdateStateFromDansDeposit(dansDeposit));
+    }
 
-        var updateState = new UpdateState();
-        updateState.setAction("publish-major");
-        yamlService.writeYaml(updateState, dansDeposit.getBagDir().resolve("update-state.yml"));
+    /**
+     * Writes the converted metadata to the YAML files in the bag.
+     *
+     * @param result the converted metadata
+     * @throws IOException if a file could not be written
+     */
+    public void writeYaml(Result result) throws IOException {
+        if (result.init() != null) {
+            yamlService.writeYaml(result.init(), dansDeposit.getBagDir().resolve(DataverseIngestBag.INIT_YML));
+        }
+        yamlService.writeYaml(result.dataset(), dansDeposit.getBagDir().resolve(DataverseIngestBag.DATASET_YML));
+        yamlService.writeYaml(new EditFilesRoot(result.editFiles()), dansDeposit.getBagDir().resolve(DataverseIngestBag.EDIT_FILES_YML));
+        yamlService.writeYaml(new EditPermissionsRoot(result.editPermissions()), dansDeposit.getBagDir().resolve(DataverseIngestBag.EDIT_PERMISSIONS_YML));
+        yamlService.writeYaml(result.updateState(), dansDeposit.getBagDir().resolve(DataverseIngestBag.UPDATE_STATE_YML));
     }
 }
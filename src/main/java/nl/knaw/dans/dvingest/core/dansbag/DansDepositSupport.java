@@ -32,10 +32,14 @@ import nl.knaw.dans.lib.dataverse.DataverseException;
 import nl.knaw.dans.lib.dataverse.model.dataset.DatasetVersion;
 
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.nio.file.Path;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
 
 @Slf4j
 public class DansDepositSupport implements Deposit {
@@ -47,11 +51,35 @@ public class DansDepositSupport implements Deposit {
     private final YamlService yamlService;
     private final DataverseIngestDeposit ingestDataverseIngestDeposit;
     private final boolean isDansDeposit;
+    private final ConvertedYamlWriting convertedYamlWriting;
+    private final Executor yamlWriteExecutor;
 
     private DansBagDeposit dansDeposit;
+    private CompletableFuture<Void> pendingYamlWrite;
 
     public DansDepositSupport(DataverseIngestDeposit dataverseIngestDeposit, ValidateDansBagService validateDansBagService, DansBagMappingService dansBagMappingService,
         DataverseService dataverseService, YamlService yamlService) {
+        this(dataverseIngestDeposit, validateDansBagService, dansBagMappingService, dataverseService, yamlService, ConvertedYamlWriting.SYNC, null);
+    }
+
+    /**
+     * Creates a DansDepositSupport that hands the converted metadata to the bag processor in memory and writes the YAML files as configured.
+     *
+     * @param dataverseIngestDeposit the deposit
+     * @param validateDansBagService the service to validate the DANS bag
+     * @param dansBagMappingService  the service to map the DANS bag
+     * @param dataverseService       the Dataverse service
+     * @param yamlService            the service to write the YAML files
+     * @param convertedYamlWriting   when to write the YAML files
+     * @param yamlWriteExecutor      the executor that writes the YAML files; only used with {@link ConvertedYamlWriting#ASYNC}
+     */
+    public DansDepositSupport(DataverseIngestDeposit dataverseIngestDeposit, ValidateDansBagService validateDansBagService, DansBagMappingService dansBagMappingService,
+        DataverseService dataverseService, YamlService yamlService, @NonNull ConvertedYamlWriting convertedYamlWriting, Executor yamlWriteExecutor) {
+        if (convertedYamlWriting == ConvertedYamlWriting.ASYNC && yamlWriteExecutor == null) {
+            throw new IllegalArgumentException("yamlWriteExecutor is required for asynchronous writing");
+        }
+        this.convertedYamlWriting = convertedYamlWriting;
+        this.yamlWriteExecutor = yamlWriteExecutor;
         this.validateDansBagService = validateDansBagService;
         this.ingestDataverseIngestDeposit = dataverseIngestDeposit;
         this.dansBagMappingService = dansBagMappingService;
@@ -77,7 +105,11 @@ public class DansDepositSupport implements Deposit {
                     currentMetadata = dataverseService.getDatasetMetadata(updatesDataset);
                 }
                 dansDeposit = dansBagMappingService.readDansDeposit(ingestDataverseIngestDeposit.getLocation());
-                new DansDepositConverter(dansDeposit, updatesDataset, currentMetadata, dansBagMappingService, yamlService).run();
+                var converter = new DansDepositConverter(dansDeposit, updatesDataset, currentMetadata, dansBagMappingService, yamlService);
+                var result = converter.convert();
+                ingestDataverseIngestDeposit.getBags().get(0)
+                    .setConvertedYaml(result.init(), result.dataset(), result.editFiles(), result.editPermissions(), result.updateState());
+                writeConvertedYaml(converter, result);
                 log.info("Conversion successful");
                 return true;
             }
@@ -88,11 +120,51 @@ public class DansDepositSupport implements Deposit {
         return false;
     }
 
+    private void writeConvertedYaml(DansDepositConverter converter, DansDepositConverter.Result result) throws IOException {
+        switch (convertedYamlWriting) {
+            case SYNC -> converter.writeYaml(result);
+            case ASYNC -> pendingYamlWrite = CompletableFuture.runAsync(() -> {
+                try {
+                    converter.writeYaml(result);
+                }
+                catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }, yamlWriteExecutor);
+            case NONE -> log.debug("Not writing the YAML files of the converted deposit");
+        }
+    }
+
+    private void awaitPendingYamlWrite() {
+        if (pendingYamlWrite == null) {
+            return;
+        }
+        try {
+            pendingYamlWrite.get();
+        }
+        catch (ExecutionException e) {
+            // The files are only a record of the conversion, so the deposit is not failed for this
+            log.warn("Failed to write the YAML files of converted deposit {}", getId(), e.getCause());
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.warn("Interrupted while writing the YAML files of converted deposit {}", getId());
+        }
+        finally {
+            pendingYamlWrite = null;
+        }
+    }
+
     @Override
     public String getUpdatesDataset() {
         return ingestDataverseIngestDeposit.getUpdatesDataset();
     }
 
+    @Override
+    public Boolean getDeferTabularIngest() {
+        return ingestDataverseIngestDeposit.getDeferTabularIngest();
+    }
+
     @Override
     public List<DataverseIngestBag> getBags() throws IOException {
         return ingestDataverseIngestDeposit.getBags();
@@ -113,7 +185,7 @@ public class DansDepositSupport implements Deposit {
         try {
             var bag = ingestDataverseIngestDeposit.getBags().get(0);
             var action = bag.getUpdateState().getAction();
-            if (action.startsWith("publish")) {
+            if (action.startsWith("publish") || action.equals("release-migrated")) {
                 try {
                     var nbn = dataverseService.getDatasetUrnNbn(pid);
                     ingestDataverseIngestDeposit.updateProperties(Map.of(
@@ -160,6 +232,8 @@ public class DansDepositSupport implements Deposit {
 
     @Override
     public void moveTo(Path processed) throws IOException {
+        // The files must be complete before the deposit leaves the inbox
+        awaitPendingYamlWrite();
         ingestDataverseIngestDeposit.moveTo(processed);
     }
 
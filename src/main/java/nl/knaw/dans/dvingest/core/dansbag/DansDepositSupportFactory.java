@@ -27,9 +27,11 @@ public interface DansDepositSupportFactory {
      * Create a DansDepositSupport object for the given deposit. The object implements the {@link Deposit} interface, implementing the appropriate methods and forwarding the others to call the
      * original deposit. If DANS deposit support is disabled, the deposit is returned as is.
      *
-     * @param deposit the deposit
+     * @param deposit                the deposit
+     * @param onlyConvertDansDeposit whether the deposit is only converted, so that the converted YAML files are the result and must be written before the
+     *                               conversion returns
      * @return the DansDepositSupport object
      */
-    Deposit addDansDepositSupportIfEnabled(DataverseIngestDeposit deposit);
+    Deposit addDansDepositSupportIfEnabled(DataverseIngestDeposit deposit, boolean onlyConvertDansDeposit);
 
 }
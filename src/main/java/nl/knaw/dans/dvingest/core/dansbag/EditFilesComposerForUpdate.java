@@ -16,6 +16,7 @@
 package nl.knaw.dans.dvingest.core.dansbag;
 
 import lombok.extern.slf4j.Slf4j;
+import nl.knaw.dans.dvingest.core.bagprocessor.DatasetFileIndexCache;
 import nl.knaw.dans.dvingest.core.bagprocessor.FilesInDatasetCache;
 import nl.knaw.dans.dvingest.core.dansbag.deposit.FileInfo;
 import nl.knaw.dans.dvingest.core.service.DataverseService;
@@ -23,14 +24,20 @@ import nl.knaw.dans.dvingest.core.yaml.EditFiles;
 import nl.knaw.dans.dvingest.core.yaml.FromTo;
 import nl.knaw.dans.lib.dataverse.DataverseException;
 import nl.knaw.dans.lib.dataverse.model.file.FileMeta;
+import org.apache.commons.codec.digest.DigestUtils;
 
 import java.io.IOException;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.time.Instant;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 
@@ -39,33 +46,45 @@ import static nl.knaw.dans.dvingest.core.dansbag.SetUtils.union;
 
 @Slf4j
 public class EditFilesComposerForUpdate extends EditFilesComposer {
+    private static final String SHA1 = "SHA-1";
+
     private final String updatesDatasetPid;
     private final DataverseService dataverseService;
+    // From message digest algorithm name to a lookup from payload path (relative to the data directory) to checksum in the payload manifest of the bag, or null if there is none
+    private final Function<String, Function<Path, String>> payloadChecksumsByAlgorithm;
+    // If not null, the file index kept from the previous deposit for the same dataset is used instead of downloading the file list
+    private final DatasetFileIndexCache datasetFileIndexCache;
+    // Checksums computed locally for algorithms that have no payload manifest in the bag
+    private final Map<String, Map<Path, String>> computedChecksumsByAlgorithm = new ConcurrentHashMap<>();
 
     public EditFilesComposerForUpdate(Map<Path, FileInfo> files, Instant dateAvailable, String updatesDatasetPid, Pattern fileExclusionPattern, List<String> embargoExclusions,
         DataverseService dataverseService) {
+        this(files, dateAvailable, updatesDatasetPid, fileExclusionPattern, embargoExclusions, dataverseService, algorithm -> null);
+    }
+
+    public EditFilesComposerForUpdate(Map<Path, FileInfo> files, Instant dateAvailable, String updatesDatasetPid, Pattern fileExclusionPattern, List<String> embargoExclusions,
+        DataverseService dataverseService, Function<String, Function<Path, String>> payloadChecksumsByAlgorithm) {
+        this(files, dateAvailable, updatesDatasetPid, fileExclusionPattern, embargoExclusions, dataverseService, payloadChecksumsByAlgorithm, null);
+    }
+
+    public EditFilesComposerForUpdate(Map<Path, FileInfo> files, Instant dateAvailable, String updatesDatasetPid, Pattern fileExclusionPattern, List<String> embargoExclusions,
+        DataverseService dataverseService, Function<String, Function<Path, String>> payloadChecksumsByAlgorithm, DatasetFileIndexCache datasetFileIndexCache) {
         super(files, dateAvailable, fileExclusionPattern, embargoExclusions);
         this.updatesDatasetPid = updatesDatasetPid;
         this.dataverseService = dataverseService;
+        this.payloadChecksumsByAlgorithm = payloadChecksumsByAlgorithm;
+        this.datasetFileIndexCache = datasetFileIndexCache;
     }
 
     @Override
     public EditFiles composeEditFiles() {
         var pathFileInfoMap = files;
         var renamedFiles = getAutoRenameMap(pathFileInfoMap);
-        // TODO: this should be a read-only variant of the cache
-        FilesInDatasetCache filesInDatasetCache = new FilesInDatasetCache(dataverseService, renamedFiles);
-        try {
-            filesInDatasetCache.downloadFromDataset(updatesDatasetPid);
-        }
-        catch (IOException | DataverseException e) {
-            log.error("Could not download files from dataset with pid {}", updatesDatasetPid, e);
-        }
         var editFiles = new EditFiles();
 
         // move old paths to new paths
         // Convert from Path to String
-        var filesInDataset = filesInDatasetCache.getFilesInDataset().entrySet().stream()
+        var filesInDataset = getFilesInDataset(renamedFiles).entrySet().stream()
             .collect(Collectors.toMap(e -> Path.of(e.getKey()), Map.Entry::getValue));
         var oldToNewPathMovedFiles = getOldToNewPathOfFilesToMove(filesInDataset, pathFileInfoMap);
         var fileMovementFromTos = oldToNewPathMovedFiles.entrySet().stream()
@@ -92,9 +111,10 @@ public class EditFilesComposerForUpdate extends EditFilesComposer {
          * (2)B -> .. (delete)
          *
          */
+        var newPathsOfMovedFiles = new HashSet<>(oldToNewPathMovedFiles.values());
         var fileReplacementCandidates = filesInDataset.entrySet().stream()
             .filter(pathToFileInfoEntry -> !oldToNewPathMovedFiles.containsKey(pathToFileInfoEntry.getKey()))
-            .filter(pathToFileInfoEntry -> !oldToNewPathMovedFiles.containsValue(pathToFileInfoEntry.getKey())) // TODO in the OG version, this was a Set; check what performance is like
+            .filter(pathToFileInfoEntry -> !newPathsOfMovedFiles.contains(pathToFileInfoEntry.getKey()))
             .collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue));
 
         var filesToReplace = getFilesToReplace(pathFileInfoMap, fileReplacementCandidates);
@@ -106,7 +126,6 @@ public class EditFilesComposerForUpdate extends EditFilesComposer {
          * However, if a file is moved/renamed to a path that was also present in the latest version, then the old file at that path must first be deleted
          * (and must therefore NOT be included in candidateRemainingFiles). Otherwise, we'll end up trying to use an existing (directoryLabel, label) pair.
          */
-        var newPathsOfMovedFiles = new HashSet<>(oldToNewPathMovedFiles.values());
         var candidateRemainingFiles = diff(pathFileInfoMap.keySet(), newPathsOfMovedFiles);
 
         /*
@@ -149,16 +168,43 @@ public class EditFilesComposerForUpdate extends EditFilesComposer {
     }
 
 
+    private Map<String, FileMeta> getFilesInDataset(Map<String, String> renamedFiles) {
+        try {
+            if (datasetFileIndexCache != null) {
+                var cachedFiles = datasetFileIndexCache.peek(updatesDatasetPid);
+                if (cachedFiles.isPresent()) {
+                    return cachedFiles.get();
+                }
+            }
+            // TODO: this should be a read-only variant of the cache
+            FilesInDatasetCache filesInDatasetCache = new FilesInDatasetCache(dataverseService, renamedFiles);
+            filesInDatasetCache.downloadFromDataset(updatesDatasetPid);
+            return filesInDatasetCache.getFilesInDataset();
+        }
+        catch (IOException | DataverseException e) {
+            log.error("Could not download files from dataset with pid {}", updatesDatasetPid, e);
+            return Map.of();
+        }
+    }
+
     private Set<Path> getFilesToReplace(Map<Path, FileInfo> pathToFileInfo, Map<Path, FileMeta> fileReplacementCandidates) {
 
         var intersection = SetUtils.intersection(pathToFileInfo.keySet(), fileReplacementCandidates.keySet());
 
         log.debug("Intersection paths for replacing = {}", intersection);
 
-        return intersection.stream()
-            .filter(p -> !pathToFileInfo.get(p).getChecksum().equals(fileReplacementCandidates.get(p).getDataFile().getChecksum().getValue()))
-            .collect(Collectors.toSet());
+        var candidatesByAlgorithm = fileReplacementCandidates.entrySet().stream()
+            .filter(e -> intersection.contains(e.getKey()))
+            .collect(Collectors.groupingBy(e -> getChecksumAlgorithm(e.getValue()), Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue)));
 
+        var filesToReplace = new HashSet<Path>();
+        for (var entry : candidatesByAlgorithm.entrySet()) {
+            var depositChecksums = getDepositChecksums(entry.getKey(), pathToFileInfo, entry.getValue().values());
+            entry.getValue().entrySet().stream()
+                .filter(e -> !e.getValue().getDataFile().getChecksum().getValue().equals(depositChecksums.get(e.getKey())))
+                .forEach(e -> filesToReplace.add(e.getKey()));
+        }
+        return filesToReplace;
     }
 
     /**
@@ -166,32 +212,106 @@ public class EditFilesComposerForUpdate extends EditFilesComposer {
      * multiple times in either the old or the new version cannot be moved in this way. They will appear to have been deleted in the old version and added in the new. This has the same net result,
      * except that the "Changes" overview in Dataverse does not record that the file was effectively moved.
      *
+     * The checksums are compared using the algorithm that Dataverse used for the file in the old version. A dataset may contain files with different checksum types, if the installation
+     * changed its algorithm between versions, so files are matched per algorithm.
+     *
      * @param pathToFileMetaInLatestVersion map from path to file metadata in the old version
      * @param pathToFileInfo                map from path to file info in the new version (i.e. the deposit).
      * @return a map from old path to new path
      */
     Map<Path, Path> getOldToNewPathOfFilesToMove(Map<Path, FileMeta> pathToFileMetaInLatestVersion, Map<Path, FileInfo> pathToFileInfo) {
+        var latestVersionByAlgorithm = pathToFileMetaInLatestVersion.entrySet().stream()
+            .collect(Collectors.groupingBy(e -> getChecksumAlgorithm(e.getValue()), Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue)));
 
-        var depositChecksums = pathToFileInfo.entrySet().stream()
-            .map(e -> Map.entry(e.getKey(), e.getValue().getChecksum()))
-            .collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue));
+        var oldToNewPath = new HashMap<Path, Path>();
+        for (var entry : latestVersionByAlgorithm.entrySet()) {
+            var depositChecksums = getDepositChecksums(entry.getKey(), pathToFileInfo, entry.getValue().values());
 
-        var latestFileChecksums = pathToFileMetaInLatestVersion.entrySet().stream()
-            .map(e -> Map.entry(e.getKey(), e.getValue().getDataFile().getChecksum().getValue()))
-            .collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue));
+            var latestFileChecksums = entry.getValue().entrySet().stream()
+                .map(e -> Map.entry(e.getKey(), e.getValue().getDataFile().getChecksum().getValue()))
+                .collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue));
+
+            var checksumsToPathNonDuplicatedFilesInDeposit = getChecksumsToPathOfNonDuplicateFiles(depositChecksums);
+            var checksumsToPathNonDuplicatedFilesInLatestVersion = getChecksumsToPathOfNonDuplicateFiles(latestFileChecksums);
+
+            var intersects = checksumsToPathNonDuplicatedFilesInDeposit.keySet().stream()
+                .filter(checksumsToPathNonDuplicatedFilesInLatestVersion::containsKey)
+                .collect(Collectors.toSet());
+
+            intersects.stream()
+                .map(c -> Map.entry(checksumsToPathNonDuplicatedFilesInLatestVersion.get(c), checksumsToPathNonDuplicatedFilesInDeposit.get(c)))
+                .filter(e -> !e.getKey().equals(e.getValue())) // filter out files that are not moved (this was not present in the old code)
+                .filter(e -> !oldToNewPath.containsValue(e.getValue())) // a deposit file can only be the target of one move
+                .forEach(e -> oldToNewPath.put(e.getKey(), e.getValue()));
+        }
+        return oldToNewPath;
+    }
 
-        var checksumsToPathNonDuplicatedFilesInDeposit = getChecksumsToPathOfNonDuplicateFiles(depositChecksums);
-        var checksumsToPathNonDuplicatedFilesInLatestVersion = getChecksumsToPathOfNonDuplicateFiles(latestFileChecksums);
+    /**
+     * Returns the checksums of the deposit files in the given algorithm. SHA-1 checksums are already known from the deposit. For other algorithms the matching payload manifest of the bag is
+     * used, if present. Otherwise, the checksums are computed in parallel, but only for the deposit files that have the same size as one of the given dataset files, as the others cannot
+     * match anyway. Files for which no checksum was computed are absent from the result.
+     *
+     * @param algorithm      the message digest algorithm
+     * @param pathToFileInfo map from path to file info in the deposit
+     * @param filesInDataset the files in the dataset to compare with
+     * @return a map from path to checksum
+     */
+    private Map<Path, String> getDepositChecksums(String algorithm, Map<Path, FileInfo> pathToFileInfo, Collection<FileMeta> filesInDataset) {
+        if (SHA1.equals(algorithm)) {
+            return pathToFileInfo.entrySet().stream()
+                .collect(Collectors.toMap(Map.Entry::getKey, e -> e.getValue().getChecksum()));
+        }
+
+        var manifest = payloadChecksumsByAlgorithm.apply(algorithm);
+        if (manifest != null) {
+            log.debug("Using {} payload manifest of deposit to compare with dataset {}", algorithm, updatesDatasetPid);
+            var checksums = new HashMap<Path, String>();
+            for (var path : pathToFileInfo.keySet()) {
+                var checksum = manifest.apply(path);
+                if (checksum != null) {
+                    checksums.put(path, checksum);
+                }
+            }
+            return checksums;
+        }
 
-        var intersects = checksumsToPathNonDuplicatedFilesInDeposit.keySet().stream()
-            .filter(checksumsToPathNonDuplicatedFilesInLatestVersion::containsKey)
+        var sizesInDataset = filesInDataset.stream()
+            .map(fileMeta -> fileMeta.getDataFile().getFilesize())
             .collect(Collectors.toSet());
+        var computedChecksums = computedChecksumsByAlgorithm.computeIfAbsent(algorithm, a -> new ConcurrentHashMap<>());
+        log.debug("Computing {} checksums of deposit files to compare with dataset {}", algorithm, updatesDatasetPid);
+        return pathToFileInfo.entrySet().parallelStream()
+            .filter(e -> sizesInDataset.contains(getSize(e.getValue().getPath())))
+            .collect(Collectors.toConcurrentMap(Map.Entry::getKey,
+                e -> computedChecksums.computeIfAbsent(e.getKey(), p -> computeChecksum(algorithm, e.getValue().getPath()))));
+    }
 
-        return intersects.stream()
-            .map(c -> Map.entry(checksumsToPathNonDuplicatedFilesInLatestVersion.get(c), checksumsToPathNonDuplicatedFilesInDeposit.get(c)))
-            .filter(entry -> !entry.getKey().equals(entry.getValue())) // filter out files that are not moved (this was not present in the old code)
-            .collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue));
+    private String getChecksumAlgorithm(FileMeta fileMeta) {
+        var type = fileMeta.getDataFile().getChecksum().getType();
+        if (type == null || !DigestUtils.isAvailable(type)) {
+            // Fall back to comparing with the SHA-1 checksums from the deposit
+            return SHA1;
+        }
+        return type;
+    }
+
+    private long getSize(Path path) {
+        try {
+            return Files.size(path);
+        }
+        catch (IOException e) {
+            throw new IllegalStateException("Could not determine size of " + path, e);
+        }
+    }
 
+    private String computeChecksum(String algorithm, Path path) {
+        try {
+            return new DigestUtils(algorithm).digestAsHex(path.toFile());
+        }
+        catch (IOException e) {
+            throw new IllegalStateException("Could not compute " + algorithm + " checksum of " + path, e);
+        }
     }
 
     private Map<String, Path> getChecksumsToPathOfNonDuplicateFiles(Map<Path, String> pathToChecksum) {
@@ -30,9 +30,8 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.attribute.BasicFileAttributes;
 import java.security.NoSuchAlgorithmException;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 import static gov.loc.repository.bagit.hash.StandardSupportedAlgorithms.SHA1;
@@ -94,17 +93,41 @@ public class ManifestUtil  {
         ManifestWriter.writeTagManifests(bag.getTagManifests(), PathUtils.getBagitDir(bag), bagRootDir, bag.getFileEncoding());
     }
 
-    static public Map<Path, String> getFilePathToSha1(Bag bag) {
-        var result = new HashMap<Path, String>();
+    /**
+     * Returns a function that looks up the SHA-1 checksum of a payload file in the SHA-1 payload manifest of the bag. The lookup is done directly in the manifest that was read with the bag, so
+     * that no copy of the checksums of all payload files is needed.
+     *
+     * @param bag the bag
+     * @return function from path relative to the bag root to SHA-1 checksum, or null if the file is not in the manifest
+     */
+    static public Function<Path, String> getFilePathToSha1(Bag bag) {
         var manifest = bag.getPayLoadManifests().stream()
             .filter(item -> item.getAlgorithm().equals(StandardSupportedAlgorithms.SHA1))
             .findFirst()
             .orElseThrow(() -> new IllegalArgumentException("Deposit bag does not have SHA-1 payload manifest"));
+        var fileToChecksum = manifest.getFileToChecksumMap();
+        var rootDir = bag.getRootDir();
 
-        for (var entry : manifest.getFileToChecksumMap().entrySet()) {
-            result.put(bag.getRootDir().relativize(entry.getKey()), entry.getValue());
-        }
+        return path -> fileToChecksum.get(rootDir.resolve(path));
+    }
 
-        return result;
+    /**
+     * Returns a lookup of the checksums in the payload manifests of the bag. Given the name of a message digest algorithm (e.g. "MD5", "SHA-1", "SHA-256"), it returns a function from
+     * payload path, relative to the data directory, to checksum, or null if the bag has no payload manifest for that algorithm. The checksums are looked up in the manifests themselves,
+     * so that no copy of them is needed.
+     *
+     * @param bag the bag
+     * @return function from algorithm name to a function from payload path to checksum (null if the file is not in the manifest)
+     */
+    static public Function<String, Function<Path, String>> getPayloadChecksumsByAlgorithm(Bag bag) {
+        var dataDir = PathUtils.getDataDir(bag);
+        return algorithm -> bag.getPayLoadManifests().stream()
+            .filter(manifest -> manifest.getAlgorithm().getMessageDigestName().equals(algorithm))
+            .findFirst()
+            .map(manifest -> {
+                var fileToChecksum = manifest.getFileToChecksumMap();
+                return (Function<Path, String>) path -> fileToChecksum.get(dataDir.resolve(path));
+            })
+            .orElse(null);
     }
 }
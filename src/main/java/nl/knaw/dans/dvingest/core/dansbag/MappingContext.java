@@ -0,0 +1,54 @@
+/*
+ * Copyright (C) 2024 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.dvingest.core.dansbag;
+
+import lombok.Builder;
+import lombok.NonNull;
+import lombok.Value;
+import nl.knaw.dans.lib.dataverse.model.dataset.License;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The mapping definitions and Dataverse installation properties that are needed to convert DANS deposits. The context is loaded once at startup (see {@link MappingContextLoader}) and shared by the
+ * import and migration areas, so it must not be modified after it has been built.
+ */
+@Value
+@Builder
+public class MappingContext {
+    @NonNull
+    Map<String, String> iso1ToDataverseLanguage;
+    @NonNull
+    Map<String, String> iso2ToDataverseLanguage;
+    @NonNull
+    Map<String, String> abrReportCodeToTerm;
+    @NonNull
+    Map<String, String> abrAcquisitionMethodCodeToTerm;
+    @NonNull
+    Map<String, String> abrComplexCodeToTerm;
+    @NonNull
+    Map<String, String> abrArtifactCodeToTerm;
+    @NonNull
+    Map<String, String> abrPeriodCodeToTerm;
+    @NonNull
+    List<String> spatialCoverageCountryTerms;
+    @NonNull
+    Set<String> activeMetadataBlocks;
+    @NonNull
+    List<License> supportedLicenses;
+}
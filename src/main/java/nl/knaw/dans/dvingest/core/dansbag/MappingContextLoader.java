@@ -0,0 +1,127 @@
+/*
+ * Copyright (C) 2024 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.dvingest.core.dansbag;
+
+import lombok.AllArgsConstructor;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import nl.knaw.dans.dvingest.core.service.DataverseService;
+import nl.knaw.dans.lib.dataverse.DataverseException;
+import nl.knaw.dans.lib.util.MappingLoader;
+import org.apache.commons.io.FileUtils;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Loads the {@link MappingContext}. The mapping files and the calls to Dataverse are independent of each other, so they are run in parallel. The time spent in each phase is logged, so that slow
+ * startups can be traced back to the file system or to Dataverse.
+ */
+@Slf4j
+@AllArgsConstructor
+public class MappingContextLoader {
+    private static final int MAX_THREADS = 8;
+
+    @NonNull
+    private final Path mappingDefsDir;
+    @NonNull
+    private final DataverseService dataverseService;
+
+    public MappingContext load() throws IOException, DataverseException {
+        log.info("Loading mapping context from {}", mappingDefsDir);
+        var start = System.currentTimeMillis();
+        var executor = Executors.newFixedThreadPool(MAX_THREADS);
+        try {
+            var iso1 = loadCsv(executor, "iso639-1-to-dv.csv", "ISO639-1", "Dataverse-language");
+            var iso2 = loadCsv(executor, "iso639-2-to-dv.csv", "ISO639-2", "Dataverse-language");
+            var abrReport = loadCsv(executor, "abr-report-code-to-term.csv", "code", "subject");
+            var abrAcquisitionMethod = loadCsv(executor, "verwervingswijzen-code-to-term.csv", "code", "subject");
+            var abrComplex = loadCsv(executor, "abr-complextype-code-to-term.csv", "code", "subject");
+            var abrArtifact = loadCsv(executor, "abr-artifact-code-to-term.csv", "code", "subject");
+            var abrPeriod = loadCsv(executor, "abr-period-code-to-term.csv", "code", "subject");
+            var countryTerms = timed(executor, "spatial-coverage-country-terms.txt", () ->
+                Collections.unmodifiableList(FileUtils.readLines(mappingDefsDir.resolve("spatial-coverage-country-terms.txt").toFile(), StandardCharsets.UTF_8)));
+            var activeMetadataBlocks = timed(executor, "active metadata blocks", () -> Set.copyOf(dataverseService.getActiveMetadataBlockNames()));
+            var supportedLicenses = timed(executor, "supported licenses", () -> List.copyOf(dataverseService.getSupportedLicenses()));
+
+            var context = MappingContext.builder()
+                .iso1ToDataverseLanguage(join(iso1))
+                .iso2ToDataverseLanguage(join(iso2))
+                .abrReportCodeToTerm(join(abrReport))
+                .abrAcquisitionMethodCodeToTerm(join(abrAcquisitionMethod))
+                .abrComplexCodeToTerm(join(abrComplex))
+                .abrArtifactCodeToTerm(join(abrArtifact))
+                .abrPeriodCodeToTerm(join(abrPeriod))
+                .spatialCoverageCountryTerms(join(countryTerms))
+                .activeMetadataBlocks(join(activeMetadataBlocks))
+                .supportedLicenses(join(supportedLicenses))
+                .build();
+            log.info("Loaded mapping context in {} ms", System.currentTimeMillis() - start);
+            return context;
+        }
+        finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private CompletableFuture<Map<String, String>> loadCsv(ExecutorService executor, String fileName, String keyColumn, String valueColumn) {
+        return timed(executor, fileName, () -> Collections.unmodifiableMap(
+            MappingLoader.builder().csvFile(mappingDefsDir.resolve(fileName)).keyColumn(keyColumn).valueColumn(valueColumn).build().load()));
+    }
+
+    private <T> CompletableFuture<T> timed(ExecutorService executor, String phase, LoadAction<T> action) {
+        return CompletableFuture.supplyAsync(() -> {
+            var start = System.currentTimeMillis();
+            try {
+                var result = action.load();
+                log.info("Loaded {} in {} ms", phase, System.currentTimeMillis() - start);
+                return result;
+            }
+            catch (IOException | DataverseException e) {
+                throw new CompletionException(e);
+            }
+        }, executor);
+    }
+
+    private static <T> T join(CompletableFuture<T> future) throws IOException, DataverseException {
+        try {
+            return future.join();
+        }
+        catch (CompletionException e) {
+            if (e.getCause() instanceof IOException ioException) {
+                throw ioException;
+            }
+            if (e.getCause() instanceof DataverseException dataverseException) {
+                throw dataverseException;
+            }
+            throw e;
+        }
+    }
+
+    @FunctionalInterface
+    private interface LoadAction<T> {
+        T load() throws IOException, DataverseException;
+    }
+}
@@ -25,6 +25,7 @@ import nl.knaw.dans.lib.dataverse.model.dataset.License;
 
 import java.io.IOException;
 import java.net.URI;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -35,8 +36,12 @@ public class SupportedLicenses {
     private final Map<URI, License> supportedLicenses;
 
     public SupportedLicenses(DataverseService dataverseService) throws IOException, DataverseException {
+        this(dataverseService.getSupportedLicenses());
+    }
+
+    public SupportedLicenses(Collection<License> licenses) {
         supportedLicenses = new HashMap<>();
-        for (var license : dataverseService.getSupportedLicenses()) {
+        for (var license : licenses) {
             supportedLicenses.put(license.getUri(), license);
         }
     }
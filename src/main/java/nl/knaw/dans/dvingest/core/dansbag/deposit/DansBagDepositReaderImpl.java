@@ -137,7 +137,7 @@ public class DansBagDepositReaderImpl implements DansBagDepositReader {
                     .map(Path::of)
                     .orElseThrow(() -> new IllegalArgumentException("File element without filepath attribute"));
 
-                var sha1 = filePathToSha1.get(filePath);
+                var sha1 = filePathToSha1.apply(filePath);
 
                 return new DepositFile(filePath, sha1, node);
             })
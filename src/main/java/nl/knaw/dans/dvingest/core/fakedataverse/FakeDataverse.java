@@ -0,0 +1,628 @@
+/*
+ * Copyright (C) 2024 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.dvingest.core.fakedataverse;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import lombok.NonNull;
+import org.apache.commons.codec.binary.Hex;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Pattern;
+import java.util.zip.ZipInputStream;
+
+/**
+ * <p>
+ * The in-memory state of the fake Dataverse installation: datasets with their latest version, files and role assignments. Metadata is kept as JSON trees, in the form that the Dataverse API
+ * uses, so that the fake does not depend on how the client library maps it. File contents are not kept; only their size and checksum are computed while they are received.
+ * </p>
+ * <p>
+ * The same state is served over HTTP by {@link FakeDataverseServer}, for benchmarks, and used directly by <code>FakeDataverseService</code>, in the test sources, for unit tests.
+ * </p>
+ * <p>
+ * The behaviour follows Dataverse where it matters for the ingest: zip files are unpacked, duplicate file names get a suffix, any change to a released version creates a new draft and publishing
+ * increases the version number.
+ * </p>
+ */
+public class FakeDataverse {
+    private static final String DOI_PREFIX = "doi:10.5072/FAKE-";
+    private static final Pattern SEARCH_QUERY = Pattern.compile("^(\\w+):\"(.*)\"$");
+
+    private final ObjectMapper mapper;
+    private final FakeDataverseConfig config;
+    private final Map<String, FakeDataset> datasets = new ConcurrentHashMap<>();
+    private final AtomicInteger nextDatasetId = new AtomicInteger(1);
+    private final AtomicInteger nextVersionId = new AtomicInteger(1);
+    private final AtomicInteger nextFileId = new AtomicInteger(1);
+    private final AtomicInteger nextAssignmentId = new AtomicInteger(1);
+
+    private static class FakeDataset {
+        private final int id;
+        private final String pid;
+        // The latest version, without its files
+        private ObjectNode version;
+        private final List<ObjectNode> files = new ArrayList<>();
+        private final List<ObjectNode> roleAssignments = new ArrayList<>();
+
+        private FakeDataset(int id, String pid) {
+            this.id = id;
+            this.pid = pid;
+        }
+    }
+
+    public FakeDataverse(@NonNull ObjectMapper mapper, @NonNull FakeDataverseConfig config) {
+        this.mapper = mapper;
+        this.config = config;
+    }
+
+    public int getNumberOfDatasets() {
+        return datasets.size();
+    }
+
+    public int getNumberOfFiles() {
+        return datasets.values().stream().mapToInt(dataset -> {
+            synchronized (dataset) {
+                return dataset.files.size();
+            }
+        }).sum();
+    }
+
+    /**
+     * Creates a dataset from the JSON that is sent to the create and import APIs.
+     *
+     * @param body the dataset JSON
+     * @param pid  the persistent identifier, for an import; null to mint a new one
+     * @return the id and persistent identifier of the new dataset
+     */
+    public ObjectNode createDataset(@NonNull JsonNode body, String pid) {
+        var id = nextDatasetId.getAndIncrement();
+        var dataset = new FakeDataset(id, pid == null ? DOI_PREFIX + id : pid);
+        if (datasets.putIfAbsent(dataset.pid, dataset) != null) {
+            throw new IllegalStateException("Dataset already exists: " + dataset.pid);
+        }
+        var version = body.has("datasetVersion") ? body.get("datasetVersion").deepCopy() : mapper.createObjectNode();
+        dataset.version = (ObjectNode) version;
+        dataset.version.remove("files");
+        dataset.version.put("id", nextVersionId.getAndIncrement());
+        dataset.version.put("versionState", "DRAFT");
+        dataset.version.put("createTime", Instant.now().toString());
+        addUrnNbn(dataset);
+        touch(dataset);
+        var result = mapper.createObjectNode();
+        result.put("id", id);
+        result.put("persistentId", dataset.pid);
+        return result;
+    }
+
+    public JsonNode getVersion(String pid, boolean excludeFiles) {
+        var dataset = getDataset(pid);
+        synchronized (dataset) {
+            var version = dataset.version.deepCopy();
+            version.put("datasetId", dataset.id);
+            version.put("datasetPersistentId", dataset.pid);
+            if (!excludeFiles) {
+                version.set("files", filesAsArray(dataset));
+            }
+            return version;
+        }
+    }
+
+    public JsonNode getFiles(String pid) {
+        var dataset = getDataset(pid);
+        synchronized (dataset) {
+            return filesAsArray(dataset);
+        }
+    }
+
+    public JsonNode updateVersion(String pid, @NonNull JsonNode body) {
+        var dataset = getDataset(pid);
+        synchronized (dataset) {
+            ensureDraft(dataset);
+            body.fields().forEachRemaining(field -> {
+                if (!List.of("id", "versionState", "files", "versionNumber", "versionMinorNumber").contains(field.getKey())) {
+                    dataset.version.set(field.getKey(), field.getValue().deepCopy());
+                }
+            });
+            addUrnNbn(dataset);
+            touch(dataset);
+            return dataset.version.deepCopy();
+        }
+    }
+
+    public JsonNode editMetadata(String pid, @NonNull JsonNode body, boolean replace) {
+        var dataset = getDataset(pid);
+        synchronized (dataset) {
+            ensureDraft(dataset);
+            for (var field : body.path("fields")) {
+                var typeName = field.path("typeName").asText();
+                var existing = findField(dataset, typeName);
+                if (existing == null) {
+                    getFieldsOfBlock(dataset, "citation").add(field.deepCopy());
+                }
+                else if (!replace && existing.path("multiple").asBoolean() && existing.path("value").isArray()) {
+                    ((ArrayNode) existing.get("value")).addAll((ArrayNode) field.path("value").deepCopy());
+                }
+                else {
+                    existing.set("value", field.path("value").deepCopy());
+                }
+            }
+            touch(dataset);
+            return dataset.version.deepCopy();
+        }
+    }
+
+    public JsonNode deleteMetadata(String pid, @NonNull JsonNode body) {
+        var dataset = getDataset(pid);
+        synchronized (dataset) {
+            ensureDraft(dataset);
+            for (var field : body.path("fields")) {
+                var typeName = field.path("typeName").asText();
+                dataset.version.path("metadataBlocks").forEach(block -> {
+                    var fields = block.path("fields");
+                    for (var i = fields.size() - 1; i >= 0; i--) {
+                        if (typeName.equals(fields.get(i).path("typeName").asText())) {
+                            ((ArrayNode) fields).remove(i);
+                        }
+                    }
+                });
+            }
+            touch(dataset);
+            return dataset.version.deepCopy();
+        }
+    }
+
+    /**
+     * Adds a file to a dataset. A zip file is unpacked into one file per entry, as Dataverse does.
+     *
+     * @param pid      the persistent identifier of the dataset
+     * @param content  the content of the uploaded file
+     * @param filename the name of the uploaded file
+     * @param jsonData the file metadata sent with the upload; may be null
+     * @return the file metadata of the added files
+     */
+    public JsonNode addFile(String pid, @NonNull InputStream content, @NonNull String filename, JsonNode jsonData) throws IOException {
+        var dataset = getDataset(pid);
+        var metadata = jsonData == null ? mapper.createObjectNode() : jsonData;
+        var received = new ArrayList<ObjectNode>();
+        // Receive the content outside the lock, as this may take long
+        if (filename.toLowerCase().endsWith(".zip")) {
+            try (var zip = new ZipInputStream(content)) {
+                for (var entry = zip.getNextEntry(); entry != null; entry = zip.getNextEntry()) {
+                    if (!entry.isDirectory()) {
+                        received.add(receiveFile(zip, entry.getName(), metadata));
+                    }
+                }
+            }
+        }
+        else {
+            var directoryLabel = metadata.path("directoryLabel").asText("");
+            received.add(receiveFile(content, directoryLabel.isEmpty() ? filename : directoryLabel + "/" + filename, metadata));
+        }
+        synchronized (dataset) {
+            ensureDraft(dataset);
+            var added = mapper.createArrayNode();
+            for (var file : received) {
+                file.put("label", uniqueLabel(dataset, file.path("directoryLabel").asText(null), file.get("label").asText()));
+                file.with("dataFile").put("filename", file.get("label").asText());
+                dataset.files.add(file);
+                added.add(file.deepCopy());
+            }
+            touch(dataset);
+            var result = mapper.createObjectNode();
+            result.set("files", added);
+            return result;
+        }
+    }
+
+    public JsonNode replaceFile(int fileId, @NonNull InputStream content, @NonNull String filename, JsonNode jsonData) throws IOException {
+        var dataset = getDatasetOfFile(fileId);
+        var metadata = jsonData == null ? mapper.createObjectNode() : jsonData;
+        ObjectNode old;
+        synchronized (dataset) {
+            old = getFile(dataset, fileId);
+        }
+        var path = old.path("directoryLabel").asText("").isEmpty() ? old.get("label").asText() : old.get("directoryLabel").asText() + "/" + old.get("label").asText();
+        var replacement = receiveFile(content, path, metadata);
+        synchronized (dataset) {
+            ensureDraft(dataset);
+            dataset.files.remove(getFile(dataset, fileId));
+            if (!metadata.has("description") && old.has("description")) {
+                replacement.set("description", old.get("description"));
+            }
+            if (!metadata.has("categories") && old.has("categories")) {
+                replacement.set("categories", old.get("categories"));
+            }
+            dataset.files.add(replacement);
+            touch(dataset);
+            var result = mapper.createObjectNode();
+            result.set("files", mapper.createArrayNode().add(replacement.deepCopy()));
+            return result;
+        }
+    }
+
+    public JsonNode updateFileMetadata(int fileId, @NonNull JsonNode jsonData) {
+        var dataset = getDatasetOfFile(fileId);
+        synchronized (dataset) {
+            ensureDraft(dataset);
+            var file = getFile(dataset, fileId);
+            for (var name : List.of("label", "directoryLabel", "description", "categories")) {
+                if (jsonData.has(name)) {
+                    file.set(name, jsonData.get(name).deepCopy());
+                }
+            }
+            if (jsonData.has("restrict")) {
+                file.put("restricted", jsonData.get("restrict").asBoolean());
+            }
+            touch(dataset);
+            return mapper.createObjectNode().put("message", "File Metadata update has been completed");
+        }
+    }
+
+    public void deleteFile(int fileId) {
+        var dataset = getDatasetOfFile(fileId);
+        synchronized (dataset) {
+            ensureDraft(dataset);
+            dataset.files.remove(getFile(dataset, fileId));
+            touch(dataset);
+        }
+    }
+
+    public JsonNode reingestFile(int fileId) {
+        var dataset = getDatasetOfFile(fileId);
+        synchronized (dataset) {
+            getFile(dataset, fileId);
+            return mapper.createObjectNode().put("message", "Datafile " + fileId + " queued for ingest");
+        }
+    }
+
+    public JsonNode setEmbargo(String pid, @NonNull JsonNode body) {
+        var dataset = getDataset(pid);
+        synchronized (dataset) {
+            ensureDraft(dataset);
+            var embargo = mapper.createObjectNode();
+            embargo.set("dateAvailable", body.path("dateAvailable"));
+            embargo.set("reason", body.path("reason"));
+            for (var fileId : body.path("fileIds")) {
+                getFile(dataset, fileId.asInt()).with("dataFile").set("embargo", embargo.deepCopy());
+            }
+            touch(dataset);
+            return mapper.createObjectNode().put("message", "Files were embargoed");
+        }
+    }
+
+    /**
+     * Publishes the latest version.
+     *
+     * @param pid         the persistent identifier of the dataset
+     * @param type        'major', 'minor' or 'updatecurrent'
+     * @param releaseTime the release time, for a migrated dataset; null for now
+     * @return the released version
+     */
+    public JsonNode publish(String pid, @NonNull String type, String releaseTime) {
+        var dataset = getDataset(pid);
+        synchronized (dataset) {
+            var version = dataset.version;
+            var major = version.path("versionNumber").asInt(0);
+            var minor = version.path("versionMinorNumber").asInt(0);
+            if ("RELEASED".equals(version.path("versionState").asText())) {
+                throw new IllegalStateException("Dataset " + pid + " has no draft to publish");
+            }
+            if ("minor".equals(type) && major > 0) {
+                minor++;
+            }
+            else if (!"updatecurrent".equals(type) || major == 0) {
+                major++;
+                minor = 0;
+            }
+            version.put("versionNumber", major);
+            version.put("versionMinorNumber", minor);
+            version.put("versionState", "RELEASED");
+            version.put("releaseTime", releaseTime == null ? Instant.now().toString() : releaseTime);
+            touch(dataset);
+            return version.deepCopy();
+        }
+    }
+
+    public JsonNode getLocks(String pid) {
+        getDataset(pid);
+        return mapper.createArrayNode();
+    }
+
+    public JsonNode assignRole(String pid, @NonNull JsonNode body) {
+        var dataset = getDataset(pid);
+        synchronized (dataset) {
+            var assignment = mapper.createObjectNode();
+            assignment.put("id", nextAssignmentId.getAndIncrement());
+            assignment.put("assignee", body.path("assignee").asText());
+            assignment.put("_roleAlias", body.path("role").asText());
+            assignment.put("definitionPointId", dataset.id);
+            dataset.roleAssignments.add(assignment);
+            return assignment.deepCopy();
+        }
+    }
+
+    public JsonNode listRoleAssignments(String pid) {
+        var dataset = getDataset(pid);
+        synchronized (dataset) {
+            var result = mapper.createArrayNode();
+            dataset.roleAssignments.forEach(assignment -> result.add(assignment.deepCopy()));
+            return result;
+        }
+    }
+
+    public JsonNode deleteRoleAssignment(String pid, int assignmentId) {
+        var dataset = getDataset(pid);
+        synchronized (dataset) {
+            if (!dataset.roleAssignments.removeIf(assignment -> assignment.path("id").asInt() == assignmentId)) {
+                throw new IllegalArgumentException("No such role assignment: " + assignmentId);
+            }
+            return mapper.createObjectNode().put("message", "Role assignment " + assignmentId + " removed");
+        }
+    }
+
+    /**
+     * Finds datasets by the value of a metadata field. Only queries of the form <code>field:"value"</code>, as used by the ingest, are supported.
+     *
+     * @param query the search query
+     * @return the search result
+     */
+    public JsonNode search(@NonNull String query) {
+        var matcher = SEARCH_QUERY.matcher(query.trim());
+        var items = mapper.createArrayNode();
+        if (matcher.matches()) {
+            var typeName = matcher.group(1);
+            var value = matcher.group(2);
+            for (var dataset : datasets.values()) {
+                synchronized (dataset) {
+                    var field = findField(dataset, typeName);
+                    if (field != null && hasValue(field.path("value"), value)) {
+                        var item = mapper.createObjectNode();
+                        item.put("type", "dataset");
+                        item.put("global_id", dataset.pid);
+                        item.put("name", dataset.pid);
+                        items.add(item);
+                    }
+                }
+            }
+        }
+        var result = mapper.createObjectNode();
+        result.put("q", query);
+        result.put("total_count", items.size());
+        result.put("start", 0);
+        result.put("count_in_response", items.size());
+        result.set("items", items);
+        return result;
+    }
+
+    public JsonNode getUser(@NonNull String userId) {
+        var user = mapper.createObjectNode();
+        user.put("id", Math.abs(userId.hashCode()));
+        user.put("identifier", "@" + userId);
+        user.put("displayName", userId);
+        user.put("firstName", userId);
+        user.put("lastName", userId);
+        user.put("email", userId + "@example.org");
+        user.put("superuser", false);
+        return user;
+    }
+
+    public JsonNode getLicenses() {
+        var result = mapper.createArrayNode();
+        var id = 1;
+        for (var uri : config.getLicenses()) {
+            var license = mapper.createObjectNode();
+            license.put("id", id);
+            license.put("name", uri.toString());
+            license.put("uri", uri.toString());
+            license.put("iconUrl", uri.resolve("/icon.png").toString());
+            license.put("active", true);
+            license.put("isDefault", id == 1);
+            result.add(license);
+            id++;
+        }
+        return result;
+    }
+
+    public JsonNode getMetadataBlocks() {
+        var result = mapper.createArrayNode();
+        var id = 1;
+        for (var name : config.getMetadataBlocks()) {
+            var block = mapper.createObjectNode();
+            block.put("id", id++);
+            block.put("name", name);
+            block.put("displayName", name);
+            result.add(block);
+        }
+        return result;
+    }
+
+    private FakeDataset getDataset(String pid) {
+        var dataset = datasets.get(pid);
+        if (dataset == null) {
+            throw new IllegalArgumentException("Dataset with Persistent ID " + pid + " not found.");
+        }
+        return dataset;
+    }
+
+    /**
+     * Returns the persistent identifier of the dataset with the given database id.
+     *
+     * @param id the database id
+     * @return the persistent identifier
+     */
+    public String getPersistentId(int id) {
+        return datasets.values().stream()
+            .filter(dataset -> dataset.id == id)
+            .map(dataset -> dataset.pid)
+            .findFirst()
+            .orElseThrow(() -> new IllegalArgumentException("Dataset with ID " + id + " not found."));
+    }
+
+    private FakeDataset getDatasetOfFile(int fileId) {
+        for (var dataset : datasets.values()) {
+            synchronized (dataset) {
+                if (dataset.files.stream().anyMatch(file -> getFileId(file) == fileId)) {
+                    return dataset;
+                }
+            }
+        }
+        throw new IllegalArgumentException("File with ID " + fileId + " not found.");
+    }
+
+    private ObjectNode getFile(FakeDataset dataset, int fileId) {
+        return dataset.files.stream()
+            .filter(file -> getFileId(file) == fileId)
+            .findFirst()
+            .orElseThrow(() -> new IllegalArgumentException("File with ID " + fileId + " not found."));
+    }
+
+    private int getFileId(JsonNode file) {
+        return file.path("dataFile").path("id").asInt();
+    }
+
+    private ObjectNode receiveFile(InputStream content, String path, JsonNode metadata) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance(config.getChecksumAlgorithm());
+        }
+        catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("Unsupported checksum algorithm: " + config.getChecksumAlgorithm(), e);
+        }
+        // Not closed, as the content may be a zip entry
+        var size = new DigestInputStream(content, digest).transferTo(OutputStream.nullOutputStream());
+        if (config.isCorruptChecksums()) {
+            digest.update((byte) 0);
+        }
+        var lastSlash = path.lastIndexOf('/');
+        var file = mapper.createObjectNode();
+        file.put("label", path.substring(lastSlash + 1));
+        if (lastSlash > 0) {
+            file.put("directoryLabel", path.substring(0, lastSlash));
+        }
+        if (metadata.has("description")) {
+            file.set("description", metadata.get("description").deepCopy());
+        }
+        if (metadata.has("categories")) {
+            file.set("categories", metadata.get("categories").deepCopy());
+        }
+        file.put("restricted", metadata.path("restrict").asBoolean(false));
+        var dataFile = file.putObject("dataFile");
+        dataFile.put("id", nextFileId.getAndIncrement());
+        dataFile.put("filename", file.get("label").asText());
+        dataFile.put("contentType", "application/octet-stream");
+        dataFile.put("filesize", size);
+        var checksum = dataFile.putObject("checksum");
+        checksum.put("type", config.getChecksumAlgorithm());
+        checksum.put("value", Hex.encodeHexString(digest.digest()));
+        return file;
+    }
+
+    private String uniqueLabel(FakeDataset dataset, String directoryLabel, String label) {
+        var candidate = label;
+        var dot = label.lastIndexOf('.');
+        var base = dot > 0 ? label.substring(0, dot) : label;
+        var extension = dot > 0 ? label.substring(dot) : "";
+        for (var i = 1; isTaken(dataset, directoryLabel, candidate); i++) {
+            candidate = base + "-" + i + extension;
+        }
+        return candidate;
+    }
+
+    private boolean isTaken(FakeDataset dataset, String directoryLabel, String label) {
+        return dataset.files.stream().anyMatch(file -> label.equals(file.path("label").asText())
+            && (directoryLabel == null ? !file.hasNonNull("directoryLabel") : directoryLabel.equals(file.path("directoryLabel").asText(null))));
+    }
+
+    private ArrayNode filesAsArray(FakeDataset dataset) {
+        var files = mapper.createArrayNode();
+        for (var file : dataset.files) {
+            var copy = file.deepCopy();
+            copy.put("datasetVersionId", dataset.version.path("id").asInt());
+            files.add(copy);
+        }
+        return files;
+    }
+
+    private void ensureDraft(FakeDataset dataset) {
+        if ("RELEASED".equals(dataset.version.path("versionState").asText())) {
+            dataset.version.put("id", nextVersionId.getAndIncrement());
+            dataset.version.put("versionState", "DRAFT");
+            dataset.version.put("createTime", Instant.now().toString());
+            dataset.version.remove("releaseTime");
+        }
+    }
+
+    private void touch(FakeDataset dataset) {
+        dataset.version.put("lastUpdateTime", Instant.now().toString());
+    }
+
+    private ObjectNode findField(FakeDataset dataset, String typeName) {
+        for (var block : dataset.version.path("metadataBlocks")) {
+            for (var field : block.path("fields")) {
+                if (typeName.equals(field.path("typeName").asText())) {
+                    return (ObjectNode) field;
+                }
+            }
+        }
+        return null;
+    }
+
+    private ArrayNode getFieldsOfBlock(FakeDataset dataset, String blockName) {
+        var blocks = dataset.version.with("metadataBlocks");
+        var block = blocks.with(blockName);
+        if (!block.has("displayName")) {
+            block.put("displayName", blockName);
+        }
+        return block.withArray("fields");
+    }
+
+    private boolean hasValue(JsonNode node, String value) {
+        if (node.isArray()) {
+            for (var element : node) {
+                if (hasValue(element, value)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        return node.isValueNode() && value.equals(node.asText());
+    }
+
+    // DANS installations mint a URN:NBN for every dataset
+    private void addUrnNbn(FakeDataset dataset) {
+        if (!config.getMetadataBlocks().contains("dansDataVaultMetadata") || findField(dataset, "dansNbn") != null) {
+            return;
+        }
+        var field = getFieldsOfBlock(dataset, "dansDataVaultMetadata").addObject();
+        field.put("typeName", "dansNbn");
+        field.put("multiple", false);
+        field.put("typeClass", "primitive");
+        field.put("value", "urn:nbn:nl:ui:13-fake-" + dataset.id);
+    }
+}
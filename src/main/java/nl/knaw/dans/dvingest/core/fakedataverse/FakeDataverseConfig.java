@@ -0,0 +1,72 @@
+/*
+ * Copyright (C) 2024 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.dvingest.core.fakedataverse;
+
+import io.dropwizard.util.Duration;
+import lombok.Data;
+
+import javax.validation.constraints.DecimalMax;
+import javax.validation.constraints.DecimalMin;
+import javax.validation.constraints.NotNull;
+import java.net.URI;
+import java.util.List;
+
+/**
+ * Configuration of the fake Dataverse that is used for tests and benchmarks.
+ */
+@Data
+public class FakeDataverseConfig {
+    // The port to listen on; 0 means any free port
+    private int port = 0;
+
+    // Added to the response time of every request
+    @NotNull
+    private Duration latency = Duration.milliseconds(0);
+
+    // Added to the response time of every request for each MiB in the request body, to simulate transfer and storage of uploads
+    @NotNull
+    private Duration latencyPerMebibyte = Duration.milliseconds(0);
+
+    // The fraction of requests that fail with an internal server error, before anything is changed
+    @DecimalMin("0.0")
+    @DecimalMax("1.0")
+    private double errorRate = 0.0;
+
+    // Seed for the random generator that decides which requests fail, so that a run can be repeated
+    private long seed = 0;
+
+    // The checksum algorithm that the fake installation uses for the files
+    @NotNull
+    private String checksumAlgorithm = "MD5";
+
+    // Report wrong checksums for the files that are received, to simulate corruption in transit
+    private boolean corruptChecksums = false;
+
+    @NotNull
+    private List<URI> licenses = List.of(
+        URI.create("http://creativecommons.org/publicdomain/zero/1.0"),
+        URI.create("http://creativecommons.org/licenses/by/4.0"),
+        URI.create("http://opensource.org/licenses/MIT"));
+
+    @NotNull
+    private List<String> metadataBlocks = List.of(
+        "citation",
+        "dansRights",
+        "dansRelationMetadata",
+        "dansArchaeologyMetadata",
+        "dansTemporalSpatial",
+        "dansDataVaultMetadata");
+}
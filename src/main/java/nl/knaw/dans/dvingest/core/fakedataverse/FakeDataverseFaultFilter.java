@@ -0,0 +1,73 @@
+/*
+ * Copyright (C) 2024 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.dvingest.core.fakedataverse;
+
+import lombok.NonNull;
+
+import javax.ws.rs.container.ContainerRequestContext;
+import javax.ws.rs.container.ContainerRequestFilter;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import java.util.Random;
+
+/**
+ * Applies the latency and error model of the fake Dataverse to every request. Failing requests are rejected before they reach the resource, so that they do not change the state, just like a
+ * Dataverse that is not available.
+ */
+public class FakeDataverseFaultFilter implements ContainerRequestFilter {
+    private static final long MEBIBYTE = 1024 * 1024;
+
+    private final long latencyMillis;
+    private final long latencyMillisPerMebibyte;
+    private final double errorRate;
+    private final Random random;
+
+    public FakeDataverseFaultFilter(@NonNull FakeDataverseConfig config) {
+        this.latencyMillis = config.getLatency().toMilliseconds();
+        this.latencyMillisPerMebibyte = config.getLatencyPerMebibyte().toMilliseconds();
+        this.errorRate = config.getErrorRate();
+        this.random = new Random(config.getSeed());
+    }
+
+    @Override
+    public void filter(ContainerRequestContext requestContext) {
+        var bodySize = Math.max(requestContext.getLength(), 0);
+        sleep(latencyMillis + latencyMillisPerMebibyte * bodySize / MEBIBYTE);
+        if (errorRate > 0 && nextDouble() < errorRate) {
+            requestContext.abortWith(Response.status(Response.Status.INTERNAL_SERVER_ERROR)
+                .header(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON)
+                .entity("{\"status\":\"ERROR\",\"message\":\"Simulated failure\"}")
+                .build());
+        }
+    }
+
+    private synchronized double nextDouble() {
+        return random.nextDouble();
+    }
+
+    private void sleep(long millis) {
+        if (millis <= 0) {
+            return;
+        }
+        try {
+            Thread.sleep(millis);
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
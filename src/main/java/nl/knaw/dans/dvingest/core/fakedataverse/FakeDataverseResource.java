@@ -0,0 +1,268 @@
+/*
+ * Copyright (C) 2024 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.dvingest.core.fakedataverse;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.glassfish.jersey.media.multipart.FormDataContentDisposition;
+import org.glassfish.jersey.media.multipart.FormDataParam;
+
+import javax.ws.rs.Consumes;
+import javax.ws.rs.DELETE;
+import javax.ws.rs.DefaultValue;
+import javax.ws.rs.GET;
+import javax.ws.rs.POST;
+import javax.ws.rs.PUT;
+import javax.ws.rs.Path;
+import javax.ws.rs.PathParam;
+import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * The HTTP front of {@link FakeDataverse}. Only the endpoints that the ingest uses are implemented, with the same paths, parameters and response envelope as the Dataverse API, so that the
+ * Dataverse client can be pointed at it unchanged.
+ */
+@Slf4j
+@Path("/")
+@Produces(MediaType.APPLICATION_JSON)
+public class FakeDataverseResource {
+    private static final String PERSISTENT_ID = ":persistentId";
+
+    private final FakeDataverse dataverse;
+    private final ObjectMapper mapper;
+
+    @FunctionalInterface
+    private interface Action {
+        JsonNode execute() throws IOException;
+    }
+
+    public FakeDataverseResource(@NonNull FakeDataverse dataverse, @NonNull ObjectMapper mapper) {
+        this.dataverse = dataverse;
+        this.mapper = mapper;
+    }
+
+    @POST
+    @Path("api/dataverses/{alias}/datasets")
+    @Consumes(MediaType.APPLICATION_JSON)
+    public Response createDataset(@PathParam("alias") String alias, String body) {
+        return respond(Response.Status.CREATED, () -> dataverse.createDataset(mapper.readTree(body), null));
+    }
+
+    @POST
+    @Path("api/dataverses/{alias}/datasets/:import")
+    @Consumes(MediaType.APPLICATION_JSON)
+    public Response importDataset(@PathParam("alias") String alias, @QueryParam("pid") String pid, String body) {
+        return respond(Response.Status.CREATED, () -> dataverse.createDataset(mapper.readTree(body), pid));
+    }
+
+    @GET
+    @Path("api/dataverses/{alias}/metadatablocks")
+    public Response listMetadataBlocks(@PathParam("alias") String alias) {
+        return respond(dataverse::getMetadataBlocks);
+    }
+
+    @GET
+    @Path("api/datasets/{id}/versions/{version}")
+    public Response getVersion(@PathParam("id") String id, @QueryParam("persistentId") String persistentId, @PathParam("version") String version,
+        @QueryParam("excludeFiles") @DefaultValue("false") boolean excludeFiles) {
+        return respond(() -> dataverse.getVersion(resolve(id, persistentId), excludeFiles));
+    }
+
+    @PUT
+    @Path("api/datasets/{id}/versions/{version}")
+    @Consumes(MediaType.APPLICATION_JSON)
+    public Response updateVersion(@PathParam("id") String id, @QueryParam("persistentId") String persistentId, @PathParam("version") String version, String body) {
+        return respond(() -> dataverse.updateVersion(resolve(id, persistentId), mapper.readTree(body)));
+    }
+
+    @GET
+    @Path("api/datasets/{id}/versions/{version}/files")
+    public Response getFiles(@PathParam("id") String id, @QueryParam("persistentId") String persistentId, @PathParam("version") String version) {
+        return respond(() -> dataverse.getFiles(resolve(id, persistentId)));
+    }
+
+    @PUT
+    @Path("api/datasets/{id}/editMetadata")
+    @Consumes(MediaType.APPLICATION_JSON)
+    public Response editMetadata(@PathParam("id") String id, @QueryParam("persistentId") String persistentId, @QueryParam("replace") boolean replace, String body) {
+        return respond(() -> dataverse.editMetadata(resolve(id, persistentId), mapper.readTree(body), replace));
+    }
+
+    @PUT
+    @Path("api/datasets/{id}/deleteMetadata")
+    @Consumes(MediaType.APPLICATION_JSON)
+    public Response deleteMetadata(@PathParam("id") String id, @QueryParam("persistentId") String persistentId, String body) {
+        return respond(() -> dataverse.deleteMetadata(resolve(id, persistentId), mapper.readTree(body)));
+    }
+
+    @POST
+    @Path("api/datasets/{id}/add")
+    @Consumes(MediaType.MULTIPART_FORM_DATA)
+    public Response addFile(@PathParam("id") String id, @QueryParam("persistentId") String persistentId, @FormDataParam("file") InputStream content,
+        @FormDataParam("file") FormDataContentDisposition disposition, @FormDataParam("jsonData") String jsonData) {
+        return respond(() -> dataverse.addFile(resolve(id, persistentId), content, disposition.getFileName(), readJsonData(jsonData)));
+    }
+
+    @POST
+    @Path("api/datasets/{id}/actions/:publish")
+    public Response publish(@PathParam("id") String id, @QueryParam("persistentId") String persistentId, @QueryParam("type") @DefaultValue("major") String type) {
+        return respond(() -> dataverse.publish(resolve(id, persistentId), type, null));
+    }
+
+    @POST
+    @Path("api/datasets/{id}/actions/:releasemigrated")
+    public Response releaseMigrated(@PathParam("id") String id, @QueryParam("persistentId") String persistentId, String body) {
+        return respond(() -> dataverse.publish(resolve(id, persistentId), "major", mapper.readTree(body).path("http://schema.org/datePublished").asText(null)));
+    }
+
+    @GET
+    @Path("api/datasets/{id}/locks")
+    public Response getLocks(@PathParam("id") String id, @QueryParam("persistentId") String persistentId) {
+        return respond(() -> dataverse.getLocks(resolve(id, persistentId)));
+    }
+
+    @GET
+    @Path("api/datasets/{id}/assignments")
+    public Response listRoleAssignments(@PathParam("id") String id, @QueryParam("persistentId") String persistentId) {
+        return respond(() -> dataverse.listRoleAssignments(resolve(id, persistentId)));
+    }
+
+    @POST
+    @Path("api/datasets/{id}/assignments")
+    @Consumes(MediaType.APPLICATION_JSON)
+    public Response assignRole(@PathParam("id") String id, @QueryParam("persistentId") String persistentId, String body) {
+        return respond(() -> dataverse.assignRole(resolve(id, persistentId), mapper.readTree(body)));
+    }
+
+    @DELETE
+    @Path("api/datasets/{id}/assignments/{assignmentId}")
+    public Response deleteRoleAssignment(@PathParam("id") String id, @QueryParam("persistentId") String persistentId, @PathParam("assignmentId") int assignmentId) {
+        return respond(() -> dataverse.deleteRoleAssignment(resolve(id, persistentId), assignmentId));
+    }
+
+    @POST
+    @Path("api/datasets/{id}/files/actions/:set-embargo")
+    @Consumes(MediaType.APPLICATION_JSON)
+    public Response setEmbargo(@PathParam("id") String id, @QueryParam("persistentId") String persistentId, String body) {
+        return respond(() -> dataverse.setEmbargo(resolve(id, persistentId), mapper.readTree(body)));
+    }
+
+    @POST
+    @Path("api/files/{id}/replace")
+    @Consumes(MediaType.MULTIPART_FORM_DATA)
+    public Response replaceFile(@PathParam("id") int id, @FormDataParam("file") InputStream content, @FormDataParam("file") FormDataContentDisposition disposition,
+        @FormDataParam("jsonData") String jsonData) {
+        return respond(() -> dataverse.replaceFile(id, content, disposition.getFileName(), readJsonData(jsonData)));
+    }
+
+    @POST
+    @Path("api/files/{id}/metadata")
+    @Consumes(MediaType.MULTIPART_FORM_DATA)
+    public Response updateFileMetadata(@PathParam("id") int id, @FormDataParam("jsonData") String jsonData) {
+        return respond(() -> dataverse.updateFileMetadata(id, readJsonData(jsonData)));
+    }
+
+    @POST
+    @Path("api/files/{id}/reingest")
+    public Response reingestFile(@PathParam("id") int id) {
+        return respond(() -> dataverse.reingestFile(id));
+    }
+
+    @DELETE
+    @Path("dvn/api/data-deposit/v1.1/swordv2/edit-media/file/{id}")
+    public Response deleteFile(@PathParam("id") int id) {
+        try {
+            dataverse.deleteFile(id);
+            return Response.noContent().build();
+        }
+        catch (IllegalArgumentException e) {
+            return Response.status(Response.Status.NOT_FOUND).build();
+        }
+    }
+
+    @GET
+    @Path("api/search")
+    public Response search(@QueryParam("q") String query) {
+        return respond(() -> dataverse.search(query == null ? "" : query));
+    }
+
+    @GET
+    @Path("api/licenses")
+    public Response getLicenses() {
+        return respond(dataverse::getLicenses);
+    }
+
+    @GET
+    @Path("api/admin/authenticatedUsers/{id}")
+    public Response getUser(@PathParam("id") String id) {
+        return respond(() -> dataverse.getUser(id));
+    }
+
+    private String resolve(String id, String persistentId) {
+        if (PERSISTENT_ID.equals(id)) {
+            if (persistentId == null) {
+                throw new IllegalArgumentException("Missing persistentId parameter");
+            }
+            return persistentId;
+        }
+        try {
+            return dataverse.getPersistentId(Integer.parseInt(id));
+        }
+        catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Not a dataset id: " + id);
+        }
+    }
+
+    private JsonNode readJsonData(String jsonData) throws IOException {
+        return jsonData == null || jsonData.isBlank() ? mapper.createObjectNode() : mapper.readTree(jsonData);
+    }
+
+    private Response respond(Action action) {
+        return respond(Response.Status.OK, action);
+    }
+
+    private Response respond(Response.Status status, Action action) {
+        try {
+            var envelope = mapper.createObjectNode();
+            envelope.put("status", "OK");
+            envelope.set("data", action.execute());
+            return Response.status(status).entity(mapper.writeValueAsString(envelope)).build();
+        }
+        catch (IllegalArgumentException e) {
+            return error(Response.Status.NOT_FOUND, e.getMessage());
+        }
+        catch (IllegalStateException e) {
+            return error(Response.Status.FORBIDDEN, e.getMessage());
+        }
+        catch (IOException e) {
+            log.warn("Bad request to fake Dataverse", e);
+            return error(Response.Status.BAD_REQUEST, e.getMessage());
+        }
+    }
+
+    private Response error(Response.Status status, String message) {
+        var envelope = mapper.createObjectNode();
+        envelope.put("status", "ERROR");
+        envelope.put("message", message);
+        return Response.status(status).entity(envelope.toString()).build();
+    }
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright (C) 2024 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.dvingest.core.fakedataverse;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+import org.eclipse.jetty.servlet.ServletContextHandler;
+import org.eclipse.jetty.servlet.ServletHolder;
+import org.glassfish.jersey.media.multipart.MultiPartFeature;
+import org.glassfish.jersey.server.ResourceConfig;
+import org.glassfish.jersey.servlet.ServletContainer;
+
+import java.net.URI;
+
+/**
+ * An in-process HTTP server that serves a {@link FakeDataverse} on localhost. It uses the Jetty and Jersey that Dropwizard already provides, so that it does not need any extra dependencies.
+ */
+@Slf4j
+public class FakeDataverseServer implements AutoCloseable {
+    private final FakeDataverseConfig config;
+    @Getter
+    private final FakeDataverse dataverse;
+    private final ObjectMapper mapper;
+    private Server server;
+
+    public FakeDataverseServer(@NonNull FakeDataverseConfig config, @NonNull ObjectMapper mapper) {
+        this.config = config;
+        this.mapper = mapper;
+        this.dataverse = new FakeDataverse(mapper, config);
+    }
+
+    public synchronized void start() throws Exception {
+        if (server != null) {
+            throw new IllegalStateException("Fake Dataverse server already started");
+        }
+        var resourceConfig = new ResourceConfig()
+            .register(MultiPartFeature.class)
+            .register(new FakeDataverseFaultFilter(config))
+            .register(new FakeDataverseResource(dataverse, mapper));
+        var context = new ServletContextHandler();
+        context.setContextPath("/");
+        context.addServlet(new ServletHolder(new ServletContainer(resourceConfig)), "/*");
+        server = new Server();
+        var connector = new ServerConnector(server);
+        connector.setHost("localhost");
+        connector.setPort(config.getPort());
+        server.addConnector(connector);
+        server.setHandler(context);
+        server.start();
+        log.info("Fake Dataverse listening on {}", getBaseUrl());
+    }
+
+    /**
+     * Returns the URL to configure as the base URL of the Dataverse client.
+     *
+     * @return the base URL
+     */
+    public synchronized URI getBaseUrl() {
+        if (server == null) {
+            throw new IllegalStateException("Fake Dataverse server not started");
+        }
+        return URI.create("http://localhost:" + ((ServerConnector) server.getConnectors()[0]).getLocalPort() + "/");
+    }
+
+    @Override
+    public synchronized void close() throws Exception {
+        if (server != null) {
+            server.stop();
+            server = null;
+        }
+    }
+}
@@ -0,0 +1,562 @@
+/*
+ * Copyright (C) 2024 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.dvingest.core.generator;
+
+import lombok.Builder;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.codec.binary.Hex;
+import org.apache.commons.codec.digest.DigestUtils;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.DigestOutputStream;
+import java.time.LocalDate;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+import java.util.regex.Pattern;
+
+/**
+ * <p>
+ * Generates a batch of synthetic deposits for scale tests and benchmarks. Each dataset gets a chain of versions: in the Dataverse ingest format these are the bags of a single deposit, in the
+ * DANS bag format they are separate deposits that are linked with <code>Is-Version-Of</code> and share a SWORD token. Each version after the first replaces, deletes and adds a fraction of the
+ * files.
+ * </p>
+ * <p>
+ * The output only depends on the parameters and the seed, except for the creation timestamps and embargo dates, which are relative to the time of generation. File contents are pseudo-random
+ * bytes. Unchanged files in DANS update deposits are hard-linked to the previous version where the file system allows it, so that large chains do not take up much extra disk space.
+ * </p>
+ */
+@Slf4j
+public class DepositGenerator {
+    public enum DepositType {
+        DATAVERSE_INGEST,
+        DANS_BAG
+    }
+
+    public enum SizeDistribution {
+        // Every file has the maximum size
+        FIXED,
+        UNIFORM,
+        // Many small files and few large ones, as in most real datasets
+        LOG_UNIFORM
+    }
+
+    // Characters that Dataverse does not allow in file names, see FileElement
+    private static final String FORBIDDEN_CHARACTERS = ":*?\"<>|;#";
+    private static final Pattern FORBIDDEN_PATTERN = Pattern.compile("[:*?\"<>|;#]");
+    private static final int CONTENT_BLOCK_SIZE = 64 * 1024;
+    private static final String LICENSE = "http://creativecommons.org/licenses/by/4.0";
+
+    private final DepositType depositType;
+    private final int numberOfDatasets;
+    private final int versionsPerDataset;
+    private final int filesPerDataset;
+    private final SizeDistribution sizeDistribution;
+    private final long minFileSize;
+    private final long maxFileSize;
+    private final int directoryDepth;
+    private final int filesPerDirectory;
+    private final double unsanitizedNameFraction;
+    private final double restrictedFraction;
+    private final double embargoedFraction;
+    private final double changedFileFraction;
+    private final int metadataRichness;
+    private final long seed;
+
+    private final Random random;
+    private final byte[] contentBlock = new byte[CONTENT_BLOCK_SIZE];
+    private final OffsetDateTime baseTimestamp = OffsetDateTime.now(ZoneOffset.UTC).truncatedTo(ChronoUnit.SECONDS);
+    private final LocalDate embargoDate = LocalDate.now().plusYears(1);
+
+    @Builder
+    private DepositGenerator(@NonNull DepositType depositType, int numberOfDatasets, int versionsPerDataset, int filesPerDataset, @NonNull SizeDistribution sizeDistribution, long minFileSize,
+        long maxFileSize, int directoryDepth, int filesPerDirectory, double unsanitizedNameFraction, double restrictedFraction, double embargoedFraction, double changedFileFraction,
+        int metadataRichness, long seed) {
+        if (numberOfDatasets < 1 || versionsPerDataset < 1) {
+            throw new IllegalArgumentException("numberOfDatasets and versionsPerDataset must be at least 1");
+        }
+        if (filesPerDataset < 0 || filesPerDirectory < 1 || directoryDepth < 0 || metadataRichness < 0) {
+            throw new IllegalArgumentException("Invalid file or metadata layout");
+        }
+        if (minFileSize < 0 || maxFileSize < minFileSize) {
+            throw new IllegalArgumentException("Invalid file size range: " + minFileSize + " - " + maxFileSize);
+        }
+        for (var fraction : new double[] { unsanitizedNameFraction, restrictedFraction, embargoedFraction, changedFileFraction }) {
+            if (fraction < 0 || fraction > 1) {
+                throw new IllegalArgumentException("Fractions must be between 0 and 1");
+            }
+        }
+        this.depositType = depositType;
+        this.numberOfDatasets = numberOfDatasets;
+        this.versionsPerDataset = versionsPerDataset;
+        this.filesPerDataset = filesPerDataset;
+        this.sizeDistribution = sizeDistribution;
+        this.minFileSize = minFileSize;
+        this.maxFileSize = maxFileSize;
+        this.directoryDepth = directoryDepth;
+        this.filesPerDirectory = filesPerDirectory;
+        this.unsanitizedNameFraction = unsanitizedNameFraction;
+        this.restrictedFraction = restrictedFraction;
+        this.embargoedFraction = embargoedFraction;
+        this.changedFileFraction = changedFileFraction;
+        this.metadataRichness = metadataRichness;
+        this.seed = seed;
+        this.random = new Random(seed);
+        new Random(seed).nextBytes(contentBlock);
+    }
+
+    /**
+     * Generates the deposits in the given batch directory, which is created if it does not exist.
+     *
+     * @param batchDir the batch directory
+     * @return the generated deposit directories, in processing order
+     * @throws IOException if the deposits could not be written
+     */
+    public List<Path> generate(@NonNull Path batchDir) throws IOException {
+        Files.createDirectories(batchDir);
+        var deposits = new ArrayList<Path>();
+        for (var dataset = 0; dataset < numberOfDatasets; dataset++) {
+            log.debug("Start generating dataset {} in {}", dataset, batchDir);
+            if (depositType == DepositType.DATAVERSE_INGEST) {
+                deposits.add(generateDataverseIngestDeposit(batchDir, dataset));
+            }
+            else {
+                deposits.addAll(generateDansDeposits(batchDir, dataset));
+            }
+            log.debug("End generating dataset {} in {}", dataset, batchDir);
+        }
+        log.info("Generated {} deposits in {}", deposits.size(), batchDir);
+        return deposits;
+    }
+
+    private Path generateDataverseIngestDeposit(Path batchDir, int dataset) throws IOException {
+        var depositDir = batchDir.resolve(depositId(dataset, 1).toString());
+        Files.createDirectories(depositDir);
+        writeProperties(depositDir, Map.of("creation.timestamp", timestamp(dataset, 1)));
+        var files = new ArrayList<GeneratedFile>();
+        var nextFileIndex = 0;
+        var bagNameWidth = String.valueOf(versionsPerDataset).length();
+        for (var version = 1; version <= versionsPerDataset; version++) {
+            var bagDir = depositDir.resolve(String.format("%0" + bagNameWidth + "d", version));
+            var payload = new LinkedHashMap<String, GeneratedFile>();
+            var added = new ArrayList<GeneratedFile>();
+            var replaced = new ArrayList<GeneratedFile>();
+            var deleted = new ArrayList<GeneratedFile>();
+            if (version == 1) {
+                nextFileIndex = addFiles(files, added, 0, filesPerDataset);
+            }
+            else {
+                selectChanges(files, replaced, deleted);
+                nextFileIndex = addFiles(files, added, nextFileIndex, numberOfChanges(files.size()));
+            }
+            for (var file : replaced) {
+                setNewContent(file, version);
+                payload.put(datasetPath(file.path), file);
+            }
+            for (var file : added) {
+                setNewContent(file, version);
+                payload.put(file.path, file);
+            }
+            writeBag(bagDir, payload, Map.of());
+            if (version == 1) {
+                writeDatasetYml(bagDir, dataset);
+            }
+            writeEditFilesYml(bagDir, added, replaced, deleted);
+            writeLines(bagDir.resolve("update-state.yml"), List.of("action: 'publish-major'"));
+        }
+        return depositDir;
+    }
+
+    private List<Path> generateDansDeposits(Path batchDir, int dataset) throws IOException {
+        var deposits = new ArrayList<Path>();
+        var files = new ArrayList<GeneratedFile>();
+        var firstDepositId = depositId(dataset, 1);
+        var embargoed = random.nextDouble() < embargoedFraction;
+        var nextFileIndex = 0;
+        for (var version = 1; version <= versionsPerDataset; version++) {
+            var depositId = depositId(dataset, version);
+            var depositDir = batchDir.resolve(depositId.toString());
+            var bagDir = depositDir.resolve("bag-" + version);
+            var added = new ArrayList<GeneratedFile>();
+            if (version == 1) {
+                nextFileIndex = addFiles(files, added, 0, filesPerDataset);
+            }
+            else {
+                var replaced = new ArrayList<GeneratedFile>();
+                selectChanges(files, replaced, new ArrayList<>());
+                for (var file : replaced) {
+                    setNewContent(file, version);
+                }
+                nextFileIndex = addFiles(files, added, nextFileIndex, numberOfChanges(files.size()));
+            }
+            for (var file : added) {
+                setNewContent(file, version);
+            }
+            // A DANS bag always contains all files of the version
+            var payload = new LinkedHashMap<String, GeneratedFile>();
+            files.forEach(file -> payload.put(file.path, file));
+            Files.createDirectories(bagDir.resolve("metadata"));
+            writeDdm(bagDir, dataset, version, embargoed);
+            writeFilesXml(bagDir, files);
+            var bagInfo = new LinkedHashMap<String, String>();
+            bagInfo.put("Created", timestamp(dataset, version));
+            if (version > 1) {
+                bagInfo.put("Is-Version-Of", "urn:uuid:" + firstDepositId);
+            }
+            writeBag(bagDir, payload, bagInfo);
+            var properties = new LinkedHashMap<String, String>();
+            properties.put("creation.timestamp", timestamp(dataset, version));
+            properties.put("deposit.origin", "SWORD2");
+            properties.put("depositor.userId", "user001");
+            properties.put("state.label", "SUBMITTED");
+            properties.put("bag-store.bag-id", depositId.toString());
+            properties.put("bag-store.bag-name", bagDir.getFileName().toString());
+            properties.put("dataverse.bag-id", "urn:uuid:" + depositId);
+            properties.put("dataverse.sword-token", "sword:" + firstDepositId);
+            writeProperties(depositDir, properties);
+            deposits.add(depositDir);
+        }
+        return deposits;
+    }
+
+    private int addFiles(List<GeneratedFile> files, List<GeneratedFile> added, int firstIndex, int count) {
+        for (var index = firstIndex; index < firstIndex + count; index++) {
+            var unsanitized = random.nextDouble() < unsanitizedNameFraction;
+            var name = unsanitized
+                ? "file-" + index + FORBIDDEN_CHARACTERS.charAt(random.nextInt(FORBIDDEN_CHARACTERS.length())) + ".bin"
+                : "file-" + index + ".bin";
+            var directory = directoryOf(index);
+            var restricted = random.nextDouble() < restrictedFraction;
+            // Embargoes are set per file only in Dataverse ingest deposits
+            var embargoed = depositType == DepositType.DATAVERSE_INGEST && random.nextDouble() < embargoedFraction;
+            var file = new GeneratedFile(directory.isEmpty() ? name : directory + "/" + name, restricted, embargoed);
+            files.add(file);
+            added.add(file);
+        }
+        return firstIndex + count;
+    }
+
+    private void selectChanges(List<GeneratedFile> files, List<GeneratedFile> replaced, List<GeneratedFile> deleted) {
+        var numberOfChanges = numberOfChanges(files.size());
+        Collections.shuffle(files, random);
+        replaced.addAll(files.subList(0, numberOfChanges));
+        var numberOfDeletions = Math.min(numberOfChanges / 2, files.size() - numberOfChanges);
+        deleted.addAll(files.subList(numberOfChanges, numberOfChanges + numberOfDeletions));
+        files.subList(numberOfChanges, numberOfChanges + numberOfDeletions).clear();
+        files.sort((a, b) -> a.path.compareTo(b.path));
+    }
+
+    private void setNewContent(GeneratedFile file, int version) {
+        file.contentVersion = version;
+        file.location = null;
+    }
+
+    private int numberOfChanges(int numberOfFiles) {
+        return (int) Math.round(numberOfFiles * changedFileFraction);
+    }
+
+    private String directoryOf(int fileIndex) {
+        var directory = new StringBuilder();
+        var directoryIndex = fileIndex / filesPerDirectory;
+        for (var level = 1; level <= directoryDepth; level++) {
+            if (directory.length() > 0) {
+                directory.append('/');
+            }
+            // The deepest level takes whatever is left, so that the number of directories per level stays small
+            var part = level == directoryDepth ? directoryIndex : directoryIndex % 10;
+            directory.append("level").append(level).append('-').append(part);
+            directoryIndex /= 10;
+        }
+        return directory.toString();
+    }
+
+    private String datasetPath(String path) {
+        return FORBIDDEN_PATTERN.matcher(path).replaceAll("_");
+    }
+
+    private UUID depositId(int dataset, int version) {
+        return UUID.nameUUIDFromBytes((seed + "/" + dataset + "/" + version).getBytes(StandardCharsets.UTF_8));
+    }
+
+    private String timestamp(int dataset, int version) {
+        return baseTimestamp.plusSeconds((long) dataset * versionsPerDataset + version).toString();
+    }
+
+    private void writeBag(Path bagDir, Map<String, GeneratedFile> payload, Map<String, String> extraBagInfo) throws IOException {
+        var dataDir = bagDir.resolve("data");
+        Files.createDirectories(dataDir);
+        var manifest = new ArrayList<String>();
+        var totalSize = 0L;
+        for (var entry : payload.entrySet()) {
+            var target = dataDir.resolve(entry.getKey());
+            var file = entry.getValue();
+            Files.createDirectories(target.getParent());
+            if (file.location != null) {
+                linkOrCopy(file.location, target);
+            }
+            else {
+                writeContent(file, target);
+            }
+            file.location = target;
+            manifest.add(file.sha1 + "  data/" + entry.getKey());
+            totalSize += file.size;
+        }
+        writeLines(bagDir.resolve("manifest-sha1.txt"), manifest);
+        writeLines(bagDir.resolve("bagit.txt"), List.of("BagIt-Version: 0.97", "Tag-File-Character-Encoding: UTF-8"));
+        var bagInfo = new ArrayList<String>();
+        bagInfo.add("Bag-Software-Agent: dd-dataverse-ingest deposit generator");
+        bagInfo.add("Bagging-Date: " + baseTimestamp.toLocalDate());
+        bagInfo.add("Payload-Oxum: " + totalSize + "." + payload.size());
+        extraBagInfo.forEach((key, value) -> bagInfo.add(key + ": " + value));
+        writeLines(bagDir.resolve("bag-info.txt"), bagInfo);
+        writeTagManifest(bagDir);
+    }
+
+    private void linkOrCopy(Path source, Path target) throws IOException {
+        try {
+            Files.createLink(target, source);
+        }
+        catch (IOException | UnsupportedOperationException e) {
+            Files.copy(source, target);
+        }
+    }
+
+    private void writeContent(GeneratedFile file, Path target) throws IOException {
+        var contentRandom = new Random(seed * 31 + file.path.hashCode() * 17L + file.contentVersion);
+        var size = nextFileSize(contentRandom);
+        var digest = DigestUtils.getSha1Digest();
+        try (var out = new DigestOutputStream(new BufferedOutputStream(Files.newOutputStream(target)), digest)) {
+            // The header makes the content unique for each file and version
+            var header = (file.path + "\n" + file.contentVersion + "\n").getBytes(StandardCharsets.UTF_8);
+            var written = (long) Math.min(header.length, size);
+            out.write(header, 0, (int) written);
+            var offset = contentRandom.nextInt(CONTENT_BLOCK_SIZE);
+            while (written < size) {
+                var length = (int) Math.min(CONTENT_BLOCK_SIZE - offset, size - written);
+                out.write(contentBlock, offset, length);
+                written += length;
+                offset = 0;
+            }
+        }
+        file.sha1 = Hex.encodeHexString(digest.digest());
+        file.size = size;
+    }
+
+    private long nextFileSize(Random contentRandom) {
+        var range = maxFileSize - minFileSize;
+        switch (sizeDistribution) {
+            case FIXED:
+                return maxFileSize;
+            case UNIFORM:
+                return minFileSize + (long) (contentRandom.nextDouble() * (range + 1));
+            default:
+                var logMin = Math.log(minFileSize + 1);
+                var logMax = Math.log(maxFileSize + 1);
+                return Math.min(maxFileSize, (long) Math.exp(logMin + contentRandom.nextDouble() * (logMax - logMin)) - 1);
+        }
+    }
+
+    private void writeTagManifest(Path bagDir) throws IOException {
+        var lines = new ArrayList<String>();
+        for (var tagFile : List.of("bagit.txt", "bag-info.txt", "manifest-sha1.txt", "metadata/dataset.xml", "metadata/files.xml")) {
+            var path = bagDir.resolve(tagFile);
+            if (Files.exists(path)) {
+                try (var in = Files.newInputStream(path)) {
+                    lines.add(DigestUtils.sha1Hex(in) + "  " + tagFile);
+                }
+            }
+        }
+        writeLines(bagDir.resolve("tagmanifest-sha1.txt"), lines);
+    }
+
+    private void writeDatasetYml(Path bagDir, int dataset) throws IOException {
+        try (var writer = Files.newBufferedWriter(bagDir.resolve("dataset.yml"))) {
+            writer.write("datasetVersion:\n");
+            writer.write("  license:\n");
+            writer.write("    name: \"CC BY 4.0\"\n");
+            writer.write("    uri: " + quote(LICENSE) + "\n");
+            writer.write("  metadataBlocks:\n");
+            writer.write("    citation:\n");
+            writer.write("      displayName: \"Citation Metadata\"\n");
+            writer.write("      name: \"citation\"\n");
+            writer.write("      fields:\n");
+            writePrimitiveField(writer, "title", "Generated dataset " + dataset);
+            writeCompoundField(writer, "author", List.of(Map.of("authorName", "Generator, Deposit", "authorAffiliation", "DANS")));
+            writeCompoundField(writer, "datasetContact", List.of(Map.of("datasetContactName", "Generator, Deposit", "datasetContactEmail", "generator@example.org")));
+            writeCompoundField(writer, "dsDescription", List.of(Map.of("dsDescriptionValue", "Synthetic dataset for scale testing")));
+            writer.write("        - typeName: \"subject\"\n");
+            writer.write("          multiple: true\n");
+            writer.write("          typeClass: \"controlledVocabulary\"\n");
+            writer.write("          value:\n");
+            writer.write("            - \"Other\"\n");
+            if (metadataRichness > 0) {
+                var keywords = new ArrayList<Map<String, String>>();
+                for (var i = 0; i < metadataRichness; i++) {
+                    keywords.add(Map.of("keywordValue", "keyword " + i));
+                }
+                writeCompoundField(writer, "keyword", keywords);
+            }
+        }
+    }
+
+    private void writePrimitiveField(BufferedWriter writer, String typeName, String value) throws IOException {
+        writer.write("        - typeName: " + quote(typeName) + "\n");
+        writer.write("          multiple: false\n");
+        writer.write("          typeClass: \"primitive\"\n");
+        writer.write("          value: " + quote(value) + "\n");
+    }
+
+    private void writeCompoundField(BufferedWriter writer, String typeName, List<Map<String, String>> values) throws IOException {
+        writer.write("        - typeName: " + quote(typeName) + "\n");
+        writer.write("          multiple: true\n");
+        writer.write("          typeClass: \"compound\"\n");
+        writer.write("          value:\n");
+        for (var value : values) {
+            var first = true;
+            for (var subField : value.entrySet()) {
+                writer.write((first ? "            - " : "              ") + subField.getKey() + ":\n");
+                writer.write("                typeName: " + quote(subField.getKey()) + "\n");
+                writer.write("                multiple: false\n");
+                writer.write("                typeClass: \"primitive\"\n");
+                writer.write("                value: " + quote(subField.getValue()) + "\n");
+                first = false;
+            }
+        }
+    }
+
+    private void writeEditFilesYml(Path bagDir, List<GeneratedFile> added, List<GeneratedFile> replaced, List<GeneratedFile> deleted) throws IOException {
+        try (var writer = Files.newBufferedWriter(bagDir.resolve("edit-files.yml"))) {
+            writer.write("editFiles:\n");
+            writeList(writer, "deleteFiles", deleted.stream().map(file -> datasetPath(file.path)).toList());
+            writeList(writer, "replaceFiles", replaced.stream().map(file -> datasetPath(file.path)).toList());
+            writeList(writer, "addRestrictedFiles", added.stream().filter(file -> file.restricted).map(file -> file.path).toList());
+            writeList(writer, "addUnrestrictedFiles", added.stream().filter(file -> !file.restricted).map(file -> file.path).toList());
+            var renamed = added.stream().filter(file -> !file.path.equals(datasetPath(file.path))).toList();
+            if (!renamed.isEmpty()) {
+                writer.write("  autoRenameFiles:\n");
+                for (var file : renamed) {
+                    writer.write("    - from: " + quote(file.path) + "\n");
+                    writer.write("      to: " + quote(datasetPath(file.path)) + "\n");
+                }
+            }
+            var embargoed = added.stream().filter(file -> file.embargoed).map(file -> file.path).toList();
+            if (!embargoed.isEmpty()) {
+                writer.write("  addEmbargoes:\n");
+                writer.write("    - filePaths:\n");
+                for (var path : embargoed) {
+                    writer.write("        - " + quote(path) + "\n");
+                }
+                writer.write("      dateAvailable: " + quote(embargoDate.toString()) + "\n");
+                writer.write("      reason: 'Generated embargo'\n");
+            }
+        }
+    }
+
+    private void writeList(BufferedWriter writer, String name, List<String> items) throws IOException {
+        if (items.isEmpty()) {
+            return;
+        }
+        writer.write("  " + name + ":\n");
+        for (var item : items) {
+            writer.write("    - " + quote(item) + "\n");
+        }
+    }
+
+    private void writeDdm(Path bagDir, int dataset, int version, boolean embargoed) throws IOException {
+        try (var writer = Files.newBufferedWriter(bagDir.resolve("metadata/dataset.xml"))) {
+            writer.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+            writer.write("<ddm:DDM\n");
+            writer.write("        xmlns:dc=\"http://purl.org/dc/elements/1.1/\"\n");
+            writer.write("        xmlns:dcx-dai=\"http://easy.dans.knaw.nl/schemas/dcx/dai/\"\n");
+            writer.write("        xmlns:ddm=\"http://schemas.dans.knaw.nl/dataset/ddm-v2/\"\n");
+            writer.write("        xmlns:dcterms=\"http://purl.org/dc/terms/\"\n");
+            writer.write("        xmlns:xsi=\"http://www.w3.org/2001/XMLSchema-instance\">\n");
+            writer.write("    <ddm:profile>\n");
+            writer.write("        <dc:title>Generated dataset " + dataset + " - " + version + "</dc:title>\n");
+            writer.write("        <dcterms:description>Synthetic dataset for scale testing</dcterms:description>\n");
+            writer.write("        <dcx-dai:creatorDetails>\n");
+            writer.write("            <dcx-dai:author>\n");
+            writer.write("                <dcx-dai:initials>D</dcx-dai:initials>\n");
+            writer.write("                <dcx-dai:surname>Generator</dcx-dai:surname>\n");
+            writer.write("            </dcx-dai:author>\n");
+            writer.write("        </dcx-dai:creatorDetails>\n");
+            writer.write("        <ddm:created>" + baseTimestamp.toLocalDate() + "</ddm:created>\n");
+            writer.write("        <ddm:available>" + (embargoed ? embargoDate : baseTimestamp.toLocalDate()) + "</ddm:available>\n");
+            writer.write("        <ddm:audience>D16300</ddm:audience>\n");
+            writer.write("        <ddm:accessRights>OPEN_ACCESS</ddm:accessRights>\n");
+            writer.write("        <ddm:personalData present=\"No\"/>\n");
+            writer.write("    </ddm:profile>\n");
+            writer.write("    <ddm:dcmiMetadata>\n");
+            writer.write("        <dcterms:license xsi:type=\"dcterms:URI\">" + LICENSE + "</dcterms:license>\n");
+            writer.write("        <dcterms:rightsHolder>DANS</dcterms:rightsHolder>\n");
+            for (var i = 0; i < metadataRichness; i++) {
+                writer.write("        <dcterms:alternative>Alternative title " + i + "</dcterms:alternative>\n");
+                writer.write("        <dcterms:subject>keyword " + i + "</dcterms:subject>\n");
+                writer.write("        <dcterms:description>Additional description " + i + "</dcterms:description>\n");
+            }
+            writer.write("    </ddm:dcmiMetadata>\n");
+            writer.write("</ddm:DDM>\n");
+        }
+    }
+
+    private void writeFilesXml(Path bagDir, List<GeneratedFile> files) throws IOException {
+        try (var writer = Files.newBufferedWriter(bagDir.resolve("metadata/files.xml"))) {
+            writer.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+            writer.write("<files xmlns=\"http://easy.dans.knaw.nl/schemas/bag/metadata/files/\" xmlns:dcterms=\"http://purl.org/dc/terms/\">\n");
+            for (var file : files) {
+                writer.write("    <file filepath=\"data/" + escapeXml(file.path) + "\">\n");
+                writer.write("        <dcterms:format>application/octet-stream</dcterms:format>\n");
+                if (file.restricted) {
+                    writer.write("        <accessibleToRights>RESTRICTED_REQUEST</accessibleToRights>\n");
+                }
+                writer.write("    </file>\n");
+            }
+            writer.write("</files>\n");
+        }
+    }
+
+    private void writeProperties(Path depositDir, Map<String, String> properties) throws IOException {
+        var lines = new ArrayList<String>();
+        properties.forEach((key, value) -> lines.add(key + " = " + value));
+        writeLines(depositDir.resolve("deposit.properties"), lines);
+    }
+
+    private void writeLines(Path file, List<String> lines) throws IOException {
+        Files.createDirectories(file.getParent());
+        Files.write(file, lines, StandardCharsets.UTF_8);
+    }
+
+    private static String quote(String value) {
+        return "'" + value.replace("'", "''") + "'";
+    }
+
+    private static String escapeXml(String value) {
+        return value.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;").replace("\"", "&quot;");
+    }
+}
@@ -0,0 +1,36 @@
+/*
+ * Copyright (C) 2024 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.dvingest.core.generator;
+
+import lombok.RequiredArgsConstructor;
+
+import java.nio.file.Path;
+
+/**
+ * A file in a generated dataset. The path is the local path in the bag, which may contain characters that Dataverse does not allow.
+ */
+@RequiredArgsConstructor
+class GeneratedFile {
+    final String path;
+    final boolean restricted;
+    final boolean embargoed;
+    // The version of the dataset in which the current content was written
+    int contentVersion;
+    // Where the current content was last written, so that an unchanged file can be linked instead of written again; null if the content has changed
+    Path location;
+    String sha1;
+    long size;
+}
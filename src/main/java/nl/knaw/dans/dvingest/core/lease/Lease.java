@@ -0,0 +1,36 @@
+/*
+ * Copyright (C) 2024 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.dvingest.core.lease;
+
+/**
+ * A lease on a key, held by this instance until it is closed. While the lease is held, it is renewed in the background.
+ */
+public interface Lease extends AutoCloseable {
+
+    /**
+     * Returns whether the lease was lost, because it expired before it could be renewed, or another instance took it over. A lost lease is not renewed
+     * anymore; the work that it protects must be stopped.
+     *
+     * @return true if the lease was lost
+     */
+    boolean isLost();
+
+    /**
+     * Releases the lease, so that other instances can acquire it.
+     */
+    @Override
+    void close();
+}
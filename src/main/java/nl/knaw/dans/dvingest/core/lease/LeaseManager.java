@@ -0,0 +1,50 @@
+/*
+ * Copyright (C) 2024 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.dvingest.core.lease;
+
+import java.io.IOException;
+import java.util.Optional;
+
+/**
+ * Coordinates the processing of deposits by several instances of the service that share their inboxes and outboxes. Deposits are leased per dataset, so that
+ * the deposits for one dataset are never processed by two instances, or two threads, at the same time.
+ */
+public interface LeaseManager {
+
+    /**
+     * Tries to acquire the lease on a key. The lease is not available if it is held by another instance, or by this instance for another deposit, and has not
+     * expired.
+     *
+     * @param key the key, e.g., the dataset that a deposit is for
+     * @return the lease, or empty if it is not available
+     * @throws IOException if the lease could not be read or written
+     */
+    Optional<Lease> tryAcquire(String key) throws IOException;
+
+    /**
+     * Returns whether leases are coordinated with other instances. If not, every lease is granted.
+     *
+     * @return true if other instances may process the same inboxes
+     */
+    boolean isShared();
+
+    /**
+     * Returns the identifier of this instance.
+     *
+     * @return the instance id
+     */
+    String getInstanceId();
+}
@@ -0,0 +1,50 @@
+/*
+ * Copyright (C) 2024 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.dvingest.core.lease;
+
+import java.util.Optional;
+
+/**
+ * {@link LeaseManager} for a single instance: every lease is granted, and deposits are processed in the order in which they are submitted.
+ */
+public class LeaseManagerDisabled implements LeaseManager {
+    private static final Lease NO_LEASE = new Lease() {
+
+        @Override
+        public boolean isLost() {
+            return false;
+        }
+
+        @Override
+        public void close() {
+        }
+    };
+
+    @Override
+    public Optional<Lease> tryAcquire(String key) {
+        return Optional.of(NO_LEASE);
+    }
+
+    @Override
+    public boolean isShared() {
+        return false;
+    }
+
+    @Override
+    public String getInstanceId() {
+        return "local";
+    }
+}
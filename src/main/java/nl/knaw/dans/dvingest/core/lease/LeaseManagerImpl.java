@@ -0,0 +1,273 @@
+/*
+ * Copyright (C) 2024 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.dvingest.core.lease;
+
+import io.dropwizard.lifecycle.Managed;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.codec.digest.DigestUtils;
+
+import java.io.IOException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Clock;
+import java.util.Optional;
+import java.util.Properties;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>
+ * {@link LeaseManager} that keeps the leases as files in a directory that all instances share, e.g., on NFS. A lease file contains the key, the id of the
+ * instance that holds the lease and the time at which the lease expires. The file is named after the SHA-1 hash of the key.
+ * </p>
+ * <p>
+ * A lease file is created by writing a temporary file and hard-linking it to the name of the lease file, which fails if the lease file already exists, also on
+ * NFS. A lease is renewed by replacing the file with an atomic rename, unless it has already expired; then it is marked as lost instead, because another
+ * instance may be taking it over. An expired lease is taken over by renaming it out of the way, checking that the renamed file is still the expired lease,
+ * and then creating a new one. The expiry times are compared with the clock of the instance, so the clocks of the instances must be synchronized, with an
+ * error well below the lease duration.
+ * </p>
+ */
+@Slf4j
+public class LeaseManagerImpl implements LeaseManager, Managed {
+    private static final String KEY = "key";
+    private static final String OWNER = "owner";
+    private static final String EXPIRES = "expires";
+
+    private final Path directory;
+    private final String instanceId;
+    private final long durationMillis;
+    private final ScheduledExecutorService scheduler;
+    private final Clock clock;
+    private final Set<FileLease> activeLeases = ConcurrentHashMap.newKeySet();
+    private ScheduledFuture<?> renewal;
+
+    private record LeaseContent(String key, String owner, long expires) {
+    }
+
+    private class FileLease implements Lease {
+        private final String key;
+        private final Path file;
+        private volatile boolean lost;
+        // The expiry time in the lease file, as last written by this instance
+        private volatile long expires;
+
+        private FileLease(String key, Path file, long expires) {
+            this.key = key;
+            this.file = file;
+            this.expires = expires;
+        }
+
+        @Override
+        public boolean isLost() {
+            // Once expired, the lease may be taken over at any moment, even if the renewal has not noticed it yet
+            return lost || expires <= clock.millis();
+        }
+
+        @Override
+        public void close() {
+            if (activeLeases.remove(this)) {
+                release(this);
+            }
+        }
+    }
+
+    public LeaseManagerImpl(@NonNull Path directory, @NonNull String instanceId, long durationMillis, @NonNull ScheduledExecutorService scheduler) {
+        this(directory, instanceId, durationMillis, scheduler, Clock.systemUTC());
+    }
+
+    LeaseManagerImpl(@NonNull Path directory, @NonNull String instanceId, long durationMillis, @NonNull ScheduledExecutorService scheduler, @NonNull Clock clock) {
+        if (durationMillis < 3) {
+            throw new IllegalArgumentException("durationMillis must be at least 3");
+        }
+        this.directory = directory;
+        this.instanceId = instanceId;
+        this.durationMillis = durationMillis;
+        this.scheduler = scheduler;
+        this.clock = clock;
+    }
+
+    @Override
+    public void start() throws IOException {
+        Files.createDirectories(directory);
+        var interval = durationMillis / 3;
+        renewal = scheduler.scheduleWithFixedDelay(this::renewAll, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void stop() {
+        if (renewal != null) {
+            renewal.cancel(false);
+        }
+        for (var lease : activeLeases) {
+            lease.close();
+        }
+    }
+
+    @Override
+    public boolean isShared() {
+        return true;
+    }
+
+    @Override
+    public String getInstanceId() {
+        return instanceId;
+    }
+
+    @Override
+    public Optional<Lease> tryAcquire(@NonNull String key) throws IOException {
+        var file = directory.resolve(DigestUtils.sha1Hex(key) + ".lease");
+        var expires = clock.millis() + durationMillis;
+        if (!create(file, key, expires)) {
+            var current = read(file);
+            if (current != null && (current.expires() > clock.millis() || isActive(file))) {
+                log.debug("Lease on {} is held by {} until {}", key, current.owner(), current.expires());
+                return Optional.empty();
+            }
+            if (current != null && !takeOver(file, current)) {
+                return Optional.empty();
+            }
+            expires = clock.millis() + durationMillis;
+            if (!create(file, key, expires)) {
+                return Optional.empty();
+            }
+        }
+        var lease = new FileLease(key, file, expires);
+        activeLeases.add(lease);
+        log.debug("Acquired lease on {}", key);
+        return Optional.of(lease);
+    }
+
+    private boolean isActive(Path file) {
+        return activeLeases.stream().anyMatch(lease -> lease.file.equals(file));
+    }
+
+    private boolean create(Path file, String key, long expires) throws IOException {
+        var tempFile = write(file, new LeaseContent(key, instanceId, expires));
+        try {
+            Files.createLink(file, tempFile);
+            return true;
+        }
+        catch (FileAlreadyExistsException e) {
+            return false;
+        }
+        finally {
+            Files.deleteIfExists(tempFile);
+        }
+    }
+
+    private boolean takeOver(Path file, LeaseContent expired) throws IOException {
+        var staleFile = directory.resolve(file.getFileName() + "." + UUID.randomUUID() + ".stale");
+        try {
+            Files.move(file, staleFile, StandardCopyOption.ATOMIC_MOVE);
+        }
+        catch (NoSuchFileException e) {
+            // Another instance took it over first
+            return false;
+        }
+        var moved = read(staleFile);
+        if (!expired.equals(moved)) {
+            // The lease was renewed, or taken over by another instance, after it was read; put it back
+            try {
+                Files.createLink(file, staleFile);
+            }
+            catch (FileAlreadyExistsException e) {
+                log.debug("Lease file {} was recreated by another instance", file);
+            }
+            Files.deleteIfExists(staleFile);
+            return false;
+        }
+        Files.deleteIfExists(staleFile);
+        log.warn("Took over expired lease on {} from {}", expired.key(), expired.owner());
+        return true;
+    }
+
+    private void renewAll() {
+        for (var lease : activeLeases) {
+            try {
+                var current = read(lease.file);
+                if (current == null || !instanceId.equals(current.owner())) {
+                    markLost(lease);
+                    log.error("Lost lease on {}; it is now held by {}", lease.key, current == null ? "nobody" : current.owner());
+                    continue;
+                }
+                if (current.expires() <= clock.millis()) {
+                    // Another instance may be taking it over right now; replacing the file could overwrite its new lease
+                    markLost(lease);
+                    log.error("Lost lease on {}; it expired before it could be renewed", lease.key);
+                    continue;
+                }
+                var expires = clock.millis() + durationMillis;
+                var tempFile = write(lease.file, new LeaseContent(lease.key, instanceId, expires));
+                Files.move(tempFile, lease.file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                lease.expires = expires;
+            }
+            catch (IOException | RuntimeException e) {
+                // Retried at the next renewal; the lease is only lost if this goes on until it expires
+                log.warn("Could not renew lease on {}", lease.key, e);
+            }
+        }
+    }
+
+    private void markLost(FileLease lease) {
+        lease.lost = true;
+        activeLeases.remove(lease);
+    }
+
+    private void release(FileLease lease) {
+        try {
+            var current = read(lease.file);
+            if (current != null && instanceId.equals(current.owner())) {
+                Files.deleteIfExists(lease.file);
+                log.debug("Released lease on {}", lease.key);
+            }
+        }
+        catch (IOException e) {
+            log.warn("Could not release lease on {}; it will expire", lease.key, e);
+        }
+    }
+
+    private Path write(Path file, LeaseContent content) throws IOException {
+        var tempFile = directory.resolve(file.getFileName() + "." + UUID.randomUUID() + ".tmp");
+        var properties = new Properties();
+        properties.setProperty(KEY, content.key());
+        properties.setProperty(OWNER, content.owner());
+        properties.setProperty(EXPIRES, Long.toString(content.expires()));
+        try (var writer = Files.newBufferedWriter(tempFile)) {
+            properties.store(writer, null);
+        }
+        return tempFile;
+    }
+
+    private LeaseContent read(Path file) throws IOException {
+        var properties = new Properties();
+        try (var reader = Files.newBufferedReader(file)) {
+            properties.load(reader);
+        }
+        catch (NoSuchFileException e) {
+            return null;
+        }
+        return new LeaseContent(properties.getProperty(KEY), properties.getProperty(OWNER), Long.parseLong(properties.getProperty(EXPIRES, "0")));
+    }
+}
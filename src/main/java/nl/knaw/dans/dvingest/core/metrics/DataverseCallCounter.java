@@ -0,0 +1,83 @@
+/*
+ * Copyright (C) 2024 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.dvingest.core.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counts the calls to Dataverse that are made for one deposit. The thread that processes the deposit binds the counter with {@link #bind()}; code that runs
+ * calls for the deposit on other threads, such as the asynchronous Dataverse service, takes the counter with {@link #current()} when the call is submitted and
+ * binds it on the thread that makes the call.
+ */
+public class DataverseCallCounter {
+    private static final ThreadLocal<DataverseCallCounter> bound = new ThreadLocal<>();
+
+    private final AtomicLong count = new AtomicLong();
+
+    /**
+     * A binding of a counter to the current thread. Closing it restores the counter that was bound before.
+     */
+    public static class Binding implements AutoCloseable {
+        private final DataverseCallCounter previous;
+
+        private Binding(DataverseCallCounter counter) {
+            this.previous = bound.get();
+            bound.set(counter);
+        }
+
+        @Override
+        public void close() {
+            bound.set(previous);
+        }
+    }
+
+    /**
+     * Returns the counter that is bound to the current thread.
+     *
+     * @return the counter, or null if no counter is bound
+     */
+    public static DataverseCallCounter current() {
+        return bound.get();
+    }
+
+    /**
+     * Binds the given counter to the current thread. A null counter unbinds the current one, so that the calls are not counted.
+     *
+     * @param counter the counter, or null
+     * @return the binding, to be closed when the calls for the deposit are done
+     */
+    public static Binding bind(DataverseCallCounter counter) {
+        return new Binding(counter);
+    }
+
+    /**
+     * Counts a call for the counter that is bound to the current thread, if any.
+     */
+    public static void countCall() {
+        var counter = bound.get();
+        if (counter != null) {
+            counter.count.incrementAndGet();
+        }
+    }
+
+    public Binding bind() {
+        return bind(this);
+    }
+
+    public long getCount() {
+        return count.get();
+    }
+}
@@ -0,0 +1,183 @@
+/*
+ * Copyright (C) 2024 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.dvingest.core.metrics;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import lombok.NonNull;
+import nl.knaw.dans.dvingest.core.service.UploadBatchPlanner;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static com.codahale.metrics.MetricRegistry.name;
+
+/**
+ * Facade for the metrics that are registered by the ingest service. All metrics are prefixed with "dvingest", so that they are easy to find in the output of the admin metrics endpoint.
+ */
+public class IngestMetrics {
+    private static final String PREFIX = "dvingest";
+
+    private final MetricRegistry registry;
+    private final Map<String, AtomicInteger> activeWorkers = new ConcurrentHashMap<>();
+
+    public IngestMetrics(@NonNull MetricRegistry registry) {
+        this.registry = registry;
+    }
+
+    /**
+     * Creates an instance that is backed by a private registry. Useful for tests and for components that are used outside the Dropwizard application.
+     *
+     * @return a new IngestMetrics object
+     */
+    public static IngestMetrics unregistered() {
+        return new IngestMetrics(new MetricRegistry());
+    }
+
+    public MetricRegistry getRegistry() {
+        return registry;
+    }
+
+    /**
+     * Timer for one of the stages of the bag processor (create, files, metadata, permissions, state).
+     *
+     * @param stage the name of the stage
+     * @return the timer
+     */
+    public Timer bagProcessorStage(String stage) {
+        return registry.timer(name(PREFIX, "bagprocessor", stage));
+    }
+
+    /**
+     * Timer for calls to a method of the DataverseService. The timer also keeps a histogram of the latencies.
+     *
+     * @param method the name of the DataverseService method
+     * @return the timer
+     */
+    public Timer dataverseCall(String method) {
+        return registry.timer(name(PREFIX, "dataverse", method));
+    }
+
+    /**
+     * Counter for failed calls to a method of the DataverseService.
+     *
+     * @param method the name of the DataverseService method
+     * @return the counter
+     */
+    public Counter dataverseCallErrors(String method) {
+        return registry.counter(name(PREFIX, "dataverse", method, "errors"));
+    }
+
+    /**
+     * Histogram of the time in milliseconds that was spent waiting for a dataset to be unlocked before a call that modifies the dataset.
+     *
+     * @return the histogram
+     */
+    public Histogram datasetLockWait() {
+        return registry.histogram(name(PREFIX, "dataverse", "lock-wait", "millis"));
+    }
+
+    /**
+     * Histogram of the time in milliseconds that a call waited for a permit of the concurrency limiter in front of Dataverse.
+     *
+     * @return the histogram
+     */
+    public Histogram dataverseConcurrencyWait() {
+        return registry.histogram(name(PREFIX, "dataverse", "concurrency-wait", "millis"));
+    }
+
+    /**
+     * Meter for the bytes that are hashed while zipping upload batches. The rates of the meter are the bytes hashed per second.
+     *
+     * @return the meter
+     */
+    public Meter bytesHashed() {
+        return registry.meter(name(PREFIX, "upload", "bytes-hashed"));
+    }
+
+    public Histogram uploadBatchBytes() {
+        return registry.histogram(name(PREFIX, "upload", "batch", "bytes"));
+    }
+
+    public Histogram uploadBatchFiles() {
+        return registry.histogram(name(PREFIX, "upload", "batch", "files"));
+    }
+
+    /**
+     * Meter for processed deposits in an ingest area. The meter reports, among other things, the one-minute rate.
+     *
+     * @param area the name of the ingest area
+     * @return the meter
+     */
+    public Meter deposits(String area) {
+        return registry.meter(name(PREFIX, area, "deposits"));
+    }
+
+    /**
+     * Counter for deposits in an ingest area that ended with the given outcome.
+     *
+     * @param area    the name of the ingest area
+     * @param outcome success, rejected, failed, converted (only converted to a Dataverse ingest deposit) or todo (not moved to the outbox)
+     * @return the counter
+     */
+    public Counter depositOutcome(String area, String outcome) {
+        return registry.counter(name(PREFIX, area, "deposits", outcome));
+    }
+
+    /**
+     * The number of deposits that are being processed in the given area at this moment. A gauge for the value is registered on first access.
+     *
+     * @param area the name of the ingest area
+     * @return the (live) counter of active workers
+     */
+    public AtomicInteger activeWorkers(String area) {
+        return activeWorkers.computeIfAbsent(area, a -> {
+            var counter = new AtomicInteger();
+            registry.gauge(name(PREFIX, a, "active-workers"), () -> (Gauge<Integer>) counter::get);
+            return counter;
+        });
+    }
+
+    /**
+     * Registers gauges for the limits that the planner chose for the next upload batch and for the parameters of its cost model.
+     *
+     * @param planner the upload batch planner
+     */
+    public void registerUploadBatchPlanner(UploadBatchPlanner planner) {
+        registry.gauge(name(PREFIX, "upload", "planner", "files"), () -> (Gauge<Integer>) planner::getPlannedNumberOfFiles);
+        registry.gauge(name(PREFIX, "upload", "planner", "bytes"), () -> (Gauge<Long>) planner::getPlannedNumberOfBytes);
+        registry.gauge(name(PREFIX, "upload", "planner", "overhead-millis"), () -> (Gauge<Double>) planner::getOverheadMillis);
+        registry.gauge(name(PREFIX, "upload", "planner", "millis-per-file"), () -> (Gauge<Double>) planner::getMillisPerFile);
+        registry.gauge(name(PREFIX, "upload", "planner", "millis-per-mebibyte"), () -> (Gauge<Double>) planner::getMillisPerMebibyte);
+        registry.gauge(name(PREFIX, "upload", "planner", "backoff"), () -> (Gauge<Double>) planner::getBackoff);
+    }
+
+    /**
+     * Registers a gauge for the number of deposits that are waiting to be processed in the given area.
+     *
+     * @param area       the name of the ingest area
+     * @param queueDepth supplier of the current queue depth
+     */
+    public void registerQueueDepth(String area, Supplier<Integer> queueDepth) {
+        registry.gauge(name(PREFIX, area, "queue-depth"), () -> (Gauge<Integer>) queueDepth::get);
+    }
+}
@@ -0,0 +1,157 @@
+/*
+ * Copyright (C) 2024 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.dvingest.core.report;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonPropertyOrder;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.Setter;
+import lombok.Value;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Timing report for the processing of one deposit. The report is written as JSON to the deposit directory after the deposit has been moved to the outbox.
+ */
+@Getter
+@JsonPropertyOrder({ "depositId", "area", "status", "started", "finished", "durationMillis", "phases", "uploadBatches", "filesUploaded", "bytesUploaded",
+    "dataverseApiCalls", "deferredTabularIngestFileIds" })
+public class DepositReport {
+    public static final String FILENAME = "timing-report.json";
+
+    private static final ObjectMapper objectMapper = new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT);
+
+    private final UUID depositId;
+    private final String area;
+    private final List<PhaseTiming> phases = Collections.synchronizedList(new ArrayList<>());
+    private final List<UploadBatchTiming> uploadBatches = Collections.synchronizedList(new ArrayList<>());
+    private final List<Integer> deferredTabularIngestFileIds = Collections.synchronizedList(new ArrayList<>());
+    // Only known after the report has been written, so reported in the import job summary instead
+    @JsonIgnore
+    private final List<Integer> failedTabularIngestFileIds = Collections.synchronizedList(new ArrayList<>());
+    @Getter(AccessLevel.NONE)
+    private final List<CompletableFuture<Void>> pendingTabularIngests = Collections.synchronizedList(new ArrayList<>());
+    private String started;
+    private String finished;
+    private long durationMillis;
+    @Setter
+    private String status;
+    private volatile long filesUploaded;
+    private volatile long bytesUploaded;
+    @Setter
+    private long dataverseApiCalls;
+
+    @Getter(AccessLevel.NONE)
+    private long startNanos;
+
+    public DepositReport(@NonNull UUID depositId, String area) {
+        this.depositId = depositId;
+        this.area = area;
+    }
+
+    @Value
+    public static class PhaseTiming {
+        String name;
+        long durationMillis;
+    }
+
+    @Value
+    public static class UploadBatchTiming {
+        int files;
+        long bytes;
+        long durationMillis;
+    }
+
+    /**
+     * A phase that is running. Closing it records its duration in the report.
+     */
+    public class Phase implements AutoCloseable {
+        private final String name;
+        private final long startNanos = System.nanoTime();
+
+        private Phase(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public void close() {
+            phases.add(new PhaseTiming(name, nanosToMillis(System.nanoTime() - startNanos)));
+        }
+    }
+
+    public void start() {
+        started = Instant.now().toString();
+        startNanos = System.nanoTime();
+    }
+
+    public void finish() {
+        finished = Instant.now().toString();
+        durationMillis = nanosToMillis(System.nanoTime() - startNanos);
+    }
+
+    public Phase startPhase(String name) {
+        return new Phase(name);
+    }
+
+    public synchronized void recordUploadBatch(int files, long bytes, long durationMillis) {
+        uploadBatches.add(new UploadBatchTiming(files, bytes, durationMillis));
+        filesUploaded += files;
+        bytesUploaded += bytes;
+    }
+
+    public void recordDeferredTabularIngest(int fileId) {
+        deferredTabularIngestFileIds.add(fileId);
+    }
+
+    public void addPendingTabularIngest(CompletableFuture<Void> tabularIngest) {
+        pendingTabularIngests.add(tabularIngest);
+    }
+
+    public void recordFailedTabularIngest(int fileId) {
+        failedTabularIngestFileIds.add(fileId);
+    }
+
+    /**
+     * Returns a future that completes when the deferred tabular ingests that were queued for this deposit have finished, whether they succeeded or not.
+     *
+     * @return the future
+     */
+    @JsonIgnore
+    public CompletableFuture<Void> getTabularIngestCompletion() {
+        synchronized (pendingTabularIngests) {
+            return CompletableFuture.allOf(pendingTabularIngests.toArray(CompletableFuture[]::new));
+        }
+    }
+
+    public void writeTo(Path file) throws IOException {
+        objectMapper.writeValue(file.toFile(), this);
+    }
+
+    private static long nanosToMillis(long nanos) {
+        return nanos / 1_000_000;
+    }
+}
@@ -0,0 +1,159 @@
+/*
+ * Copyright (C) 2024 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.dvingest.core.report;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import lombok.Getter;
+import lombok.Value;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Aggregates the {@link DepositReport}s of an import job into a summary with counts, throughput and duration percentiles. Only the numbers needed for the
+ * summary are kept, so that a batch with tens of thousands of deposits does not keep all the reports in memory.
+ */
+public class ImportJobSummary {
+    public static final String FILENAME = "import-job-summary.json";
+
+    private static final ObjectMapper objectMapper = new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT);
+
+    private final Map<String, Integer> depositsByStatus = new TreeMap<>();
+    private final Map<String, LongList> phaseDurations = new LinkedHashMap<>();
+    private final LongList depositDurations = new LongList();
+    private final long startNanos = System.nanoTime();
+    private long filesUploaded;
+    private long bytesUploaded;
+    private long dataverseApiCalls;
+    // Ids of the files of which the deferred tabular ingest failed, by deposit id
+    private final Map<String, List<Integer>> failedTabularIngestFileIds = new TreeMap<>();
+
+    @Value
+    public static class Percentiles {
+        long count;
+        long p50;
+        long p90;
+        long p95;
+        long p99;
+        long max;
+    }
+
+    @Getter
+    public static class Summary {
+        private final Map<String, Integer> depositsByStatus;
+        private final long wallClockMillis;
+        private final double depositsPerSecond;
+        private final double megabytesPerSecond;
+        private final long filesUploaded;
+        private final long bytesUploaded;
+        private final long dataverseApiCalls;
+        private final Percentiles depositDurationMillis;
+        private final Map<String, Percentiles> phaseDurationMillis;
+        private final Map<String, List<Integer>> failedTabularIngestFileIds;
+
+        private Summary(ImportJobSummary s, long wallClockMillis) {
+            this.depositsByStatus = s.depositsByStatus;
+            this.wallClockMillis = wallClockMillis;
+            double seconds = Math.max(wallClockMillis, 1) / 1000.0;
+            this.depositsPerSecond = s.depositDurations.size() / seconds;
+            this.megabytesPerSecond = s.bytesUploaded / (1024.0 * 1024.0) / seconds;
+            this.filesUploaded = s.filesUploaded;
+            this.bytesUploaded = s.bytesUploaded;
+            this.dataverseApiCalls = s.dataverseApiCalls;
+            this.depositDurationMillis = s.depositDurations.percentiles();
+            this.phaseDurationMillis = new LinkedHashMap<>();
+            s.phaseDurations.forEach((phase, durations) -> phaseDurationMillis.put(phase, durations.percentiles()));
+            this.failedTabularIngestFileIds = new TreeMap<>(s.failedTabularIngestFileIds);
+        }
+    }
+
+    public synchronized void add(DepositReport report) {
+        depositsByStatus.merge(String.valueOf(report.getStatus()), 1, Integer::sum);
+        depositDurations.add(report.getDurationMillis());
+        filesUploaded += report.getFilesUploaded();
+        bytesUploaded += report.getBytesUploaded();
+        dataverseApiCalls += report.getDataverseApiCalls();
+
+        // A deposit with more than one bag goes through the same phase more than once; count the total time per deposit.
+        var perPhase = new LinkedHashMap<String, Long>();
+        synchronized (report.getPhases()) {
+            report.getPhases().forEach(p -> perPhase.merge(p.getName(), p.getDurationMillis(), Long::sum));
+        }
+        perPhase.forEach((phase, millis) -> phaseDurations.computeIfAbsent(phase, k -> new LongList()).add(millis));
+    }
+
+    /**
+     * Adds the failed deferred tabular ingests of a deposit. This must be called after the tabular ingests of the deposit have finished.
+     *
+     * @param report the report of the deposit
+     */
+    public synchronized void addTabularIngestOutcome(DepositReport report) {
+        synchronized (report.getFailedTabularIngestFileIds()) {
+            if (!report.getFailedTabularIngestFileIds().isEmpty()) {
+                failedTabularIngestFileIds.put(report.getDepositId().toString(), List.copyOf(report.getFailedTabularIngestFileIds()));
+            }
+        }
+    }
+
+    public synchronized Summary getSummary() {
+        return new Summary(this, (System.nanoTime() - startNanos) / 1_000_000);
+    }
+
+    public void writeTo(Path file) throws IOException {
+        objectMapper.writeValue(file.toFile(), getSummary());
+    }
+
+    /**
+     * Growable array of primitive longs, to avoid boxing tens of thousands of durations.
+     */
+    private static class LongList {
+        private long[] values = new long[64];
+        private int size;
+
+        void add(long value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+
+        int size() {
+            return size;
+        }
+
+        Percentiles percentiles() {
+            var sorted = Arrays.copyOf(values, size);
+            Arrays.sort(sorted);
+            return new Percentiles(size, percentile(sorted, 50), percentile(sorted, 90), percentile(sorted, 95), percentile(sorted, 99),
+                size == 0 ? 0 : sorted[size - 1]);
+        }
+
+        private static long percentile(long[] sorted, int percentile) {
+            if (sorted.length == 0) {
+                return 0;
+            }
+            // Nearest-rank method
+            int rank = (int) Math.ceil(percentile / 100.0 * sorted.length);
+            return sorted[Math.max(rank, 1) - 1];
+        }
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright (C) 2024 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.dvingest.core.service;
+
+import nl.knaw.dans.lib.dataverse.model.RoleAssignment;
+import nl.knaw.dans.lib.dataverse.model.dataset.Dataset;
+import nl.knaw.dans.lib.dataverse.model.dataset.DatasetVersion;
+import nl.knaw.dans.lib.dataverse.model.dataset.Embargo;
+import nl.knaw.dans.lib.dataverse.model.dataset.FileList;
+import nl.knaw.dans.lib.dataverse.model.dataset.License;
+import nl.knaw.dans.lib.dataverse.model.dataset.MetadataField;
+import nl.knaw.dans.lib.dataverse.model.dataset.UpdateType;
+import nl.knaw.dans.lib.dataverse.model.file.FileMeta;
+import nl.knaw.dans.lib.dataverse.model.user.AuthenticatedUser;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Asynchronous variant of {@link DataverseService}. Every operation returns immediately with a future. A failed operation completes the future exceptionally
+ * with the {@link IOException} or {@link nl.knaw.dans.lib.dataverse.DataverseException} that the synchronous operation would have thrown. Use
+ * {@link BlockingDataverseService#await(CompletableFuture)} to wait for the result in code that expects the checked exceptions.
+ */
+public interface AsyncDataverseService {
+
+    CompletableFuture<String> createDataset(Dataset datasetMetadata);
+
+    CompletableFuture<String> importDataset(String persistentId, Dataset datasetMetadata);
+
+    CompletableFuture<Void> releaseMigratedDataset(String persistentId, String releaseDate);
+
+    CompletableFuture<FileList> addFile(String persistentId, Path file, FileMeta fileMeta);
+
+    CompletableFuture<Void> publishDataset(String persistentId, UpdateType updateType);
+
+    CompletableFuture<Void> replaceFile(String targetDatasetPid, FileMeta fileToReplace, Path replacement);
+
+    CompletableFuture<Void> deleteFile(String persistentId, int id);
+
+    CompletableFuture<Void> reingestFile(String persistentId, int id);
+
+    CompletableFuture<List<String>> getDatasetLocks(String persistentId);
+
+    CompletableFuture<String> getDatasetUrnNbn(String datasetId);
+
+    CompletableFuture<Void> waitForState(String persistentId, String state);
+
+    CompletableFuture<Void> updateMetadata(String targetDatasetPid, DatasetVersion datasetMetadata);
+
+    CompletableFuture<Void> updateFileMetadata(String persistentId, int id, FileMeta newMeta);
+
+    CompletableFuture<List<FileMeta>> getFiles(String pid);
+
+    CompletableFuture<Void> deleteDatasetMetadata(String pid, List<MetadataField> fields);
+
+    CompletableFuture<Void> editMetadata(String pid, List<MetadataField> addFieldValues, boolean b);
+
+    CompletableFuture<Void> addRoleAssignment(String pid, RoleAssignment roleAssignment);
+
+    CompletableFuture<Void> deleteRoleAssignment(String pid, RoleAssignment roleAssignment);
+
+    CompletableFuture<Optional<AuthenticatedUser>> getUserById(String userId);
+
+    CompletableFuture<List<License>> getSupportedLicenses();
+
+    CompletableFuture<Set<String>> getActiveMetadataBlockNames();
+
+    CompletableFuture<Void> addEmbargo(String pid, Embargo embargo);
+
+    CompletableFuture<List<String>> findDoiByMetadataField(String fieldName, String value);
+
+    CompletableFuture<DatasetVersion> getDatasetMetadata(String pid);
+
+    CompletableFuture<DatasetVersion> getLatestVersionWithoutFiles(String pid);
+}
@@ -0,0 +1,209 @@
+/*
+ * Copyright (C) 2024 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.dvingest.core.service;
+
+import lombok.AllArgsConstructor;
+import lombok.NonNull;
+import nl.knaw.dans.dvingest.core.metrics.DataverseCallCounter;
+import nl.knaw.dans.lib.dataverse.DataverseException;
+import nl.knaw.dans.lib.dataverse.model.RoleAssignment;
+import nl.knaw.dans.lib.dataverse.model.dataset.Dataset;
+import nl.knaw.dans.lib.dataverse.model.dataset.DatasetVersion;
+import nl.knaw.dans.lib.dataverse.model.dataset.Embargo;
+import nl.knaw.dans.lib.dataverse.model.dataset.FileList;
+import nl.knaw.dans.lib.dataverse.model.dataset.License;
+import nl.knaw.dans.lib.dataverse.model.dataset.MetadataField;
+import nl.knaw.dans.lib.dataverse.model.dataset.UpdateType;
+import nl.knaw.dans.lib.dataverse.model.file.FileMeta;
+import nl.knaw.dans.lib.dataverse.model.user.AuthenticatedUser;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+
+/**
+ * {@link AsyncDataverseService} that runs each call to the wrapped {@link DataverseService} as a task on an executor. The Dataverse client library blocks on
+ * its HTTP calls, so with an executor that starts a virtual thread per task, a pending call costs a virtual thread rather than a worker, while the client's
+ * connection pool is shared by all calls. The wrapped service should include the lock handling and concurrency limit of the synchronous callers.
+ */
+@AllArgsConstructor
+public class AsyncDataverseServiceImpl implements AsyncDataverseService {
+    @NonNull
+    private final DataverseService delegate;
+    @NonNull
+    private final Executor executor;
+
+    @FunctionalInterface
+    private interface Call<T> {
+        T call() throws IOException, DataverseException;
+    }
+
+    @FunctionalInterface
+    private interface VoidCall {
+        void call() throws IOException, DataverseException;
+    }
+
+    private <T> CompletableFuture<T> supply(Call<T> call) {
+        // The call is made for the deposit of the submitting thread
+        var callCounter = DataverseCallCounter.current();
+        var lockChecks = DatasetLockChecks.current();
+        return CompletableFuture.supplyAsync(() -> {
+            try (var ignored = DataverseCallCounter.bind(callCounter); var ignored2 = DatasetLockChecks.bind(lockChecks)) {
+                return call.call();
+            }
+            catch (IOException | DataverseException e) {
+                throw new CompletionException(e);
+            }
+        }, executor);
+    }
+
+    private CompletableFuture<Void> run(VoidCall call) {
+        return supply(() -> {
+            call.call();
+            return null;
+        });
+    }
+
+    @Override
+    public CompletableFuture<String> createDataset(Dataset datasetMetadata) {
+        return supply(() -> delegate.createDataset(datasetMetadata));
+    }
+
+    @Override
+    public CompletableFuture<String> importDataset(String persistentId, Dataset datasetMetadata) {
+        return supply(() -> delegate.importDataset(persistentId, datasetMetadata));
+    }
+
+    @Override
+    public CompletableFuture<Void> releaseMigratedDataset(String persistentId, String releaseDate) {
+        return run(() -> delegate.releaseMigratedDataset(persistentId, releaseDate));
+    }
+
+    @Override
+    public CompletableFuture<FileList> addFile(String persistentId, Path file, FileMeta fileMeta) {
+        return supply(() -> delegate.addFile(persistentId, file, fileMeta));
+    }
+
+    @Override
+    public CompletableFuture<Void> publishDataset(String persistentId, UpdateType updateType) {
+        return run(() -> delegate.publishDataset(persistentId, updateType));
+    }
+
+    @Override
+    public CompletableFuture<Void> replaceFile(String targetDatasetPid, FileMeta fileToReplace, Path replacement) {
+        return run(() -> delegate.replaceFile(targetDatasetPid, fileToReplace, replacement));
+    }
+
+    @Override
+    public CompletableFuture<Void> deleteFile(String persistentId, int id) {
+        return run(() -> delegate.deleteFile(persistentId, id));
+    }
+
+    @Override
+    public CompletableFuture<Void> reingestFile(String persistentId, int id) {
+        return run(() -> delegate.reingestFile(persistentId, id));
+    }
+
+    @Override
+    public CompletableFuture<List<String>> getDatasetLocks(String persistentId) {
+        return supply(() -> delegate.getDatasetLocks(persistentId));
+    }
+
+    @Override
+    public CompletableFuture<String> getDatasetUrnNbn(String datasetId) {
+        return supply(() -> delegate.getDatasetUrnNbn(datasetId));
+    }
+
+    @Override
+    public CompletableFuture<Void> waitForState(String persistentId, String state) {
+        return run(() -> delegate.waitForState(persistentId, state));
+    }
+
+    @Override
+    public CompletableFuture<Void> updateMetadata(String targetDatasetPid, DatasetVersion datasetMetadata) {
+        return run(() -> delegate.updateMetadata(targetDatasetPid, datasetMetadata));
+    }
+
+    @Override
+    public CompletableFuture<Void> updateFileMetadata(String persistentId, int id, FileMeta newMeta) {
+        return run(() -> delegate.updateFileMetadata(persistentId, id, newMeta));
+    }
+
+    @Override
+    public CompletableFuture<List<FileMeta>> getFiles(String pid) {
+        return supply(() -> delegate.getFiles(pid));
+    }
+
+    @Override
+    public CompletableFuture<Void> deleteDatasetMetadata(String pid, List<MetadataField> fields) {
+        return run(() -> delegate.deleteDatasetMetadata(pid, fields));
+    }
+
+    @Override
+    public CompletableFuture<Void> editMetadata(String pid, List<MetadataField> addFieldValues, boolean b) {
+        return run(() -> delegate.editMetadata(pid, addFieldValues, b));
+    }
+
+    @Override
+    public CompletableFuture<Void> addRoleAssignment(String pid, RoleAssignment roleAssignment) {
+        return run(() -> delegate.addRoleAssignment(pid, roleAssignment));
+    }
+
+    @Override
+    public CompletableFuture<Void> deleteRoleAssignment(String pid, RoleAssignment roleAssignment) {
+        return run(() -> delegate.deleteRoleAssignment(pid, roleAssignment));
+    }
+
+    @Override
+    public CompletableFuture<Optional<AuthenticatedUser>> getUserById(String userId) {
+        return supply(() -> delegate.getUserById(userId));
+    }
+
+    @Override
+    public CompletableFuture<List<License>> getSupportedLicenses() {
+        return supply(() -> delegate.getSupportedLicenses());
+    }
+
+    @Override
+    public CompletableFuture<Set<String>> getActiveMetadataBlockNames() {
+        return supply(() -> delegate.getActiveMetadataBlockNames());
+    }
+
+    @Override
+    public CompletableFuture<Void> addEmbargo(String pid, Embargo embargo) {
+        return run(() -> delegate.addEmbargo(pid, embargo));
+    }
+
+    @Override
+    public CompletableFuture<List<String>> findDoiByMetadataField(String fieldName, String value) {
+        return supply(() -> delegate.findDoiByMetadataField(fieldName, value));
+    }
+
+    @Override
+    public CompletableFuture<DatasetVersion> getDatasetMetadata(String pid) {
+        return supply(() -> delegate.getDatasetMetadata(pid));
+    }
+
+    @Override
+    public CompletableFuture<DatasetVersion> getLatestVersionWithoutFiles(String pid) {
+        return supply(() -> delegate.getLatestVersionWithoutFiles(pid));
+    }
+}
@@ -0,0 +1,241 @@
+/*
+ * Copyright (C) 2024 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.dvingest.core.service;
+
+import lombok.AllArgsConstructor;
+import lombok.NonNull;
+import nl.knaw.dans.lib.dataverse.DataverseException;
+import nl.knaw.dans.lib.dataverse.model.RoleAssignment;
+import nl.knaw.dans.lib.dataverse.model.dataset.Dataset;
+import nl.knaw.dans.lib.dataverse.model.dataset.DatasetVersion;
+import nl.knaw.dans.lib.dataverse.model.dataset.Embargo;
+import nl.knaw.dans.lib.dataverse.model.dataset.FileList;
+import nl.knaw.dans.lib.dataverse.model.dataset.License;
+import nl.knaw.dans.lib.dataverse.model.dataset.MetadataField;
+import nl.knaw.dans.lib.dataverse.model.dataset.UpdateType;
+import nl.knaw.dans.lib.dataverse.model.file.FileMeta;
+import nl.knaw.dans.lib.dataverse.model.user.AuthenticatedUser;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Adapter that offers an {@link AsyncDataverseService} to synchronous callers, by waiting for each future and rethrowing the checked exception that completed
+ * it. The static {@link #await(CompletableFuture)} and {@link #awaitAll(List)} are meant for code that mixes both styles, such as the editors that send
+ * independent calls concurrently.
+ */
+@AllArgsConstructor
+public class BlockingDataverseService implements DataverseService {
+    @NonNull
+    private final AsyncDataverseService delegate;
+
+    /**
+     * Waits for the future and returns its result. If the future completed exceptionally with an {@link IOException}, a {@link DataverseException} or a
+     * {@link RuntimeException}, that exception is thrown.
+     *
+     * @param future the future
+     * @param <T>    the type of the result
+     * @return the result
+     */
+    public static <T> T await(CompletableFuture<T> future) throws IOException, DataverseException {
+        try {
+            return future.get();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for Dataverse", e);
+        }
+        catch (ExecutionException e) {
+            throw rethrow(e.getCause());
+        }
+    }
+
+    /**
+     * Waits for all futures. If any of them failed, the exception of the first one in the list that failed is thrown, as by {@link #await(CompletableFuture)},
+     * after all futures have completed.
+     *
+     * @param futures the futures
+     */
+    public static void awaitAll(List<? extends CompletableFuture<?>> futures) throws IOException, DataverseException {
+        try {
+            CompletableFuture.allOf(futures.toArray(CompletableFuture[]::new)).join();
+        }
+        catch (CompletionException e) {
+            // Reported below, in the order of the list
+        }
+        for (var future : futures) {
+            await(future);
+        }
+    }
+
+    private static IllegalStateException rethrow(Throwable cause) throws IOException, DataverseException {
+        if (cause instanceof CompletionException && cause.getCause() != null) {
+            cause = cause.getCause();
+        }
+        if (cause instanceof IOException ioException) {
+            throw ioException;
+        }
+        if (cause instanceof DataverseException dataverseException) {
+            throw dataverseException;
+        }
+        if (cause instanceof RuntimeException runtimeException) {
+            throw runtimeException;
+        }
+        return new IllegalStateException("Call to Dataverse failed", cause);
+    }
+
+    @Override
+    public String createDataset(Dataset datasetMetadata) throws DataverseException, IOException {
+        return await(delegate.createDataset(datasetMetadata));
+    }
+
+    @Override
+    public String importDataset(String persistentId, Dataset datasetMetadata) throws DataverseException, IOException {
+        return await(delegate.importDataset(persistentId, datasetMetadata));
+    }
+
+    @Override
+    public void releaseMigratedDataset(String persistentId, String releaseDate) throws DataverseException, IOException {
+        await(delegate.releaseMigratedDataset(persistentId, releaseDate));
+    }
+
+    @Override
+    public FileList addFile(String persistentId, Path file, FileMeta fileMeta) throws DataverseException, IOException {
+        return await(delegate.addFile(persistentId, file, fileMeta));
+    }
+
+    @Override
+    public void publishDataset(String persistentId, UpdateType updateType) throws DataverseException, IOException {
+        await(delegate.publishDataset(persistentId, updateType));
+    }
+
+    @Override
+    public void replaceFile(String targetDatasetPid, FileMeta fileToReplace, Path replacement) throws DataverseException, IOException {
+        await(delegate.replaceFile(targetDatasetPid, fileToReplace, replacement));
+    }
+
+    @Override
+    public void deleteFile(String persistentId, int id) throws DataverseException, IOException {
+        await(delegate.deleteFile(persistentId, id));
+    }
+
+    @Override
+    public void reingestFile(String persistentId, int id) throws DataverseException, IOException {
+        await(delegate.reingestFile(persistentId, id));
+    }
+
+    @Override
+    public List<String> getDatasetLocks(String persistentId) throws DataverseException, IOException {
+        return await(delegate.getDatasetLocks(persistentId));
+    }
+
+    @Override
+    public String getDatasetUrnNbn(String datasetId) throws IOException, DataverseException {
+        return await(delegate.getDatasetUrnNbn(datasetId));
+    }
+
+    @Override
+    public void waitForState(String persistentId, String state) throws DataverseException {
+        try {
+            await(delegate.waitForState(persistentId, state));
+        }
+        catch (IOException e) {
+            // Cannot happen, as the synchronous operation does not throw IOException
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Override
+    public void updateMetadata(String targetDatasetPid, DatasetVersion datasetMetadata) throws DataverseException, IOException {
+        await(delegate.updateMetadata(targetDatasetPid, datasetMetadata));
+    }
+
+    @Override
+    public void updateFileMetadata(String persistentId, int id, FileMeta newMeta) throws DataverseException, IOException {
+        await(delegate.updateFileMetadata(persistentId, id, newMeta));
+    }
+
+    @Override
+    public List<FileMeta> getFiles(String pid) throws IOException, DataverseException {
+        return await(delegate.getFiles(pid));
+    }
+
+    @Override
+    public void deleteDatasetMetadata(String pid, List<MetadataField> fields) throws DataverseException, IOException {
+        await(delegate.deleteDatasetMetadata(pid, fields));
+    }
+
+    @Override
+    public void editMetadata(String pid, List<MetadataField> addFieldValues, boolean b) throws DataverseException, IOException {
+        await(delegate.editMetadata(pid, addFieldValues, b));
+    }
+
+    @Override
+    public void addRoleAssignment(String pid, RoleAssignment roleAssignment) throws DataverseException, IOException {
+        await(delegate.addRoleAssignment(pid, roleAssignment));
+    }
+
+    @Override
+    public void deleteRoleAssignment(String pid, RoleAssignment roleAssignment) throws DataverseException, IOException {
+        await(delegate.deleteRoleAssignment(pid, roleAssignment));
+    }
+
+    @Override
+    public Optional<AuthenticatedUser> getUserById(String userId) {
+        try {
+            return await(delegate.getUserById(userId));
+        }
+        catch (IOException | DataverseException e) {
+            throw new IllegalStateException("Cannot get user " + userId, e);
+        }
+    }
+
+    @Override
+    public List<License> getSupportedLicenses() throws IOException, DataverseException {
+        return await(delegate.getSupportedLicenses());
+    }
+
+    @Override
+    public Set<String> getActiveMetadataBlockNames() throws IOException, DataverseException {
+        return await(delegate.getActiveMetadataBlockNames());
+    }
+
+    @Override
+    public void addEmbargo(String pid, Embargo embargo) throws IOException, DataverseException {
+        await(delegate.addEmbargo(pid, embargo));
+    }
+
+    @Override
+    public List<String> findDoiByMetadataField(String fieldName, String value) throws IOException, DataverseException {
+        return await(delegate.findDoiByMetadataField(fieldName, value));
+    }
+
+    @Override
+    public DatasetVersion getDatasetMetadata(String pid) throws IOException, DataverseException {
+        return await(delegate.getDatasetMetadata(pid));
+    }
+
+    @Override
+    public DatasetVersion getLatestVersionWithoutFiles(String pid) throws IOException, DataverseException {
+        return await(delegate.getLatestVersionWithoutFiles(pid));
+    }
+}
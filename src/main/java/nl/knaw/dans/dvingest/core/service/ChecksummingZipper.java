@@ -0,0 +1,115 @@
+/*
+ * Copyright (C) 2024 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.dvingest.core.service;
+
+import lombok.Builder;
+import lombok.NonNull;
+import lombok.Value;
+import org.apache.commons.codec.binary.Hex;
+import org.apache.commons.collections4.iterators.PeekingIterator;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Zips the next batch of files from a source iterator, like {@link nl.knaw.dans.lib.util.PathIteratorZipper}, but computes the checksum of each file while it
+ * is being read, so that the checksums reported by Dataverse after the upload can be verified without reading the files again. The batch ends when the maximum
+ * number of files is reached or when the next file would make the batch exceed the maximum number of bytes; a batch always contains at least one file.
+ */
+@Builder
+public class ChecksummingZipper {
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    @NonNull
+    private final Path rootDir;
+    @NonNull
+    private final PeekingIterator<File> sourceIterator;
+    @NonNull
+    private final Path targetZipFile;
+    @NonNull
+    @Builder.Default
+    private final Map<String, String> renameMap = Map.of();
+    private final int maxNumberOfFiles;
+    private final long maxNumberOfBytes;
+    /**
+     * The name of the algorithm as used by Dataverse and by {@link MessageDigest}: MD5, SHA-1, SHA-256 or SHA-512.
+     */
+    @NonNull
+    private final String checksumAlgorithm;
+
+    @Value
+    public static class Result {
+        Path zipFile;
+        /*
+         * Key: path of the entry in the zip file (after auto-rename) / Value: hex encoded checksum of the file
+         */
+        Map<String, String> checksums;
+        String checksumAlgorithm;
+        long bytesHashed;
+    }
+
+    public Result zip() throws IOException {
+        var digest = createDigest();
+        var checksums = new LinkedHashMap<String, String>();
+        var bytesInBatch = 0L;
+        var buffer = new byte[BUFFER_SIZE];
+        try (var zipOutputStream = new ZipOutputStream(Files.newOutputStream(targetZipFile))) {
+            while (sourceIterator.hasNext() && checksums.size() < maxNumberOfFiles) {
+                var size = sourceIterator.peek().length();
+                if (!checksums.isEmpty() && bytesInBatch + size > maxNumberOfBytes) {
+                    break;
+                }
+                var file = sourceIterator.next().toPath();
+                var entryName = getEntryName(file);
+                zipOutputStream.putNextEntry(new ZipEntry(entryName));
+                digest.reset();
+                try (var inputStream = Files.newInputStream(file)) {
+                    int read;
+                    while ((read = inputStream.read(buffer)) != -1) {
+                        digest.update(buffer, 0, read);
+                        zipOutputStream.write(buffer, 0, read);
+                        bytesInBatch += read;
+                    }
+                }
+                zipOutputStream.closeEntry();
+                checksums.put(entryName, Hex.encodeHexString(digest.digest()));
+            }
+        }
+        return new Result(targetZipFile, checksums, checksumAlgorithm, bytesInBatch);
+    }
+
+    private String getEntryName(Path file) {
+        var relativePath = rootDir.relativize(file).toString().replace(File.separatorChar, '/');
+        return renameMap.getOrDefault(relativePath, relativePath);
+    }
+
+    private MessageDigest createDigest() {
+        try {
+            return MessageDigest.getInstance(checksumAlgorithm);
+        }
+        catch (NoSuchAlgorithmException e) {
+            throw new IllegalArgumentException("Unsupported checksum algorithm: " + checksumAlgorithm, e);
+        }
+    }
+}
@@ -0,0 +1,238 @@
+/*
+ * Copyright (C) 2024 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.dvingest.core.service;
+
+import lombok.NonNull;
+import nl.knaw.dans.dvingest.core.metrics.IngestMetrics;
+import nl.knaw.dans.lib.dataverse.DataverseException;
+import nl.knaw.dans.lib.dataverse.model.RoleAssignment;
+import nl.knaw.dans.lib.dataverse.model.dataset.Dataset;
+import nl.knaw.dans.lib.dataverse.model.dataset.DatasetVersion;
+import nl.knaw.dans.lib.dataverse.model.dataset.Embargo;
+import nl.knaw.dans.lib.dataverse.model.dataset.FileList;
+import nl.knaw.dans.lib.dataverse.model.dataset.License;
+import nl.knaw.dans.lib.dataverse.model.dataset.MetadataField;
+import nl.knaw.dans.lib.dataverse.model.dataset.UpdateType;
+import nl.knaw.dans.lib.dataverse.model.file.FileMeta;
+import nl.knaw.dans.lib.dataverse.model.user.AuthenticatedUser;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Decorator that limits the number of concurrent calls to the wrapped {@link DataverseService}. When deposits are processed on virtual threads, the number of
+ * threads no longer bounds the load on Dataverse, so the limit is enforced here instead. Calls wait for a permit in the order in which they arrive; the time
+ * spent waiting is recorded in the {@link IngestMetrics#dataverseConcurrencyWait()} histogram. {@link #waitForState(String, String)} is not limited, because it
+ * mostly sleeps between polls.
+ */
+public class ConcurrencyLimitingDataverseService implements DataverseService {
+    private final DataverseService delegate;
+    private final IngestMetrics metrics;
+    private final Semaphore permits;
+
+    public ConcurrencyLimitingDataverseService(@NonNull DataverseService delegate, @NonNull IngestMetrics metrics, int maxConcurrentCalls) {
+        if (maxConcurrentCalls < 1) {
+            throw new IllegalArgumentException("maxConcurrentCalls must be at least 1");
+        }
+        this.delegate = delegate;
+        this.metrics = metrics;
+        this.permits = new Semaphore(maxConcurrentCalls, true);
+    }
+
+    /**
+     * Returns the number of calls that are waiting for a permit.
+     *
+     * @return the number of waiting calls
+     */
+    public int getNumberOfWaitingCalls() {
+        return permits.getQueueLength();
+    }
+
+    @FunctionalInterface
+    private interface Call<T> {
+        T call() throws IOException, DataverseException;
+    }
+
+    @FunctionalInterface
+    private interface VoidCall {
+        void call() throws IOException, DataverseException;
+    }
+
+    private void acquire() {
+        var start = System.nanoTime();
+        try {
+            permits.acquire();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for a permit to call Dataverse");
+        }
+        metrics.dataverseConcurrencyWait().update((System.nanoTime() - start) / 1_000_000);
+    }
+
+    private <T> T limit(Call<T> call) throws IOException, DataverseException {
+        acquire();
+        try {
+            return call.call();
+        }
+        finally {
+            permits.release();
+        }
+    }
+
+    private void limit(VoidCall call) throws IOException, DataverseException {
+        limit(() -> {
+            call.call();
+            return null;
+        });
+    }
+
+    @Override
+    public String createDataset(Dataset datasetMetadata) throws DataverseException, IOException {
+        return limit(() -> delegate.createDataset(datasetMetadata));
+    }
+
+    @Override
+    public String importDataset(String persistentId, Dataset datasetMetadata) throws DataverseException, IOException {
+        return limit(() -> delegate.importDataset(persistentId, datasetMetadata));
+    }
+
+    @Override
+    public void releaseMigratedDataset(String persistentId, String releaseDate) throws DataverseException, IOException {
+        limit(() -> delegate.releaseMigratedDataset(persistentId, releaseDate));
+    }
+
+    @Override
+    public FileList addFile(String persistentId, Path file, FileMeta fileMeta) throws DataverseException, IOException {
+        return limit(() -> delegate.addFile(persistentId, file, fileMeta));
+    }
+
+    @Override
+    public void publishDataset(String persistentId, UpdateType updateType) throws DataverseException, IOException {
+        limit(() -> delegate.publishDataset(persistentId, updateType));
+    }
+
+    @Override
+    public void replaceFile(String targetDatasetPid, FileMeta fileToReplace, Path replacement) throws DataverseException, IOException {
+        limit(() -> delegate.replaceFile(targetDatasetPid, fileToReplace, replacement));
+    }
+
+    @Override
+    public void deleteFile(String persistentId, int id) throws DataverseException, IOException {
+        limit(() -> delegate.deleteFile(persistentId, id));
+    }
+
+    @Override
+    public void reingestFile(String persistentId, int id) throws DataverseException, IOException {
+        limit(() -> delegate.reingestFile(persistentId, id));
+    }
+
+    @Override
+    public List<String> getDatasetLocks(String persistentId) throws DataverseException, IOException {
+        return limit(() -> delegate.getDatasetLocks(persistentId));
+    }
+
+    @Override
+    public String getDatasetUrnNbn(String datasetId) throws IOException, DataverseException {
+        return limit(() -> delegate.getDatasetUrnNbn(datasetId));
+    }
+
+    @Override
+    public void waitForState(String persistentId, String state) throws DataverseException {
+        // Mostly sleeping between polls, which should not hold a permit
+        delegate.waitForState(persistentId, state);
+    }
+
+    @Override
+    public void updateMetadata(String targetDatasetPid, DatasetVersion datasetMetadata) throws DataverseException, IOException {
+        limit(() -> delegate.updateMetadata(targetDatasetPid, datasetMetadata));
+    }
+
+    @Override
+    public void updateFileMetadata(String persistentId, int id, FileMeta newMeta) throws DataverseException, IOException {
+        limit(() -> delegate.updateFileMetadata(persistentId, id, newMeta));
+    }
+
+    @Override
+    public List<FileMeta> getFiles(String pid) throws IOException, DataverseException {
+        return limit(() -> delegate.getFiles(pid));
+    }
+
+    @Override
+    public void deleteDatasetMetadata(String pid, List<MetadataField> fields) throws DataverseException, IOException {
+        limit(() -> delegate.deleteDatasetMetadata(pid, fields));
+    }
+
+    @Override
+    public void editMetadata(String pid, List<MetadataField> addFieldValues, boolean b) throws DataverseException, IOException {
+        limit(() -> delegate.editMetadata(pid, addFieldValues, b));
+    }
+
+    @Override
+    public void addRoleAssignment(String pid, RoleAssignment roleAssignment) throws DataverseException, IOException {
+        limit(() -> delegate.addRoleAssignment(pid, roleAssignment));
+    }
+
+    @Override
+    public void deleteRoleAssignment(String pid, RoleAssignment roleAssignment) throws DataverseException, IOException {
+        limit(() -> delegate.deleteRoleAssignment(pid, roleAssignment));
+    }
+
+    @Override
+    public Optional<AuthenticatedUser> getUserById(String userId) {
+        acquire();
+        try {
+            return delegate.getUserById(userId);
+        }
+        finally {
+            permits.release();
+        }
+    }
+
+    @Override
+    public List<License> getSupportedLicenses() throws IOException, DataverseException {
+        return limit(delegate::getSupportedLicenses);
+    }
+
+    @Override
+    public Set<String> getActiveMetadataBlockNames() throws IOException, DataverseException {
+        return limit(delegate::getActiveMetadataBlockNames);
+    }
+
+    @Override
+    public void addEmbargo(String pid, Embargo embargo) throws IOException, DataverseException {
+        limit(() -> delegate.addEmbargo(pid, embargo));
+    }
+
+    @Override
+    public List<String> findDoiByMetadataField(String fieldName, String value) throws IOException, DataverseException {
+        return limit(() -> delegate.findDoiByMetadataField(fieldName, value));
+    }
+
+    @Override
+    public DatasetVersion getDatasetMetadata(String pid) throws IOException, DataverseException {
+        return limit(() -> delegate.getDatasetMetadata(pid));
+    }
+
+    @Override
+    public DatasetVersion getLatestVersionWithoutFiles(String pid) throws IOException, DataverseException {
+        return limit(() -> delegate.getLatestVersionWithoutFiles(pid));
+    }
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright (C) 2024 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.dvingest.core.service;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The datasets of which {@link LockAwareDataverseService} has checked the locks for one deposit. Locks that were set by another instance, or by a tabular
+ * ingest that was started after an earlier deposit, are not known to this instance, so the locks of a dataset are checked on the first call that modifies it
+ * in every deposit. The thread that processes the deposit binds the checks with {@link #bind()}; code that runs calls for the deposit on other threads, such as
+ * the asynchronous Dataverse service, takes them with {@link #current()} when the call is submitted and binds them on the thread that makes the call. Calls
+ * made without a binding always check the locks.
+ */
+public class DatasetLockChecks {
+    private static final ThreadLocal<DatasetLockChecks> bound = new ThreadLocal<>();
+
+    private final Set<String> checkedDatasets = ConcurrentHashMap.newKeySet();
+
+    /**
+     * A binding of the checks to the current thread. Closing it restores the checks that were bound before.
+     */
+    public static class Binding implements AutoCloseable {
+        private final DatasetLockChecks previous;
+
+        private Binding(DatasetLockChecks checks) {
+            this.previous = bound.get();
+            bound.set(checks);
+        }
+
+        @Override
+        public void close() {
+            bound.set(previous);
+        }
+    }
+
+    /**
+     * Returns the checks that are bound to the current thread.
+     *
+     * @return the checks, or null if none are bound
+     */
+    public static DatasetLockChecks current() {
+        return bound.get();
+    }
+
+    /**
+     * Binds the given checks to the current thread. Null unbinds the current ones, so that the locks are checked on every call.
+     *
+     * @param checks the checks, or null
+     * @return the binding, to be closed when the calls for the deposit are done
+     */
+    public static Binding bind(DatasetLockChecks checks) {
+        return new Binding(checks);
+    }
+
+    /*
+     * Records that the locks of the dataset are checked, or need not be checked, for the deposit of the current thread. Returns false if that was already
+     * recorded, i.e., if the locks need not be checked again unless the deposit itself may have locked the dataset.
+     */
+    static boolean markChecked(String pid) {
+        var checks = bound.get();
+        return checks == null || checks.checkedDatasets.add(pid);
+    }
+
+    public Binding bind() {
+        return bind(this);
+    }
+}
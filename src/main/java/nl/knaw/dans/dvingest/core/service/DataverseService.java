@@ -37,13 +37,54 @@ public interface DataverseService {
 
     String createDataset(Dataset datasetMetadata) throws DataverseException, IOException;
 
+    /**
+     * Creates a dataset with the given persistent identifier, using the native import API. Unlike {@link #createDataset(Dataset)}, the complete metadata is
+     * stored, so that no subsequent metadata update is needed.
+     *
+     * @param persistentId    the persistent identifier of the new dataset
+     * @param datasetMetadata the dataset metadata
+     * @return the persistent identifier of the new dataset
+     */
+    String importDataset(String persistentId, Dataset datasetMetadata) throws DataverseException, IOException;
+
+    /**
+     * Publishes the draft of a migrated dataset with its original publication date. The release is done synchronously, so there is no need to wait for the
+     * RELEASED state.
+     *
+     * @param persistentId the persistent identifier of the dataset
+     * @param releaseDate  the original publication date (yyyy-MM-dd)
+     */
+    void releaseMigratedDataset(String persistentId, String releaseDate) throws DataverseException, IOException;
+
     FileList addFile(String persistentId, Path file, FileMeta fileMeta) throws DataverseException, IOException;
 
     void publishDataset(String persistentId, UpdateType updateType) throws DataverseException, IOException;
 
     void replaceFile(String targetDatasetPid, FileMeta fileToReplace, Path replacement) throws DataverseException, IOException;
 
-    void deleteFile(int id) throws DataverseException, IOException;
+    /**
+     * Deletes a file from the draft version of a dataset.
+     *
+     * @param persistentId the persistent id of the dataset that contains the file
+     * @param id           the database id of the file
+     */
+    void deleteFile(String persistentId, int id) throws DataverseException, IOException;
+
+    /**
+     * Starts the tabular ingest of a file that was uploaded with tabular ingest disabled. The dataset is locked until the ingest has finished.
+     *
+     * @param persistentId the persistent id of the dataset that contains the file
+     * @param id           the database id of the file
+     */
+    void reingestFile(String persistentId, int id) throws DataverseException, IOException;
+
+    /**
+     * Returns the types of the locks that are currently held on a dataset, e.g., Ingest or finalizePublication.
+     *
+     * @param persistentId the persistent id of the dataset
+     * @return the lock types; empty if the dataset is not locked
+     */
+    List<String> getDatasetLocks(String persistentId) throws DataverseException, IOException;
 
     String getDatasetUrnNbn(String datasetId) throws IOException, DataverseException;
 
@@ -51,7 +92,14 @@ public interface DataverseService {
 
     void updateMetadata(String targetDatasetPid, DatasetVersion datasetMetadata) throws DataverseException, IOException;
 
-    void updateFileMetadata(int id, FileMeta newMeta) throws DataverseException, IOException;
+    /**
+     * Updates the metadata of a file in the draft version of a dataset.
+     *
+     * @param persistentId the persistent id of the dataset that contains the file
+     * @param id           the database id of the file
+     * @param newMeta      the fields to update
+     */
+    void updateFileMetadata(String persistentId, int id, FileMeta newMeta) throws DataverseException, IOException;
 
     List<FileMeta> getFiles(String pid) throws IOException, DataverseException;
 
@@ -74,4 +122,12 @@ public interface DataverseService {
     List<String> findDoiByMetadataField(String fieldName, String value) throws IOException, DataverseException;
 
     DatasetVersion getDatasetMetadata(String pid) throws IOException, DataverseException;
+
+    /**
+     * Returns the latest version of a dataset without the file list. This is a cheap way to find out whether a dataset has changed.
+     *
+     * @param pid the persistent identifier of the dataset
+     * @return the latest version, without files
+     */
+    DatasetVersion getLatestVersionWithoutFiles(String pid) throws IOException, DataverseException;
 }
@@ -21,6 +21,7 @@ import lombok.extern.slf4j.Slf4j;
 import nl.knaw.dans.lib.dataverse.DataverseClient;
 import nl.knaw.dans.lib.dataverse.DataverseException;
 import nl.knaw.dans.lib.dataverse.Version;
+import nl.knaw.dans.lib.dataverse.model.Lock;
 import nl.knaw.dans.lib.dataverse.model.RoleAssignment;
 import nl.knaw.dans.lib.dataverse.model.RoleAssignmentReadOnly;
 import nl.knaw.dans.lib.dataverse.model.dataset.Dataset;
@@ -68,6 +69,19 @@ public class DataverseServiceImpl implements DataverseService {
         return result.getData().getPersistentId();
     }
 
+    @Override
+    public String importDataset(String persistentId, Dataset datasetMetadata) throws DataverseException, IOException {
+        var result = dataverseClient.dataverse("root").importDataset(datasetMetadata, persistentId, false, metadataKeys);
+        log.debug(result.getEnvelopeAsString());
+        return result.getData().getPersistentId();
+    }
+
+    @Override
+    public void releaseMigratedDataset(String persistentId, String releaseDate) throws DataverseException, IOException {
+        var result = dataverseClient.dataset(persistentId).releaseMigrated(releaseDate, true);
+        log.debug(result.getEnvelopeAsString());
+    }
+
     @Override
     public FileList addFile(String persistentId, Path file, FileMeta fileMeta) throws DataverseException, IOException {
         var result = dataverseClient.dataset(persistentId).addFile(file, fileMeta);
@@ -88,7 +102,7 @@ public class DataverseServiceImpl implements DataverseService {
     }
 
     @Override
-    public void updateFileMetadata(int id, FileMeta newMeta) throws DataverseException, IOException {
+    public void updateFileMetadata(String persistentId, int id, FileMeta newMeta) throws DataverseException, IOException {
         var result = dataverseClient.file(id).updateMetadata(newMeta);
         log.debug(result.getEnvelopeAsString());
     }
@@ -107,11 +121,23 @@ public class DataverseServiceImpl implements DataverseService {
     }
 
     @Override
-    public void deleteFile(int id) throws DataverseException, IOException {
+    public void deleteFile(String persistentId, int id) throws DataverseException, IOException {
         var result = dataverseClient.sword().deleteFile(id);
         log.debug(result.getEnvelopeAsString());
     }
 
+    @Override
+    public List<String> getDatasetLocks(String persistentId) throws DataverseException, IOException {
+        var result = dataverseClient.dataset(persistentId).getLocks();
+        return result.getData().stream().map(Lock::getLockType).toList();
+    }
+
+    @Override
+    public void reingestFile(String persistentId, int id) throws DataverseException, IOException {
+        var result = dataverseClient.file(id).reingest();
+        log.debug(result.getEnvelopeAsString());
+    }
+
     @Override
     public void deleteDatasetMetadata(String pid, List<MetadataField> fieldList) throws DataverseException, IOException {
         var result = dataverseClient.dataset(pid).deleteMetadata(new FieldList(fieldList), metadataKeys);
@@ -211,6 +237,11 @@ public class DataverseServiceImpl implements DataverseService {
         return dataverseClient.dataset(pid).getVersion().getData();
     }
 
+    @Override
+    public DatasetVersion getLatestVersionWithoutFiles(String pid) throws IOException, DataverseException {
+        return dataverseClient.dataset(pid).getVersion(Version.LATEST.toString(), true).getData();
+    }
+
     // TODO: move this to dans-dataverse-client-lib; it is similar to awaitLockState.
     public void waitForState(String datasetId, String expectedState) {
         var numberOfTimesTried = 0;
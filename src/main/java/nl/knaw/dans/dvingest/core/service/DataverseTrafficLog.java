@@ -0,0 +1,101 @@
+/*
+ * Copyright (C) 2024 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.dvingest.core.service;
+
+import com.fasterxml.jackson.annotation.JsonInclude.Include;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.module.SimpleModule;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import nl.knaw.dans.lib.dataverse.MetadataFieldDeserializer;
+import nl.knaw.dans.lib.dataverse.model.dataset.MetadataField;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * The format of the Dataverse traffic log that is written by {@link RecordingDataverseService} and read by {@link ReplayDataverseService}. The log is a
+ * gzipped file with one JSON object per call:
+ *
+ * <pre>
+ * {"seq":1,"thread":"import-1","start":12,"millis":250,"method":"addFile","args":[...],"result":{...}}
+ * {"seq":2,"thread":"import-1","start":263,"millis":31,"method":"getDatasetLocks","args":[...],"error":{"type":"IOException","message":"..."}}
+ * </pre>
+ * <p>
+ * <code>start</code> is the number of milliseconds since the recording started and <code>millis</code> the duration of the call. Files that are passed to Dataverse are recorded by path and
+ * size only.
+ * </p>
+ */
+final class DataverseTrafficLog {
+    static final String SEQ = "seq";
+    static final String THREAD = "thread";
+    static final String START = "start";
+    static final String MILLIS = "millis";
+    static final String METHOD = "method";
+    static final String ARGS = "args";
+    static final String RESULT = "result";
+    static final String ERROR = "error";
+    static final String ERROR_TYPE = "type";
+    static final String ERROR_MESSAGE = "message";
+
+    private DataverseTrafficLog() {
+    }
+
+    static ObjectMapper createObjectMapper() {
+        var mapper = new ObjectMapper();
+        var module = new SimpleModule();
+        module.addDeserializer(MetadataField.class, new MetadataFieldDeserializer());
+        mapper.registerModule(module);
+        mapper.setSerializationInclusion(Include.NON_NULL);
+        mapper.configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+        return mapper;
+    }
+
+    static ArrayNode toArgs(ObjectMapper mapper, Object... args) throws IOException {
+        var result = mapper.createArrayNode();
+        for (var arg : args) {
+            if (arg instanceof Path path) {
+                var file = result.addObject();
+                file.put("path", path.toString());
+                file.put("size", Files.exists(path) ? Files.size(path) : -1);
+            }
+            else {
+                result.add(mapper.valueToTree(arg));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the key by which a call is matched during replay. Files are left out, because uploads go through temporary zip files with a different name on every run.
+     *
+     * @param method the method name
+     * @param args   the recorded arguments
+     * @return the key
+     */
+    static String matchKey(String method, JsonNode args) {
+        var key = new StringBuilder(method);
+        for (var arg : args) {
+            key.append('|');
+            if (!(arg.isObject() && arg.has("path") && arg.has("size") && arg.size() == 2)) {
+                key.append(arg);
+            }
+        }
+        return key.toString();
+    }
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright (C) 2024 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.dvingest.core.service;
+
+import java.util.concurrent.Semaphore;
+
+/**
+ * The slot that a deposit occupies among the deposits of an import job that are processed at the same time. While {@link LockAwareDataverseService} waits for
+ * a dataset to be unlocked or published, the deposit gives up its slot, so that the deposits for other datasets can proceed, and takes a slot again when it
+ * continues. The thread that processes the deposits binds the slots with {@link #bind(Semaphore)}, holding one permit of the semaphore; on threads without a
+ * binding, giving up the slot has no effect.
+ */
+public final class DepositSlot {
+    private static final ThreadLocal<Semaphore> bound = new ThreadLocal<>();
+
+    private DepositSlot() {
+    }
+
+    /**
+     * A binding of the slots to the current thread. Closing it restores the slots that were bound before.
+     */
+    public static class Binding implements AutoCloseable {
+        private final Semaphore previous;
+
+        private Binding(Semaphore slots) {
+            this.previous = bound.get();
+            bound.set(slots);
+        }
+
+        @Override
+        public void close() {
+            bound.set(previous);
+        }
+    }
+
+    /**
+     * The period during which the current thread has given up its slot. Closing it waits until a slot is free and takes it.
+     */
+    public static class GivenUp implements AutoCloseable {
+        private final Semaphore slots;
+
+        private GivenUp(Semaphore slots) {
+            this.slots = slots;
+            if (slots != null) {
+                slots.release();
+            }
+        }
+
+        @Override
+        public void close() {
+            if (slots != null) {
+                // Not interruptible, because the caller holds a slot again after this, whether it continues or fails
+                slots.acquireUninterruptibly();
+            }
+        }
+    }
+
+    /**
+     * Binds the given slots to the current thread, which must hold one of their permits.
+     *
+     * @param slots the slots of the deposits that are processed at the same time
+     * @return the binding, to be closed when the thread stops processing deposits
+     */
+    public static Binding bind(Semaphore slots) {
+        return new Binding(slots);
+    }
+
+    /**
+     * Gives up the slot of the current thread, if it is bound, until the returned object is closed.
+     *
+     * @return the object to close when the thread continues
+     */
+    public static GivenUp giveUp() {
+        return new GivenUp(bound.get());
+    }
+}
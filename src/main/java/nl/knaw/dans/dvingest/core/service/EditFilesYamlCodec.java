@@ -0,0 +1,195 @@
+/*
+ * Copyright (C) 2024 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.dvingest.core.service;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.introspect.BeanPropertyDefinition;
+import io.dropwizard.configuration.ConfigurationException;
+import io.dropwizard.configuration.ConfigurationParsingException;
+import io.dropwizard.configuration.ConfigurationValidationException;
+import nl.knaw.dans.dvingest.core.yaml.EditFiles;
+import nl.knaw.dans.dvingest.core.yaml.EditFilesRoot;
+
+import javax.validation.Validator;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reads and writes edit-files.yml element by element. An edit-files.yml for a large deposit lists hundreds of thousands of files; reading it through
+ * {@link io.dropwizard.configuration.YamlConfigurationFactory} first builds a tree of the whole document and then converts that to objects. This codec
+ * creates the objects directly from the token stream, using the same object mapper for the elements, so that the document is in memory only once. Unknown
+ * fields are rejected and the result is validated, as by the configuration factory. The fields of {@link EditFiles} are taken from the object mapper's view of
+ * the bean, so a list that is added to it is read and written without changes here.
+ */
+class EditFilesYamlCodec {
+    private static final String EDIT_FILES = "editFiles";
+
+    private final ObjectMapper mapper;
+    private final ObjectWriter elementWriter;
+    private final Validator validator;
+    // In the order in which they are written
+    private final Map<String, BeanPropertyDefinition> editFilesProperties = new LinkedHashMap<>();
+
+    EditFilesYamlCodec(ObjectMapper mapper, Validator validator) {
+        this.mapper = mapper;
+        // Flushing after every element would defeat the buffering of the output
+        this.elementWriter = mapper.writer().without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+        this.validator = validator;
+        var beanDescription = mapper.getDeserializationConfig().introspect(mapper.constructType(EditFiles.class));
+        for (var property : beanDescription.findProperties()) {
+            if (!property.hasGetter() || !property.hasSetter() || !property.getPrimaryType().isCollectionLikeType()) {
+                throw new IllegalStateException("Property " + property.getName() + " of EditFiles must be a list with a getter and a setter");
+            }
+            editFilesProperties.put(property.getName(), property);
+        }
+    }
+
+    /**
+     * Returns the names of the fields of <code>editFiles</code> that are read and written.
+     *
+     * @return the field names
+     */
+    List<String> getEditFilesFieldNames() {
+        return List.copyOf(editFilesProperties.keySet());
+    }
+
+    EditFilesRoot read(Path yamlFile) throws IOException, ConfigurationException {
+        var path = yamlFile.toString();
+        try (var parser = mapper.getFactory().createParser(yamlFile.toFile())) {
+            var root = new EditFilesRoot();
+            if (parser.nextToken() == null) {
+                throw ConfigurationParsingException.builder("Configuration at " + path + " must not be empty").build(path);
+            }
+            expect(parser, JsonToken.START_OBJECT, path);
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                var name = parser.currentName();
+                parser.nextToken();
+                if (!EDIT_FILES.equals(name)) {
+                    throw unrecognizedField(parser, name, path);
+                }
+                root.setEditFiles(readEditFiles(parser, path));
+            }
+            var violations = validator.validate(root);
+            if (!violations.isEmpty()) {
+                throw new ConfigurationValidationException(path, violations);
+            }
+            return root;
+        }
+        catch (JsonProcessingException e) {
+            throw ConfigurationParsingException.builder("Malformed YAML")
+                .setCause(e)
+                .setLocation(e.getLocation())
+                .setDetail(e.getOriginalMessage())
+                .build(path);
+        }
+    }
+
+    private EditFiles readEditFiles(JsonParser parser, String path) throws IOException, ConfigurationException {
+        if (parser.currentToken() == JsonToken.VALUE_NULL) {
+            return null;
+        }
+        expect(parser, JsonToken.START_OBJECT, path);
+        var editFiles = new EditFiles();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            var name = parser.currentName();
+            parser.nextToken();
+            var property = editFilesProperties.get(name);
+            if (property == null) {
+                throw unrecognizedField(parser, name, path);
+            }
+            var list = readList(parser, property.getPrimaryType().getContentType(), path);
+            try {
+                property.getSetter().callOnWith(editFiles, list);
+            }
+            catch (Exception e) {
+                throw new IllegalStateException("Failed to set property " + name + " of EditFiles", e);
+            }
+        }
+        return editFiles;
+    }
+
+    private List<Object> readList(JsonParser parser, JavaType elementType, String path) throws IOException, ConfigurationException {
+        if (parser.currentToken() == JsonToken.VALUE_NULL) {
+            return null;
+        }
+        expect(parser, JsonToken.START_ARRAY, path);
+        var list = new ArrayList<>();
+        while (parser.nextToken() != JsonToken.END_ARRAY) {
+            list.add(mapper.readValue(parser, elementType));
+        }
+        return list;
+    }
+
+    private void expect(JsonParser parser, JsonToken expected, String path) throws ConfigurationException {
+        if (parser.currentToken() != expected) {
+            throw ConfigurationParsingException.builder("Expected " + expected + " but found " + parser.currentToken())
+                .setLocation(parser.currentLocation())
+                .build(path);
+        }
+    }
+
+    private ConfigurationException unrecognizedField(JsonParser parser, String name, String path) {
+        return ConfigurationParsingException.builder("Unrecognized field at: " + name)
+            .setLocation(parser.currentLocation())
+            .build(path);
+    }
+
+    void write(EditFilesRoot root, Path yamlFile) throws IOException {
+        try (var generator = mapper.getFactory().createGenerator(yamlFile.toFile(), JsonEncoding.UTF8)) {
+            generator.writeStartObject();
+            var editFiles = root.getEditFiles();
+            // Null values are left out, as by the object mapper
+            if (editFiles != null) {
+                generator.writeFieldName(EDIT_FILES);
+                generator.writeStartObject();
+                for (var property : editFilesProperties.values()) {
+                    writeList(generator, property.getName(), (List<?>) property.getGetter().getValue(editFiles));
+                }
+                generator.writeEndObject();
+            }
+            generator.writeEndObject();
+        }
+    }
+
+    private void writeList(JsonGenerator generator, String name, List<?> list) throws IOException {
+        if (list == null) {
+            return;
+        }
+        generator.writeFieldName(name);
+        generator.writeStartArray();
+        for (var element : list) {
+            if (element instanceof String s) {
+                generator.writeString(s);
+            }
+            else {
+                elementWriter.writeValue(generator, element);
+            }
+        }
+        generator.writeEndArray();
+    }
+}
@@ -0,0 +1,210 @@
+/*
+ * Copyright (C) 2024 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.dvingest.core.service;
+
+import lombok.AllArgsConstructor;
+import lombok.NonNull;
+import nl.knaw.dans.dvingest.core.metrics.DataverseCallCounter;
+import nl.knaw.dans.dvingest.core.metrics.IngestMetrics;
+import nl.knaw.dans.lib.dataverse.DataverseException;
+import nl.knaw.dans.lib.dataverse.model.RoleAssignment;
+import nl.knaw.dans.lib.dataverse.model.dataset.Dataset;
+import nl.knaw.dans.lib.dataverse.model.dataset.DatasetVersion;
+import nl.knaw.dans.lib.dataverse.model.dataset.Embargo;
+import nl.knaw.dans.lib.dataverse.model.dataset.FileList;
+import nl.knaw.dans.lib.dataverse.model.dataset.License;
+import nl.knaw.dans.lib.dataverse.model.dataset.MetadataField;
+import nl.knaw.dans.lib.dataverse.model.dataset.UpdateType;
+import nl.knaw.dans.lib.dataverse.model.file.FileMeta;
+import nl.knaw.dans.lib.dataverse.model.user.AuthenticatedUser;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * Decorator that records the latency of every call to the wrapped {@link DataverseService} in a timer named after the method. Failed calls are also counted separately, and every call is counted by the {@link DataverseCallCounter} of the deposit it is made for.
+ */
+@AllArgsConstructor
+public class InstrumentedDataverseService implements DataverseService {
+    @NonNull
+    private final DataverseService delegate;
+    @NonNull
+    private final IngestMetrics metrics;
+
+    @FunctionalInterface
+    private interface Call<T> {
+        T call() throws IOException, DataverseException;
+    }
+
+    @FunctionalInterface
+    private interface VoidCall {
+        void call() throws IOException, DataverseException;
+    }
+
+    private <T> T time(String method, Call<T> call) throws IOException, DataverseException {
+        DataverseCallCounter.countCall();
+        try (var ignored = metrics.dataverseCall(method).time()) {
+            return call.call();
+        }
+        catch (IOException | DataverseException | RuntimeException e) {
+            metrics.dataverseCallErrors(method).inc();
+            throw e;
+        }
+    }
+
+    private void time(String method, VoidCall call) throws IOException, DataverseException {
+        time(method, () -> {
+            call.call();
+            return null;
+        });
+    }
+
+    @Override
+    public String createDataset(Dataset datasetMetadata) throws DataverseException, IOException {
+        return time("createDataset", () -> delegate.createDataset(datasetMetadata));
+    }
+
+    @Override
+    public String importDataset(String persistentId, Dataset datasetMetadata) throws DataverseException, IOException {
+        return time("importDataset", () -> delegate.importDataset(persistentId, datasetMetadata));
+    }
+
+    @Override
+    public void releaseMigratedDataset(String persistentId, String releaseDate) throws DataverseException, IOException {
+        time("releaseMigratedDataset", () -> delegate.releaseMigratedDataset(persistentId, releaseDate));
+    }
+
+    @Override
+    public FileList addFile(String persistentId, Path file, FileMeta fileMeta) throws DataverseException, IOException {
+        return time("addFile", () -> delegate.addFile(persistentId, file, fileMeta));
+    }
+
+    @Override
+    public void publishDataset(String persistentId, UpdateType updateType) throws DataverseException, IOException {
+        time("publishDataset", () -> delegate.publishDataset(persistentId, updateType));
+    }
+
+    @Override
+    public void replaceFile(String targetDatasetPid, FileMeta fileToReplace, Path replacement) throws DataverseException, IOException {
+        time("replaceFile", () -> delegate.replaceFile(targetDatasetPid, fileToReplace, replacement));
+    }
+
+    @Override
+    public void deleteFile(String persistentId, int id) throws DataverseException, IOException {
+        time("deleteFile", () -> delegate.deleteFile(persistentId, id));
+    }
+
+    @Override
+    public void reingestFile(String persistentId, int id) throws DataverseException, IOException {
+        time("reingestFile", () -> delegate.reingestFile(persistentId, id));
+    }
+
+    @Override
+    public List<String> getDatasetLocks(String persistentId) throws DataverseException, IOException {
+        return time("getDatasetLocks", () -> delegate.getDatasetLocks(persistentId));
+    }
+
+    @Override
+    public String getDatasetUrnNbn(String datasetId) throws IOException, DataverseException {
+        return time("getDatasetUrnNbn", () -> delegate.getDatasetUrnNbn(datasetId));
+    }
+
+    @Override
+    public void waitForState(String persistentId, String state) throws DataverseException {
+        try {
+            time("waitForState", () -> delegate.waitForState(persistentId, state));
+        }
+        catch (IOException e) {
+            // Cannot happen, as the delegate does not throw IOException
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Override
+    public void updateMetadata(String targetDatasetPid, DatasetVersion datasetMetadata) throws DataverseException, IOException {
+        time("updateMetadata", () -> delegate.updateMetadata(targetDatasetPid, datasetMetadata));
+    }
+
+    @Override
+    public void updateFileMetadata(String persistentId, int id, FileMeta newMeta) throws DataverseException, IOException {
+        time("updateFileMetadata", () -> delegate.updateFileMetadata(persistentId, id, newMeta));
+    }
+
+    @Override
+    public List<FileMeta> getFiles(String pid) throws IOException, DataverseException {
+        return time("getFiles", () -> delegate.getFiles(pid));
+    }
+
+    @Override
+    public void deleteDatasetMetadata(String pid, List<MetadataField> fields) throws DataverseException, IOException {
+        time("deleteDatasetMetadata", () -> delegate.deleteDatasetMetadata(pid, fields));
+    }
+
+    @Override
+    public void editMetadata(String pid, List<MetadataField> addFieldValues, boolean b) throws DataverseException, IOException {
+        time("editMetadata", () -> delegate.editMetadata(pid, addFieldValues, b));
+    }
+
+    @Override
+    public void addRoleAssignment(String pid, RoleAssignment roleAssignment) throws DataverseException, IOException {
+        time("addRoleAssignment", () -> delegate.addRoleAssignment(pid, roleAssignment));
+    }
+
+    @Override
+    public void deleteRoleAssignment(String pid, RoleAssignment roleAssignment) throws DataverseException, IOException {
+        time("deleteRoleAssignment", () -> delegate.deleteRoleAssignment(pid, roleAssignment));
+    }
+
+    @Override
+    public Optional<AuthenticatedUser> getUserById(String userId) {
+        try (var ignored = metrics.dataverseCall("getUserById").time()) {
+            return delegate.getUserById(userId);
+        }
+    }
+
+    @Override
+    public List<License> getSupportedLicenses() throws IOException, DataverseException {
+        return time("getSupportedLicenses", delegate::getSupportedLicenses);
+    }
+
+    @Override
+    public Set<String> getActiveMetadataBlockNames() throws IOException, DataverseException {
+        return time("getActiveMetadataBlockNames", delegate::getActiveMetadataBlockNames);
+    }
+
+    @Override
+    public void addEmbargo(String pid, Embargo embargo) throws IOException, DataverseException {
+        time("addEmbargo", () -> delegate.addEmbargo(pid, embargo));
+    }
+
+    @Override
+    public List<String> findDoiByMetadataField(String fieldName, String value) throws IOException, DataverseException {
+        return time("findDoiByMetadataField", () -> delegate.findDoiByMetadataField(fieldName, value));
+    }
+
+    @Override
+    public DatasetVersion getDatasetMetadata(String pid) throws IOException, DataverseException {
+        return time("getDatasetMetadata", () -> delegate.getDatasetMetadata(pid));
+    }
+
+    @Override
+    public DatasetVersion getLatestVersionWithoutFiles(String pid) throws IOException, DataverseException {
+        return time("getLatestVersionWithoutFiles", () -> delegate.getLatestVersionWithoutFiles(pid));
+    }
+}
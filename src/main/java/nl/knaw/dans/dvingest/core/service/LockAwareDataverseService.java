@@ -0,0 +1,251 @@
+/*
+ * Copyright (C) 2024 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.dvingest.core.service;
+
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import nl.knaw.dans.dvingest.core.metrics.IngestMetrics;
+import nl.knaw.dans.lib.dataverse.DataverseException;
+import nl.knaw.dans.lib.dataverse.model.RoleAssignment;
+import nl.knaw.dans.lib.dataverse.model.dataset.Dataset;
+import nl.knaw.dans.lib.dataverse.model.dataset.DatasetVersion;
+import nl.knaw.dans.lib.dataverse.model.dataset.Embargo;
+import nl.knaw.dans.lib.dataverse.model.dataset.FileList;
+import nl.knaw.dans.lib.dataverse.model.dataset.License;
+import nl.knaw.dans.lib.dataverse.model.dataset.MetadataField;
+import nl.knaw.dans.lib.dataverse.model.dataset.UpdateType;
+import nl.knaw.dans.lib.dataverse.model.file.FileMeta;
+import nl.knaw.dans.lib.dataverse.model.user.AuthenticatedUser;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Decorator that waits for a dataset to be unlocked before a call that modifies it. Dataverse locks a dataset after an upload (Ingest lock) or a publication
+ * request (finalizePublication lock). To avoid an extra API call before every modification, the locks are only checked on the first call that modifies a
+ * dataset in a deposit (see {@link DatasetLockChecks}), and after that only for a dataset on which one of these operations was performed since the last check.
+ * While waiting, the deposit gives up its {@link DepositSlot}, so that the deposits for other datasets can proceed. The time spent waiting is recorded in the
+ * {@link IngestMetrics#datasetLockWait()} histogram.
+ */
+@Slf4j
+public class LockAwareDataverseService implements DataverseService {
+    private final DataverseService delegate;
+    private final IngestMetrics metrics;
+    private final int maxNumberOfRetries;
+    private final long millisecondsBetweenChecks;
+    private final Set<String> possiblyLocked = ConcurrentHashMap.newKeySet();
+
+    public LockAwareDataverseService(@NonNull DataverseService delegate, @NonNull IngestMetrics metrics, int maxNumberOfRetries, long millisecondsBetweenChecks) {
+        this.delegate = delegate;
+        this.metrics = metrics;
+        this.maxNumberOfRetries = maxNumberOfRetries;
+        this.millisecondsBetweenChecks = millisecondsBetweenChecks;
+    }
+
+    private void awaitUnlocked(String pid) throws IOException, DataverseException {
+        // Always evaluated, so that the dataset is recorded as checked for the deposit
+        var firstCallInDeposit = DatasetLockChecks.markChecked(pid);
+        if (!firstCallInDeposit && !possiblyLocked.contains(pid)) {
+            return;
+        }
+        var start = System.nanoTime();
+        var locks = delegate.getDatasetLocks(pid);
+        var numberOfTimesTried = 0;
+        if (!locks.isEmpty()) {
+            try (var ignored = DepositSlot.giveUp()) {
+                while (!locks.isEmpty() && numberOfTimesTried < maxNumberOfRetries) {
+                    log.debug("Dataset {} is locked ({}); sleeping for {} milliseconds before checking again", pid, locks, millisecondsBetweenChecks);
+                    try {
+                        Thread.sleep(millisecondsBetweenChecks);
+                    }
+                    catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new IllegalStateException("Interrupted while waiting for dataset " + pid + " to be unlocked");
+                    }
+                    locks = delegate.getDatasetLocks(pid);
+                    numberOfTimesTried++;
+                }
+                // Before waiting for a slot again, which is not waiting for the lock
+                metrics.datasetLockWait().update((System.nanoTime() - start) / 1_000_000);
+            }
+        }
+        else {
+            metrics.datasetLockWait().update((System.nanoTime() - start) / 1_000_000);
+        }
+        if (!locks.isEmpty()) {
+            throw new IllegalStateException(String.format("Dataset %s still locked after %d checks; locks: %s", pid, numberOfTimesTried, locks));
+        }
+        possiblyLocked.remove(pid);
+    }
+
+    @Override
+    public String createDataset(Dataset datasetMetadata) throws DataverseException, IOException {
+        var pid = delegate.createDataset(datasetMetadata);
+        // A new dataset has no locks that the deposit does not know of
+        DatasetLockChecks.markChecked(pid);
+        return pid;
+    }
+
+    @Override
+    public String importDataset(String persistentId, Dataset datasetMetadata) throws DataverseException, IOException {
+        var pid = delegate.importDataset(persistentId, datasetMetadata);
+        DatasetLockChecks.markChecked(pid);
+        return pid;
+    }
+
+    @Override
+    public void releaseMigratedDataset(String persistentId, String releaseDate) throws DataverseException, IOException {
+        awaitUnlocked(persistentId);
+        delegate.releaseMigratedDataset(persistentId, releaseDate);
+        possiblyLocked.add(persistentId);
+    }
+
+    @Override
+    public FileList addFile(String persistentId, Path file, FileMeta fileMeta) throws DataverseException, IOException {
+        awaitUnlocked(persistentId);
+        var fileList = delegate.addFile(persistentId, file, fileMeta);
+        possiblyLocked.add(persistentId);
+        return fileList;
+    }
+
+    @Override
+    public void publishDataset(String persistentId, UpdateType updateType) throws DataverseException, IOException {
+        awaitUnlocked(persistentId);
+        delegate.publishDataset(persistentId, updateType);
+        possiblyLocked.add(persistentId);
+    }
+
+    @Override
+    public void replaceFile(String targetDatasetPid, FileMeta fileToReplace, Path replacement) throws DataverseException, IOException {
+        awaitUnlocked(targetDatasetPid);
+        delegate.replaceFile(targetDatasetPid, fileToReplace, replacement);
+        possiblyLocked.add(targetDatasetPid);
+    }
+
+    @Override
+    public void deleteFile(String persistentId, int id) throws DataverseException, IOException {
+        awaitUnlocked(persistentId);
+        delegate.deleteFile(persistentId, id);
+    }
+
+    @Override
+    public void reingestFile(String persistentId, int id) throws DataverseException, IOException {
+        awaitUnlocked(persistentId);
+        // Marked before the call as well, because the reingest runs in the background, while other threads may be working on the same dataset
+        possiblyLocked.add(persistentId);
+        delegate.reingestFile(persistentId, id);
+        possiblyLocked.add(persistentId);
+    }
+
+    @Override
+    public List<String> getDatasetLocks(String persistentId) throws DataverseException, IOException {
+        return delegate.getDatasetLocks(persistentId);
+    }
+
+    @Override
+    public String getDatasetUrnNbn(String datasetId) throws IOException, DataverseException {
+        return delegate.getDatasetUrnNbn(datasetId);
+    }
+
+    @Override
+    public void waitForState(String persistentId, String state) throws DataverseException {
+        // Like waiting for a lock, waiting for the publication to finish should not keep the deposits for other datasets waiting
+        try (var ignored = DepositSlot.giveUp()) {
+            delegate.waitForState(persistentId, state);
+        }
+    }
+
+    @Override
+    public void updateMetadata(String targetDatasetPid, DatasetVersion datasetMetadata) throws DataverseException, IOException {
+        awaitUnlocked(targetDatasetPid);
+        delegate.updateMetadata(targetDatasetPid, datasetMetadata);
+    }
+
+    @Override
+    public void updateFileMetadata(String persistentId, int id, FileMeta newMeta) throws DataverseException, IOException {
+        awaitUnlocked(persistentId);
+        delegate.updateFileMetadata(persistentId, id, newMeta);
+    }
+
+    @Override
+    public List<FileMeta> getFiles(String pid) throws IOException, DataverseException {
+        return delegate.getFiles(pid);
+    }
+
+    @Override
+    public void deleteDatasetMetadata(String pid, List<MetadataField> fields) throws DataverseException, IOException {
+        awaitUnlocked(pid);
+        delegate.deleteDatasetMetadata(pid, fields);
+    }
+
+    @Override
+    public void editMetadata(String pid, List<MetadataField> addFieldValues, boolean b) throws DataverseException, IOException {
+        awaitUnlocked(pid);
+        delegate.editMetadata(pid, addFieldValues, b);
+    }
+
+    @Override
+    public void addRoleAssignment(String pid, RoleAssignment roleAssignment) throws DataverseException, IOException {
+        awaitUnlocked(pid);
+        delegate.addRoleAssignment(pid, roleAssignment);
+    }
+
+    @Override
+    public void deleteRoleAssignment(String pid, RoleAssignment roleAssignment) throws DataverseException, IOException {
+        awaitUnlocked(pid);
+        delegate.deleteRoleAssignment(pid, roleAssignment);
+    }
+
+    @Override
+    public Optional<AuthenticatedUser> getUserById(String userId) {
+        return delegate.getUserById(userId);
+    }
+
+    @Override
+    public List<License> getSupportedLicenses() throws IOException, DataverseException {
+        return delegate.getSupportedLicenses();
+    }
+
+    @Override
+    public Set<String> getActiveMetadataBlockNames() throws IOException, DataverseException {
+        return delegate.getActiveMetadataBlockNames();
+    }
+
+    @Override
+    public void addEmbargo(String pid, Embargo embargo) throws IOException, DataverseException {
+        awaitUnlocked(pid);
+        delegate.addEmbargo(pid, embargo);
+    }
+
+    @Override
+    public List<String> findDoiByMetadataField(String fieldName, String value) throws IOException, DataverseException {
+        return delegate.findDoiByMetadataField(fieldName, value);
+    }
+
+    @Override
+    public DatasetVersion getDatasetMetadata(String pid) throws IOException, DataverseException {
+        return delegate.getDatasetMetadata(pid);
+    }
+
+    @Override
+    public DatasetVersion getLatestVersionWithoutFiles(String pid) throws IOException, DataverseException {
+        return delegate.getLatestVersionWithoutFiles(pid);
+    }
+}
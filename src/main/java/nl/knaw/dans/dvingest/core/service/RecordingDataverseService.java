@@ -0,0 +1,281 @@
+/*
+ * Copyright (C) 2024 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.dvingest.core.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import nl.knaw.dans.lib.dataverse.DataverseException;
+import nl.knaw.dans.lib.dataverse.model.RoleAssignment;
+import nl.knaw.dans.lib.dataverse.model.dataset.Dataset;
+import nl.knaw.dans.lib.dataverse.model.dataset.DatasetVersion;
+import nl.knaw.dans.lib.dataverse.model.dataset.Embargo;
+import nl.knaw.dans.lib.dataverse.model.dataset.FileList;
+import nl.knaw.dans.lib.dataverse.model.dataset.License;
+import nl.knaw.dans.lib.dataverse.model.dataset.MetadataField;
+import nl.knaw.dans.lib.dataverse.model.dataset.UpdateType;
+import nl.knaw.dans.lib.dataverse.model.file.FileMeta;
+import nl.knaw.dans.lib.dataverse.model.user.AuthenticatedUser;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPOutputStream;
+
+import static nl.knaw.dans.dvingest.core.service.DataverseTrafficLog.ARGS;
+import static nl.knaw.dans.dvingest.core.service.DataverseTrafficLog.ERROR;
+import static nl.knaw.dans.dvingest.core.service.DataverseTrafficLog.ERROR_MESSAGE;
+import static nl.knaw.dans.dvingest.core.service.DataverseTrafficLog.ERROR_TYPE;
+import static nl.knaw.dans.dvingest.core.service.DataverseTrafficLog.METHOD;
+import static nl.knaw.dans.dvingest.core.service.DataverseTrafficLog.MILLIS;
+import static nl.knaw.dans.dvingest.core.service.DataverseTrafficLog.RESULT;
+import static nl.knaw.dans.dvingest.core.service.DataverseTrafficLog.SEQ;
+import static nl.knaw.dans.dvingest.core.service.DataverseTrafficLog.START;
+import static nl.knaw.dans.dvingest.core.service.DataverseTrafficLog.THREAD;
+
+/**
+ * Decorator that records every call to the wrapped {@link DataverseService}, with its arguments, result or error and latency, in a {@link DataverseTrafficLog}. The log can be served again by
+ * {@link ReplayDataverseService}. Recording failures are logged, but do not affect the calls.
+ */
+@Slf4j
+public class RecordingDataverseService implements DataverseService, AutoCloseable {
+    private final DataverseService delegate;
+    private final ObjectMapper mapper = DataverseTrafficLog.createObjectMapper();
+    private final BufferedWriter writer;
+    private final AtomicLong sequence = new AtomicLong();
+    private final long startNanos = System.nanoTime();
+
+    @FunctionalInterface
+    private interface Call<T> {
+        T call() throws IOException, DataverseException;
+    }
+
+    @FunctionalInterface
+    private interface VoidCall {
+        void call() throws IOException, DataverseException;
+    }
+
+    public RecordingDataverseService(@NonNull DataverseService delegate, @NonNull Path trafficLog) throws IOException {
+        this.delegate = delegate;
+        if (trafficLog.getParent() != null) {
+            Files.createDirectories(trafficLog.getParent());
+        }
+        this.writer = new BufferedWriter(new OutputStreamWriter(new GZIPOutputStream(Files.newOutputStream(trafficLog)), StandardCharsets.UTF_8));
+        log.info("Recording Dataverse traffic to {}", trafficLog);
+    }
+
+    private <T> T record(String method, Object[] args, Call<T> call) throws IOException, DataverseException {
+        var seq = sequence.incrementAndGet();
+        var start = System.nanoTime();
+        try {
+            var result = call.call();
+            write(seq, start, method, args, result, null);
+            return result;
+        }
+        catch (IOException | DataverseException | RuntimeException e) {
+            write(seq, start, method, args, null, e);
+            throw e;
+        }
+    }
+
+    private void record(String method, Object[] args, VoidCall call) throws IOException, DataverseException {
+        record(method, args, () -> {
+            call.call();
+            return null;
+        });
+    }
+
+    private void write(long seq, long start, String method, Object[] args, Object result, Exception error) {
+        var end = System.nanoTime();
+        try {
+            var entry = mapper.createObjectNode();
+            entry.put(SEQ, seq);
+            entry.put(THREAD, Thread.currentThread().getName());
+            entry.put(START, (start - startNanos) / 1_000_000);
+            entry.put(MILLIS, (end - start) / 1_000_000);
+            entry.put(METHOD, method);
+            entry.set(ARGS, DataverseTrafficLog.toArgs(mapper, args));
+            if (error != null) {
+                var errorNode = entry.putObject(ERROR);
+                errorNode.put(ERROR_TYPE, error.getClass().getSimpleName());
+                errorNode.put(ERROR_MESSAGE, error.getMessage());
+            }
+            else if (result != null) {
+                entry.set(RESULT, mapper.valueToTree(result instanceof Optional<?> optional ? optional.orElse(null) : result));
+            }
+            var line = mapper.writeValueAsString(entry);
+            synchronized (writer) {
+                writer.write(line);
+                writer.newLine();
+            }
+        }
+        catch (IOException | IllegalArgumentException e) {
+            log.warn("Could not record call to {}", method, e);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        synchronized (writer) {
+            writer.close();
+        }
+        log.info("Recorded {} Dataverse calls", sequence.get());
+    }
+
+    @Override
+    public String createDataset(Dataset datasetMetadata) throws DataverseException, IOException {
+        return record("createDataset", new Object[] { datasetMetadata }, () -> delegate.createDataset(datasetMetadata));
+    }
+
+    @Override
+    public String importDataset(String persistentId, Dataset datasetMetadata) throws DataverseException, IOException {
+        return record("importDataset", new Object[] { persistentId, datasetMetadata }, () -> delegate.importDataset(persistentId, datasetMetadata));
+    }
+
+    @Override
+    public void releaseMigratedDataset(String persistentId, String releaseDate) throws DataverseException, IOException {
+        record("releaseMigratedDataset", new Object[] { persistentId, releaseDate }, () -> delegate.releaseMigratedDataset(persistentId, releaseDate));
+    }
+
+    @Override
+    public FileList addFile(String persistentId, Path file, FileMeta fileMeta) throws DataverseException, IOException {
+        return record("addFile", new Object[] { persistentId, file, fileMeta }, () -> delegate.addFile(persistentId, file, fileMeta));
+    }
+
+    @Override
+    public void publishDataset(String persistentId, UpdateType updateType) throws DataverseException, IOException {
+        record("publishDataset", new Object[] { persistentId, updateType }, () -> delegate.publishDataset(persistentId, updateType));
+    }
+
+    @Override
+    public void replaceFile(String targetDatasetPid, FileMeta fileToReplace, Path replacement) throws DataverseException, IOException {
+        record("replaceFile", new Object[] { targetDatasetPid, fileToReplace, replacement }, () -> delegate.replaceFile(targetDatasetPid, fileToReplace, replacement));
+    }
+
+    @Override
+    public void deleteFile(String persistentId, int id) throws DataverseException, IOException {
+        record("deleteFile", new Object[] { persistentId, id }, () -> delegate.deleteFile(persistentId, id));
+    }
+
+    @Override
+    public void reingestFile(String persistentId, int id) throws DataverseException, IOException {
+        record("reingestFile", new Object[] { persistentId, id }, () -> delegate.reingestFile(persistentId, id));
+    }
+
+    @Override
+    public List<String> getDatasetLocks(String persistentId) throws DataverseException, IOException {
+        return record("getDatasetLocks", new Object[] { persistentId }, () -> delegate.getDatasetLocks(persistentId));
+    }
+
+    @Override
+    public String getDatasetUrnNbn(String datasetId) throws IOException, DataverseException {
+        return record("getDatasetUrnNbn", new Object[] { datasetId }, () -> delegate.getDatasetUrnNbn(datasetId));
+    }
+
+    @Override
+    public void waitForState(String persistentId, String state) throws DataverseException {
+        try {
+            record("waitForState", new Object[] { persistentId, state }, () -> delegate.waitForState(persistentId, state));
+        }
+        catch (IOException e) {
+            // Cannot happen, as the delegate does not throw IOException
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Override
+    public void updateMetadata(String targetDatasetPid, DatasetVersion datasetMetadata) throws DataverseException, IOException {
+        record("updateMetadata", new Object[] { targetDatasetPid, datasetMetadata }, () -> delegate.updateMetadata(targetDatasetPid, datasetMetadata));
+    }
+
+    @Override
+    public void updateFileMetadata(String persistentId, int id, FileMeta newMeta) throws DataverseException, IOException {
+        record("updateFileMetadata", new Object[] { persistentId, id, newMeta }, () -> delegate.updateFileMetadata(persistentId, id, newMeta));
+    }
+
+    @Override
+    public List<FileMeta> getFiles(String pid) throws IOException, DataverseException {
+        return record("getFiles", new Object[] { pid }, () -> delegate.getFiles(pid));
+    }
+
+    @Override
+    public void deleteDatasetMetadata(String pid, List<MetadataField> fields) throws DataverseException, IOException {
+        record("deleteDatasetMetadata", new Object[] { pid, fields }, () -> delegate.deleteDatasetMetadata(pid, fields));
+    }
+
+    @Override
+    public void editMetadata(String pid, List<MetadataField> addFieldValues, boolean b) throws DataverseException, IOException {
+        record("editMetadata", new Object[] { pid, addFieldValues, b }, () -> delegate.editMetadata(pid, addFieldValues, b));
+    }
+
+    @Override
+    public void addRoleAssignment(String pid, RoleAssignment roleAssignment) throws DataverseException, IOException {
+        record("addRoleAssignment", new Object[] { pid, roleAssignment }, () -> delegate.addRoleAssignment(pid, roleAssignment));
+    }
+
+    @Override
+    public void deleteRoleAssignment(String pid, RoleAssignment roleAssignment) throws DataverseException, IOException {
+        record("deleteRoleAssignment", new Object[] { pid, roleAssignment }, () -> delegate.deleteRoleAssignment(pid, roleAssignment));
+    }
+
+    @Override
+    public Optional<AuthenticatedUser> getUserById(String userId) {
+        try {
+            return record("getUserById", new Object[] { userId }, () -> delegate.getUserById(userId));
+        }
+        catch (IOException | DataverseException e) {
+            // Cannot happen, as the delegate does not throw these
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Override
+    public List<License> getSupportedLicenses() throws IOException, DataverseException {
+        return record("getSupportedLicenses", new Object[] {}, delegate::getSupportedLicenses);
+    }
+
+    @Override
+    public Set<String> getActiveMetadataBlockNames() throws IOException, DataverseException {
+        return record("getActiveMetadataBlockNames", new Object[] {}, delegate::getActiveMetadataBlockNames);
+    }
+
+    @Override
+    public void addEmbargo(String pid, Embargo embargo) throws IOException, DataverseException {
+        record("addEmbargo", new Object[] { pid, embargo }, () -> delegate.addEmbargo(pid, embargo));
+    }
+
+    @Override
+    public List<String> findDoiByMetadataField(String fieldName, String value) throws IOException, DataverseException {
+        return record("findDoiByMetadataField", new Object[] { fieldName, value }, () -> delegate.findDoiByMetadataField(fieldName, value));
+    }
+
+    @Override
+    public DatasetVersion getDatasetMetadata(String pid) throws IOException, DataverseException {
+        return record("getDatasetMetadata", new Object[] { pid }, () -> delegate.getDatasetMetadata(pid));
+    }
+
+    @Override
+    public DatasetVersion getLatestVersionWithoutFiles(String pid) throws IOException, DataverseException {
+        return record("getLatestVersionWithoutFiles", new Object[] { pid }, () -> delegate.getLatestVersionWithoutFiles(pid));
+    }
+}
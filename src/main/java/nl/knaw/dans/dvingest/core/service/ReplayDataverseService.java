@@ -0,0 +1,316 @@
+/*
+ * Copyright (C) 2024 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.dvingest.core.service;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import nl.knaw.dans.lib.dataverse.DataverseException;
+import nl.knaw.dans.lib.dataverse.model.RoleAssignment;
+import nl.knaw.dans.lib.dataverse.model.dataset.Dataset;
+import nl.knaw.dans.lib.dataverse.model.dataset.DatasetVersion;
+import nl.knaw.dans.lib.dataverse.model.dataset.Embargo;
+import nl.knaw.dans.lib.dataverse.model.dataset.FileList;
+import nl.knaw.dans.lib.dataverse.model.dataset.License;
+import nl.knaw.dans.lib.dataverse.model.dataset.MetadataField;
+import nl.knaw.dans.lib.dataverse.model.dataset.UpdateType;
+import nl.knaw.dans.lib.dataverse.model.file.FileMeta;
+import nl.knaw.dans.lib.dataverse.model.user.AuthenticatedUser;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.zip.GZIPInputStream;
+
+import static nl.knaw.dans.dvingest.core.service.DataverseTrafficLog.ARGS;
+import static nl.knaw.dans.dvingest.core.service.DataverseTrafficLog.ERROR;
+import static nl.knaw.dans.dvingest.core.service.DataverseTrafficLog.ERROR_MESSAGE;
+import static nl.knaw.dans.dvingest.core.service.DataverseTrafficLog.ERROR_TYPE;
+import static nl.knaw.dans.dvingest.core.service.DataverseTrafficLog.METHOD;
+import static nl.knaw.dans.dvingest.core.service.DataverseTrafficLog.MILLIS;
+import static nl.knaw.dans.dvingest.core.service.DataverseTrafficLog.RESULT;
+import static nl.knaw.dans.dvingest.core.service.DataverseTrafficLog.SEQ;
+
+/**
+ * <p>
+ * Serves the calls recorded by {@link RecordingDataverseService} from a {@link DataverseTrafficLog}, without contacting Dataverse. Each call is answered with the result or error of a recorded
+ * call of the same method, taking the calls with the same arguments first, in the order in which they were recorded. If no call with the same arguments is left, the next recorded call of the
+ * same method is used, so that small differences (e.g., in generated metadata) do not stop the replay. A call for which nothing is left fails with an {@link IllegalStateException}.
+ * </p>
+ * <p>
+ * Before answering, the service waits for the recorded duration of the call, multiplied by the time scale. A time scale of 0 answers immediately.
+ * </p>
+ * <p>
+ * Errors are rethrown as {@link IOException} with the recorded message, also if the original error was a {@link DataverseException}, which the client library creates from an HTTP response.
+ * </p>
+ */
+@Slf4j
+public class ReplayDataverseService implements DataverseService {
+    private final ObjectMapper mapper = DataverseTrafficLog.createObjectMapper();
+    private final double timeScale;
+    private final Map<String, Deque<Entry>> entriesByKey = new HashMap<>();
+    private final Map<String, Deque<Entry>> entriesByMethod = new HashMap<>();
+    private int numberOfEntries;
+    private int numberOfMismatches;
+
+    private static class Entry {
+        private final JsonNode node;
+        private boolean used;
+
+        private Entry(JsonNode node) {
+            this.node = node;
+        }
+    }
+
+    public ReplayDataverseService(@NonNull Path trafficLog, double timeScale) throws IOException {
+        if (timeScale < 0) {
+            throw new IllegalArgumentException("timeScale must not be negative");
+        }
+        this.timeScale = timeScale;
+        try (var reader = new BufferedReader(new InputStreamReader(new GZIPInputStream(Files.newInputStream(trafficLog)), StandardCharsets.UTF_8))) {
+            // Lines are written when calls end, so sort them by the order in which the calls started
+            var nodes = new ArrayList<JsonNode>();
+            for (var line = reader.readLine(); line != null; line = reader.readLine()) {
+                if (!line.isBlank()) {
+                    nodes.add(mapper.readTree(line));
+                }
+            }
+            nodes.sort((a, b) -> Long.compare(a.path(SEQ).asLong(), b.path(SEQ).asLong()));
+            for (var node : nodes) {
+                var entry = new Entry(node);
+                var method = node.path(METHOD).asText();
+                entriesByKey.computeIfAbsent(DataverseTrafficLog.matchKey(method, node.path(ARGS)), k -> new ArrayDeque<>()).add(entry);
+                entriesByMethod.computeIfAbsent(method, k -> new ArrayDeque<>()).add(entry);
+            }
+            numberOfEntries = nodes.size();
+        }
+        log.info("Loaded {} recorded Dataverse calls from {}", numberOfEntries, trafficLog);
+    }
+
+    /**
+     * Returns the number of calls that were answered with a recorded call that had different arguments.
+     *
+     * @return the number of mismatches
+     */
+    public synchronized int getNumberOfMismatches() {
+        return numberOfMismatches;
+    }
+
+    private <T> T replay(String method, Object[] args, TypeReference<T> resultType) throws IOException {
+        var entry = take(method, DataverseTrafficLog.matchKey(method, DataverseTrafficLog.toArgs(mapper, args)));
+        sleep((long) (entry.node.path(MILLIS).asLong() * timeScale));
+        if (entry.node.has(ERROR)) {
+            var error = entry.node.get(ERROR);
+            throw new IOException("Replayed " + error.path(ERROR_TYPE).asText() + ": " + error.path(ERROR_MESSAGE).asText(null));
+        }
+        var result = entry.node.get(RESULT);
+        if (result == null || result.isNull() || resultType == null) {
+            return null;
+        }
+        return mapper.convertValue(result, resultType);
+    }
+
+    private void replay(String method, Object[] args) throws IOException {
+        replay(method, args, null);
+    }
+
+    private synchronized Entry take(String method, String key) {
+        var entry = poll(entriesByKey.get(key));
+        if (entry == null) {
+            entry = poll(entriesByMethod.get(method));
+            if (entry == null) {
+                throw new IllegalStateException("No recorded call left for " + method);
+            }
+            numberOfMismatches++;
+            log.debug("No recorded call with the same arguments for {}; using call {}", key, entry.node.path(SEQ).asLong());
+        }
+        entry.used = true;
+        return entry;
+    }
+
+    private Entry poll(Deque<Entry> entries) {
+        if (entries == null) {
+            return null;
+        }
+        while (!entries.isEmpty()) {
+            var entry = entries.poll();
+            if (!entry.used) {
+                return entry;
+            }
+        }
+        return null;
+    }
+
+    private void sleep(long millis) {
+        if (millis <= 0) {
+            return;
+        }
+        try {
+            Thread.sleep(millis);
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public String createDataset(Dataset datasetMetadata) throws IOException {
+        return replay("createDataset", new Object[] { datasetMetadata }, new TypeReference<String>() {});
+    }
+
+    @Override
+    public String importDataset(String persistentId, Dataset datasetMetadata) throws IOException {
+        return replay("importDataset", new Object[] { persistentId, datasetMetadata }, new TypeReference<String>() {});
+    }
+
+    @Override
+    public void releaseMigratedDataset(String persistentId, String releaseDate) throws IOException {
+        replay("releaseMigratedDataset", new Object[] { persistentId, releaseDate });
+    }
+
+    @Override
+    public FileList addFile(String persistentId, Path file, FileMeta fileMeta) throws IOException {
+        return replay("addFile", new Object[] { persistentId, file, fileMeta }, new TypeReference<FileList>() {});
+    }
+
+    @Override
+    public void publishDataset(String persistentId, UpdateType updateType) throws IOException {
+        replay("publishDataset", new Object[] { persistentId, updateType });
+    }
+
+    @Override
+    public void replaceFile(String targetDatasetPid, FileMeta fileToReplace, Path replacement) throws IOException {
+        replay("replaceFile", new Object[] { targetDatasetPid, fileToReplace, replacement });
+    }
+
+    @Override
+    public void deleteFile(String persistentId, int id) throws IOException {
+        replay("deleteFile", new Object[] { persistentId, id });
+    }
+
+    @Override
+    public void reingestFile(String persistentId, int id) throws IOException {
+        replay("reingestFile", new Object[] { persistentId, id });
+    }
+
+    @Override
+    public List<String> getDatasetLocks(String persistentId) throws IOException {
+        return replay("getDatasetLocks", new Object[] { persistentId }, new TypeReference<List<String>>() {});
+    }
+
+    @Override
+    public String getDatasetUrnNbn(String datasetId) throws IOException {
+        return replay("getDatasetUrnNbn", new Object[] { datasetId }, new TypeReference<String>() {});
+    }
+
+    @Override
+    public void waitForState(String persistentId, String state) {
+        try {
+            replay("waitForState", new Object[] { persistentId, state });
+        }
+        catch (IOException e) {
+            throw new IllegalStateException(e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public void updateMetadata(String targetDatasetPid, DatasetVersion datasetMetadata) throws IOException {
+        replay("updateMetadata", new Object[] { targetDatasetPid, datasetMetadata });
+    }
+
+    @Override
+    public void updateFileMetadata(String persistentId, int id, FileMeta newMeta) throws IOException {
+        replay("updateFileMetadata", new Object[] { persistentId, id, newMeta });
+    }
+
+    @Override
+    public List<FileMeta> getFiles(String pid) throws IOException {
+        return replay("getFiles", new Object[] { pid }, new TypeReference<List<FileMeta>>() {});
+    }
+
+    @Override
+    public void deleteDatasetMetadata(String pid, List<MetadataField> fields) throws IOException {
+        replay("deleteDatasetMetadata", new Object[] { pid, fields });
+    }
+
+    @Override
+    public void editMetadata(String pid, List<MetadataField> addFieldValues, boolean b) throws IOException {
+        replay("editMetadata", new Object[] { pid, addFieldValues, b });
+    }
+
+    @Override
+    public void addRoleAssignment(String pid, RoleAssignment roleAssignment) throws IOException {
+        replay("addRoleAssignment", new Object[] { pid, roleAssignment });
+    }
+
+    @Override
+    public void deleteRoleAssignment(String pid, RoleAssignment roleAssignment) throws IOException {
+        replay("deleteRoleAssignment", new Object[] { pid, roleAssignment });
+    }
+
+    @Override
+    public Optional<AuthenticatedUser> getUserById(String userId) {
+        try {
+            return Optional.ofNullable(replay("getUserById", new Object[] { userId }, new TypeReference<AuthenticatedUser>() {}));
+        }
+        catch (IOException e) {
+            return Optional.empty();
+        }
+    }
+
+    @Override
+    public List<License> getSupportedLicenses() throws IOException {
+        return replay("getSupportedLicenses", new Object[] {}, new TypeReference<List<License>>() {});
+    }
+
+    @Override
+    public Set<String> getActiveMetadataBlockNames() throws IOException {
+        return replay("getActiveMetadataBlockNames", new Object[] {}, new TypeReference<Set<String>>() {});
+    }
+
+    @Override
+    public void addEmbargo(String pid, Embargo embargo) throws IOException {
+        replay("addEmbargo", new Object[] { pid, embargo });
+    }
+
+    @Override
+    public List<String> findDoiByMetadataField(String fieldName, String value) throws IOException {
+        return replay("findDoiByMetadataField", new Object[] { fieldName, value }, new TypeReference<List<String>>() {});
+    }
+
+    @Override
+    public DatasetVersion getDatasetMetadata(String pid) throws IOException {
+        return replay("getDatasetMetadata", new Object[] { pid }, new TypeReference<DatasetVersion>() {});
+    }
+
+    @Override
+    public DatasetVersion getLatestVersionWithoutFiles(String pid) throws IOException {
+        return replay("getLatestVersionWithoutFiles", new Object[] { pid }, new TypeReference<DatasetVersion>() {});
+    }
+}
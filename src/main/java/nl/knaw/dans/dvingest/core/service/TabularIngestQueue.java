@@ -0,0 +1,58 @@
+/*
+ * Copyright (C) 2024 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.dvingest.core.service;
+
+import lombok.AllArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import nl.knaw.dans.dvingest.core.report.DepositReport;
+import nl.knaw.dans.lib.dataverse.DataverseException;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Queue for the deferred tabular ingest of files that were uploaded with tabular ingest disabled. The ingest is started file by file on the executor service,
+ * which is expected to run at a low priority, so that the ingest of new deposits is not slowed down by it. Failures do not affect the deposit, as the files
+ * have already been published in their original format; they are recorded in the report of the deposit, so that the import job can include them in its
+ * summary.
+ */
+@Slf4j
+@AllArgsConstructor
+public class TabularIngestQueue {
+    private final DataverseService dataverseService;
+    private final ExecutorService executorService;
+
+    public void submit(String pid, List<Integer> fileIds, DepositReport report) {
+        log.debug("Queueing tabular ingest of {} files in dataset {}", fileIds.size(), pid);
+        for (var fileId : fileIds) {
+            report.addPendingTabularIngest(CompletableFuture.runAsync(() -> reingest(pid, fileId, report), executorService));
+        }
+    }
+
+    private void reingest(String pid, int fileId, DepositReport report) {
+        try {
+            log.debug("Start tabular ingest of file {} in dataset {}", fileId, pid);
+            dataverseService.reingestFile(pid, fileId);
+            log.debug("End tabular ingest of file {} in dataset {}", fileId, pid);
+        }
+        catch (IOException | DataverseException | RuntimeException e) {
+            log.error("Tabular ingest of file {} in dataset {} failed", fileId, pid, e);
+            report.recordFailedTabularIngest(fileId);
+        }
+    }
+}
@@ -0,0 +1,212 @@
+/*
+ * Copyright (C) 2024 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.dvingest.core.service;
+
+import lombok.Builder;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * <p>
+ * Plans the size of the next upload batch from the durations of the recent uploads. The duration of an upload is modelled as a fixed overhead plus a cost per
+ * file plus a cost per mebibyte. The model is fitted with least squares over the last {@code windowSize} uploads. The limits for the next batch are chosen so
+ * that the predicted duration is close to the target duration, within the configured minimum and maximum limits.
+ * </p>
+ * <p>
+ * After a failed upload (e.g., a timeout), the limits are halved. They recover gradually with each successful upload.
+ * </p>
+ */
+@Slf4j
+public class UploadBatchPlanner {
+    private static final double BYTES_PER_MEBIBYTE = 1024 * 1024;
+    private static final int MIN_OBSERVATIONS = 5;
+    private static final double MIN_BACKOFF = 1.0 / 64;
+    private static final double RECOVERY_FACTOR = 1.25;
+
+    private final int minNumberOfFiles;
+    private final int maxNumberOfFiles;
+    private final long minNumberOfBytes;
+    private final long maxNumberOfBytes;
+    private final long targetDurationMillis;
+    private final int windowSize;
+    private final Deque<Observation> observations = new ArrayDeque<>();
+
+    @Getter
+    private double overheadMillis;
+    @Getter
+    private double millisPerFile;
+    @Getter
+    private double millisPerMebibyte;
+    @Getter
+    private double backoff = 1.0;
+    @Getter
+    private int plannedNumberOfFiles;
+    @Getter
+    private long plannedNumberOfBytes;
+
+    private record Observation(int files, long bytes, long durationMillis) {
+    }
+
+    @Builder
+    private UploadBatchPlanner(int minNumberOfFiles, int maxNumberOfFiles, long minNumberOfBytes, long maxNumberOfBytes, long targetDurationMillis, int windowSize) {
+        if (minNumberOfFiles < 1 || maxNumberOfFiles < minNumberOfFiles) {
+            throw new IllegalArgumentException("Invalid file limits: " + minNumberOfFiles + " - " + maxNumberOfFiles);
+        }
+        if (minNumberOfBytes < 1 || maxNumberOfBytes < minNumberOfBytes) {
+            throw new IllegalArgumentException("Invalid byte size limits: " + minNumberOfBytes + " - " + maxNumberOfBytes);
+        }
+        if (targetDurationMillis <= 0) {
+            throw new IllegalArgumentException("Target duration must be positive");
+        }
+        this.minNumberOfFiles = minNumberOfFiles;
+        this.maxNumberOfFiles = maxNumberOfFiles;
+        this.minNumberOfBytes = minNumberOfBytes;
+        this.maxNumberOfBytes = maxNumberOfBytes;
+        this.targetDurationMillis = targetDurationMillis;
+        this.windowSize = Math.max(windowSize, MIN_OBSERVATIONS);
+        this.plannedNumberOfFiles = maxNumberOfFiles;
+        this.plannedNumberOfBytes = maxNumberOfBytes;
+    }
+
+    /**
+     * Records a successful upload and re-plans the limits for the next batch.
+     *
+     * @param files          the number of files in the batch
+     * @param bytes          the size of the uploaded zip file
+     * @param durationMillis the duration of the upload call
+     */
+    public synchronized void recordUpload(int files, long bytes, long durationMillis) {
+        observations.addLast(new Observation(files, bytes, durationMillis));
+        while (observations.size() > windowSize) {
+            observations.removeFirst();
+        }
+        backoff = Math.min(1.0, backoff * RECOVERY_FACTOR);
+        fitModel();
+        plan();
+    }
+
+    /**
+     * Records a failed upload, halving the limits for the next batch.
+     */
+    public synchronized void recordFailure() {
+        backoff = Math.max(MIN_BACKOFF, backoff / 2);
+        plan();
+        log.warn("Upload failed; reducing upload batch size to {} files / {} bytes", plannedNumberOfFiles, plannedNumberOfBytes);
+    }
+
+    private void fitModel() {
+        if (observations.size() < MIN_OBSERVATIONS) {
+            return;
+        }
+        // Normal equations for duration = overhead + perFile * files + perMebibyte * mebibytes
+        var a = new double[3][4];
+        for (var o : observations) {
+            var x = new double[] { 1.0, o.files(), o.bytes() / BYTES_PER_MEBIBYTE };
+            for (int i = 0; i < 3; i++) {
+                for (int j = 0; j < 3; j++) {
+                    a[i][j] += x[i] * x[j];
+                }
+                a[i][3] += x[i] * o.durationMillis();
+            }
+        }
+        var solution = solve(a);
+        if (solution == null) {
+            // Batches too much alike to separate the costs; attribute everything to the bytes
+            var totalMillis = observations.stream().mapToLong(Observation::durationMillis).sum();
+            var totalMebibytes = observations.stream().mapToLong(Observation::bytes).sum() / BYTES_PER_MEBIBYTE;
+            overheadMillis = 0;
+            millisPerFile = 0;
+            millisPerMebibyte = totalMebibytes > 0 ? totalMillis / totalMebibytes : 0;
+        }
+        else {
+            overheadMillis = Math.max(0, solution[0]);
+            millisPerFile = Math.max(0, solution[1]);
+            millisPerMebibyte = Math.max(0, solution[2]);
+        }
+    }
+
+    private void plan() {
+        var files = (double) maxNumberOfFiles;
+        var bytes = (double) maxNumberOfBytes;
+        var available = targetDurationMillis - overheadMillis;
+        if (observations.size() >= MIN_OBSERVATIONS) {
+            if (available <= 0) {
+                files = minNumberOfFiles;
+                bytes = minNumberOfBytes;
+            }
+            else {
+                var meanMebibytesPerFile = observations.stream().mapToLong(Observation::bytes).sum() / BYTES_PER_MEBIBYTE
+                    / Math.max(1, observations.stream().mapToInt(Observation::files).sum());
+                var millisPerAverageFile = millisPerFile + millisPerMebibyte * meanMebibytesPerFile;
+                if (millisPerAverageFile > 0) {
+                    files = available / millisPerAverageFile;
+                }
+                if (millisPerMebibyte > 0) {
+                    bytes = available / millisPerMebibyte * BYTES_PER_MEBIBYTE;
+                }
+            }
+        }
+        plannedNumberOfFiles = (int) clamp(files * backoff, minNumberOfFiles, maxNumberOfFiles);
+        plannedNumberOfBytes = (long) clamp(bytes * backoff, minNumberOfBytes, maxNumberOfBytes);
+    }
+
+    private static double clamp(double value, double min, double max) {
+        return Math.max(min, Math.min(max, value));
+    }
+
+    /*
+     * Gaussian elimination with partial pivoting on an augmented 3x4 matrix. Returns null if the matrix is (nearly) singular.
+     */
+    private static double[] solve(double[][] a) {
+        var n = a.length;
+        var diagonal = new double[n];
+        for (int i = 0; i < n; i++) {
+            diagonal[i] = Math.abs(a[i][i]);
+        }
+        for (int col = 0; col < n; col++) {
+            var pivot = col;
+            for (int row = col + 1; row < n; row++) {
+                if (Math.abs(a[row][col]) > Math.abs(a[pivot][col])) {
+                    pivot = row;
+                }
+            }
+            if (Math.abs(a[pivot][col]) <= 1e-9 * diagonal[col]) {
+                return null;
+            }
+            var tmp = a[col];
+            a[col] = a[pivot];
+            a[pivot] = tmp;
+            for (int row = col + 1; row < n; row++) {
+                var factor = a[row][col] / a[col][col];
+                for (int k = col; k <= n; k++) {
+                    a[row][k] -= factor * a[col][k];
+                }
+            }
+        }
+        var x = new double[n];
+        for (int row = n - 1; row >= 0; row--) {
+            var sum = a[row][n];
+            for (int k = row + 1; k < n; k++) {
+                sum -= a[row][k] * x[k];
+            }
+            x[row] = sum / a[row][row];
+        }
+        return x;
+    }
+}
@@ -28,4 +28,36 @@ public interface UtilityServices {
     PathIteratorZipperBuilder createPathIteratorZipperBuilder();
 
     PathIteratorZipperBuilder createPathIteratorZipperBuilder(Map<String, String> renameMap);
+
+    /**
+     * Creates a builder for a zipper that computes the checksums of the files while zipping them, with the limits for the next upload batch filled in.
+     *
+     * @param renameMap map from local file path to the path in the dataset
+     * @return the builder
+     */
+    ChecksummingZipper.ChecksummingZipperBuilder createChecksummingZipperBuilder(Map<String, String> renameMap);
+
+    /**
+     * Returns whether the file is large enough to be uploaded on its own, streamed directly from the bag, instead of being copied into a zip file first. Zip
+     * files are never uploaded directly, because Dataverse would unpack them.
+     *
+     * @param file the file to upload
+     * @return true if the file should be uploaded without zipping
+     * @throws IOException if the size of the file cannot be determined
+     */
+    boolean isUploadWithoutZipping(Path file) throws IOException;
+
+    /**
+     * Records the outcome of an upload, so that the size of the next upload batches can be adapted to it.
+     *
+     * @param files          the number of files in the batch
+     * @param bytes          the size of the uploaded zip file
+     * @param durationMillis the duration of the upload call
+     */
+    void recordUploadBatch(int files, long bytes, long durationMillis);
+
+    /**
+     * Records a failed upload, so that the next upload batches can be made smaller.
+     */
+    void recordUploadFailure();
 }
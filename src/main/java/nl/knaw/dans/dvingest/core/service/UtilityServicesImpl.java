@@ -22,6 +22,7 @@ import nl.knaw.dans.lib.util.PathIteratorZipper.PathIteratorZipperBuilder;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.Locale;
 import java.util.Map;
 
 @Builder
@@ -29,6 +30,10 @@ public class UtilityServicesImpl implements UtilityServices {
     private final Path tempDir;
     private final int maxNumberOfFilesPerUpload;
     private final long maxUploadSize;
+    // Files of this size or larger are uploaded without zipping; 0 means that all files are zipped
+    private final long directUploadThreshold;
+    // If null, the maximum number of files and bytes are used for every upload batch
+    private final UploadBatchPlanner uploadBatchPlanner;
 
     @Override
     public Path createTempZipFile() throws IOException {
@@ -47,9 +52,50 @@ public class UtilityServicesImpl implements UtilityServices {
 
     @Override
     public PathIteratorZipperBuilder createPathIteratorZipperBuilder(Map<String, String> renameMap) {
+        if (uploadBatchPlanner != null) {
+            return PathIteratorZipper.builder()
+                .renameMap(renameMap)
+                .maxNumberOfFiles(uploadBatchPlanner.getPlannedNumberOfFiles())
+                .maxNumberOfBytes(uploadBatchPlanner.getPlannedNumberOfBytes());
+        }
         return PathIteratorZipper.builder()
             .renameMap(renameMap)
             .maxNumberOfFiles(maxNumberOfFilesPerUpload)
             .maxNumberOfBytes(maxUploadSize);
     }
+
+    @Override
+    public ChecksummingZipper.ChecksummingZipperBuilder createChecksummingZipperBuilder(Map<String, String> renameMap) {
+        if (uploadBatchPlanner != null) {
+            return ChecksummingZipper.builder()
+                .renameMap(renameMap)
+                .maxNumberOfFiles(uploadBatchPlanner.getPlannedNumberOfFiles())
+                .maxNumberOfBytes(uploadBatchPlanner.getPlannedNumberOfBytes());
+        }
+        return ChecksummingZipper.builder()
+            .renameMap(renameMap)
+            .maxNumberOfFiles(maxNumberOfFilesPerUpload)
+            .maxNumberOfBytes(maxUploadSize);
+    }
+
+    @Override
+    public boolean isUploadWithoutZipping(Path file) throws IOException {
+        return directUploadThreshold > 0
+            && !file.getFileName().toString().toLowerCase(Locale.ROOT).endsWith(".zip")
+            && Files.size(file) >= directUploadThreshold;
+    }
+
+    @Override
+    public void recordUploadBatch(int files, long bytes, long durationMillis) {
+        if (uploadBatchPlanner != null) {
+            uploadBatchPlanner.recordUpload(files, bytes, durationMillis);
+        }
+    }
+
+    @Override
+    public void recordUploadFailure() {
+        if (uploadBatchPlanner != null) {
+            uploadBatchPlanner.recordFailure();
+        }
+    }
 }
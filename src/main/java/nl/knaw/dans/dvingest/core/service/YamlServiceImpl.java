@@ -28,6 +28,7 @@ import lombok.extern.slf4j.Slf4j;
 import nl.knaw.dans.dvingest.core.yaml.EditFilesRoot;
 import nl.knaw.dans.dvingest.core.yaml.EditMetadataRoot;
 import nl.knaw.dans.dvingest.core.yaml.EditPermissionsRoot;
+import nl.knaw.dans.dvingest.core.yaml.Init;
 import nl.knaw.dans.dvingest.core.yaml.UpdateState;
 import nl.knaw.dans.lib.dataverse.MetadataFieldDeserializer;
 import nl.knaw.dans.lib.dataverse.model.dataset.Dataset;
@@ -44,6 +45,8 @@ import java.util.Map;
 public class YamlServiceImpl implements YamlService {
     private final ObjectMapper mapper = new ObjectMapper(new YAMLFactory());
     private final Map<Class<?>, YamlConfigurationFactory<?>> yamlConfigurationFactories = new HashMap<>();
+    // edit-files.yml can be very large, so it is read and written element by element
+    private final EditFilesYamlCodec editFilesYamlCodec;
 
     /**
      * Mixin to ignore fields in FileMeta that are not needed in the YAML files. Note, that  we are not ignoring the "restrict" field. In theory, we could accidentally expose restricted files if we
@@ -69,8 +72,9 @@ public class YamlServiceImpl implements YamlService {
             mapper.configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, true);
             mapper.addMixIn(FileMeta.class, FileMetaMixin.class);
             mapper.registerModule(module);
+            yamlConfigurationFactories.put(Init.class, new YamlConfigurationFactory<>(Init.class, factory.getValidator(), mapper, "dw"));
             yamlConfigurationFactories.put(Dataset.class, new YamlConfigurationFactory<>(Dataset.class, factory.getValidator(), mapper, "dw"));
-            yamlConfigurationFactories.put(EditFilesRoot.class, new YamlConfigurationFactory<>(EditFilesRoot.class, factory.getValidator(), mapper, "dw"));
+            editFilesYamlCodec = new EditFilesYamlCodec(mapper, factory.getValidator());
             yamlConfigurationFactories.put(EditMetadataRoot.class, new YamlConfigurationFactory<>(EditMetadataRoot.class, factory.getValidator(), mapper, "dw"));
             yamlConfigurationFactories.put(EditPermissionsRoot.class, new YamlConfigurationFactory<>(EditPermissionsRoot.class, factory.getValidator(), mapper, "dw"));
             yamlConfigurationFactories.put(UpdateState.class, new YamlConfigurationFactory<>(UpdateState.class, factory.getValidator(), mapper, "dw"));
@@ -85,6 +89,9 @@ public class YamlServiceImpl implements YamlService {
     @SuppressWarnings("unchecked")
     @Override
     public <T> T readYaml(Path yamlFile, Class<T> target) throws IOException, ConfigurationException {
+        if (target == EditFilesRoot.class) {
+            return (T) editFilesYamlCodec.read(yamlFile);
+        }
         YamlConfigurationFactory<T> factory = (YamlConfigurationFactory<T>) yamlConfigurationFactories.get(target);
         if (factory == null) {
             throw new IllegalArgumentException("No factory found for class: " + target.getName());
@@ -94,6 +101,10 @@ public class YamlServiceImpl implements YamlService {
 
     @Override
     public void writeYaml(Object object, Path yamlFile) throws IOException {
+        if (object instanceof EditFilesRoot editFilesRoot) {
+            editFilesYamlCodec.write(editFilesRoot, yamlFile);
+            return;
+        }
         mapper.writeValue(yamlFile.toFile(), object);
     }
 }
@@ -21,4 +21,6 @@ import lombok.Data;
 public class UpdateState {
     // TODO: convert to enum
     private String action;
+    // Only for action 'release-migrated': the original publication date (yyyy-MM-dd)
+    private String releaseDate;
 }
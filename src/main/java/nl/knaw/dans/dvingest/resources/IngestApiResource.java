@@ -21,6 +21,10 @@ import nl.knaw.dans.dvingest.core.IngestArea;
 
 import javax.ws.rs.core.Response;
 
+/**
+ * Implementation of the ingest API. The status is returned as {@link nl.knaw.dans.dvingest.core.ImportJobProgress}, which extends the status of the API
+ * definition with counters and an estimate of the time of completion.
+ */
 @AllArgsConstructor
 public class IngestApiResource implements IngestApi {
     private final IngestArea ingestArea;
@@ -28,18 +32,18 @@ public class IngestApiResource implements IngestApi {
 
     @Override
     public Response ingestGet(String path) {
-        return Response.ok(ingestArea.getStatus(path)).build();
+        return Response.ok(ingestArea.getProgress(path)).build();
     }
 
     @Override
     public Response ingestPost(ImportCommandDto importCommandDto) {
         if (importCommandDto.getMigration()) {
             migrationArea.submit(importCommandDto);
-            return Response.ok(migrationArea.getStatus(importCommandDto.getPath()).get(0)).build();
+            return Response.ok(migrationArea.getProgress(importCommandDto.getPath()).get(0)).build();
         }
         else {
             ingestArea.submit(importCommandDto);
-            return Response.ok(ingestArea.getStatus(importCommandDto.getPath()).get(0)).build();
+            return Response.ok(ingestArea.getProgress(importCommandDto.getPath()).get(0)).build();
         }
     }
 }
@@ -0,0 +1,170 @@
+/*
+ * Copyright (C) 2024 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.dvingest.resources;
+
+import io.dropwizard.util.Duration;
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+import nl.knaw.dans.dvingest.api.ImportJobStatusDto.StatusEnum;
+import nl.knaw.dans.dvingest.core.ImportJobProgress;
+import nl.knaw.dans.dvingest.core.IngestArea;
+
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.sse.Sse;
+import javax.ws.rs.sse.SseEventSink;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Collectors;
+
+/**
+ * Streams the progress of the import jobs as server-sent events, so that clients do not have to poll <code>GET /ingest</code>. A new subscriber first receives
+ * the progress of all jobs; after that, only the progress of jobs that changed since the previous check is sent. The optional query parameter <code>path</code>
+ * restricts the events to one job.
+ */
+@Slf4j
+@Path("/ingest/events")
+public class IngestEventsResource {
+    private static final String EVENT_NAME = "progress";
+
+    private final List<IngestArea> ingestAreas;
+    private final List<Subscriber> subscribers = new CopyOnWriteArrayList<>();
+    // Held while sending, so that a new subscriber cannot receive its snapshot after a newer change event
+    private final Lock sendLock = new ReentrantLock();
+    // Progress of the running jobs as last sent; guarded by sendLock
+    private final Map<String, ImportJobProgress> lastSent = new HashMap<>();
+    // Paths of the finished jobs of which the final progress was sent; guarded by sendLock
+    private final Set<String> finishedSent = new HashSet<>();
+
+    private Sse sse;
+
+    @Value
+    private static class Subscriber {
+        String path;
+        SseEventSink sink;
+
+        void send(Sse sse, ImportJobProgress progress) {
+            if (path == null || path.equals(progress.getPath())) {
+                sink.send(sse.newEventBuilder()
+                        .name(EVENT_NAME)
+                        .mediaType(MediaType.APPLICATION_JSON_TYPE)
+                        .data(ImportJobProgress.class, progress)
+                        .build())
+                    .whenComplete((result, e) -> {
+                        if (e != null) {
+                            log.debug("Failed to send progress event; closing event sink", e);
+                            sink.close();
+                        }
+                    });
+            }
+        }
+    }
+
+    public IngestEventsResource(List<IngestArea> ingestAreas, ScheduledExecutorService scheduler, Duration interval) {
+        this.ingestAreas = ingestAreas;
+        scheduler.scheduleWithFixedDelay(this::sendChangedProgress, interval.toMilliseconds(), interval.toMilliseconds(), TimeUnit.MILLISECONDS);
+    }
+
+    @Context
+    public void setSse(Sse sse) {
+        this.sse = sse;
+    }
+
+    @GET
+    @Produces(MediaType.SERVER_SENT_EVENTS)
+    public void subscribe(@QueryParam("path") String path, @Context SseEventSink sink) {
+        var subscriber = new Subscriber(path, sink);
+        sendLock.lock();
+        try {
+            // Registering first ensures that no change after the snapshot is missed
+            subscribers.add(subscriber);
+            getAllProgress().forEach(progress -> subscriber.send(sse, progress));
+        }
+        finally {
+            sendLock.unlock();
+        }
+    }
+
+    private List<ImportJobProgress> getAllProgress() {
+        return ingestAreas.stream()
+            .flatMap(area -> area.getProgress(null).stream())
+            .toList();
+    }
+
+    private void sendChangedProgress() {
+        sendLock.lock();
+        // An exception would cancel the scheduled task, so catch everything
+        try {
+            subscribers.removeIf(subscriber -> subscriber.getSink().isClosed());
+            var changed = getChangedProgress();
+            if (changed.isEmpty() || subscribers.isEmpty()) {
+                return;
+            }
+            for (var subscriber : subscribers) {
+                changed.forEach(progress -> subscriber.send(sse, progress));
+            }
+        }
+        catch (Exception e) {
+            log.warn("Failed to send progress events", e);
+        }
+        finally {
+            sendLock.unlock();
+        }
+    }
+
+    private List<ImportJobProgress> getChangedProgress() {
+        var allProgress = getAllProgress();
+        var paths = allProgress.stream().map(ImportJobProgress::getPath).collect(Collectors.toSet());
+        lastSent.keySet().retainAll(paths);
+        finishedSent.retainAll(paths);
+        var changed = new ArrayList<ImportJobProgress>();
+        for (var progress : allProgress) {
+            var path = progress.getPath();
+            if (isFinished(progress)) {
+                // The progress of a finished job does not change anymore, so it is sent once and then no longer tracked
+                var previous = lastSent.remove(path);
+                if (finishedSent.add(path) && !progress.equals(previous)) {
+                    changed.add(progress);
+                }
+            }
+            else {
+                // Forgets an earlier run if the job was resubmitted
+                finishedSent.remove(path);
+                if (!progress.equals(lastSent.put(path, progress))) {
+                    changed.add(progress);
+                }
+            }
+        }
+        return changed;
+    }
+
+    private static boolean isFinished(ImportJobProgress progress) {
+        return progress.getStatus() == StatusEnum.DONE || progress.getStatus() == StatusEnum.FAILED;
+    }
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright (C) 2024 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.dvingest.cli;
+
+import com.codahale.metrics.MetricRegistry;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.dropwizard.core.setup.Environment;
+import io.dropwizard.lifecycle.Managed;
+import io.dropwizard.lifecycle.setup.LifecycleEnvironment;
+import net.sourceforge.argparse4j.inf.Namespace;
+import nl.knaw.dans.dvingest.DdDataverseIngestApplication;
+import nl.knaw.dans.dvingest.api.ImportCommandDto;
+import nl.knaw.dans.dvingest.api.ImportJobStatusDto;
+import nl.knaw.dans.dvingest.api.ImportJobStatusDto.StatusEnum;
+import nl.knaw.dans.dvingest.config.DdDataverseIngestConfiguration;
+import nl.knaw.dans.dvingest.config.IngestAreaConfig;
+import nl.knaw.dans.dvingest.config.IngestConfig;
+import nl.knaw.dans.dvingest.core.IngestArea;
+import nl.knaw.dans.dvingest.core.TestDirFixture;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import java.nio.file.Files;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+
+public class BenchCommandTest extends TestDirFixture {
+    private final DdDataverseIngestApplication application = Mockito.mock(DdDataverseIngestApplication.class);
+    private final IngestArea importArea = Mockito.mock(IngestArea.class);
+    private final Managed managed = Mockito.mock(Managed.class);
+    private final Environment environment = Mockito.mock(Environment.class);
+    private DdDataverseIngestConfiguration configuration;
+    private Namespace namespace;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        super.setUp();
+        var areaConfig = new IngestAreaConfig();
+        areaConfig.setInbox(Files.createDirectories(testDir.resolve("inbox")));
+        areaConfig.setOutbox(Files.createDirectories(testDir.resolve("outbox")));
+        var ingestConfig = new IngestConfig();
+        ingestConfig.setImportConfig(areaConfig);
+        configuration = new DdDataverseIngestConfiguration();
+        configuration.setIngest(ingestConfig);
+        var batch = Files.createDirectories(testDir.resolve("inbox/batch"));
+        namespace = new Namespace(Map.of("area", "import", "batch", batch.toFile(), "generate", false));
+
+        Mockito.reset(application, importArea, managed, environment);
+        var lifecycle = new LifecycleEnvironment(new MetricRegistry());
+        lifecycle.manage(managed);
+        Mockito.when(environment.lifecycle()).thenReturn(lifecycle);
+        Mockito.when(environment.getObjectMapper()).thenReturn(new ObjectMapper());
+        Mockito.when(application.getIngestArea("import")).thenReturn(importArea);
+    }
+
+    @Test
+    public void managed_objects_are_started_before_the_batch_and_stopped_after_it() throws Exception {
+        // Given
+        Mockito.when(importArea.getStatus(anyString())).thenReturn(List.of(new ImportJobStatusDto().status(StatusEnum.DONE)));
+        var command = new BenchCommand(application);
+        command.setPollIntervalMillis(0);
+
+        // When
+        command.run(environment, namespace, configuration);
+
+        // Then
+        var inOrder = Mockito.inOrder(managed, importArea);
+        inOrder.verify(managed).start();
+        inOrder.verify(importArea).submit(any(ImportCommandDto.class));
+        inOrder.verify(importArea).getStatus(anyString());
+        inOrder.verify(managed).stop();
+    }
+
+    @Test
+    public void managed_objects_are_stopped_if_the_batch_cannot_be_submitted() throws Exception {
+        // Given
+        Mockito.doThrow(new IllegalArgumentException("already running")).when(importArea).submit(any(ImportCommandDto.class));
+        var command = new BenchCommand(application);
+
+        // When / Then
+        assertThatThrownBy(() -> command.run(environment, namespace, configuration))
+            .isInstanceOf(IllegalArgumentException.class);
+        var inOrder = Mockito.inOrder(managed);
+        inOrder.verify(managed).start();
+        inOrder.verify(managed).stop();
+    }
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright (C) 2024 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.dvingest.core;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.regex.Pattern;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Flags the {@code synchronized} methods and blocks in the main code. A virtual thread that blocks inside a {@code synchronized} section pins its carrier
+ * thread, so that the section effectively runs on a platform thread again. The sections below have been reviewed: they are short and do not wait for the
+ * network. A new section, or one more in a file, makes this test fail; check whether it blocks, and if so, use a {@link java.util.concurrent.locks.Lock} instead
+ * before adding it here.
+ */
+public class CarrierThreadPinningTest {
+    private static final Path MAIN_SOURCES = Path.of("src/main/java/nl/knaw/dans/dvingest");
+    private static final Pattern SYNCHRONIZED = Pattern.compile("\\bsynchronized\\b");
+    // Only runs when the bench command is started with the fake Dataverse; its monitors guard its in-memory model, which stands in for the network
+    private static final String FAKE_DATAVERSE = "core/fakedataverse/";
+
+    // Number of synchronized sections per source file, relative to MAIN_SOURCES
+    private static final Map<String, Integer> REVIEWED = Map.of(
+        // Finish times of the deposits in a job, in memory
+        "core/ImportJob.java", 2,
+        // In-memory evaluation of an XPath expression, which is not thread-safe. Runs for every field of dataset.xml in the DANS conversion, so it pins often
+        // but briefly
+        "core/dansbag/xml/XPathEvaluator.java", 1,
+        // In-memory bookkeeping of the reports
+        "core/report/DepositReport.java", 2,
+        "core/report/ImportJobSummary.java", 5,
+        // Appends a line to a buffered writer; only used when the Dataverse traffic is recorded
+        "core/service/RecordingDataverseService.java", 2,
+        // Takes the next recorded call from memory; only used when a traffic log is replayed
+        "core/service/ReplayDataverseService.java", 2,
+        // In-memory model of the upload durations
+        "core/service/UploadBatchPlanner.java", 2
+    );
+
+    @Test
+    public void only_reviewed_synchronized_sections_exist() throws Exception {
+        // Given
+        var found = new TreeMap<String, Integer>();
+        try (var files = Files.walk(MAIN_SOURCES)) {
+            for (var file : files.filter(f -> f.toString().endsWith(".java")).toList()) {
+                var relativePath = MAIN_SOURCES.relativize(file).toString().replace('\\', '/');
+                if (relativePath.startsWith(FAKE_DATAVERSE)) {
+                    continue;
+                }
+                var count = countSynchronized(file);
+                if (count > 0) {
+                    found.put(relativePath, count);
+                }
+            }
+        }
+
+        // Then
+        assertThat(found).isEqualTo(new TreeMap<>(REVIEWED));
+    }
+
+    private int countSynchronized(Path file) throws Exception {
+        var count = 0;
+        for (var line : Files.readAllLines(file)) {
+            var trimmed = line.trim();
+            if (trimmed.startsWith("*") || trimmed.startsWith("/*") || trimmed.startsWith("//")) {
+                continue;
+            }
+            var matcher = SYNCHRONIZED.matcher(line);
+            while (matcher.find()) {
+                count++;
+            }
+        }
+        return count;
+    }
+}
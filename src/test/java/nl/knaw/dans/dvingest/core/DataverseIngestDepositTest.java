@@ -16,16 +16,22 @@
 package nl.knaw.dans.dvingest.core;
 
 import nl.knaw.dans.dvingest.core.service.YamlService;
+import nl.knaw.dans.dvingest.core.yaml.UpdateState;
 import org.junit.jupiter.api.Test;
 import org.mockito.Mockito;
 
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.Properties;
 import java.util.TreeSet;
 import java.util.UUID;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatIllegalStateException;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
 
 public class DataverseIngestDepositTest extends TestDirFixture {
     private final YamlService yamlServiceMock = Mockito.mock(YamlService.class);
@@ -99,4 +105,67 @@ public class DataverseIngestDepositTest extends TestDirFixture {
         // Then
         assertThat(deposits).containsExactly(deposit1, deposit2, deposit3);
     }
+
+    @Test
+    public void getBags_should_list_bags_once_and_parse_yaml_once() throws Exception {
+        // Given
+        var depositDir = createDepositWithBag();
+        Files.writeString(depositDir.resolve("bag").resolve("update-state.yml"), "action: publish-major\n");
+        var updateState = new UpdateState();
+        updateState.setAction("publish-major");
+        when(yamlServiceMock.readYaml(any(), any())).thenReturn(updateState);
+        var deposit = new DataverseIngestDeposit(depositDir, yamlServiceMock);
+
+        // When
+        var firstState = deposit.getBags().get(0).getUpdateState();
+        var secondState = deposit.getBags().get(0).getUpdateState();
+
+        // Then
+        assertThat(deposit.getBags()).isSameAs(deposit.getBags());
+        assertThat(secondState).isSameAs(firstState);
+        verify(yamlServiceMock, times(1)).readYaml(depositDir.resolve("bag").resolve("update-state.yml"), UpdateState.class);
+    }
+
+    @Test
+    public void getBags_should_return_null_for_missing_yaml_without_reading() throws Exception {
+        // Given
+        var depositDir = createDepositWithBag();
+        var deposit = new DataverseIngestDeposit(depositDir, yamlServiceMock);
+
+        // When
+        var bag = deposit.getBags().get(0);
+
+        // Then
+        assertThat(bag.getEditFiles()).isNull();
+        assertThat(bag.getEditFiles()).isNull();
+        verify(yamlServiceMock, times(0)).readYaml(any(), any());
+    }
+
+    @Test
+    public void getBags_should_list_bags_again_after_move() throws Exception {
+        // Given
+        var depositDir = createDepositWithBag();
+        var deposit = new DataverseIngestDeposit(depositDir, yamlServiceMock);
+        var bagBeforeMove = deposit.getBags().get(0);
+        var outbox = Files.createDirectories(testDir.resolve("outbox"));
+
+        // When
+        deposit.moveTo(outbox);
+
+        // Then
+        assertThat(deposit.getBags().get(0).getLocation()).isEqualTo(outbox.resolve(depositDir.getFileName()).resolve("bag"));
+        assertThat(bagBeforeMove.getLocation()).isEqualTo(depositDir.resolve("bag"));
+    }
+
+    private Path createDepositWithBag() throws Exception {
+        var depositDir = testDir.resolve(UUID.randomUUID().toString());
+        Files.createDirectories(depositDir.resolve("bag"));
+        Files.writeString(depositDir.resolve("bag").resolve("bagit.txt"), "BagIt-Version: 1.0\nTag-File-Character-Encoding: UTF-8\n");
+        var props = new Properties();
+        props.setProperty("creation.timestamp", "2023-01-01T10:00:00Z");
+        try (var writer = Files.newBufferedWriter(depositDir.resolve("deposit.properties"))) {
+            props.store(writer, "");
+        }
+        return depositDir;
+    }
 }
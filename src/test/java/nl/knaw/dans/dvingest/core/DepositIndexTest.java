@@ -0,0 +1,93 @@
+/*
+ * Copyright (C) 2024 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.dvingest.core;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class DepositIndexTest extends TestDirFixture {
+
+    private void createDeposit(String name, String creationTimestamp) throws Exception {
+        var depositDir = testDir.resolve(name);
+        Files.createDirectories(depositDir);
+        var props = new Properties();
+        props.setProperty("creation.timestamp", creationTimestamp);
+        try (var writer = Files.newBufferedWriter(depositDir.resolve("deposit.properties"))) {
+            props.store(writer, "");
+        }
+    }
+
+    private List<String> claimAll(DepositIndex index) {
+        var names = new ArrayList<String>();
+        Path path;
+        while ((path = index.claimNext()) != null) {
+            names.add(path.getFileName().toString());
+        }
+        return names;
+    }
+
+    @Test
+    public void forBatch_should_order_deposits_by_creation_timestamp() throws Exception {
+        // Given
+        createDeposit("a", "2023-01-01T12:00:00Z");
+        createDeposit("b", "2023-01-01T10:00:00Z");
+        createDeposit("c", "2023-01-01T13:00:00+02:00"); // 11:00Z
+
+        // When
+        var index = DepositIndex.forBatch(testDir);
+
+        // Then
+        assertThat(index.size()).isEqualTo(3);
+        assertThat(claimAll(index)).containsExactly("b", "c", "a");
+        assertThat(index.getUnclaimedCount()).isZero();
+    }
+
+    @Test
+    public void forBatch_should_keep_deposits_with_the_same_creation_timestamp() throws Exception {
+        // Given
+        createDeposit("b", "2023-01-01T10:00:00Z");
+        createDeposit("a", "2023-01-01T10:00:00Z");
+
+        // When
+        var index = DepositIndex.forBatch(testDir);
+
+        // Then
+        assertThat(claimAll(index)).containsExactly("a", "b");
+    }
+
+    @Test
+    public void forBatch_should_read_manifest_instead_of_deposit_properties() throws Exception {
+        // Given
+        Files.writeString(testDir.resolve(DepositIndex.MANIFEST_FILENAME), """
+            # deposit,creation.timestamp
+            x,2023-01-01T12:00:00Z
+            y,2023-01-01T10:00:00Z
+            """);
+
+        // When
+        var index = DepositIndex.forBatch(testDir);
+
+        // Then
+        assertThat(claimAll(index)).containsExactly("y", "x");
+    }
+}
@@ -0,0 +1,158 @@
+/*
+ * Copyright (C) 2024 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.dvingest.core;
+
+import com.codahale.metrics.MetricRegistry;
+import nl.knaw.dans.dvingest.DansDepositSupportDisabledFactory;
+import nl.knaw.dans.dvingest.core.bagprocessor.BagProcessor;
+import nl.knaw.dans.dvingest.core.bagprocessor.BagProcessorFactory;
+import nl.knaw.dans.dvingest.core.dansbag.DansDepositSupportFactory;
+import nl.knaw.dans.dvingest.core.lease.Lease;
+import nl.knaw.dans.dvingest.core.metrics.IngestMetrics;
+import nl.knaw.dans.dvingest.core.report.DepositReport;
+import nl.knaw.dans.dvingest.core.service.YamlServiceImpl;
+import nl.knaw.dans.lib.dataverse.DataverseException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Properties;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class DepositTaskTest extends TestDirFixture {
+    private final MetricRegistry registry = new MetricRegistry();
+    private final IngestMetrics metrics = new IngestMetrics(registry);
+    private final BagProcessorFactory bagProcessorFactory = mock(BagProcessorFactory.class);
+    private final BagProcessor bagProcessor = mock(BagProcessor.class);
+    private Path outbox;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        super.setUp();
+        outbox = testDir.resolve("outbox");
+        Files.createDirectories(outbox.resolve("processed"));
+        Files.createDirectories(outbox.resolve("failed"));
+        Files.createDirectories(outbox.resolve("rejected"));
+        when(bagProcessorFactory.createBagProcessor(any(), any(), any(), anyBoolean())).thenReturn(bagProcessor);
+    }
+
+    private DepositTask createTask() throws Exception {
+        var depositDir = testDir.resolve("inbox").resolve(UUID.randomUUID().toString());
+        Files.createDirectories(depositDir.resolve("bag"));
+        Files.writeString(depositDir.resolve("bag/bagit.txt"), "BagIt-Version: 1.0\nTag-File-Character-Encoding: UTF-8\n");
+        var props = new Properties();
+        props.setProperty("creation.timestamp", "2023-01-01T10:00:00Z");
+        try (var writer = Files.newBufferedWriter(depositDir.resolve("deposit.properties"))) {
+            props.store(writer, "");
+        }
+        var deposit = new DataverseIngestDeposit(depositDir, new YamlServiceImpl());
+        return new DepositTask(deposit, outbox, false, bagProcessorFactory, new DansDepositSupportDisabledFactory(), metrics, "import", false);
+    }
+
+    @Test
+    public void successful_deposit_is_counted_as_success() throws Exception {
+        // Given
+        when(bagProcessor.run(any(), any())).thenReturn("doi:10.5072/FK2/ABCDEF");
+        var task = createTask();
+
+        // When
+        task.run();
+
+        // Then
+        assertThat(task.getStatus()).isEqualTo(DepositTask.Status.SUCCESS);
+        assertThat(registry.counter("dvingest.import.deposits.success").getCount()).isEqualTo(1);
+        assertThat(registry.counter("dvingest.import.deposits.failed").getCount()).isEqualTo(0);
+        assertThat(registry.meter("dvingest.import.deposits").getCount()).isEqualTo(1);
+        assertThat(registry.getGauges().get("dvingest.import.active-workers").getValue()).isEqualTo(0);
+    }
+
+    @Test
+    public void failed_deposit_is_counted_as_failed() throws Exception {
+        // Given
+        when(bagProcessor.run(any(), any())).thenThrow(DataverseException.class);
+        var task = createTask();
+
+        // When
+        task.run();
+
+        // Then
+        assertThat(task.getStatus()).isEqualTo(DepositTask.Status.FAILED);
+        assertThat(registry.counter("dvingest.import.deposits.failed").getCount()).isEqualTo(1);
+        assertThat(registry.counter("dvingest.import.deposits.success").getCount()).isEqualTo(0);
+        assertThat(registry.meter("dvingest.import.deposits").getCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void deposit_fails_when_lease_is_lost_before_next_stage() throws Exception {
+        // Given
+        var lease = mock(Lease.class);
+        when(lease.isLost()).thenReturn(false, true);
+        var stagesRun = new AtomicInteger();
+        when(bagProcessor.run(any(), any())).thenAnswer(invocation -> {
+            Runnable beforeEachStage = invocation.getArgument(1);
+            beforeEachStage.run();
+            stagesRun.incrementAndGet();
+            beforeEachStage.run();
+            stagesRun.incrementAndGet();
+            return "doi:10.5072/FK2/ABCDEF";
+        });
+        var task = createTask();
+        task.setLease(lease);
+
+        // When
+        task.run();
+
+        // Then
+        assertThat(stagesRun).hasValue(1);
+        assertThat(task.getStatus()).isEqualTo(DepositTask.Status.FAILED);
+        try (var failed = Files.list(outbox.resolve("failed"))) {
+            assertThat(failed).hasSize(1);
+        }
+    }
+
+    @Test
+    public void converted_deposit_is_counted_and_gets_timing_report() throws Exception {
+        // Given
+        var depositDir = testDir.resolve("inbox").resolve(UUID.randomUUID().toString());
+        Files.createDirectories(depositDir);
+        var convertedDeposit = mock(Deposit.class);
+        when(convertedDeposit.getId()).thenReturn(UUID.randomUUID());
+        when(convertedDeposit.getLocation()).thenReturn(depositDir);
+        when(convertedDeposit.convertDansDepositIfNeeded()).thenReturn(true);
+        var dansDepositSupportFactory = mock(DansDepositSupportFactory.class);
+        when(dansDepositSupportFactory.addDansDepositSupportIfEnabled(any(), anyBoolean())).thenReturn(convertedDeposit);
+        var dataverseIngestDeposit = mock(DataverseIngestDeposit.class);
+        when(dataverseIngestDeposit.getId()).thenReturn(UUID.randomUUID());
+        var task = new DepositTask(dataverseIngestDeposit, outbox, true, bagProcessorFactory, dansDepositSupportFactory, metrics, "import", false);
+
+        // When
+        task.run();
+
+        // Then
+        assertThat(task.getStatus()).isEqualTo(DepositTask.Status.CONVERTED);
+        assertThat(registry.counter("dvingest.import.deposits.converted").getCount()).isEqualTo(1);
+        assertThat(registry.meter("dvingest.import.deposits").getCount()).isEqualTo(1);
+        assertThat(depositDir.resolve(DepositReport.FILENAME)).exists();
+    }
+}
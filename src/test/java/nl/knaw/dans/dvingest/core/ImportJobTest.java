@@ -0,0 +1,394 @@
+/*
+ * Copyright (C) 2024 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.dvingest.core;
+
+import nl.knaw.dans.dvingest.api.ImportCommandDto;
+import nl.knaw.dans.dvingest.api.ImportJobStatusDto.StatusEnum;
+import nl.knaw.dans.dvingest.core.lease.Lease;
+import nl.knaw.dans.dvingest.core.lease.LeaseManager;
+import nl.knaw.dans.dvingest.core.lease.LeaseManagerDisabled;
+import nl.knaw.dans.dvingest.core.report.DepositReport;
+import nl.knaw.dans.dvingest.core.service.DepositSlot;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Optional;
+import java.util.Properties;
+import java.util.Queue;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class ImportJobTest extends TestDirFixture {
+    private final DataverseIngestDepositFactory depositFactory = mock(DataverseIngestDepositFactory.class);
+    private final DepositTaskFactory depositTaskFactory = mock(DepositTaskFactory.class);
+    private final List<ImportJobProgress> progressDuringTasks = Collections.synchronizedList(new ArrayList<>());
+    private final List<String> processedDatasets = Collections.synchronizedList(new ArrayList<>());
+    private Path batch;
+    private Path outbox;
+    private ImportJob job;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        super.setUp();
+        batch = testDir.resolve("batch");
+        outbox = testDir.resolve("outbox");
+        when(depositFactory.createDataverseIngestDeposit(any())).thenAnswer(invocation -> {
+            Path location = invocation.getArgument(0);
+            var deposit = mock(DataverseIngestDeposit.class);
+            when(deposit.getId()).thenReturn(UUID.randomUUID());
+            // Deposits named <dataset>-<version> are for the same dataset
+            when(deposit.getDatasetKey()).thenReturn(location.getFileName().toString().split("-")[0]);
+            when(deposit.getLocation()).thenReturn(location);
+            return deposit;
+        });
+        job = new ImportJob(new ImportCommandDto().path(batch.toString()).singleObject(false).onlyConvertDansBag(false), outbox, false, depositFactory,
+            depositTaskFactory);
+    }
+
+    private void createDeposit(String name, String creationTimestamp) throws Exception {
+        var depositDir = batch.resolve(name);
+        Files.createDirectories(depositDir);
+        var props = new Properties();
+        props.setProperty("creation.timestamp", creationTimestamp);
+        try (var writer = Files.newBufferedWriter(depositDir.resolve("deposit.properties"))) {
+            props.store(writer, "");
+        }
+    }
+
+    private void taskOutcomes(DepositTask.Status... outcomes) {
+        Queue<DepositTask.Status> remaining = new LinkedList<>(List.of(outcomes));
+        when(depositTaskFactory.createDepositTask(any(), any(), anyBoolean())).thenAnswer(invocation -> {
+            DataverseIngestDeposit deposit = invocation.getArgument(0);
+            processedDatasets.add(deposit.getLocation().getFileName().toString());
+            var task = mock(DepositTask.class);
+            var outcome = remaining.remove();
+            when(task.getReport()).thenReturn(new DepositReport(UUID.randomUUID(), "import"));
+            when(task.getStatus()).thenReturn(DepositTask.Status.TODO);
+            doAnswer(run -> {
+                progressDuringTasks.add(job.getProgress());
+                when(task.getStatus()).thenReturn(outcome);
+                return null;
+            }).when(task).run();
+            return task;
+        });
+    }
+
+    @Test
+    public void progress_should_count_deposits_per_outcome() throws Exception {
+        // Given
+        createDeposit("a", "2023-01-01T10:00:00Z");
+        createDeposit("b", "2023-01-01T11:00:00Z");
+        createDeposit("c", "2023-01-01T12:00:00Z");
+        createDeposit("d", "2023-01-01T13:00:00Z");
+        taskOutcomes(DepositTask.Status.SUCCESS, DepositTask.Status.REJECTED, DepositTask.Status.FAILED, DepositTask.Status.SUCCESS);
+
+        // When
+        job.run();
+
+        // Then
+        var progress = job.getProgress();
+        assertThat(progress.getStatus()).isEqualTo(StatusEnum.DONE);
+        assertThat(progress.getTotal()).isEqualTo(4);
+        assertThat(progress.getPending()).isZero();
+        assertThat(progress.getProcessed()).isEqualTo(2);
+        assertThat(progress.getRejected()).isEqualTo(1);
+        assertThat(progress.getFailed()).isEqualTo(1);
+        assertThat(progress.getSkipped()).isZero();
+        assertThat(progress.getDone()).isEqualTo(4);
+        assertThat(progress.getCurrentDeposit()).isNull();
+    }
+
+    @Test
+    public void progress_should_show_pending_and_current_deposit_while_running() throws Exception {
+        // Given
+        createDeposit("a", "2023-01-01T10:00:00Z");
+        createDeposit("b", "2023-01-01T11:00:00Z");
+        createDeposit("c", "2023-01-01T12:00:00Z");
+        taskOutcomes(DepositTask.Status.SUCCESS, DepositTask.Status.SUCCESS, DepositTask.Status.SUCCESS);
+
+        // When
+        job.run();
+
+        // Then
+        assertThat(progressDuringTasks).extracting(ImportJobProgress::getPending).containsExactly(2, 1, 0);
+        assertThat(progressDuringTasks).extracting(ImportJobProgress::getProcessed).containsExactly(0, 1, 2);
+        assertThat(progressDuringTasks).extracting(ImportJobProgress::getStatus).containsOnly(StatusEnum.RUNNING);
+        assertThat(progressDuringTasks).allSatisfy(progress -> assertThat(progress.getCurrentDeposit()).isNotNull());
+    }
+
+    @Test
+    public void current_deposit_should_be_cleared_when_task_throws() throws Exception {
+        // Given
+        createDeposit("a", "2023-01-01T10:00:00Z");
+        var task = mock(DepositTask.class);
+        when(task.getReport()).thenReturn(new DepositReport(UUID.randomUUID(), "import"));
+        doThrow(new IllegalStateException("Unexpected")).when(task).run();
+        when(depositTaskFactory.createDepositTask(any(), any(), anyBoolean())).thenReturn(task);
+
+        // When
+        job.run();
+
+        // Then
+        var progress = job.getProgress();
+        assertThat(progress.getStatus()).isEqualTo(StatusEnum.FAILED);
+        assertThat(progress.getCurrentDeposit()).isNull();
+    }
+
+    @Test
+    public void estimated_completion_should_be_absent_until_a_deposit_has_finished() throws Exception {
+        // Given
+        createDeposit("a", "2023-01-01T10:00:00Z");
+        createDeposit("b", "2023-01-01T11:00:00Z");
+        taskOutcomes(DepositTask.Status.SUCCESS, DepositTask.Status.SUCCESS);
+
+        // When
+        job.run();
+
+        // Then
+        var first = progressDuringTasks.get(0);
+        assertThat(first.getEstimatedCompletion()).isNull();
+        assertThat(first.getDepositsPerMinute()).isZero();
+        var second = progressDuringTasks.get(1);
+        assertThat(second.getEstimatedCompletion()).isNotNull();
+        assertThat(second.getDepositsPerMinute()).isPositive();
+    }
+
+    @Test
+    public void estimated_completion_should_not_be_before_last_finished_deposit() throws Exception {
+        // Given
+        createDeposit("a", "2023-01-01T10:00:00Z");
+        createDeposit("b", "2023-01-01T11:00:00Z");
+        createDeposit("c", "2023-01-01T12:00:00Z");
+        taskOutcomes(DepositTask.Status.SUCCESS, DepositTask.Status.SUCCESS, DepositTask.Status.SUCCESS);
+        var start = Instant.now().minusMillis(1);
+
+        // When
+        job.run();
+
+        // Then
+        var whileRunning = Instant.parse(progressDuringTasks.get(2).getEstimatedCompletion());
+        assertThat(whileRunning).isAfter(start);
+        var afterwards = Instant.parse(job.getProgress().getEstimatedCompletion());
+        assertThat(afterwards).isBeforeOrEqualTo(Instant.now());
+        assertThat(afterwards).isAfterOrEqualTo(start);
+    }
+
+    private ImportJob createJobWithLeases(LeaseManager leaseManager) {
+        var jobWithLeases = new ImportJob(new ImportCommandDto().path(batch.toString()).singleObject(false).onlyConvertDansBag(false), outbox, false,
+            depositFactory, depositTaskFactory, leaseManager);
+        jobWithLeases.setLeasePollIntervalMillis(1);
+        return jobWithLeases;
+    }
+
+    @Test
+    public void deposits_for_leased_dataset_are_deferred_until_lease_is_acquired() throws Exception {
+        // Given
+        createDeposit("x-1", "2023-01-01T10:00:00Z");
+        createDeposit("y-1", "2023-01-01T11:00:00Z");
+        createDeposit("x-2", "2023-01-01T12:00:00Z");
+        createDeposit("z-1", "2023-01-01T13:00:00Z");
+        taskOutcomes(DepositTask.Status.SUCCESS, DepositTask.Status.SUCCESS, DepositTask.Status.SUCCESS, DepositTask.Status.SUCCESS);
+        var leaseManager = mock(LeaseManager.class);
+        var lease = mock(Lease.class);
+        when(leaseManager.tryAcquire(anyString())).thenReturn(Optional.of(lease));
+        // Held by another job for the first two attempts
+        when(leaseManager.tryAcquire("x")).thenReturn(Optional.empty(), Optional.empty(), Optional.of(lease));
+        job = createJobWithLeases(leaseManager);
+
+        // When
+        job.run();
+
+        // Then
+        assertThat(processedDatasets).containsExactly("y-1", "z-1", "x-1", "x-2");
+        var progress = job.getProgress();
+        assertThat(progress.getStatus()).isEqualTo(StatusEnum.DONE);
+        assertThat(progress.getProcessed()).isEqualTo(4);
+        assertThat(progress.getPending()).isZero();
+        assertThat(progress.getSkipped()).isZero();
+    }
+
+    @Test
+    public void deferred_deposits_are_counted_as_pending() throws Exception {
+        // Given
+        createDeposit("x-1", "2023-01-01T10:00:00Z");
+        createDeposit("y-1", "2023-01-01T11:00:00Z");
+        taskOutcomes(DepositTask.Status.SUCCESS, DepositTask.Status.SUCCESS);
+        var leaseManager = mock(LeaseManager.class);
+        var lease = mock(Lease.class);
+        when(leaseManager.tryAcquire("x")).thenReturn(Optional.empty(), Optional.of(lease));
+        when(leaseManager.tryAcquire("y")).thenReturn(Optional.of(lease));
+        job = createJobWithLeases(leaseManager);
+
+        // When
+        job.run();
+
+        // Then
+        assertThat(processedDatasets).containsExactly("y-1", "x-1");
+        // While y-1 is processed, x-1 waits for its lease
+        assertThat(progressDuringTasks.get(0).getPending()).isEqualTo(1);
+        assertThat(progressDuringTasks.get(1).getPending()).isZero();
+    }
+
+    @Test
+    public void deferred_deposit_processed_by_other_instance_is_skipped() throws Exception {
+        // Given
+        createDeposit("x-1", "2023-01-01T10:00:00Z");
+        createDeposit("y-1", "2023-01-01T11:00:00Z");
+        taskOutcomes(DepositTask.Status.SUCCESS);
+        var leaseManager = mock(LeaseManager.class);
+        var lease = mock(Lease.class);
+        when(leaseManager.isShared()).thenReturn(true);
+        when(leaseManager.getInstanceId()).thenReturn("instance-1");
+        when(leaseManager.tryAcquire("x")).thenAnswer(invocation -> {
+            // The other instance moves the deposit to the outbox while holding the lease
+            var depositDir = batch.resolve("x-1");
+            if (Files.exists(depositDir)) {
+                Files.move(depositDir, testDir.resolve("x-1"));
+            }
+            return Optional.empty();
+        });
+        when(leaseManager.tryAcquire("y")).thenReturn(Optional.of(lease));
+        job = createJobWithLeases(leaseManager);
+
+        // When
+        job.run();
+
+        // Then
+        assertThat(processedDatasets).containsExactly("y-1");
+        var progress = job.getProgress();
+        assertThat(progress.getStatus()).isEqualTo(StatusEnum.DONE);
+        assertThat(progress.getProcessed()).isEqualTo(1);
+        assertThat(progress.getSkipped()).isEqualTo(1);
+        assertThat(progress.getPending()).isZero();
+    }
+
+    @Test
+    public void deposits_for_different_datasets_are_processed_concurrently_and_in_order_per_dataset() throws Exception {
+        // Given
+        createDeposit("x-1", "2023-01-01T10:00:00Z");
+        createDeposit("x-2", "2023-01-01T11:00:00Z");
+        createDeposit("y-1", "2023-01-01T12:00:00Z");
+        var y1Started = new CountDownLatch(1);
+        var finished = Collections.synchronizedList(new ArrayList<String>());
+        when(depositTaskFactory.createDepositTask(any(), any(), anyBoolean())).thenAnswer(invocation -> {
+            DataverseIngestDeposit deposit = invocation.getArgument(0);
+            var name = deposit.getLocation().getFileName().toString();
+            var task = mock(DepositTask.class);
+            when(task.getReport()).thenReturn(new DepositReport(UUID.randomUUID(), "import"));
+            when(task.getStatus()).thenReturn(DepositTask.Status.SUCCESS);
+            doAnswer(run -> {
+                if (name.equals("y-1")) {
+                    progressDuringTasks.add(job.getProgress());
+                    y1Started.countDown();
+                }
+                // x-1 can only finish while y-1 is running, or has run
+                if (name.equals("x-1") && !y1Started.await(10, TimeUnit.SECONDS)) {
+                    throw new IllegalStateException("y-1 was not started while x-1 was running");
+                }
+                finished.add(name);
+                return null;
+            }).when(task).run();
+            return task;
+        });
+        var executor = Executors.newCachedThreadPool();
+        job = new ImportJob(new ImportCommandDto().path(batch.toString()).singleObject(false).onlyConvertDansBag(false), outbox, false, depositFactory,
+            depositTaskFactory, new LeaseManagerDisabled(), executor, 2);
+
+        // When
+        try {
+            job.run();
+        }
+        finally {
+            executor.shutdownNow();
+        }
+
+        // Then
+        var progress = job.getProgress();
+        assertThat(progress.getStatus()).isEqualTo(StatusEnum.DONE);
+        assertThat(progress.getProcessed()).isEqualTo(3);
+        assertThat(progress.getRunning()).isZero();
+        assertThat(finished).containsExactlyInAnyOrder("x-1", "x-2", "y-1");
+        assertThat(finished).containsSubsequence("x-1", "x-2");
+        // x-1 was still running, and x-2 was waiting for it
+        assertThat(progressDuringTasks.get(0).getRunning()).isEqualTo(2);
+        assertThat(progressDuringTasks.get(0).getPending()).isEqualTo(1);
+    }
+
+    @Test
+    public void deposit_waiting_for_lock_lets_deposit_for_other_dataset_proceed() throws Exception {
+        // Given
+        createDeposit("x-1", "2023-01-01T10:00:00Z");
+        createDeposit("y-1", "2023-01-01T11:00:00Z");
+        var y1Finished = new CountDownLatch(1);
+        var finished = Collections.synchronizedList(new ArrayList<String>());
+        when(depositTaskFactory.createDepositTask(any(), any(), anyBoolean())).thenAnswer(invocation -> {
+            DataverseIngestDeposit deposit = invocation.getArgument(0);
+            var name = deposit.getLocation().getFileName().toString();
+            var task = mock(DepositTask.class);
+            when(task.getReport()).thenReturn(new DepositReport(UUID.randomUUID(), "import"));
+            when(task.getStatus()).thenReturn(DepositTask.Status.SUCCESS);
+            doAnswer(run -> {
+                if (name.equals("x-1")) {
+                    // Like LockAwareDataverseService while the dataset is locked
+                    try (var ignored = DepositSlot.giveUp()) {
+                        if (!y1Finished.await(10, TimeUnit.SECONDS)) {
+                            throw new IllegalStateException("y-1 was not processed while x-1 was waiting");
+                        }
+                    }
+                }
+                finished.add(name);
+                if (name.equals("y-1")) {
+                    y1Finished.countDown();
+                }
+                return null;
+            }).when(task).run();
+            return task;
+        });
+        var executor = Executors.newCachedThreadPool();
+        job = new ImportJob(new ImportCommandDto().path(batch.toString()).singleObject(false).onlyConvertDansBag(false), outbox, false, depositFactory,
+            depositTaskFactory, new LeaseManagerDisabled(), executor, 1);
+
+        // When
+        try {
+            job.run();
+        }
+        finally {
+            executor.shutdownNow();
+        }
+
+        // Then
+        assertThat(job.getProgress().getStatus()).isEqualTo(StatusEnum.DONE);
+        assertThat(finished).containsExactly("y-1", "x-1");
+    }
+}
@@ -0,0 +1,148 @@
+/*
+ * Copyright (C) 2024 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.dvingest.core.bagprocessor;
+
+import com.codahale.metrics.MetricRegistry;
+import nl.knaw.dans.dvingest.core.DataverseIngestBag;
+import nl.knaw.dans.dvingest.core.TestDirFixture;
+import nl.knaw.dans.dvingest.core.metrics.IngestMetrics;
+import nl.knaw.dans.dvingest.core.service.FakeDataverseService;
+import nl.knaw.dans.dvingest.core.service.UtilityServicesImpl;
+import nl.knaw.dans.dvingest.core.service.YamlServiceImpl;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Checks that creating a dataset with the native import API results in the same dataset as the default path of create, update metadata, upload and publish,
+ * and that both paths report the time spent in each stage.
+ */
+public class BagProcessorNativeImportTest extends TestDirFixture {
+    private static final String DATASET_YML = """
+        datasetVersion:
+          license:
+            name: "CC0 1.0"
+            uri: "http://creativecommons.org/publicdomain/zero/1.0"
+          fileAccessRequest: true
+          metadataBlocks:
+            citation:
+              displayName: "Citation Metadata"
+              name: "citation"
+              fields:
+                - typeName: "title"
+                  multiple: false
+                  typeClass: "primitive"
+                  value: "My dataset"
+        """;
+
+    private static final String EDIT_FILES_YML = """
+        editFiles:
+          addUnrestrictedFiles:
+            - "file1.txt"
+            - "sub/file2.txt"
+          addRestrictedFiles:
+            - "sub/restricted.txt"
+        """;
+
+    private final YamlServiceImpl yamlService = new YamlServiceImpl();
+
+    private DataverseIngestBag createBag(String name, String updateStateYml, String initYml) throws Exception {
+        var bagDir = testDir.resolve(name);
+        Files.createDirectories(bagDir.resolve("data/sub"));
+        Files.writeString(bagDir.resolve("bagit.txt"), "BagIt-Version: 1.0\nTag-File-Character-Encoding: UTF-8\n");
+        Files.writeString(bagDir.resolve("data/file1.txt"), "file1");
+        Files.writeString(bagDir.resolve("data/sub/file2.txt"), "file2");
+        Files.writeString(bagDir.resolve("data/sub/restricted.txt"), "restricted");
+        Files.writeString(bagDir.resolve("dataset.yml"), DATASET_YML);
+        Files.writeString(bagDir.resolve("edit-files.yml"), EDIT_FILES_YML);
+        Files.writeString(bagDir.resolve("update-state.yml"), updateStateYml);
+        if (initYml != null) {
+            Files.writeString(bagDir.resolve("init.yml"), initYml);
+        }
+        return new DataverseIngestBag(bagDir, yamlService);
+    }
+
+    private String process(DataverseIngestBag bag, FakeDataverseService dataverseService, Path tempDir) throws Exception {
+        return process(bag, dataverseService, tempDir, IngestMetrics.unregistered());
+    }
+
+    private String process(DataverseIngestBag bag, FakeDataverseService dataverseService, Path tempDir, IngestMetrics metrics) throws Exception {
+        Files.createDirectories(tempDir);
+        return BagProcessor.builder()
+            .depositId(UUID.randomUUID())
+            .bag(bag)
+            .dataverseService(dataverseService)
+            .utilityServices(UtilityServicesImpl.builder()
+                .tempDir(tempDir)
+                .maxNumberOfFilesPerUpload(1000)
+                .maxUploadSize(1024 * 1024)
+                .build())
+            .metrics(metrics)
+            .build()
+            .run(null);
+    }
+
+    @Test
+    public void native_import_results_in_same_dataset_as_create_and_publish() throws Exception {
+        // Given
+        var defaultPathService = new FakeDataverseService();
+        var nativeImportService = new FakeDataverseService();
+        var defaultBag = createBag("default", "action: 'publish-major'\n", null);
+        var importBag = createBag("import", "action: 'release-migrated'\nreleaseDate: '2015-03-01'\n", "importPid: 'doi:10.5072/FK2/ABCDEF'\n");
+
+        // When
+        var defaultPid = process(defaultBag, defaultPathService, testDir.resolve("tmp-default"));
+        var importPid = process(importBag, nativeImportService, testDir.resolve("tmp-import"));
+
+        // Then
+        assertThat(importPid).isEqualTo("doi:10.5072/FK2/ABCDEF");
+        var expected = defaultPathService.getDataset(defaultPid);
+        var actual = nativeImportService.getDataset(importPid);
+        assertThat(actual.getMetadata()).isEqualTo(expected.getMetadata());
+        assertThat(actual.getFiles())
+            .extracting(f -> f.getDirectoryLabel() + "/" + f.getLabel() + ":" + f.getRestricted())
+            .containsExactlyInAnyOrderElementsOf(expected.getFiles().stream()
+                .map(f -> f.getDirectoryLabel() + "/" + f.getLabel() + ":" + f.getRestricted())
+                .toList())
+            .hasSize(3);
+        assertThat(actual.getState()).isEqualTo(expected.getState()).isEqualTo("RELEASED");
+        assertThat(actual.getReleaseDate()).isEqualTo("2015-03-01");
+        assertThat(nativeImportService.getCalls()).hasSizeLessThan(defaultPathService.getCalls().size());
+        assertThat(nativeImportService.getCalls()).doesNotContain("createDataset", "updateMetadata", "publishDataset", "waitForState");
+    }
+
+    @Test
+    public void every_stage_is_timed_for_both_paths() throws Exception {
+        // Given
+        var registry = new MetricRegistry();
+        var metrics = new IngestMetrics(registry);
+        var defaultBag = createBag("default", "action: 'publish-major'\n", null);
+        var importBag = createBag("import", "action: 'release-migrated'\nreleaseDate: '2015-03-01'\n", "importPid: 'doi:10.5072/FK2/ABCDEF'\n");
+
+        // When
+        process(defaultBag, new FakeDataverseService(), testDir.resolve("tmp-default"), metrics);
+        process(importBag, new FakeDataverseService(), testDir.resolve("tmp-import"), metrics);
+
+        // Then
+        for (var stage : new String[] { "create", "files", "metadata", "permissions", "state" }) {
+            assertThat(registry.timer("dvingest.bagprocessor." + stage).getCount()).as(stage).isEqualTo(2);
+        }
+    }
+}
@@ -0,0 +1,196 @@
+/*
+ * Copyright (C) 2024 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.dvingest.core.bagprocessor;
+
+import nl.knaw.dans.dvingest.core.service.DataverseService;
+import nl.knaw.dans.lib.dataverse.model.dataset.DatasetVersion;
+import nl.knaw.dans.lib.dataverse.model.file.FileMeta;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class DatasetFileIndexCacheTest {
+    private final DataverseService dataverseServiceMock = Mockito.mock(DataverseService.class);
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        Mockito.reset(dataverseServiceMock);
+        givenVersionState("doi:1", "RELEASED");
+        givenVersionState("doi:2", "RELEASED");
+    }
+
+    private void givenVersionState(String pid, String state) throws Exception {
+        var version = new DatasetVersion();
+        version.setVersionState(state);
+        Mockito.when(dataverseServiceMock.getLatestVersionWithoutFiles(pid)).thenReturn(version);
+    }
+
+    private FileIndex fileIndex(String... paths) {
+        var fileIndex = new FileIndex();
+        for (var path : paths) {
+            var dataversePath = new DataversePath(path);
+            var fileMeta = new FileMeta();
+            fileMeta.setLabel(dataversePath.getLabel());
+            fileMeta.setDirectoryLabel(dataversePath.getDirectoryLabel());
+            fileIndex.put(path, fileMeta);
+        }
+        return fileIndex;
+    }
+
+    @Test
+    public void take_returns_index_if_dataset_has_not_changed() throws Exception {
+        // Given
+        var cache = new DatasetFileIndexCache(dataverseServiceMock, 2);
+        var fileIndex = fileIndex("file1.txt", "dir/file2.txt");
+        cache.put("doi:1", fileIndex);
+
+        // When
+        var result = cache.take("doi:1");
+
+        // Then
+        assertThat(result).containsSame(fileIndex);
+    }
+
+    @Test
+    public void take_removes_index_from_cache() throws Exception {
+        // Given
+        var cache = new DatasetFileIndexCache(dataverseServiceMock, 2);
+        cache.put("doi:1", fileIndex("file1.txt"));
+        cache.take("doi:1");
+
+        // When
+        var result = cache.take("doi:1");
+
+        // Then
+        assertThat(result).isEmpty();
+    }
+
+    @Test
+    public void take_returns_empty_if_dataset_has_changed() throws Exception {
+        // Given
+        var cache = new DatasetFileIndexCache(dataverseServiceMock, 2);
+        cache.put("doi:1", fileIndex("file1.txt"));
+        givenVersionState("doi:1", "DRAFT");
+
+        // When
+        var result = cache.take("doi:1");
+
+        // Then
+        assertThat(result).isEmpty();
+    }
+
+    @Test
+    public void peek_keeps_index_in_cache() throws Exception {
+        // Given
+        var cache = new DatasetFileIndexCache(dataverseServiceMock, 2);
+        var fileIndex = fileIndex("file1.txt", "dir/file2.txt");
+        cache.put("doi:1", fileIndex);
+
+        // When
+        var result = cache.peek("doi:1");
+
+        // Then
+        assertThat(result).isPresent();
+        assertThat(result.get()).containsOnlyKeys("file1.txt", "dir/file2.txt");
+        assertThat(cache.take("doi:1")).containsSame(fileIndex);
+    }
+
+    @Test
+    public void least_recently_used_index_is_evicted_when_cache_is_full() throws Exception {
+        // Given
+        var cache = new DatasetFileIndexCache(dataverseServiceMock, 1);
+        cache.put("doi:1", fileIndex("file1.txt"));
+
+        // When
+        cache.put("doi:2", fileIndex("file2.txt"));
+
+        // Then
+        assertThat(cache.take("doi:1")).isEmpty();
+        assertThat(cache.take("doi:2")).isPresent();
+    }
+
+    @Test
+    public void constructor_throws_exception_if_size_is_less_than_one() {
+        assertThatThrownBy(() -> new DatasetFileIndexCache(dataverseServiceMock, 0))
+            .isInstanceOf(IllegalArgumentException.class)
+            .hasMessage("maxNumberOfDatasets must be at least 1");
+    }
+
+    @Test
+    public void dataset_is_validated_once_per_deposit() throws Exception {
+        // Given
+        var cache = new DatasetFileIndexCache(dataverseServiceMock, 2);
+        cache.put("doi:1", fileIndex("file1.txt"));
+        Mockito.clearInvocations(dataverseServiceMock);
+
+        // When
+        try (var ignored = new FileIndexValidations().bind()) {
+            assertThat(cache.peek("doi:1")).isPresent();
+            assertThat(cache.take("doi:1")).isPresent();
+        }
+
+        // Then
+        Mockito.verify(dataverseServiceMock, Mockito.times(1)).getLatestVersionWithoutFiles("doi:1");
+    }
+
+    @Test
+    public void dataset_is_validated_on_every_use_outside_deposit() throws Exception {
+        // Given
+        var cache = new DatasetFileIndexCache(dataverseServiceMock, 2);
+        cache.put("doi:1", fileIndex("file1.txt"));
+        Mockito.clearInvocations(dataverseServiceMock);
+
+        // When
+        cache.peek("doi:1");
+        cache.take("doi:1");
+
+        // Then
+        Mockito.verify(dataverseServiceMock, Mockito.times(2)).getLatestVersionWithoutFiles("doi:1");
+    }
+
+    @Test
+    public void lock_is_not_held_while_dataset_is_validated() throws Exception {
+        // Given
+        var cache = new DatasetFileIndexCache(dataverseServiceMock, 2);
+        cache.put("doi:1", fileIndex("file1.txt"));
+        cache.put("doi:2", fileIndex("file2.txt"));
+        var version = new DatasetVersion();
+        version.setVersionState("RELEASED");
+        Mockito.when(dataverseServiceMock.getLatestVersionWithoutFiles("doi:1")).thenAnswer(invocation -> {
+            // Another deposit uses the cache while Dataverse answers
+            var otherDeposit = Executors.newSingleThreadExecutor();
+            try {
+                assertThat(otherDeposit.submit(() -> cache.take("doi:2")).get(5, TimeUnit.SECONDS)).isPresent();
+            }
+            finally {
+                otherDeposit.shutdownNow();
+            }
+            return version;
+        });
+
+        // When
+        var result = cache.take("doi:1");
+
+        // Then
+        assertThat(result).isPresent();
+    }
+}
@@ -0,0 +1,120 @@
+/*
+ * Copyright (C) 2024 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.dvingest.core.bagprocessor;
+
+import nl.knaw.dans.lib.dataverse.model.file.Checksum;
+import nl.knaw.dans.lib.dataverse.model.file.DataFile;
+import nl.knaw.dans.lib.dataverse.model.file.FileMeta;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class FileIndexTest {
+
+    private static FileMeta fileMeta(int id) {
+        var checksum = new Checksum();
+        checksum.setType("SHA-1");
+        checksum.setValue("da39a3ee5e6b4b0d3255bfef95601890afd80709");
+        var dataFile = new DataFile();
+        dataFile.setId(id);
+        dataFile.setChecksum(checksum);
+        var fileMeta = new FileMeta();
+        fileMeta.setDataFile(dataFile);
+        return fileMeta;
+    }
+
+    @Test
+    public void get_restores_the_filepath_from_its_segments() {
+        // Given
+        var fileIndex = new FileIndex();
+        fileIndex.put("a/b/c.txt", fileMeta(1));
+        fileIndex.put("c.txt", fileMeta(2));
+        fileIndex.put("b/a/c.txt", fileMeta(3));
+
+        // When
+        var fileMeta = fileIndex.get("b/a/c.txt");
+
+        // Then
+        assertThat(fileMeta).extracting(FileMeta::getDirectoryLabel, FileMeta::getLabel).containsExactly("b/a", "c.txt");
+        assertThat(fileMeta.getDataFile().getId()).isEqualTo(3);
+        assertThat(fileMeta.getDataFile().getChecksum().getValue()).isEqualTo("da39a3ee5e6b4b0d3255bfef95601890afd80709");
+    }
+
+    @Test
+    public void get_returns_null_for_path_made_up_of_known_segments() {
+        // Given
+        var fileIndex = new FileIndex();
+        fileIndex.put("a/b/c.txt", fileMeta(1));
+
+        // When / Then
+        assertThat(fileIndex.get("b/a/c.txt")).isNull();
+        assertThat(fileIndex.get("a/c.txt")).isNull();
+        assertThat(fileIndex.get("a/b")).isNull();
+    }
+
+    @Test
+    public void remove_keeps_the_other_files_findable() {
+        // Given
+        var fileIndex = new FileIndex();
+        fileIndex.put("a/1.txt", fileMeta(1));
+        fileIndex.put("a/2.txt", fileMeta(2));
+        fileIndex.put("a/3.txt", fileMeta(3));
+
+        // When
+        fileIndex.remove("a/1.txt");
+
+        // Then
+        assertThat(fileIndex.size()).isEqualTo(2);
+        assertThat(fileIndex.get("a/1.txt")).isNull();
+        assertThat(fileIndex.get("a/2.txt").getDataFile().getId()).isEqualTo(2);
+        assertThat(fileIndex.get("a/3.txt").getDataFile().getId()).isEqualTo(3);
+    }
+
+    @Test
+    public void put_replaces_the_entry_for_an_existing_filepath() {
+        // Given
+        var fileIndex = new FileIndex();
+        fileIndex.put("a/1.txt", fileMeta(1));
+
+        // When
+        fileIndex.put("a/1.txt", fileMeta(2));
+
+        // Then
+        assertThat(fileIndex.size()).isEqualTo(1);
+        assertThat(fileIndex.get("a/1.txt").getDataFile().getId()).isEqualTo(2);
+    }
+
+    @Test
+    public void asMap_lists_the_filepaths_of_all_files() {
+        // Given
+        var fileIndex = new FileIndex();
+        fileIndex.put("a/1.txt", fileMeta(1));
+        fileIndex.put("a/b/2.txt", fileMeta(2));
+        fileIndex.put("3.txt", fileMeta(3));
+        fileIndex.remove("a/1.txt");
+
+        // When
+        var map = fileIndex.asMap();
+
+        // Then
+        assertThat(map.keySet()).containsExactlyInAnyOrderElementsOf(List.of("a/b/2.txt", "3.txt"));
+        assertThat(map.containsKey("a/b/2.txt")).isTrue();
+        assertThat(map.containsKey("a/1.txt")).isFalse();
+        assertThat(map.get("3.txt").getDataFile().getId()).isEqualTo(3);
+    }
+}
@@ -16,9 +16,15 @@
 package nl.knaw.dans.dvingest.core.bagprocessor;
 
 import nl.knaw.dans.dvingest.core.TestDirFixture;
+import nl.knaw.dans.dvingest.core.metrics.IngestMetrics;
+import nl.knaw.dans.dvingest.core.report.DepositReport;
 import nl.knaw.dans.dvingest.core.service.DataverseService;
+import nl.knaw.dans.dvingest.core.service.FakeDataverseService;
 import nl.knaw.dans.dvingest.core.service.UtilityServices;
+import nl.knaw.dans.dvingest.core.service.UtilityServicesImpl;
 import nl.knaw.dans.dvingest.core.yaml.EditFiles;
+import nl.knaw.dans.dvingest.core.yaml.FromTo;
+import nl.knaw.dans.lib.dataverse.model.dataset.Dataset;
 import nl.knaw.dans.lib.dataverse.model.file.DataFile;
 import nl.knaw.dans.lib.dataverse.model.file.FileMeta;
 import org.junit.jupiter.api.BeforeEach;
@@ -32,6 +38,9 @@ import java.util.UUID;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isA;
 import static org.mockito.Mockito.when;
 
 public class FilesEditorTest extends TestDirFixture {
@@ -69,14 +78,15 @@ public class FilesEditorTest extends TestDirFixture {
                 file("file3", 3)));
         var editFiles = new EditFiles();
         editFiles.setDeleteFiles(List.of("file1", "file3"));
-        var filesEditor = new FilesEditor(UUID.randomUUID(), dataDir, editFiles, dataverseServiceMock, utilityServicesMock);
+        var depositId = UUID.randomUUID();
+        var filesEditor = new FilesEditor(depositId, dataDir, editFiles, dataverseServiceMock, utilityServicesMock, IngestMetrics.unregistered(), new DepositReport(depositId, null), false);
 
         // When
         filesEditor.editFiles("pid");
 
         // Then
-        Mockito.verify(dataverseServiceMock).deleteFile(1);
-        Mockito.verify(dataverseServiceMock).deleteFile(3);
+        Mockito.verify(dataverseServiceMock).deleteFile("pid", 1);
+        Mockito.verify(dataverseServiceMock).deleteFile("pid", 3);
         assertThat(filesEditor.getFilesInDatasetCache().get("file1")).isNull();
     }
 
@@ -89,7 +99,8 @@ public class FilesEditorTest extends TestDirFixture {
                 file("file3", 3)));
         var editFiles = new EditFiles();
         editFiles.setDeleteFiles(List.of("file1", "file4"));
-        var filesEditor = new FilesEditor(UUID.randomUUID(), dataDir, editFiles, dataverseServiceMock, utilityServicesMock);
+        var depositId = UUID.randomUUID();
+        var filesEditor = new FilesEditor(depositId, dataDir, editFiles, dataverseServiceMock, utilityServicesMock, IngestMetrics.unregistered(), new DepositReport(depositId, null), false);
 
         // When
         assertThatThrownBy(() -> filesEditor.editFiles("pid"))
@@ -97,6 +108,216 @@ public class FilesEditorTest extends TestDirFixture {
             .hasMessage("File to delete not found in dataset: file4");
     }
 
+    @Test
+    public void deleteFiles_sends_deletions_one_by_one_in_order() throws Exception {
+        // Given
+        when(dataverseServiceMock.getFiles("pid")).thenReturn(
+            List.of(file("file1", 1),
+                file("file2", 2),
+                file("file3", 3)));
+        var editFiles = new EditFiles();
+        editFiles.setDeleteFiles(List.of("file3", "file1", "file2"));
+        var depositId = UUID.randomUUID();
+        var filesEditor = new FilesEditor(depositId, dataDir, editFiles, dataverseServiceMock, utilityServicesMock, IngestMetrics.unregistered(), new DepositReport(depositId, null), false);
+
+        // When
+        filesEditor.editFiles("pid");
+
+        // Then
+        var inOrder = Mockito.inOrder(dataverseServiceMock);
+        inOrder.verify(dataverseServiceMock).deleteFile("pid", 3);
+        inOrder.verify(dataverseServiceMock).deleteFile("pid", 1);
+        inOrder.verify(dataverseServiceMock).deleteFile("pid", 2);
+    }
+
+    @Test
+    public void deferred_tabular_ingest_uploads_without_tabular_ingest_and_records_tabular_files() throws Exception {
+        // Given
+        var dataverseService = Mockito.spy(new FakeDataverseService());
+        var pid = dataverseService.createDataset(new Dataset());
+        Files.writeString(dataDir.resolve("data.csv"), "a,b\n1,2\n");
+        Files.writeString(dataDir.resolve("spss.SAV"), "not really spss");
+        Files.writeString(dataDir.resolve("readme.txt"), "readme");
+        var editFiles = new EditFiles();
+        editFiles.setAddUnrestrictedFiles(List.of("data.csv", "spss.SAV", "readme.txt"));
+        var tempDir = Files.createDirectories(testDir.resolve("tmp"));
+        var utilityServices = UtilityServicesImpl.builder()
+            .tempDir(tempDir)
+            .maxNumberOfFilesPerUpload(1000)
+            .maxUploadSize(1024 * 1024)
+            .build();
+        var depositId = UUID.randomUUID();
+        var report = new DepositReport(depositId, null);
+        var filesEditor = new FilesEditor(depositId, dataDir, editFiles, dataverseService, utilityServices, IngestMetrics.unregistered(), report, true);
+
+        // When
+        filesEditor.editFiles(pid);
 
+        // Then
+        Mockito.verify(dataverseService).addFile(eq(pid), any(), isA(NoTabularIngestFileMeta.class));
+        var tabularFileIds = dataverseService.getDataset(pid).getFiles().stream()
+            .filter(f -> !f.getLabel().equals("readme.txt"))
+            .map(f -> f.getDataFile().getId())
+            .toList();
+        assertThat(filesEditor.getDeferredTabularIngestFileIds()).containsExactlyInAnyOrderElementsOf(tabularFileIds).hasSize(2);
+        assertThat(report.getDeferredTabularIngestFileIds()).containsExactlyInAnyOrderElementsOf(tabularFileIds);
+    }
+
+    @Test
+    public void large_files_with_metadata_are_uploaded_with_all_their_metadata_instead_of_updated_afterwards() throws Exception {
+        // Given
+        var dataverseService = Mockito.spy(new FakeDataverseService());
+        var pid = dataverseService.createDataset(new Dataset());
+        Files.createDirectories(dataDir.resolve("sub"));
+        Files.writeString(dataDir.resolve("sub/described.dat"), "x".repeat(100));
+        Files.writeString(dataDir.resolve("plain.txt"), "plain");
+        var editFiles = new EditFiles();
+        editFiles.setAddUnrestrictedFiles(List.of("sub/described.dat", "plain.txt"));
+        var described = file("sub/described.dat", 0);
+        described.setDataFile(null);
+        described.setDescription("A description");
+        described.setCategories(List.of("Data"));
+        described.setRestricted(true);
+        editFiles.setUpdateFileMetas(List.of(described));
+        var tempDir = Files.createDirectories(testDir.resolve("tmp"));
+        var utilityServices = UtilityServicesImpl.builder()
+            .tempDir(tempDir)
+            .maxNumberOfFilesPerUpload(1000)
+            .maxUploadSize(1024 * 1024)
+            .directUploadThreshold(50)
+            .build();
+        var depositId = UUID.randomUUID();
+        var filesEditor = new FilesEditor(depositId, dataDir, editFiles, dataverseService, utilityServices, IngestMetrics.unregistered(), new DepositReport(depositId, null),
+            false);
+
+        // When
+        filesEditor.editFiles(pid);
+
+        // Then
+        Mockito.verify(dataverseService, Mockito.never()).updateFileMetadata(any(), Mockito.anyInt(), any());
+        assertThat(dataverseService.getDataset(pid).getFiles())
+            .extracting(f -> f.getDirectoryLabel() + "/" + f.getLabel() + ":" + f.getDescription() + ":" + f.getRestricted())
+            .containsExactlyInAnyOrder("sub/described.dat:A description:true", "null/plain.txt:null:false");
+        assertThat(filesEditor.getFilesInDatasetCache().get("sub/described.dat").getCategories()).containsExactly("Data");
+    }
 
+    @Test
+    public void small_files_with_metadata_are_zipped_and_updated_afterwards() throws Exception {
+        // Given
+        var dataverseService = Mockito.spy(new FakeDataverseService());
+        var pid = dataverseService.createDataset(new Dataset());
+        Files.createDirectories(dataDir.resolve("sub"));
+        Files.writeString(dataDir.resolve("sub/described.txt"), "described");
+        Files.writeString(dataDir.resolve("plain.txt"), "plain");
+        var editFiles = new EditFiles();
+        editFiles.setAddUnrestrictedFiles(List.of("sub/described.txt", "plain.txt"));
+        var described = file("sub/described.txt", 0);
+        described.setDataFile(null);
+        described.setDescription("A description");
+        editFiles.setUpdateFileMetas(List.of(described));
+        var tempDir = Files.createDirectories(testDir.resolve("tmp"));
+        var utilityServices = UtilityServicesImpl.builder()
+            .tempDir(tempDir)
+            .maxNumberOfFilesPerUpload(1000)
+            .maxUploadSize(1024 * 1024)
+            .build();
+        var depositId = UUID.randomUUID();
+        var filesEditor = new FilesEditor(depositId, dataDir, editFiles, dataverseService, utilityServices, IngestMetrics.unregistered(), new DepositReport(depositId, null),
+            false);
+
+        // When
+        filesEditor.editFiles(pid);
+
+        // Then
+        Mockito.verify(dataverseService, Mockito.times(1)).addFile(eq(pid), any(), any());
+        Mockito.verify(dataverseService, Mockito.times(1)).updateFileMetadata(eq(pid), Mockito.anyInt(), any());
+        assertThat(dataverseService.getDataset(pid).getFiles())
+            .extracting(f -> f.getDirectoryLabel() + "/" + f.getLabel() + ":" + f.getDescription())
+            .containsExactlyInAnyOrder("sub/described.txt:A description", "null/plain.txt:null");
+    }
+
+    @Test
+    public void large_files_are_uploaded_without_zipping_keeping_directory_label_restriction_and_auto_rename() throws Exception {
+        // Given
+        var dataverseService = Mockito.spy(new FakeDataverseService());
+        var pid = dataverseService.createDataset(new Dataset());
+        Files.createDirectories(dataDir.resolve("sub"));
+        Files.writeString(dataDir.resolve("sub/big?.dat"), "x".repeat(100));
+        Files.writeString(dataDir.resolve("small.txt"), "small");
+        var editFiles = new EditFiles();
+        editFiles.setAddRestrictedFiles(List.of("sub/big?.dat"));
+        editFiles.setAddUnrestrictedFiles(List.of("small.txt"));
+        editFiles.setAutoRenameFiles(List.of(new FromTo("sub/big?.dat", "sub/big_.dat")));
+        var tempDir = Files.createDirectories(testDir.resolve("tmp"));
+        var utilityServices = UtilityServicesImpl.builder()
+            .tempDir(tempDir)
+            .maxNumberOfFilesPerUpload(1000)
+            .maxUploadSize(1024 * 1024)
+            .directUploadThreshold(50)
+            .build();
+        var depositId = UUID.randomUUID();
+        var filesEditor = new FilesEditor(depositId, dataDir, editFiles, dataverseService, utilityServices, IngestMetrics.unregistered(), new DepositReport(depositId, null),
+            false);
+
+        // When
+        filesEditor.editFiles(pid);
+
+        // Then
+        Mockito.verify(dataverseService).addFile(eq(pid), eq(dataDir.resolve("sub/big?.dat")), any());
+        assertThat(dataverseService.getDataset(pid).getFiles())
+            .extracting(f -> f.getDirectoryLabel() + "/" + f.getLabel() + ":" + f.getRestricted())
+            .containsExactlyInAnyOrder("sub/big_.dat:true", "null/small.txt:false");
+        assertThat(filesEditor.getFilesInDatasetCache().get("sub/big?.dat")).isNotNull();
+    }
+
+    @Test
+    public void upload_fails_if_checksum_reported_by_dataverse_differs_from_checksum_computed_while_zipping() throws Exception {
+        // Given
+        var dataverseService = new FakeDataverseService();
+        dataverseService.setCorruptChecksums(true);
+        var pid = dataverseService.createDataset(new Dataset());
+        Files.writeString(dataDir.resolve("file1.txt"), "file1");
+        var editFiles = new EditFiles();
+        editFiles.setAddUnrestrictedFiles(List.of("file1.txt"));
+        var tempDir = Files.createDirectories(testDir.resolve("tmp"));
+        var utilityServices = UtilityServicesImpl.builder()
+            .tempDir(tempDir)
+            .maxNumberOfFilesPerUpload(1000)
+            .maxUploadSize(1024 * 1024)
+            .build();
+        var depositId = UUID.randomUUID();
+        var filesEditor = new FilesEditor(depositId, dataDir, editFiles, dataverseService, utilityServices, IngestMetrics.unregistered(), new DepositReport(depositId, null),
+            false);
+
+        // When / Then
+        assertThatThrownBy(() -> filesEditor.editFiles(pid))
+            .isInstanceOf(IllegalStateException.class)
+            .hasMessageStartingWith("Checksum mismatch for file1.txt");
+    }
+
+    @Test
+    public void upload_fails_if_checksum_reported_by_dataverse_differs_from_checksum_computed_while_uploading_separately() throws Exception {
+        // Given
+        var dataverseService = new FakeDataverseService();
+        dataverseService.setCorruptChecksums(true);
+        var pid = dataverseService.createDataset(new Dataset());
+        Files.writeString(dataDir.resolve("big.dat"), "x".repeat(100));
+        var editFiles = new EditFiles();
+        editFiles.setAddUnrestrictedFiles(List.of("big.dat"));
+        var tempDir = Files.createDirectories(testDir.resolve("tmp"));
+        var utilityServices = UtilityServicesImpl.builder()
+            .tempDir(tempDir)
+            .maxNumberOfFilesPerUpload(1000)
+            .maxUploadSize(1024 * 1024)
+            .directUploadThreshold(50)
+            .build();
+        var depositId = UUID.randomUUID();
+        var filesEditor = new FilesEditor(depositId, dataDir, editFiles, dataverseService, utilityServices, IngestMetrics.unregistered(), new DepositReport(depositId, null),
+            false);
+
+        // When / Then
+        assertThatThrownBy(() -> filesEditor.editFiles(pid))
+            .isInstanceOf(IllegalStateException.class)
+            .hasMessageStartingWith("Checksum mismatch for big.dat");
+    }
 }
@@ -16,11 +16,14 @@
 package nl.knaw.dans.dvingest.core.bagprocessor;
 
 import nl.knaw.dans.dvingest.core.service.DataverseService;
+import nl.knaw.dans.lib.dataverse.model.file.Checksum;
+import nl.knaw.dans.lib.dataverse.model.file.DataFile;
 import nl.knaw.dans.lib.dataverse.model.file.FileMeta;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.Mockito;
 
+import java.util.List;
 import java.util.Map;
 
 import static org.assertj.core.api.Assertions.assertThat;
@@ -46,7 +49,7 @@ public class FilesInDatasetCacheTest {
         filesInDatasetCache.put(fileMeta);
 
         // Then
-        assertThat(filesInDatasetCache.get("directoryLabel/label")).isEqualTo(fileMeta);
+        assertThat(filesInDatasetCache.get("directoryLabel/label")).extracting(FileMeta::getDirectoryLabel, FileMeta::getLabel).containsExactly("directoryLabel", "label");
     }
 
     @Test
@@ -73,7 +76,7 @@ public class FilesInDatasetCacheTest {
         filesInDatasetCache.put(fileMeta);
 
         // Then
-        assertThat(filesInDatasetCache.get("directoryLabel/label")).isEqualTo(fileMeta);
+        assertThat(filesInDatasetCache.get("directoryLabel/label")).extracting(FileMeta::getDirectoryLabel, FileMeta::getLabel).containsExactly("directoryLabel", "label");
     }
 
     @Test
@@ -105,7 +108,7 @@ public class FilesInDatasetCacheTest {
         filesInDatasetCache.downloadFromDataset("pid");
 
         // Then
-        assertThat(filesInDatasetCache.get("directoryLabel/label")).isEqualTo(fileMeta);
+        assertThat(filesInDatasetCache.get("directoryLabel/label")).extracting(FileMeta::getDirectoryLabel, FileMeta::getLabel).containsExactly("directoryLabel", "label");
     }
 
     @Test
@@ -149,7 +152,75 @@ public class FilesInDatasetCacheTest {
         var result = filesInDatasetCache.get("oldPath/file.txt");
 
         // Then
-        assertThat(result).isEqualTo(fileMeta);
+        assertThat(result).extracting(FileMeta::getDirectoryLabel, FileMeta::getLabel).containsExactly("newPath", "file.txt");
     }
 
-}
\ No newline at end of file
+    @Test
+    public void get_returns_the_fields_needed_for_ingest() {
+        // Given
+        var filesInDatasetCache = new FilesInDatasetCache(dataverseServiceMock, Map.of());
+        var fileMeta = new FileMeta();
+        fileMeta.setLabel("label");
+        fileMeta.setDirectoryLabel("directoryLabel");
+        fileMeta.setRestricted(true);
+        fileMeta.setDescription("description");
+        fileMeta.setCategories(List.of("Data"));
+        var dataFile = new DataFile();
+        dataFile.setId(42);
+        dataFile.setFilesize(1234L);
+        var checksum = new Checksum();
+        checksum.setType("MD5");
+        checksum.setValue("d41d8cd98f00b204e9800998ecf8427e");
+        dataFile.setChecksum(checksum);
+        fileMeta.setDataFile(dataFile);
+
+        // When
+        filesInDatasetCache.put(fileMeta);
+
+        // Then
+        var result = filesInDatasetCache.get("directoryLabel/label");
+        assertThat(result.getRestricted()).isTrue();
+        assertThat(result.getDescription()).isEqualTo("description");
+        assertThat(result.getCategories()).containsExactly("Data");
+        assertThat(result.getDataFile().getId()).isEqualTo(42);
+        assertThat(result.getDataFile().getFilesize()).isEqualTo(1234L);
+        assertThat(result.getDataFile().getChecksum().getType()).isEqualTo("MD5");
+        assertThat(result.getDataFile().getChecksum().getValue()).isEqualTo("d41d8cd98f00b204e9800998ecf8427e");
+    }
+
+    @Test
+    public void changing_a_returned_fileMeta_does_not_change_the_cache() {
+        // Given
+        var filesInDatasetCache = new FilesInDatasetCache(dataverseServiceMock, Map.of());
+        var fileMeta = new FileMeta();
+        fileMeta.setLabel("label");
+        fileMeta.setDirectoryLabel("directoryLabel");
+        filesInDatasetCache.put(fileMeta);
+
+        // When
+        filesInDatasetCache.get("directoryLabel/label").setDescription("changed");
+
+        // Then
+        assertThat(filesInDatasetCache.get("directoryLabel/label").getDescription()).isNull();
+    }
+
+    @Test
+    public void getFilesInDataset_returns_all_files() {
+        // Given
+        var filesInDatasetCache = new FilesInDatasetCache(dataverseServiceMock, Map.of());
+        var fileMeta1 = new FileMeta();
+        fileMeta1.setLabel("file1.txt");
+        var fileMeta2 = new FileMeta();
+        fileMeta2.setLabel("file2.txt");
+        fileMeta2.setDirectoryLabel("dir");
+        filesInDatasetCache.put(fileMeta1);
+        filesInDatasetCache.put(fileMeta2);
+
+        // When
+        var result = filesInDatasetCache.getFilesInDataset();
+
+        // Then
+        assertThat(result).containsOnlyKeys("file1.txt", "dir/file2.txt");
+        assertThat(result.get("dir/file2.txt").getDirectoryLabel()).isEqualTo("dir");
+    }
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright (C) 2024 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.dvingest.core.bagprocessor;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class LongIntMapTest {
+
+    @Test
+    public void get_returns_minus_one_for_missing_key() {
+        // Given
+        var map = new LongIntMap();
+        map.put(1L, 10);
+
+        // When / Then
+        assertThat(map.get(2L)).isEqualTo(-1);
+    }
+
+    @Test
+    public void put_replaces_value_of_existing_key() {
+        // Given
+        var map = new LongIntMap();
+        map.put(1L << 32, 10);
+
+        // When
+        map.put(1L << 32, 20);
+
+        // Then
+        assertThat(map.get(1L << 32)).isEqualTo(20);
+        assertThat(map.size()).isEqualTo(1);
+    }
+
+    @Test
+    public void put_rejects_negative_value() {
+        var map = new LongIntMap();
+
+        assertThatThrownBy(() -> map.put(1L, -1))
+            .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    public void behaves_like_a_map_under_many_puts_and_removes() {
+        // Given
+        var map = new LongIntMap();
+        var expected = new HashMap<Long, Integer>();
+        var random = new Random(42);
+
+        // When
+        for (int i = 0; i < 100_000; i++) {
+            // Keys in both halves of the long, to include keys made up of a directory and a label
+            long key = random.nextInt(2_000) * (random.nextBoolean() ? 1L : 1L << 32);
+            if (random.nextBoolean()) {
+                map.put(key, i);
+                expected.put(key, i);
+            }
+            else {
+                map.remove(key);
+                expected.remove(key);
+            }
+        }
+
+        // Then
+        assertThat(map.size()).isEqualTo(expected.size());
+        for (int i = 0; i < 2_000; i++) {
+            for (long key : new long[] { i, (long) i << 32 }) {
+                assertThat(map.get(key)).isEqualTo(expected.getOrDefault(key, -1));
+            }
+        }
+    }
+}
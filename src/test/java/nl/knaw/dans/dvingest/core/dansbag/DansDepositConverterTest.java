@@ -15,6 +15,7 @@
  */
 package nl.knaw.dans.dvingest.core.dansbag;
 
+import nl.knaw.dans.dvingest.core.DataverseIngestBag;
 import nl.knaw.dans.dvingest.core.service.YamlService;
 import nl.knaw.dans.dvingest.core.service.YamlServiceImpl;
 import nl.knaw.dans.lib.dataverse.model.dataset.Dataset;
@@ -71,4 +72,44 @@ public class DansDepositConverterTest extends DansConversionFixture {
 
     }
 
+    @Test
+    public void convert_hands_metadata_to_bag_without_writing_yaml() throws Exception {
+        // Given
+        var depositDir = createValidDeposit("all-mappings", "00000000-0000-0000-0000-000000000002");
+        Mockito.when(dataverseServiceMock.getUserById(Mockito.anyString())).thenReturn(Optional.of(new AuthenticatedUser()));
+        var deposit = dansBagDepositReader.readDeposit(depositDir);
+        var bag = new DataverseIngestBag(deposit.getBagDir(), yamlService);
+
+        // When
+        var result = new DansDepositConverter(deposit, null, null, mappingService, yamlService).convert();
+        bag.setConvertedYaml(result.init(), result.dataset(), result.editFiles(), result.editPermissions(), result.updateState());
+
+        // Then
+        assertThat(deposit.getBagDir().resolve(DataverseIngestBag.DATASET_YML)).doesNotExist();
+        assertThat(deposit.getBagDir().resolve(DataverseIngestBag.EDIT_FILES_YML)).doesNotExist();
+        assertThat(bag.getDatasetMetadata()).isSameAs(result.dataset());
+        assertThat(bag.getDatasetMetadata().getDatasetVersion().getFiles()).isEmpty();
+        assertThat(bag.getEditFiles()).isSameAs(result.editFiles());
+        assertThat(bag.getEditFiles().getUpdateFileMetas()).allMatch(fileMeta -> fileMeta.getRestricted() == null);
+        assertThat(bag.getUpdateState().getAction()).isEqualTo(result.updateState().getAction());
+    }
+
+    @Test
+    public void writeYaml_writes_converted_metadata_that_reads_back_the_same() throws Exception {
+        // Given
+        var depositDir = createValidDeposit("all-mappings", "00000000-0000-0000-0000-000000000003");
+        Mockito.when(dataverseServiceMock.getUserById(Mockito.anyString())).thenReturn(Optional.of(new AuthenticatedUser()));
+        var deposit = dansBagDepositReader.readDeposit(depositDir);
+        var converter = new DansDepositConverter(deposit, null, null, mappingService, yamlService);
+        var result = converter.convert();
+
+        // When
+        converter.writeYaml(result);
+
+        // Then
+        var bag = new DataverseIngestBag(deposit.getBagDir(), yamlService);
+        assertThat(bag.getEditFiles().getAddRestrictedFiles()).isEqualTo(result.editFiles().getAddRestrictedFiles());
+        assertThat(bag.getEditFiles().getAddUnrestrictedFiles()).isEqualTo(result.editFiles().getAddUnrestrictedFiles());
+        assertThat(bag.getUpdateState().getAction()).isEqualTo(result.updateState().getAction());
+    }
 }
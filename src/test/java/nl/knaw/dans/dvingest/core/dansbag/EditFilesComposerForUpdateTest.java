@@ -17,8 +17,13 @@ package nl.knaw.dans.dvingest.core.dansbag;
 
 import nl.knaw.dans.dvingest.core.dansbag.deposit.FileInfo;
 import nl.knaw.dans.dvingest.core.service.DataverseService;
+import nl.knaw.dans.lib.dataverse.model.file.FileMeta;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.io.FileUtils;
 import org.junit.jupiter.api.Test;
 
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.HashMap;
 import java.util.List;
@@ -183,4 +188,65 @@ public class EditFilesComposerForUpdateTest extends EditFilesComposerFixture {
         assertEmptyFieldsExcept(editFiles);
     }
 
+    @Test
+    public void md5_checksums_in_dataset_are_compared_with_md5_payload_manifest() throws Exception {
+        // Given
+        when(dataverseServiceMock.getFiles(anyString())).thenReturn(List.of(
+            md5FileMeta("file1.txt", "md5-unchanged", 5),
+            md5FileMeta("file2.txt", "md5-old", 5)));
+        Map<Path, FileInfo> map = new HashMap<>();
+        add(map, file("file1.txt", "sha1-unchanged"));
+        add(map, file("file2.txt", "sha1-new"));
+        var md5Manifest = Map.of(
+            Path.of("file1.txt"), "md5-unchanged",
+            Path.of("file2.txt"), "md5-new");
+
+        editFilesComposer = new EditFilesComposerForUpdate(map, inThePast, "doi:some", null, List.of(), dataverseServiceMock,
+            algorithm -> "MD5".equals(algorithm) ? md5Manifest::get : null);
+
+        // When
+        var editFiles = editFilesComposer.composeEditFiles();
+
+        // Then
+        assertThat(editFiles.getReplaceFiles()).containsExactly("file2.txt");
+        assertEmptyFieldsExcept(editFiles, "replaceFiles");
+    }
+
+    @Test
+    public void md5_checksums_are_computed_if_deposit_has_no_md5_payload_manifest() throws Exception {
+        // Given
+        var testDir = Path.of("target/test/" + getClass().getSimpleName());
+        FileUtils.deleteDirectory(testDir.toFile());
+        Files.createDirectories(testDir);
+        var unchanged = Files.writeString(testDir.resolve("file1.txt"), "unchanged content", StandardCharsets.UTF_8);
+        var moved = Files.writeString(testDir.resolve("file3.txt"), "moved content", StandardCharsets.UTF_8);
+        when(dataverseServiceMock.getFiles(anyString())).thenReturn(List.of(
+            md5FileMeta("file1.txt", DigestUtils.md5Hex("unchanged content"), Files.size(unchanged)),
+            md5FileMeta("path/to/file2.txt", DigestUtils.md5Hex("moved content"), Files.size(moved))));
+        Map<Path, FileInfo> map = new HashMap<>();
+        map.put(Path.of("file1.txt"), onDisk(file("file1.txt", "sha1-1"), unchanged));
+        map.put(Path.of("file3.txt"), onDisk(file("file3.txt", "sha1-3"), moved));
+
+        editFilesComposer = new EditFilesComposerForUpdate(map, inThePast, "doi:some", null, List.of(), dataverseServiceMock);
+
+        // When
+        var editFiles = editFilesComposer.composeEditFiles();
+
+        // Then
+        assertThat(editFiles.getMoveFiles()).hasSize(1);
+        assertThat(editFiles.getMoveFiles().get(0).getFrom()).isEqualTo("path/to/file2.txt");
+        assertThat(editFiles.getMoveFiles().get(0).getTo()).isEqualTo("file3.txt");
+        assertEmptyFieldsExcept(editFiles, "moveFiles");
+    }
+
+    private FileMeta md5FileMeta(String path, String checksum, long size) {
+        var fileMeta = fileMeta(path, checksum);
+        fileMeta.getDataFile().getChecksum().setType("MD5");
+        fileMeta.getDataFile().setFilesize(size);
+        return fileMeta;
+    }
+
+    private FileInfo onDisk(FileInfo fileInfo, Path file) {
+        return new FileInfo(file, fileInfo.getChecksum(), fileInfo.isSanitized(), fileInfo.getMetadata());
+    }
 }
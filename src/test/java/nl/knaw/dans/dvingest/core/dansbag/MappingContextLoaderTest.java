@@ -0,0 +1,79 @@
+/*
+ * Copyright (C) 2024 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.dvingest.core.dansbag;
+
+import nl.knaw.dans.dvingest.core.service.DataverseService;
+import nl.knaw.dans.lib.dataverse.DataverseException;
+import nl.knaw.dans.lib.dataverse.model.dataset.License;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import java.net.URI;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.when;
+
+public class MappingContextLoaderTest {
+    private final DataverseService dataverseServiceMock = Mockito.mock(DataverseService.class);
+    private final Path mappingDefsDir = Path.of("src/main/assembly/dist/cfg");
+
+    @BeforeEach
+    public void setUp() {
+        Mockito.reset(dataverseServiceMock);
+    }
+
+    @Test
+    public void load_reads_all_mapping_files_and_calls_dataverse_once() throws Exception {
+        // Given
+        var license = new License();
+        license.setUri(URI.create("http://opensource.org/licenses/MIT"));
+        when(dataverseServiceMock.getActiveMetadataBlockNames()).thenReturn(Set.of("citation"));
+        when(dataverseServiceMock.getSupportedLicenses()).thenReturn(List.of(license));
+
+        // When
+        var context = new MappingContextLoader(mappingDefsDir, dataverseServiceMock).load();
+
+        // Then
+        assertThat(context.getIso1ToDataverseLanguage()).isNotEmpty();
+        assertThat(context.getIso2ToDataverseLanguage()).isNotEmpty();
+        assertThat(context.getAbrReportCodeToTerm()).isNotEmpty();
+        assertThat(context.getAbrAcquisitionMethodCodeToTerm()).isNotEmpty();
+        assertThat(context.getAbrComplexCodeToTerm()).isNotEmpty();
+        assertThat(context.getAbrArtifactCodeToTerm()).isNotEmpty();
+        assertThat(context.getAbrPeriodCodeToTerm()).isNotEmpty();
+        assertThat(context.getSpatialCoverageCountryTerms()).isNotEmpty();
+        assertThat(context.getActiveMetadataBlocks()).containsExactly("citation");
+        assertThat(context.getSupportedLicenses()).containsExactly(license);
+        Mockito.verify(dataverseServiceMock, Mockito.times(1)).getActiveMetadataBlockNames();
+        Mockito.verify(dataverseServiceMock, Mockito.times(1)).getSupportedLicenses();
+    }
+
+    @Test
+    public void load_rethrows_DataverseException() throws Exception {
+        // Given
+        when(dataverseServiceMock.getActiveMetadataBlockNames()).thenReturn(Set.of("citation"));
+        when(dataverseServiceMock.getSupportedLicenses()).thenThrow(DataverseException.class);
+
+        // When / Then
+        assertThatThrownBy(() -> new MappingContextLoader(mappingDefsDir, dataverseServiceMock).load())
+            .isInstanceOf(DataverseException.class);
+    }
+}
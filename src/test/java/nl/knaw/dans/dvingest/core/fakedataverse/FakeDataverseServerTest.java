@@ -0,0 +1,94 @@
+/*
+ * Copyright (C) 2024 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.dvingest.core.fakedataverse;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.dropwizard.util.Duration;
+import org.junit.jupiter.api.Test;
+
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class FakeDataverseServerTest {
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final HttpClient httpClient = HttpClient.newHttpClient();
+
+    private HttpResponse<String> post(FakeDataverseServer server, String path, String body) throws Exception {
+        return httpClient.send(HttpRequest.newBuilder(server.getBaseUrl().resolve(path))
+            .header("Content-Type", "application/json")
+            .POST(HttpRequest.BodyPublishers.ofString(body))
+            .build(), HttpResponse.BodyHandlers.ofString());
+    }
+
+    private HttpResponse<String> get(FakeDataverseServer server, String path) throws Exception {
+        return httpClient.send(HttpRequest.newBuilder(server.getBaseUrl().resolve(path)).GET().build(), HttpResponse.BodyHandlers.ofString());
+    }
+
+    @Test
+    public void serves_created_dataset_by_persistent_id() throws Exception {
+        try (var server = new FakeDataverseServer(new FakeDataverseConfig(), mapper)) {
+            // Given
+            server.start();
+            var created = mapper.readTree(post(server, "api/dataverses/root/datasets", "{\"datasetVersion\":{}}").body());
+            var pid = created.path("data").path("persistentId").asText();
+
+            // When
+            var response = get(server, "api/datasets/:persistentId/versions/:latest?persistentId=" + pid);
+
+            // Then
+            assertThat(response.statusCode()).isEqualTo(200);
+            var body = mapper.readTree(response.body());
+            assertThat(body.path("status").asText()).isEqualTo("OK");
+            assertThat(body.path("data").path("versionState").asText()).isEqualTo("DRAFT");
+        }
+    }
+
+    @Test
+    public void returns_not_found_for_unknown_dataset() throws Exception {
+        try (var server = new FakeDataverseServer(new FakeDataverseConfig(), mapper)) {
+            // Given
+            server.start();
+
+            // When
+            var response = get(server, "api/datasets/:persistentId/versions/:latest?persistentId=doi:10.5072/NONE");
+
+            // Then
+            assertThat(response.statusCode()).isEqualTo(404);
+            assertThat(mapper.readTree(response.body()).path("status").asText()).isEqualTo("ERROR");
+        }
+    }
+
+    @Test
+    public void fails_all_requests_with_error_rate_one() throws Exception {
+        var config = new FakeDataverseConfig();
+        config.setErrorRate(1.0);
+        config.setLatency(Duration.milliseconds(1));
+        try (var server = new FakeDataverseServer(config, mapper)) {
+            // Given
+            server.start();
+
+            // When
+            var response = post(server, "api/dataverses/root/datasets", "{\"datasetVersion\":{}}");
+
+            // Then
+            assertThat(response.statusCode()).isEqualTo(500);
+            assertThat(server.getDataverse().getNumberOfDatasets()).isZero();
+        }
+    }
+}
@@ -0,0 +1,156 @@
+/*
+ * Copyright (C) 2024 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.dvingest.core.fakedataverse;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class FakeDataverseTest {
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final FakeDataverse dataverse = new FakeDataverse(mapper, new FakeDataverseConfig());
+
+    private String createDataset() throws Exception {
+        return dataverse.createDataset(mapper.readTree("{\"datasetVersion\":{\"metadataBlocks\":{}}}"), null).get("persistentId").asText();
+    }
+
+    private JsonNode jsonData(String json) throws Exception {
+        return mapper.readTree(json);
+    }
+
+    private byte[] zip(String... namesAndContents) throws Exception {
+        var bytes = new ByteArrayOutputStream();
+        try (var zip = new ZipOutputStream(bytes)) {
+            for (var i = 0; i < namesAndContents.length; i += 2) {
+                zip.putNextEntry(new ZipEntry(namesAndContents[i]));
+                zip.write(namesAndContents[i + 1].getBytes(StandardCharsets.UTF_8));
+                zip.closeEntry();
+            }
+        }
+        return bytes.toByteArray();
+    }
+
+    @Test
+    public void createDataset_mints_pid_and_creates_draft() throws Exception {
+        // When
+        var pid = createDataset();
+
+        // Then
+        var version = dataverse.getVersion(pid, true);
+        assertThat(pid).startsWith("doi:10.5072/FAKE-");
+        assertThat(version.get("versionState").asText()).isEqualTo("DRAFT");
+        assertThat(version.has("files")).isFalse();
+    }
+
+    @Test
+    public void addFile_unpacks_zip_and_computes_checksums() throws Exception {
+        // Given
+        var pid = createDataset();
+
+        // When
+        dataverse.addFile(pid, new ByteArrayInputStream(zip("a.txt", "aaa", "dir/b.txt", "bb")), "files.zip", null);
+
+        // Then
+        var files = dataverse.getFiles(pid);
+        assertThat(files).hasSize(2);
+        assertThat(files.get(0).get("label").asText()).isEqualTo("a.txt");
+        assertThat(files.get(0).path("dataFile").path("filesize").asLong()).isEqualTo(3);
+        assertThat(files.get(0).path("dataFile").path("checksum").path("value").asText()).isEqualTo(DigestUtils.md5Hex("aaa"));
+        assertThat(files.get(1).get("directoryLabel").asText()).isEqualTo("dir");
+        assertThat(files.get(1).get("label").asText()).isEqualTo("b.txt");
+    }
+
+    @Test
+    public void addFile_adds_suffix_to_duplicate_file_name() throws Exception {
+        // Given
+        var pid = createDataset();
+        dataverse.addFile(pid, new ByteArrayInputStream("one".getBytes(StandardCharsets.UTF_8)), "file.txt", null);
+
+        // When
+        dataverse.addFile(pid, new ByteArrayInputStream("two".getBytes(StandardCharsets.UTF_8)), "file.txt", null);
+
+        // Then
+        var files = dataverse.getFiles(pid);
+        assertThat(files).extracting(file -> file.get("label").asText()).containsExactly("file.txt", "file-1.txt");
+    }
+
+    @Test
+    public void publish_increases_version_and_next_change_creates_draft() throws Exception {
+        // Given
+        var pid = createDataset();
+        dataverse.publish(pid, "major", null);
+
+        // When
+        dataverse.addFile(pid, new ByteArrayInputStream("x".getBytes(StandardCharsets.UTF_8)), "x.txt", jsonData("{\"restrict\":true}"));
+
+        // Then
+        var version = dataverse.getVersion(pid, false);
+        assertThat(version.get("versionNumber").asInt()).isEqualTo(1);
+        assertThat(version.get("versionState").asText()).isEqualTo("DRAFT");
+        assertThat(version.get("files").get(0).get("restricted").asBoolean()).isTrue();
+    }
+
+    @Test
+    public void replaceFile_keeps_path_and_description() throws Exception {
+        // Given
+        var pid = createDataset();
+        var added = dataverse.addFile(pid, new ByteArrayInputStream("old".getBytes(StandardCharsets.UTF_8)), "file.txt", jsonData("{\"directoryLabel\":\"dir\",\"description\":\"d\"}"));
+        var fileId = added.get("files").get(0).path("dataFile").path("id").asInt();
+
+        // When
+        dataverse.replaceFile(fileId, new ByteArrayInputStream("new content".getBytes(StandardCharsets.UTF_8)), "other.txt", null);
+
+        // Then
+        var file = dataverse.getFiles(pid).get(0);
+        assertThat(file.get("directoryLabel").asText()).isEqualTo("dir");
+        assertThat(file.get("label").asText()).isEqualTo("file.txt");
+        assertThat(file.get("description").asText()).isEqualTo("d");
+        assertThat(file.path("dataFile").path("id").asInt()).isNotEqualTo(fileId);
+        assertThat(file.path("dataFile").path("filesize").asLong()).isEqualTo(11);
+    }
+
+    @Test
+    public void search_finds_dataset_by_field_value() throws Exception {
+        // Given
+        var pid = createDataset();
+        dataverse.editMetadata(pid, jsonData("{\"fields\":[{\"typeName\":\"dansSwordToken\",\"multiple\":false,\"typeClass\":\"primitive\",\"value\":\"sword:123\"}]}"), false);
+        createDataset();
+
+        // When
+        var result = dataverse.search("dansSwordToken:\"sword:123\"");
+
+        // Then
+        assertThat(result.get("total_count").asInt()).isEqualTo(1);
+        assertThat(result.get("items").get(0).get("global_id").asText()).isEqualTo(pid);
+    }
+
+    @Test
+    public void deleteFile_throws_for_unknown_file() {
+        assertThatThrownBy(() -> dataverse.deleteFile(12345))
+            .isInstanceOf(IllegalArgumentException.class)
+            .hasMessageContaining("12345");
+    }
+}
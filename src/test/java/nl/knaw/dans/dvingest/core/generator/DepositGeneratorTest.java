@@ -0,0 +1,123 @@
+/*
+ * Copyright (C) 2024 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.dvingest.core.generator;
+
+import gov.loc.repository.bagit.reader.BagReader;
+import gov.loc.repository.bagit.verify.BagVerifier;
+import nl.knaw.dans.dvingest.core.DataverseIngestDeposit;
+import nl.knaw.dans.dvingest.core.TestDirFixture;
+import nl.knaw.dans.dvingest.core.generator.DepositGenerator.DepositType;
+import nl.knaw.dans.dvingest.core.generator.DepositGenerator.SizeDistribution;
+import nl.knaw.dans.dvingest.core.service.YamlServiceImpl;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class DepositGeneratorTest extends TestDirFixture {
+
+    private DepositGenerator.DepositGeneratorBuilder generator(DepositType depositType) {
+        return DepositGenerator.builder()
+            .depositType(depositType)
+            .numberOfDatasets(2)
+            .versionsPerDataset(3)
+            .filesPerDataset(20)
+            .sizeDistribution(SizeDistribution.UNIFORM)
+            .minFileSize(0)
+            .maxFileSize(1000)
+            .directoryDepth(2)
+            .filesPerDirectory(5)
+            .unsanitizedNameFraction(0.5)
+            .restrictedFraction(0.5)
+            .embargoedFraction(0.3)
+            .changedFileFraction(0.1)
+            .metadataRichness(3)
+            .seed(42);
+    }
+
+    private void assertValidBag(Path bagDir) throws Exception {
+        var bag = new BagReader().read(bagDir);
+        try (var verifier = new BagVerifier()) {
+            verifier.isValid(bag, false);
+        }
+    }
+
+    @Test
+    public void generate_writes_dataverse_ingest_deposits_with_version_chain() throws Exception {
+        // When
+        var deposits = generator(DepositType.DATAVERSE_INGEST).build().generate(testDir.resolve("batch"));
+
+        // Then
+        assertThat(deposits).hasSize(2);
+        var bags = new DataverseIngestDeposit(deposits.get(0), new YamlServiceImpl()).getBags();
+        assertThat(bags).hasSize(3);
+        assertThat(bags.get(0).getDatasetMetadata().getDatasetVersion().getMetadataBlocks().get("citation").getFields()).isNotEmpty();
+        var firstEditFiles = bags.get(0).getEditFiles();
+        assertThat(firstEditFiles.getAddRestrictedFiles().size() + firstEditFiles.getAddUnrestrictedFiles().size()).isEqualTo(20);
+        assertThat(firstEditFiles.getAutoRenameFiles()).isNotEmpty();
+        var secondEditFiles = bags.get(1).getEditFiles();
+        assertThat(secondEditFiles.getReplaceFiles()).hasSize(2);
+        assertThat(secondEditFiles.getDeleteFiles()).hasSize(1);
+        assertThat(bags.get(1).getDatasetMetadata()).isNull();
+        for (var bag : bags) {
+            assertValidBag(bag.getLocation());
+            assertThat(bag.getUpdateState().getAction()).isEqualTo("publish-major");
+        }
+    }
+
+    @Test
+    public void generate_writes_dans_deposits_linked_by_is_version_of() throws Exception {
+        // When
+        var deposits = generator(DepositType.DANS_BAG).build().generate(testDir.resolve("batch"));
+
+        // Then
+        assertThat(deposits).hasSize(6);
+        var firstBag = deposits.get(0).resolve("bag-1");
+        var secondBag = deposits.get(1).resolve("bag-2");
+        assertThat(Files.readString(firstBag.resolve("bag-info.txt"))).doesNotContain("Is-Version-Of");
+        assertThat(Files.readString(secondBag.resolve("bag-info.txt"))).contains("Is-Version-Of: urn:uuid:" + deposits.get(0).getFileName());
+        assertThat(Files.readString(deposits.get(1).resolve("deposit.properties"))).contains("dataverse.sword-token = sword:" + deposits.get(0).getFileName());
+        assertThat(Files.readString(firstBag.resolve("metadata/dataset.xml"))).contains("<dcterms:subject>keyword 2</dcterms:subject>");
+        // 20 files, 2 replaced, 1 deleted, 2 added
+        assertThat(Files.readAllLines(secondBag.resolve("manifest-sha1.txt"))).hasSize(21);
+        assertValidBag(firstBag);
+        assertValidBag(secondBag);
+    }
+
+    @Test
+    public void generate_is_reproducible_with_the_same_seed() throws Exception {
+        // Given
+        var first = generator(DepositType.DATAVERSE_INGEST).build().generate(testDir.resolve("first"));
+
+        // When
+        var second = generator(DepositType.DATAVERSE_INGEST).build().generate(testDir.resolve("second"));
+
+        // Then
+        assertThat(second.get(1).getFileName()).isEqualTo(first.get(1).getFileName());
+        assertThat(Files.readAllLines(second.get(1).resolve("2/manifest-sha1.txt")))
+            .isEqualTo(Files.readAllLines(first.get(1).resolve("2/manifest-sha1.txt")));
+    }
+
+    @Test
+    public void builder_rejects_invalid_size_range() {
+        assertThatThrownBy(() -> generator(DepositType.DANS_BAG).minFileSize(10).maxFileSize(5).build())
+            .isInstanceOf(IllegalArgumentException.class)
+            .hasMessageContaining("file size range");
+    }
+}
@@ -0,0 +1,219 @@
+/*
+ * Copyright (C) 2024 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.dvingest.core.lease;
+
+import nl.knaw.dans.dvingest.core.TestDirFixture;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.nio.file.Files;
+import java.time.Clock;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class LeaseManagerImplTest extends TestDirFixture {
+    private static final long DURATION = 60_000;
+
+    private final Clock clock = mock(Clock.class);
+    private final Map<String, ScheduledExecutorService> schedulers = new HashMap<>();
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        super.setUp();
+        when(clock.millis()).thenReturn(1_000_000L);
+    }
+
+    private LeaseManagerImpl createLeaseManager(String instanceId) throws Exception {
+        var scheduler = mock(ScheduledExecutorService.class);
+        schedulers.put(instanceId, scheduler);
+        var leaseManager = new LeaseManagerImpl(testDir.resolve("leases"), instanceId, DURATION, scheduler, clock);
+        leaseManager.start();
+        return leaseManager;
+    }
+
+    @Test
+    public void tryAcquire_should_grant_free_lease() throws Exception {
+        // Given
+        var leaseManager = createLeaseManager("instance-1");
+
+        // When
+        var lease = leaseManager.tryAcquire("doi:10.5072/FK2/ABCDEF");
+
+        // Then
+        assertThat(lease).isPresent();
+        assertThat(lease.get().isLost()).isFalse();
+        try (var files = Files.list(testDir.resolve("leases"))) {
+            assertThat(files).hasSize(1).allMatch(file -> file.getFileName().toString().endsWith(".lease"));
+        }
+    }
+
+    @Test
+    public void tryAcquire_should_refuse_lease_held_by_other_instance() throws Exception {
+        // Given
+        var instance1 = createLeaseManager("instance-1");
+        var instance2 = createLeaseManager("instance-2");
+        instance1.tryAcquire("doi:10.5072/FK2/ABCDEF");
+
+        // When
+        var lease = instance2.tryAcquire("doi:10.5072/FK2/ABCDEF");
+
+        // Then
+        assertThat(lease).isEmpty();
+        assertThat(instance2.tryAcquire("doi:10.5072/FK2/OTHER")).isPresent();
+    }
+
+    @Test
+    public void tryAcquire_should_refuse_lease_held_by_same_instance() throws Exception {
+        // Given
+        var leaseManager = createLeaseManager("instance-1");
+        leaseManager.tryAcquire("doi:10.5072/FK2/ABCDEF");
+
+        // When
+        var lease = leaseManager.tryAcquire("doi:10.5072/FK2/ABCDEF");
+
+        // Then
+        assertThat(lease).isEmpty();
+    }
+
+    @Test
+    public void tryAcquire_should_grant_lease_after_release() throws Exception {
+        // Given
+        var instance1 = createLeaseManager("instance-1");
+        var instance2 = createLeaseManager("instance-2");
+        instance1.tryAcquire("doi:10.5072/FK2/ABCDEF").orElseThrow().close();
+
+        // When
+        var lease = instance2.tryAcquire("doi:10.5072/FK2/ABCDEF");
+
+        // Then
+        assertThat(lease).isPresent();
+    }
+
+    @Test
+    public void tryAcquire_should_take_over_expired_lease() throws Exception {
+        // Given
+        var instance1 = createLeaseManager("instance-1");
+        var instance2 = createLeaseManager("instance-2");
+        var lease1 = instance1.tryAcquire("doi:10.5072/FK2/ABCDEF").orElseThrow();
+        when(clock.millis()).thenReturn(1_000_000L + DURATION + 1);
+
+        // When
+        var lease2 = instance2.tryAcquire("doi:10.5072/FK2/ABCDEF");
+
+        // Then
+        assertThat(lease2).isPresent();
+        // Closing the lost lease must not release the lease of the new owner
+        lease1.close();
+        assertThat(instance1.tryAcquire("doi:10.5072/FK2/ABCDEF")).isEmpty();
+        try (var files = Files.list(testDir.resolve("leases"))) {
+            assertThat(files).hasSize(1);
+        }
+    }
+
+    @Test
+    public void renewal_should_keep_lease_from_expiring() throws Exception {
+        // Given
+        var instance1 = createLeaseManager("instance-1");
+        var instance2 = createLeaseManager("instance-2");
+        var lease = instance1.tryAcquire("doi:10.5072/FK2/ABCDEF").orElseThrow();
+        when(clock.millis()).thenReturn(1_000_000L + DURATION / 2);
+
+        // When
+        renewal(instance1).run();
+        when(clock.millis()).thenReturn(1_000_000L + DURATION + 1);
+
+        // Then
+        assertThat(instance2.tryAcquire("doi:10.5072/FK2/ABCDEF")).isEmpty();
+        assertThat(lease.isLost()).isFalse();
+    }
+
+    @Test
+    public void renewal_should_mark_lease_lost_if_taken_over() throws Exception {
+        // Given
+        var instance1 = createLeaseManager("instance-1");
+        var instance2 = createLeaseManager("instance-2");
+        var lease = instance1.tryAcquire("doi:10.5072/FK2/ABCDEF").orElseThrow();
+        when(clock.millis()).thenReturn(1_000_000L + DURATION + 1);
+        instance2.tryAcquire("doi:10.5072/FK2/ABCDEF").orElseThrow();
+
+        // When
+        renewal(instance1).run();
+
+        // Then
+        assertThat(lease.isLost()).isTrue();
+    }
+
+    @Test
+    public void renewal_should_mark_lease_lost_if_expired() throws Exception {
+        // Given
+        var instance1 = createLeaseManager("instance-1");
+        var instance2 = createLeaseManager("instance-2");
+        var lease = instance1.tryAcquire("doi:10.5072/FK2/ABCDEF").orElseThrow();
+        when(clock.millis()).thenReturn(1_000_000L + DURATION + 1);
+
+        // When
+        renewal(instance1).run();
+
+        // Then
+        assertThat(lease.isLost()).isTrue();
+        // Not renewed, so another instance can take it over
+        assertThat(instance2.tryAcquire("doi:10.5072/FK2/ABCDEF")).isPresent();
+    }
+
+    @Test
+    public void lease_should_be_lost_when_expired_before_renewal() throws Exception {
+        // Given
+        var leaseManager = createLeaseManager("instance-1");
+        var lease = leaseManager.tryAcquire("doi:10.5072/FK2/ABCDEF").orElseThrow();
+
+        // When
+        when(clock.millis()).thenReturn(1_000_000L + DURATION);
+
+        // Then
+        assertThat(lease.isLost()).isTrue();
+    }
+
+    @Test
+    public void stop_should_release_all_leases() throws Exception {
+        // Given
+        var instance1 = createLeaseManager("instance-1");
+        var instance2 = createLeaseManager("instance-2");
+        instance1.tryAcquire("doi:10.5072/FK2/ABCDEF");
+        instance1.tryAcquire("doi:10.5072/FK2/GHIJKL");
+
+        // When
+        instance1.stop();
+
+        // Then
+        assertThat(instance2.tryAcquire("doi:10.5072/FK2/ABCDEF")).isPresent();
+        assertThat(instance2.tryAcquire("doi:10.5072/FK2/GHIJKL")).isPresent();
+    }
+
+    private Runnable renewal(LeaseManagerImpl leaseManager) {
+        var captor = ArgumentCaptor.forClass(Runnable.class);
+        verify(schedulers.get(leaseManager.getInstanceId())).scheduleWithFixedDelay(captor.capture(), eq(DURATION / 3), eq(DURATION / 3), eq(TimeUnit.MILLISECONDS));
+        return captor.getValue();
+    }
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright (C) 2024 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.dvingest.core.metrics;
+
+import com.codahale.metrics.MetricRegistry;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class IngestMetricsTest {
+    private final MetricRegistry registry = new MetricRegistry();
+    private final IngestMetrics metrics = new IngestMetrics(registry);
+
+    @Test
+    public void stage_timers_are_registered_per_stage() {
+        // When
+        metrics.bagProcessorStage("create").time().stop();
+        metrics.bagProcessorStage("files").time().stop();
+        metrics.bagProcessorStage("files").time().stop();
+
+        // Then
+        assertThat(registry.timer("dvingest.bagprocessor.create").getCount()).isEqualTo(1);
+        assertThat(registry.timer("dvingest.bagprocessor.files").getCount()).isEqualTo(2);
+    }
+
+    @Test
+    public void outcome_counters_are_registered_per_area_and_outcome() {
+        // When
+        metrics.depositOutcome("import", "success").inc();
+        metrics.depositOutcome("import", "success").inc();
+        metrics.depositOutcome("import", "failed").inc();
+        metrics.depositOutcome("migration", "rejected").inc();
+
+        // Then
+        assertThat(registry.counter("dvingest.import.deposits.success").getCount()).isEqualTo(2);
+        assertThat(registry.counter("dvingest.import.deposits.failed").getCount()).isEqualTo(1);
+        assertThat(registry.counter("dvingest.migration.deposits.rejected").getCount()).isEqualTo(1);
+        assertThat(registry.counter("dvingest.migration.deposits.success").getCount()).isEqualTo(0);
+    }
+
+    @Test
+    public void active_workers_gauge_follows_counter() {
+        // Given
+        var activeWorkers = metrics.activeWorkers("import");
+
+        // When
+        activeWorkers.incrementAndGet();
+        activeWorkers.incrementAndGet();
+        activeWorkers.decrementAndGet();
+
+        // Then
+        assertThat(metrics.activeWorkers("import")).isSameAs(activeWorkers);
+        assertThat(registry.getGauges().get("dvingest.import.active-workers").getValue()).isEqualTo(1);
+    }
+
+    @Test
+    public void queue_depth_gauge_reads_supplier() {
+        // Given
+        var depth = new int[] { 3 };
+
+        // When
+        metrics.registerQueueDepth("import", () -> depth[0]);
+        depth[0] = 5;
+
+        // Then
+        assertThat(registry.getGauges().get("dvingest.import.queue-depth").getValue()).isEqualTo(5);
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright (C) 2024 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.dvingest.core.report;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ImportJobSummaryTest {
+
+    @Test
+    public void summary_counts_deposits_per_status_and_totals_uploads() {
+        // Given
+        var summary = new ImportJobSummary();
+        for (int i = 0; i < 3; i++) {
+            var report = new DepositReport(UUID.randomUUID(), "import");
+            report.recordUploadBatch(10, 1000, 5);
+            report.setStatus(i == 2 ? "FAILED" : "SUCCESS");
+            report.setDataverseApiCalls(7);
+            summary.add(report);
+        }
+
+        // When
+        var result = summary.getSummary();
+
+        // Then
+        assertThat(result.getDepositsByStatus()).containsEntry("SUCCESS", 2).containsEntry("FAILED", 1);
+        assertThat(result.getFilesUploaded()).isEqualTo(30);
+        assertThat(result.getBytesUploaded()).isEqualTo(3000);
+        assertThat(result.getDataverseApiCalls()).isEqualTo(21);
+        assertThat(result.getDepositDurationMillis().getCount()).isEqualTo(3);
+    }
+
+    @Test
+    public void phases_that_occur_more_than_once_in_a_deposit_are_added_up() {
+        // Given
+        var summary = new ImportJobSummary();
+        var report = new DepositReport(UUID.randomUUID(), "import");
+        report.startPhase("files").close();
+        report.startPhase("files").close();
+        report.startPhase("metadata").close();
+        summary.add(report);
+
+        // When
+        var result = summary.getSummary();
+
+        // Then
+        assertThat(result.getPhaseDurationMillis()).containsOnlyKeys("files", "metadata");
+        assertThat(result.getPhaseDurationMillis().get("files").getCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void failed_tabular_ingests_are_listed_by_deposit() {
+        // Given
+        var summary = new ImportJobSummary();
+        var failing = new DepositReport(UUID.randomUUID(), "import");
+        failing.recordDeferredTabularIngest(1);
+        failing.recordDeferredTabularIngest(2);
+        failing.recordFailedTabularIngest(2);
+        var succeeding = new DepositReport(UUID.randomUUID(), "import");
+        succeeding.recordDeferredTabularIngest(3);
+        summary.addTabularIngestOutcome(failing);
+        summary.addTabularIngestOutcome(succeeding);
+
+        // When
+        var result = summary.getSummary();
+
+        // Then
+        assertThat(result.getFailedTabularIngestFileIds()).containsOnlyKeys(failing.getDepositId().toString());
+        assertThat(result.getFailedTabularIngestFileIds().get(failing.getDepositId().toString())).containsExactly(2);
+    }
+}
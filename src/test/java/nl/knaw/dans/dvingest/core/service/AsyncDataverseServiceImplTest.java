@@ -0,0 +1,141 @@
+/*
+ * Copyright (C) 2024 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.dvingest.core.service;
+
+import nl.knaw.dans.dvingest.core.metrics.DataverseCallCounter;
+import nl.knaw.dans.dvingest.core.metrics.IngestMetrics;
+import nl.knaw.dans.lib.dataverse.DataverseException;
+import nl.knaw.dans.lib.dataverse.model.RoleAssignment;
+import nl.knaw.dans.lib.dataverse.model.file.FileMeta;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.when;
+
+public class AsyncDataverseServiceImplTest {
+    private final DataverseService delegate = Mockito.mock(DataverseService.class);
+    private final ExecutorService executor = Executors.newFixedThreadPool(4);
+
+    @AfterEach
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void blocking_adapter_returns_result_of_delegate() throws Exception {
+        // Given
+        when(delegate.getFiles("pid")).thenReturn(List.of(new FileMeta()));
+        var service = new BlockingDataverseService(new AsyncDataverseServiceImpl(delegate, executor));
+
+        // When
+        var files = service.getFiles("pid");
+
+        // Then
+        assertThat(files).hasSize(1);
+    }
+
+    @Test
+    public void blocking_adapter_rethrows_checked_exceptions_of_delegate() throws Exception {
+        // Given
+        when(delegate.getFiles("pid")).thenThrow(new IOException("connection reset"));
+        when(delegate.getDatasetLocks("pid")).thenThrow(DataverseException.class);
+        var service = new BlockingDataverseService(new AsyncDataverseServiceImpl(delegate, executor));
+
+        // When / Then
+        assertThatThrownBy(() -> service.getFiles("pid"))
+            .isInstanceOf(IOException.class)
+            .hasMessage("connection reset");
+        assertThatThrownBy(() -> service.getDatasetLocks("pid"))
+            .isInstanceOf(DataverseException.class);
+    }
+
+    @Test
+    public void calls_are_in_progress_at_the_same_time() throws Exception {
+        // Given
+        var allStarted = new CountDownLatch(3);
+        doAnswer(invocation -> {
+            allStarted.countDown();
+            // Only returns if the other calls were started while this one was pending
+            assertThat(allStarted.await(5, TimeUnit.SECONDS)).isTrue();
+            return null;
+        }).when(delegate).addRoleAssignment(Mockito.eq("pid"), any());
+        var service = new AsyncDataverseServiceImpl(delegate, executor);
+
+        // When
+        var futures = List.of(
+            service.addRoleAssignment("pid", new RoleAssignment()),
+            service.addRoleAssignment("pid", new RoleAssignment()),
+            service.addRoleAssignment("pid", new RoleAssignment()));
+        BlockingDataverseService.awaitAll(futures);
+
+        // Then
+        Mockito.verify(delegate, Mockito.times(3)).addRoleAssignment(Mockito.eq("pid"), any());
+    }
+
+    @Test
+    public void awaitAll_waits_for_all_futures_and_throws_first_failure() throws Exception {
+        // Given
+        var slowCallDone = new CountDownLatch(1);
+        doThrow(new IOException("first")).when(delegate).deleteFile("pid", 1);
+        doAnswer(invocation -> {
+            Thread.sleep(50);
+            slowCallDone.countDown();
+            return null;
+        }).when(delegate).deleteFile("pid", 2);
+        var service = new AsyncDataverseServiceImpl(delegate, executor);
+        List<CompletableFuture<Void>> futures = List.of(service.deleteFile("pid", 1), service.deleteFile("pid", 2));
+
+        // When / Then
+        assertThatThrownBy(() -> BlockingDataverseService.awaitAll(futures))
+            .isInstanceOf(IOException.class)
+            .hasMessage("first");
+        assertThat(slowCallDone.getCount()).isZero();
+    }
+
+    @Test
+    public void calls_are_counted_for_the_deposit_of_the_submitting_thread() throws Exception {
+        // Given
+        var service = new AsyncDataverseServiceImpl(new InstrumentedDataverseService(delegate, IngestMetrics.unregistered()), executor);
+        var counter = new DataverseCallCounter();
+        var otherCounter = new DataverseCallCounter();
+
+        // When
+        try (var ignored = counter.bind()) {
+            CompletableFuture.allOf(service.getDatasetLocks("pid"), service.deleteFile("pid", 1)).get(10, TimeUnit.SECONDS);
+        }
+        try (var ignored = otherCounter.bind()) {
+            service.getDatasetLocks("pid").get(10, TimeUnit.SECONDS);
+        }
+
+        // Then
+        assertThat(counter.getCount()).isEqualTo(2);
+        assertThat(otherCounter.getCount()).isEqualTo(1);
+    }
+}
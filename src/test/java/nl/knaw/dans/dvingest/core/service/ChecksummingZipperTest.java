@@ -0,0 +1,96 @@
+/*
+ * Copyright (C) 2024 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.dvingest.core.service;
+
+import nl.knaw.dans.dvingest.core.TestDirFixture;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.collections4.iterators.PeekingIterator;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.ZipFile;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ChecksummingZipperTest extends TestDirFixture {
+
+    private List<File> createFiles(String... contents) throws Exception {
+        var dataDir = Files.createDirectories(testDir.resolve("data/sub"));
+        var files = new ArrayList<File>();
+        for (int i = 0; i < contents.length; i++) {
+            var file = dataDir.resolve("file" + i + ".txt");
+            Files.writeString(file, contents[i]);
+            files.add(file.toFile());
+        }
+        return files;
+    }
+
+    @Test
+    public void zip_computes_checksums_of_zipped_files_and_applies_rename_map() throws Exception {
+        // Given
+        var files = createFiles("aaa", "bbbb");
+        var iterator = new PeekingIterator<>(files.iterator());
+        var zipper = ChecksummingZipper.builder()
+            .rootDir(testDir.resolve("data"))
+            .sourceIterator(iterator)
+            .targetZipFile(testDir.resolve("out.zip"))
+            .renameMap(Map.of("sub/file1.txt", "sub/renamed.txt"))
+            .maxNumberOfFiles(10)
+            .maxNumberOfBytes(1000)
+            .checksumAlgorithm("SHA-1")
+            .build();
+
+        // When
+        var result = zipper.zip();
+
+        // Then
+        assertThat(result.getChecksums()).containsExactly(
+            Map.entry("sub/file0.txt", DigestUtils.sha1Hex("aaa")),
+            Map.entry("sub/renamed.txt", DigestUtils.sha1Hex("bbbb")));
+        assertThat(result.getBytesHashed()).isEqualTo(7);
+        try (var zipFile = new ZipFile(result.getZipFile().toFile())) {
+            assertThat(zipFile.stream().map(e -> e.getName())).containsExactly("sub/file0.txt", "sub/renamed.txt");
+        }
+    }
+
+    @Test
+    public void zip_stops_before_file_that_would_exceed_byte_limit_but_always_zips_one_file() throws Exception {
+        // Given
+        var files = createFiles("12345", "123456", "1");
+        var iterator = new PeekingIterator<>(files.iterator());
+        var builder = ChecksummingZipper.builder()
+            .rootDir(testDir.resolve("data"))
+            .sourceIterator(iterator)
+            .maxNumberOfFiles(10)
+            .maxNumberOfBytes(4)
+            .checksumAlgorithm("MD5");
+
+        // When
+        var first = builder.targetZipFile(testDir.resolve("1.zip")).build().zip();
+        var second = builder.targetZipFile(testDir.resolve("2.zip")).build().zip();
+        var third = builder.targetZipFile(testDir.resolve("3.zip")).build().zip();
+
+        // Then
+        assertThat(first.getChecksums()).containsOnlyKeys("sub/file0.txt");
+        assertThat(second.getChecksums()).containsOnlyKeys("sub/file1.txt");
+        assertThat(third.getChecksums()).containsOnlyKeys("sub/file2.txt");
+        assertThat(iterator.hasNext()).isFalse();
+    }
+}
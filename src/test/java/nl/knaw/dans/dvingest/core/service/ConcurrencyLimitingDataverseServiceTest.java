@@ -0,0 +1,120 @@
+/*
+ * Copyright (C) 2024 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.dvingest.core.service;
+
+import nl.knaw.dans.dvingest.core.metrics.IngestMetrics;
+import nl.knaw.dans.lib.dataverse.model.file.FileMeta;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import java.util.ArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+
+public class ConcurrencyLimitingDataverseServiceTest {
+    private final DataverseService delegate = Mockito.mock(DataverseService.class);
+
+    @Test
+    public void never_has_more_calls_in_progress_than_the_limit() throws Exception {
+        // Given
+        var inProgress = new AtomicInteger();
+        var maxInProgress = new AtomicInteger();
+        doAnswer(invocation -> {
+            maxInProgress.accumulateAndGet(inProgress.incrementAndGet(), Math::max);
+            Thread.sleep(10);
+            inProgress.decrementAndGet();
+            return null;
+        }).when(delegate).updateFileMetadata(any(), anyInt(), any());
+        var service = new ConcurrencyLimitingDataverseService(delegate, IngestMetrics.unregistered(), 2);
+        var executor = Executors.newFixedThreadPool(8);
+
+        // When
+        var futures = new ArrayList<Future<?>>();
+        for (int i = 0; i < 32; i++) {
+            var id = i;
+            futures.add(executor.submit(() -> {
+                service.updateFileMetadata("pid", id, new FileMeta());
+                return null;
+            }));
+        }
+        for (var future : futures) {
+            future.get();
+        }
+        executor.shutdown();
+
+        // Then
+        Mockito.verify(delegate, Mockito.times(32)).updateFileMetadata(any(), anyInt(), any());
+        assertThat(maxInProgress.get()).isEqualTo(2);
+    }
+
+    @Test
+    public void releases_permit_when_call_fails() throws Exception {
+        // Given
+        doThrow(new IllegalStateException("failed")).when(delegate).deleteFile("pid", 1);
+        var service = new ConcurrencyLimitingDataverseService(delegate, IngestMetrics.unregistered(), 1);
+
+        // When
+        assertThatThrownBy(() -> service.deleteFile("pid", 1)).isInstanceOf(IllegalStateException.class);
+        service.deleteFile("pid", 2);
+
+        // Then
+        Mockito.verify(delegate).deleteFile("pid", 2);
+    }
+
+    @Test
+    public void waitForState_does_not_take_a_permit() throws Exception {
+        // Given
+        var waiting = new CountDownLatch(1);
+        var release = new CountDownLatch(1);
+        doAnswer(invocation -> {
+            waiting.countDown();
+            release.await();
+            return null;
+        }).when(delegate).waitForState("pid", "RELEASED");
+        var service = new ConcurrencyLimitingDataverseService(delegate, IngestMetrics.unregistered(), 1);
+        var executor = Executors.newSingleThreadExecutor();
+        var waitForState = executor.submit(() -> {
+            service.waitForState("pid", "RELEASED");
+            return null;
+        });
+        assertThat(waiting.await(5, TimeUnit.SECONDS)).isTrue();
+
+        // When
+        service.deleteFile("pid", 1);
+
+        // Then
+        Mockito.verify(delegate).deleteFile("pid", 1);
+        release.countDown();
+        waitForState.get();
+        executor.shutdown();
+    }
+
+    @Test
+    public void constructor_rejects_limit_below_one() {
+        assertThatThrownBy(() -> new ConcurrencyLimitingDataverseService(delegate, IngestMetrics.unregistered(), 0))
+            .isInstanceOf(IllegalArgumentException.class);
+    }
+}
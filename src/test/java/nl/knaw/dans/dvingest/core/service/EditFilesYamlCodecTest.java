@@ -0,0 +1,152 @@
+/*
+ * Copyright (C) 2024 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.dvingest.core.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.yaml.YAMLFactory;
+import io.dropwizard.configuration.ConfigurationParsingException;
+import nl.knaw.dans.dvingest.core.TestDirFixture;
+import nl.knaw.dans.dvingest.core.yaml.EditFiles;
+import nl.knaw.dans.dvingest.core.yaml.EditFilesRoot;
+import nl.knaw.dans.dvingest.core.yaml.FromTo;
+import nl.knaw.dans.lib.dataverse.model.file.FileMeta;
+import org.junit.jupiter.api.Test;
+
+import javax.validation.Validation;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class EditFilesYamlCodecTest extends TestDirFixture {
+    private final YamlService yamlService = new YamlServiceImpl();
+
+    @Test
+    public void writeYaml_and_readYaml_should_round_trip_edit_files() throws Exception {
+        // Given
+        var editFiles = new EditFiles();
+        editFiles.setAddUnrestrictedFiles(IntStream.range(0, 10_000).mapToObj(i -> "dir/file" + i + ".txt").toList());
+        editFiles.setAddRestrictedFiles(List.of("secret.txt"));
+        editFiles.setMoveFiles(List.of(new FromTo("a.txt", "b/a.txt")));
+        var fileMeta = new FileMeta();
+        fileMeta.setLabel("file1.txt");
+        fileMeta.setDirectoryLabel("dir");
+        fileMeta.setDescription("A description");
+        editFiles.setUpdateFileMetas(List.of(fileMeta));
+        var yamlFile = testDir.resolve("edit-files.yml");
+
+        // When
+        yamlService.writeYaml(new EditFilesRoot(editFiles), yamlFile);
+        var result = yamlService.readYaml(yamlFile, EditFilesRoot.class).getEditFiles();
+
+        // Then
+        assertThat(result.getAddUnrestrictedFiles()).isEqualTo(editFiles.getAddUnrestrictedFiles());
+        assertThat(result.getAddRestrictedFiles()).containsExactly("secret.txt");
+        assertThat(result.getMoveFiles()).containsExactly(new FromTo("a.txt", "b/a.txt"));
+        assertThat(result.getUpdateFileMetas()).hasSize(1);
+        assertThat(result.getUpdateFileMetas().get(0).getDescription()).isEqualTo("A description");
+        assertThat(result.getDeleteFiles()).isEmpty();
+        assertThat(result.getAddEmbargoes()).isEmpty();
+    }
+
+    @Test
+    public void readYaml_should_keep_defaults_for_missing_lists() throws Exception {
+        // Given
+        var yamlFile = testDir.resolve("edit-files.yml");
+        Files.writeString(yamlFile, "editFiles:\n  deleteFiles:\n    - file1.txt\n    - file2.txt\n");
+
+        // When
+        var result = yamlService.readYaml(yamlFile, EditFilesRoot.class).getEditFiles();
+
+        // Then
+        assertThat(result.getDeleteFiles()).containsExactly("file1.txt", "file2.txt");
+        assertThat(result.getAddUnrestrictedFiles()).isEmpty();
+        assertThat(result.getUpdateFileMetas()).isEmpty();
+    }
+
+    @Test
+    public void readYaml_should_reject_unknown_field() throws Exception {
+        // Given
+        var yamlFile = testDir.resolve("edit-files.yml");
+        Files.writeString(yamlFile, "editFiles:\n  ignoreFiles:\n    - file1.txt\n");
+
+        // When / Then
+        assertThatThrownBy(() -> yamlService.readYaml(yamlFile, EditFilesRoot.class))
+            .isInstanceOf(ConfigurationParsingException.class)
+            .hasMessageContaining("ignoreFiles");
+    }
+
+    @Test
+    public void readYaml_should_reject_unknown_field_in_element() throws Exception {
+        // Given
+        var yamlFile = testDir.resolve("edit-files.yml");
+        Files.writeString(yamlFile, "editFiles:\n  moveFiles:\n    - from: a.txt\n      into: b.txt\n");
+
+        // When / Then
+        assertThatThrownBy(() -> yamlService.readYaml(yamlFile, EditFilesRoot.class))
+            .isInstanceOf(ConfigurationParsingException.class);
+    }
+
+    @Test
+    public void readYaml_should_reject_scalar_instead_of_list() throws Exception {
+        // Given
+        var yamlFile = testDir.resolve("edit-files.yml");
+        Files.writeString(yamlFile, "editFiles:\n  deleteFiles: file1.txt\n");
+
+        // When / Then
+        assertThatThrownBy(() -> yamlService.readYaml(yamlFile, EditFilesRoot.class))
+            .isInstanceOf(ConfigurationParsingException.class);
+    }
+
+    private static List<String> getEditFilesFieldNames() {
+        return Arrays.stream(EditFiles.class.getDeclaredFields())
+            .filter(field -> !Modifier.isStatic(field.getModifiers()))
+            .map(Field::getName)
+            .toList();
+    }
+
+    @Test
+    public void codec_should_handle_every_field_of_EditFiles() {
+        // Given
+        var mapper = new ObjectMapper(new YAMLFactory());
+
+        // When
+        var codec = new EditFilesYamlCodec(mapper, Validation.buildDefaultValidatorFactory().getValidator());
+
+        // Then
+        assertThat(codec.getEditFilesFieldNames()).containsExactlyElementsOf(getEditFilesFieldNames());
+    }
+
+    @Test
+    public void writeYaml_should_write_every_field_of_EditFiles() throws Exception {
+        // Given
+        var yamlFile = testDir.resolve("edit-files.yml");
+
+        // When
+        yamlService.writeYaml(new EditFilesRoot(new EditFiles()), yamlFile);
+
+        // Then
+        var written = new ArrayList<String>();
+        new ObjectMapper(new YAMLFactory()).readTree(yamlFile.toFile()).get("editFiles").fieldNames().forEachRemaining(written::add);
+        assertThat(written).containsExactlyElementsOf(getEditFilesFieldNames());
+    }
+}
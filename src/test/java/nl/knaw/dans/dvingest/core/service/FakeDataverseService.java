@@ -0,0 +1,287 @@
+/*
+ * Copyright (C) 2024 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.dvingest.core.service;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import lombok.Getter;
+import lombok.Value;
+import nl.knaw.dans.dvingest.core.fakedataverse.FakeDataverse;
+import nl.knaw.dans.dvingest.core.fakedataverse.FakeDataverseConfig;
+import nl.knaw.dans.lib.dataverse.model.RoleAssignment;
+import nl.knaw.dans.lib.dataverse.model.dataset.Dataset;
+import nl.knaw.dans.lib.dataverse.model.dataset.DatasetVersion;
+import nl.knaw.dans.lib.dataverse.model.dataset.Embargo;
+import nl.knaw.dans.lib.dataverse.model.dataset.FileList;
+import nl.knaw.dans.lib.dataverse.model.dataset.License;
+import nl.knaw.dans.lib.dataverse.model.dataset.MetadataField;
+import nl.knaw.dans.lib.dataverse.model.dataset.UpdateType;
+import nl.knaw.dans.lib.dataverse.model.file.FileMeta;
+import nl.knaw.dans.lib.dataverse.model.user.AuthenticatedUser;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * Implementation of {@link DataverseService} on top of a {@link FakeDataverse}, for tests that need to look at the resulting dataset rather than at the individual calls. It uses the same model
+ * as the fake Dataverse server of the benchmarks, so zip files passed to {@link #addFile(String, Path, FileMeta)} are unpacked into one file per entry, as Dataverse does.
+ */
+public class FakeDataverseService implements DataverseService {
+    // Maintained by the fake itself, so left out of the metadata of a FakeDataset
+    private static final List<String> VERSION_BOOKKEEPING_FIELDS = List.of("id", "versionState", "versionNumber", "versionMinorNumber", "createTime", "lastUpdateTime",
+        "releaseTime", "datasetId", "datasetPersistentId");
+
+    /**
+     * A snapshot of a dataset in the fake Dataverse.
+     */
+    @Value
+    public static class FakeDataset {
+        String pid;
+        DatasetVersion metadata;
+        List<FileMeta> files;
+        String state;
+        String releaseDate;
+    }
+
+    private final ObjectMapper mapper = DataverseTrafficLog.createObjectMapper();
+    private final FakeDataverseConfig config = new FakeDataverseConfig();
+    private final FakeDataverse fakeDataverse;
+    @Getter
+    private final List<String> calls = Collections.synchronizedList(new ArrayList<>());
+
+    public FakeDataverseService() {
+        config.setMetadataBlocks(List.of("citation"));
+        fakeDataverse = new FakeDataverse(mapper, config);
+    }
+
+    // Simulates corruption in transit by reporting wrong checksums for the received files
+    public void setCorruptChecksums(boolean corruptChecksums) {
+        config.setCorruptChecksums(corruptChecksums);
+    }
+
+    public FakeDataset getDataset(String pid) {
+        var version = (ObjectNode) fakeDataverse.getVersion(pid, false);
+        var files = mapper.convertValue(version.remove("files"), new TypeReference<List<FileMeta>>() {
+        });
+        var state = version.path("versionState").asText();
+        var releaseDate = version.path("releaseTime").asText(null);
+        version.remove(VERSION_BOOKKEEPING_FIELDS);
+        return new FakeDataset(pid, mapper.convertValue(version, DatasetVersion.class), files, state, releaseDate);
+    }
+
+    @Override
+    public String createDataset(Dataset datasetMetadata) {
+        calls.add("createDataset");
+        return fakeDataverse.createDataset(mapper.valueToTree(datasetMetadata), null).get("persistentId").asText();
+    }
+
+    @Override
+    public String importDataset(String persistentId, Dataset datasetMetadata) {
+        calls.add("importDataset");
+        return fakeDataverse.createDataset(mapper.valueToTree(datasetMetadata), persistentId).get("persistentId").asText();
+    }
+
+    @Override
+    public void releaseMigratedDataset(String persistentId, String releaseDate) {
+        calls.add("releaseMigratedDataset");
+        fakeDataverse.publish(persistentId, "major", releaseDate);
+    }
+
+    @Override
+    public FileList addFile(String persistentId, Path file, FileMeta fileMeta) throws IOException {
+        calls.add("addFile");
+        try (var content = Files.newInputStream(file)) {
+            return mapper.convertValue(fakeDataverse.addFile(persistentId, content, file.getFileName().toString(), toJsonData(fileMeta)), FileList.class);
+        }
+    }
+
+    @Override
+    public void publishDataset(String persistentId, UpdateType updateType) {
+        calls.add("publishDataset");
+        fakeDataverse.publish(persistentId, updateType.name(), null);
+    }
+
+    @Override
+    public void replaceFile(String targetDatasetPid, FileMeta fileToReplace, Path replacement) throws IOException {
+        calls.add("replaceFile");
+        try (var content = Files.newInputStream(replacement)) {
+            fakeDataverse.replaceFile(fileToReplace.getDataFile().getId(), content, replacement.getFileName().toString(), toJsonData(fileToReplace));
+        }
+    }
+
+    @Override
+    public void deleteFile(String persistentId, int id) {
+        calls.add("deleteFile");
+        fakeDataverse.deleteFile(id);
+    }
+
+    @Override
+    public void reingestFile(String persistentId, int id) {
+        calls.add("reingestFile");
+        fakeDataverse.reingestFile(id);
+    }
+
+    @Override
+    public List<String> getDatasetLocks(String persistentId) {
+        calls.add("getDatasetLocks");
+        var locks = new ArrayList<String>();
+        fakeDataverse.getLocks(persistentId).forEach(lock -> locks.add(lock.path("lockType").asText()));
+        return locks;
+    }
+
+    @Override
+    public String getDatasetUrnNbn(String datasetId) {
+        calls.add("getDatasetUrnNbn");
+        return "urn:nbn:nl:ui:13-fake-" + datasetId;
+    }
+
+    @Override
+    public void waitForState(String persistentId, String state) {
+        calls.add("waitForState");
+        var actual = fakeDataverse.getVersion(persistentId, true).path("versionState").asText();
+        if (!state.equals(actual)) {
+            throw new IllegalStateException("Dataset " + persistentId + " is " + actual + ", not " + state);
+        }
+    }
+
+    @Override
+    public void updateMetadata(String targetDatasetPid, DatasetVersion datasetMetadata) {
+        calls.add("updateMetadata");
+        fakeDataverse.updateVersion(targetDatasetPid, mapper.valueToTree(datasetMetadata));
+    }
+
+    @Override
+    public void updateFileMetadata(String persistentId, int id, FileMeta newMeta) {
+        calls.add("updateFileMetadata");
+        fakeDataverse.updateFileMetadata(id, toJsonData(newMeta));
+    }
+
+    @Override
+    public List<FileMeta> getFiles(String pid) {
+        calls.add("getFiles");
+        return mapper.convertValue(fakeDataverse.getFiles(pid), new TypeReference<>() {
+        });
+    }
+
+    @Override
+    public void deleteDatasetMetadata(String pid, List<MetadataField> fields) {
+        calls.add("deleteDatasetMetadata");
+        fakeDataverse.deleteMetadata(pid, toFieldsBody(fields));
+    }
+
+    @Override
+    public void editMetadata(String pid, List<MetadataField> addFieldValues, boolean replace) {
+        calls.add("editMetadata");
+        fakeDataverse.editMetadata(pid, toFieldsBody(addFieldValues), replace);
+    }
+
+    @Override
+    public void addRoleAssignment(String pid, RoleAssignment roleAssignment) {
+        calls.add("addRoleAssignment");
+        fakeDataverse.assignRole(pid, mapper.valueToTree(roleAssignment));
+    }
+
+    @Override
+    public void deleteRoleAssignment(String pid, RoleAssignment roleAssignment) {
+        calls.add("deleteRoleAssignment");
+        for (var assignment : fakeDataverse.listRoleAssignments(pid)) {
+            if (assignment.path("assignee").asText().equals(roleAssignment.getAssignee()) && assignment.path("_roleAlias").asText().equals(roleAssignment.getRole())) {
+                fakeDataverse.deleteRoleAssignment(pid, assignment.path("id").asInt());
+            }
+        }
+    }
+
+    @Override
+    public Optional<AuthenticatedUser> getUserById(String userId) {
+        calls.add("getUserById");
+        return Optional.of(mapper.convertValue(fakeDataverse.getUser(userId), AuthenticatedUser.class));
+    }
+
+    @Override
+    public List<License> getSupportedLicenses() {
+        calls.add("getSupportedLicenses");
+        return mapper.convertValue(fakeDataverse.getLicenses(), new TypeReference<>() {
+        });
+    }
+
+    @Override
+    public Set<String> getActiveMetadataBlockNames() {
+        calls.add("getActiveMetadataBlockNames");
+        var names = new LinkedHashSet<String>();
+        fakeDataverse.getMetadataBlocks().forEach(block -> names.add(block.path("name").asText()));
+        return names;
+    }
+
+    @Override
+    public void addEmbargo(String pid, Embargo embargo) {
+        calls.add("addEmbargo");
+        fakeDataverse.setEmbargo(pid, mapper.valueToTree(embargo));
+    }
+
+    @Override
+    public List<String> findDoiByMetadataField(String fieldName, String value) {
+        calls.add("findDoiByMetadataField");
+        var dois = new ArrayList<String>();
+        fakeDataverse.search(fieldName + ":\"" + value + "\"").path("items").forEach(item -> dois.add(item.path("global_id").asText()));
+        return dois;
+    }
+
+    @Override
+    public DatasetVersion getDatasetMetadata(String pid) {
+        calls.add("getDatasetMetadata");
+        return mapper.convertValue(fakeDataverse.getVersion(pid, false), DatasetVersion.class);
+    }
+
+    @Override
+    public DatasetVersion getLatestVersionWithoutFiles(String pid) {
+        calls.add("getLatestVersionWithoutFiles");
+        return mapper.convertValue(fakeDataverse.getVersion(pid, true), DatasetVersion.class);
+    }
+
+    // The jsonData that the Dataverse client sends with an upload or a file metadata update
+    private JsonNode toJsonData(FileMeta fileMeta) {
+        var jsonData = mapper.createObjectNode();
+        if (fileMeta.getLabel() != null) {
+            jsonData.put("label", fileMeta.getLabel());
+        }
+        if (fileMeta.getDirectoryLabel() != null) {
+            jsonData.put("directoryLabel", fileMeta.getDirectoryLabel());
+        }
+        if (fileMeta.getDescription() != null) {
+            jsonData.put("description", fileMeta.getDescription());
+        }
+        if (fileMeta.getCategories() != null) {
+            jsonData.set("categories", mapper.valueToTree(fileMeta.getCategories()));
+        }
+        jsonData.put("restrict", Boolean.TRUE.equals(fileMeta.getRestricted()));
+        return jsonData;
+    }
+
+    private JsonNode toFieldsBody(List<MetadataField> fields) {
+        var body = mapper.createObjectNode();
+        body.set("fields", mapper.valueToTree(fields));
+        return body;
+    }
+}
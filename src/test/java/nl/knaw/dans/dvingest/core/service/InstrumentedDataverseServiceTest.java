@@ -0,0 +1,114 @@
+/*
+ * Copyright (C) 2024 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.dvingest.core.service;
+
+import com.codahale.metrics.MetricRegistry;
+import nl.knaw.dans.dvingest.core.metrics.DataverseCallCounter;
+import nl.knaw.dans.dvingest.core.metrics.IngestMetrics;
+import nl.knaw.dans.lib.dataverse.DataverseException;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class InstrumentedDataverseServiceTest {
+    private final MetricRegistry registry = new MetricRegistry();
+    private final IngestMetrics metrics = new IngestMetrics(registry);
+    private final DataverseService delegate = mock(DataverseService.class);
+    private final InstrumentedDataverseService service = new InstrumentedDataverseService(delegate, metrics);
+
+    @Test
+    public void successful_call_is_timed_under_method_name() throws Exception {
+        // Given
+        when(delegate.getDatasetLocks("pid")).thenReturn(List.of());
+
+        // When
+        var locks = service.getDatasetLocks("pid");
+
+        // Then
+        assertThat(locks).isEmpty();
+        assertThat(registry.timer("dvingest.dataverse.getDatasetLocks").getCount()).isEqualTo(1);
+        assertThat(registry.counter("dvingest.dataverse.getDatasetLocks.errors").getCount()).isEqualTo(0);
+        assertThat(registry.getTimers()).containsOnlyKeys("dvingest.dataverse.getDatasetLocks");
+    }
+
+    @Test
+    public void each_method_has_its_own_timer() throws Exception {
+        // When
+        service.getDatasetLocks("pid");
+        service.getDatasetLocks("pid");
+        service.publishDataset("pid", null);
+
+        // Then
+        assertThat(registry.timer("dvingest.dataverse.getDatasetLocks").getCount()).isEqualTo(2);
+        assertThat(registry.timer("dvingest.dataverse.publishDataset").getCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void failed_call_with_DataverseException_is_timed_and_counted_as_error() throws Exception {
+        // Given
+        doThrow(DataverseException.class).when(delegate).publishDataset("pid", null);
+
+        // When / Then
+        assertThatThrownBy(() -> service.publishDataset("pid", null)).isInstanceOf(DataverseException.class);
+        assertThat(registry.timer("dvingest.dataverse.publishDataset").getCount()).isEqualTo(1);
+        assertThat(registry.counter("dvingest.dataverse.publishDataset.errors").getCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void failed_call_with_IOException_is_counted_as_error() throws Exception {
+        // Given
+        when(delegate.getFiles("pid")).thenThrow(new IOException("connection reset"));
+
+        // When / Then
+        assertThatThrownBy(() -> service.getFiles("pid")).isInstanceOf(IOException.class).hasMessage("connection reset");
+        assertThat(registry.counter("dvingest.dataverse.getFiles.errors").getCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void failed_call_with_RuntimeException_is_counted_as_error() throws Exception {
+        // Given
+        when(delegate.getSupportedLicenses()).thenThrow(new IllegalStateException("unexpected response"));
+
+        // When / Then
+        assertThatThrownBy(service::getSupportedLicenses).isInstanceOf(IllegalStateException.class);
+        assertThat(registry.counter("dvingest.dataverse.getSupportedLicenses.errors").getCount()).isEqualTo(1);
+        assertThat(registry.timer("dvingest.dataverse.getSupportedLicenses").getCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void calls_are_counted_by_bound_counter_also_when_they_fail() throws Exception {
+        // Given
+        when(delegate.getFiles("pid")).thenThrow(new IOException("connection reset"));
+        var counter = new DataverseCallCounter();
+
+        // When
+        try (var ignored = counter.bind()) {
+            service.getDatasetLocks("pid");
+            assertThatThrownBy(() -> service.getFiles("pid")).isInstanceOf(IOException.class);
+        }
+        service.getDatasetLocks("pid");
+
+        // Then
+        assertThat(counter.getCount()).isEqualTo(2);
+    }
+}
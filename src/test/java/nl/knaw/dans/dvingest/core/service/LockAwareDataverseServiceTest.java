@@ -0,0 +1,197 @@
+/*
+ * Copyright (C) 2024 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.dvingest.core.service;
+
+import nl.knaw.dans.dvingest.core.metrics.IngestMetrics;
+import nl.knaw.dans.lib.dataverse.model.dataset.DatasetVersion;
+import nl.knaw.dans.lib.dataverse.model.dataset.FileList;
+import nl.knaw.dans.lib.dataverse.model.file.FileMeta;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Semaphore;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class LockAwareDataverseServiceTest {
+    private final DataverseService delegate = Mockito.mock(DataverseService.class);
+    private IngestMetrics metrics;
+    private DatasetLockChecks.Binding lockChecks;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        Mockito.reset(delegate);
+        metrics = IngestMetrics.unregistered();
+        when(delegate.addFile(any(), any(), any())).thenReturn(new FileList());
+        // A deposit that has already checked the locks of the dataset
+        lockChecks = new DatasetLockChecks().bind();
+        DatasetLockChecks.markChecked("pid");
+    }
+
+    @AfterEach
+    public void tearDown() {
+        lockChecks.close();
+    }
+
+    @Test
+    public void does_not_check_locks_on_dataset_that_was_not_uploaded_to() throws Exception {
+        // Given
+        var service = new LockAwareDataverseService(delegate, metrics, 3, 1);
+
+        // When
+        service.updateMetadata("pid", new DatasetVersion());
+
+        // Then
+        verify(delegate, never()).getDatasetLocks("pid");
+        verify(delegate).updateMetadata(Mockito.eq("pid"), any());
+    }
+
+    @Test
+    public void waits_for_locks_after_upload_before_modifying_dataset() throws Exception {
+        // Given
+        when(delegate.getDatasetLocks("pid")).thenReturn(List.of("Ingest"), List.of("Ingest"), List.of());
+        var service = new LockAwareDataverseService(delegate, metrics, 3, 1);
+
+        // When
+        service.addFile("pid", Path.of("files.zip"), new FileMeta());
+        service.updateFileMetadata("pid", 1, new FileMeta());
+        service.updateFileMetadata("pid", 2, new FileMeta());
+
+        // Then
+        var inOrder = inOrder(delegate);
+        inOrder.verify(delegate).addFile(Mockito.eq("pid"), any(), any());
+        inOrder.verify(delegate, times(3)).getDatasetLocks("pid");
+        inOrder.verify(delegate).updateFileMetadata(Mockito.eq("pid"), Mockito.eq(1), any());
+        inOrder.verify(delegate).updateFileMetadata(Mockito.eq("pid"), Mockito.eq(2), any());
+        assertThat(metrics.datasetLockWait().getCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void throws_if_dataset_stays_locked() throws Exception {
+        // Given
+        when(delegate.getDatasetLocks("pid")).thenReturn(List.of("finalizePublication"));
+        var service = new LockAwareDataverseService(delegate, metrics, 2, 1);
+        service.publishDataset("pid", null);
+
+        // When / Then
+        assertThatThrownBy(() -> service.updateMetadata("pid", new DatasetVersion()))
+            .isInstanceOf(IllegalStateException.class)
+            .hasMessageContaining("still locked");
+        verify(delegate, never()).updateMetadata(Mockito.eq("pid"), any());
+    }
+
+    @Test
+    public void waits_for_locks_after_reingest_before_modifying_dataset() throws Exception {
+        // Given
+        when(delegate.getDatasetLocks("pid")).thenReturn(List.of("Ingest"), List.of());
+        var service = new LockAwareDataverseService(delegate, metrics, 3, 1);
+
+        // When
+        service.reingestFile("pid", 1);
+        service.updateMetadata("pid", new DatasetVersion());
+
+        // Then
+        var inOrder = inOrder(delegate);
+        inOrder.verify(delegate).reingestFile("pid", 1);
+        inOrder.verify(delegate, times(2)).getDatasetLocks("pid");
+        inOrder.verify(delegate).updateMetadata(Mockito.eq("pid"), any());
+    }
+
+    @Test
+    public void checks_locks_on_first_modification_of_dataset_in_deposit() throws Exception {
+        // Given
+        when(delegate.getDatasetLocks("other-pid")).thenReturn(List.of());
+        var service = new LockAwareDataverseService(delegate, metrics, 3, 1);
+
+        // When
+        try (var ignored = new DatasetLockChecks().bind()) {
+            service.updateMetadata("other-pid", new DatasetVersion());
+            service.updateMetadata("other-pid", new DatasetVersion());
+        }
+        try (var ignored = new DatasetLockChecks().bind()) {
+            service.updateMetadata("other-pid", new DatasetVersion());
+        }
+
+        // Then
+        verify(delegate, times(2)).getDatasetLocks("other-pid");
+        verify(delegate, times(3)).updateMetadata(Mockito.eq("other-pid"), any());
+    }
+
+    @Test
+    public void checks_locks_on_every_modification_outside_deposit() throws Exception {
+        // Given
+        when(delegate.getDatasetLocks("pid")).thenReturn(List.of());
+        var service = new LockAwareDataverseService(delegate, metrics, 3, 1);
+
+        // When
+        try (var ignored = DatasetLockChecks.bind(null)) {
+            service.updateMetadata("pid", new DatasetVersion());
+            service.updateMetadata("pid", new DatasetVersion());
+        }
+
+        // Then
+        verify(delegate, times(2)).getDatasetLocks("pid");
+    }
+
+    @Test
+    public void does_not_check_locks_of_dataset_created_in_deposit() throws Exception {
+        // Given
+        when(delegate.createDataset(any())).thenReturn("new-pid");
+        var service = new LockAwareDataverseService(delegate, metrics, 3, 1);
+
+        // When
+        var pid = service.createDataset(null);
+        service.updateMetadata(pid, new DatasetVersion());
+
+        // Then
+        verify(delegate, never()).getDatasetLocks("new-pid");
+    }
+
+    @Test
+    public void gives_up_deposit_slot_while_waiting_for_locks() throws Exception {
+        // Given
+        var slots = new Semaphore(0);
+        var availableWhileWaiting = new ArrayList<Integer>();
+        when(delegate.getDatasetLocks("pid")).thenReturn(List.of("Ingest")).thenAnswer(invocation -> {
+            availableWhileWaiting.add(slots.availablePermits());
+            return List.of();
+        });
+        var service = new LockAwareDataverseService(delegate, metrics, 3, 1);
+        service.addFile("pid", Path.of("files.zip"), new FileMeta());
+
+        // When
+        try (var ignored = DepositSlot.bind(slots)) {
+            service.updateMetadata("pid", new DatasetVersion());
+        }
+
+        // Then
+        assertThat(availableWhileWaiting).containsExactly(1);
+        assertThat(slots.availablePermits()).isZero();
+        verify(delegate).updateMetadata(Mockito.eq("pid"), any());
+    }
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright (C) 2024 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.dvingest.core.service;
+
+import nl.knaw.dans.dvingest.core.TestDirFixture;
+import nl.knaw.dans.lib.dataverse.model.dataset.DatasetVersion;
+import nl.knaw.dans.lib.dataverse.model.file.FileMeta;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import java.io.IOException;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.when;
+
+public class ReplayDataverseServiceTest extends TestDirFixture {
+    private final DataverseService dataverseServiceMock = Mockito.mock(DataverseService.class);
+
+    private FileMeta fileMeta(String label) {
+        var fileMeta = new FileMeta();
+        fileMeta.setLabel(label);
+        return fileMeta;
+    }
+
+    @Test
+    public void replay_returns_recorded_results_in_recorded_order() throws Exception {
+        // Given
+        var trafficLog = testDir.resolve("traffic.jsonl.gz");
+        var version = new DatasetVersion();
+        version.setVersionState("RELEASED");
+        when(dataverseServiceMock.getDatasetLocks("doi:1")).thenReturn(List.of("Ingest"), List.of());
+        when(dataverseServiceMock.getFiles("doi:1")).thenReturn(List.of(fileMeta("a.txt"), fileMeta("b.txt")));
+        when(dataverseServiceMock.getLatestVersionWithoutFiles("doi:1")).thenReturn(version);
+        try (var recorder = new RecordingDataverseService(dataverseServiceMock, trafficLog)) {
+            recorder.getDatasetLocks("doi:1");
+            recorder.getDatasetLocks("doi:1");
+            recorder.getFiles("doi:1");
+            recorder.getLatestVersionWithoutFiles("doi:1");
+        }
+
+        // When
+        var replay = new ReplayDataverseService(trafficLog, 0);
+
+        // Then
+        assertThat(replay.getDatasetLocks("doi:1")).containsExactly("Ingest");
+        assertThat(replay.getDatasetLocks("doi:1")).isEmpty();
+        assertThat(replay.getFiles("doi:1")).extracting(FileMeta::getLabel).containsExactly("a.txt", "b.txt");
+        assertThat(replay.getLatestVersionWithoutFiles("doi:1").getVersionState()).isEqualTo("RELEASED");
+        assertThat(replay.getNumberOfMismatches()).isZero();
+    }
+
+    @Test
+    public void replay_rethrows_recorded_error() throws Exception {
+        // Given
+        var trafficLog = testDir.resolve("traffic.jsonl.gz");
+        Mockito.doThrow(new IOException("Connection reset")).when(dataverseServiceMock).deleteFile("pid", 42);
+        try (var recorder = new RecordingDataverseService(dataverseServiceMock, trafficLog)) {
+            assertThatThrownBy(() -> recorder.deleteFile("pid", 42)).isInstanceOf(IOException.class);
+        }
+
+        // When
+        var replay = new ReplayDataverseService(trafficLog, 0);
+
+        // Then
+        assertThatThrownBy(() -> replay.deleteFile("pid", 42))
+            .isInstanceOf(IOException.class)
+            .hasMessageContaining("Connection reset");
+    }
+
+    @Test
+    public void replay_falls_back_to_call_with_other_arguments_and_fails_when_exhausted() throws Exception {
+        // Given
+        var trafficLog = testDir.resolve("traffic.jsonl.gz");
+        when(dataverseServiceMock.findDoiByMetadataField("dansSwordToken", "sword:1")).thenReturn(List.of("doi:1"));
+        try (var recorder = new RecordingDataverseService(dataverseServiceMock, trafficLog)) {
+            recorder.findDoiByMetadataField("dansSwordToken", "sword:1");
+        }
+        var replay = new ReplayDataverseService(trafficLog, 0);
+
+        // When
+        var result = replay.findDoiByMetadataField("dansSwordToken", "sword:2");
+
+        // Then
+        assertThat(result).containsExactly("doi:1");
+        assertThat(replay.getNumberOfMismatches()).isEqualTo(1);
+        assertThatThrownBy(() -> replay.findDoiByMetadataField("dansSwordToken", "sword:1"))
+            .isInstanceOf(IllegalStateException.class)
+            .hasMessageContaining("findDoiByMetadataField");
+    }
+}
@@ -0,0 +1,75 @@
+/*
+ * Copyright (C) 2024 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.dvingest.core.service;
+
+import nl.knaw.dans.dvingest.core.report.DepositReport;
+import nl.knaw.dans.lib.dataverse.DataverseException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.verify;
+
+public class TabularIngestQueueTest {
+    private final DataverseService dataverseService = Mockito.mock(DataverseService.class);
+    private final ExecutorService executorService = Executors.newSingleThreadExecutor();
+
+    @AfterEach
+    public void tearDown() throws Exception {
+        executorService.shutdown();
+        assertThat(executorService.awaitTermination(10, TimeUnit.SECONDS)).isTrue();
+    }
+
+    @Test
+    public void submit_should_reingest_files_with_pid_of_dataset() throws Exception {
+        // Given
+        var queue = new TabularIngestQueue(dataverseService, executorService);
+        var report = new DepositReport(UUID.randomUUID(), "import");
+
+        // When
+        queue.submit("pid", List.of(1, 2), report);
+        report.getTabularIngestCompletion().get(10, TimeUnit.SECONDS);
+
+        // Then
+        verify(dataverseService).reingestFile("pid", 1);
+        verify(dataverseService).reingestFile("pid", 2);
+        assertThat(report.getFailedTabularIngestFileIds()).isEmpty();
+    }
+
+    @Test
+    public void submit_should_record_failed_reingests_in_report() throws Exception {
+        // Given
+        doThrow(DataverseException.class).when(dataverseService).reingestFile("pid", 2);
+        var queue = new TabularIngestQueue(dataverseService, executorService);
+        var report = new DepositReport(UUID.randomUUID(), "import");
+
+        // When
+        queue.submit("pid", List.of(1, 2, 3), report);
+        report.getTabularIngestCompletion().get(10, TimeUnit.SECONDS);
+
+        // Then
+        assertThat(report.getFailedTabularIngestFileIds()).containsExactly(2);
+        verify(dataverseService).reingestFile("pid", 3);
+    }
+}
@@ -0,0 +1,111 @@
+/*
+ * Copyright (C) 2024 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.dvingest.core.service;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+public class UploadBatchPlannerTest {
+    private static final long MIB = 1024 * 1024;
+
+    private UploadBatchPlanner createPlanner() {
+        return UploadBatchPlanner.builder()
+            .minNumberOfFiles(10)
+            .maxNumberOfFiles(1000)
+            .minNumberOfBytes(MIB)
+            .maxNumberOfBytes(1024 * MIB)
+            .targetDurationMillis(60_000)
+            .windowSize(20)
+            .build();
+    }
+
+    // Overhead 2s, 50ms per file, 100ms per MiB
+    private long duration(int files, long bytes) {
+        return 2000 + 50L * files + 100L * bytes / MIB;
+    }
+
+    @Test
+    public void uses_maximum_limits_until_enough_uploads_have_been_observed() {
+        // Given
+        var planner = createPlanner();
+
+        // When
+        planner.recordUpload(1000, 10 * MIB, duration(1000, 10 * MIB));
+
+        // Then
+        assertThat(planner.getPlannedNumberOfFiles()).isEqualTo(1000);
+        assertThat(planner.getPlannedNumberOfBytes()).isEqualTo(1024 * MIB);
+    }
+
+    @Test
+    public void learns_cost_model_and_sizes_batches_toward_target_duration() {
+        // Given
+        var planner = createPlanner();
+        var batches = new long[][] { { 1000, 10 }, { 500, 100 }, { 200, 400 }, { 800, 50 }, { 100, 20 }, { 300, 300 } };
+
+        // When
+        for (var batch : batches) {
+            planner.recordUpload((int) batch[0], batch[1] * MIB, duration((int) batch[0], batch[1] * MIB));
+        }
+
+        // Then
+        assertThat(planner.getOverheadMillis()).isCloseTo(2000, within(1.0));
+        assertThat(planner.getMillisPerFile()).isCloseTo(50, within(0.01));
+        assertThat(planner.getMillisPerMebibyte()).isCloseTo(100, within(0.01));
+        // (60000 - 2000) / 100 ms per MiB = 580 MiB
+        assertThat(planner.getPlannedNumberOfBytes()).isCloseTo(580 * MIB, within(MIB));
+        // Average file is 880 MiB / 2900 files, so it costs 50 + 100 * 880 / 2900 ms; (60000 - 2000) / 80.3 ms per file = 721 files
+        assertThat(planner.getPlannedNumberOfFiles()).isBetween(720, 723);
+    }
+
+    @Test
+    public void failure_halves_the_limits_and_success_recovers_them() {
+        // Given
+        var planner = createPlanner();
+
+        // When
+        planner.recordFailure();
+
+        // Then
+        assertThat(planner.getPlannedNumberOfFiles()).isEqualTo(500);
+        assertThat(planner.getPlannedNumberOfBytes()).isEqualTo(512 * MIB);
+
+        // When
+        for (int i = 0; i < 4; i++) {
+            planner.recordUpload(1, MIB, 10);
+        }
+
+        // Then
+        assertThat(planner.getBackoff()).isEqualTo(1.0);
+    }
+
+    @Test
+    public void limits_never_go_below_minimum() {
+        // Given
+        var planner = createPlanner();
+
+        // When
+        for (int i = 0; i < 10; i++) {
+            planner.recordFailure();
+        }
+
+        // Then
+        assertThat(planner.getPlannedNumberOfFiles()).isEqualTo(15);
+        assertThat(planner.getPlannedNumberOfBytes()).isEqualTo(16 * MIB);
+    }
+}
@@ -0,0 +1,189 @@
+/*
+ * Copyright (C) 2024 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.dvingest.resources;
+
+import io.dropwizard.util.Duration;
+import nl.knaw.dans.dvingest.api.ImportJobStatusDto.StatusEnum;
+import nl.knaw.dans.dvingest.core.ImportJobProgress;
+import nl.knaw.dans.dvingest.core.IngestArea;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+
+import javax.ws.rs.sse.OutboundSseEvent;
+import javax.ws.rs.sse.Sse;
+import javax.ws.rs.sse.SseEventSink;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThatCode;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.RETURNS_SELF;
+import static org.mockito.Mockito.clearInvocations;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class IngestEventsResourceTest {
+    private final IngestArea area = mock(IngestArea.class);
+    private final ScheduledExecutorService scheduler = mock(ScheduledExecutorService.class);
+    private final Sse sse = mock(Sse.class);
+    private final OutboundSseEvent.Builder eventBuilder = mock(OutboundSseEvent.Builder.class, RETURNS_SELF);
+    private IngestEventsResource resource;
+    private Runnable scheduledTask;
+
+    @BeforeEach
+    public void setUp() {
+        when(sse.newEventBuilder()).thenReturn(eventBuilder);
+        resource = new IngestEventsResource(List.of(area), scheduler, Duration.seconds(5));
+        resource.setSse(sse);
+        var captor = ArgumentCaptor.forClass(Runnable.class);
+        verify(scheduler).scheduleWithFixedDelay(captor.capture(), eq(5000L), eq(5000L), eq(TimeUnit.MILLISECONDS));
+        scheduledTask = captor.getValue();
+    }
+
+    private static ImportJobProgress progress(String path, StatusEnum status, int processed) {
+        return ImportJobProgress.builder()
+            .path(path)
+            .singleObject(false)
+            .status(status)
+            .total(10)
+            .pending(10 - processed)
+            .processed(processed)
+            .build();
+    }
+
+    private static SseEventSink openSink() {
+        var sink = mock(SseEventSink.class);
+        when(sink.send(any())).thenReturn(CompletableFuture.completedFuture(null));
+        return sink;
+    }
+
+    @Test
+    public void subscribe_should_send_snapshot_of_all_jobs() {
+        // Given
+        var first = progress("/batch1", StatusEnum.RUNNING, 1);
+        var second = progress("/batch2", StatusEnum.DONE, 10);
+        when(area.getProgress(null)).thenReturn(List.of(first, second));
+        var sink = openSink();
+
+        // When
+        resource.subscribe(null, sink);
+
+        // Then
+        verify(eventBuilder).data(ImportJobProgress.class, first);
+        verify(eventBuilder).data(ImportJobProgress.class, second);
+    }
+
+    @Test
+    public void subscribe_should_only_send_progress_of_requested_path() {
+        // Given
+        var first = progress("/batch1", StatusEnum.RUNNING, 1);
+        var second = progress("/batch2", StatusEnum.RUNNING, 2);
+        when(area.getProgress(null)).thenReturn(List.of(first, second));
+
+        // When
+        resource.subscribe("/batch2", openSink());
+
+        // Then
+        verify(eventBuilder, never()).data(ImportJobProgress.class, first);
+        verify(eventBuilder).data(ImportJobProgress.class, second);
+    }
+
+    @Test
+    public void scheduled_task_should_send_only_changed_progress() {
+        // Given
+        var unchanged = progress("/batch1", StatusEnum.RUNNING, 1);
+        var before = progress("/batch2", StatusEnum.RUNNING, 2);
+        var after = progress("/batch2", StatusEnum.RUNNING, 3);
+        when(area.getProgress(null)).thenReturn(List.of(unchanged, before));
+        scheduledTask.run();
+        resource.subscribe(null, openSink());
+        when(area.getProgress(null)).thenReturn(List.of(unchanged, after));
+        clearInvocations(eventBuilder);
+
+        // When
+        scheduledTask.run();
+
+        // Then
+        verify(eventBuilder, never()).data(ImportJobProgress.class, unchanged);
+        verify(eventBuilder).data(ImportJobProgress.class, after);
+    }
+
+    @Test
+    public void scheduled_task_should_send_final_progress_of_finished_job_once() {
+        // Given
+        when(area.getProgress(null)).thenReturn(List.of(progress("/batch1", StatusEnum.RUNNING, 9)));
+        scheduledTask.run();
+        resource.subscribe(null, openSink());
+        var done = progress("/batch1", StatusEnum.DONE, 10);
+        when(area.getProgress(null)).thenReturn(List.of(done));
+        clearInvocations(eventBuilder);
+
+        // When
+        scheduledTask.run();
+        scheduledTask.run();
+
+        // Then
+        verify(eventBuilder).data(ImportJobProgress.class, done);
+    }
+
+    @Test
+    public void scheduled_task_should_send_progress_of_resubmitted_job() {
+        // Given
+        when(area.getProgress(null)).thenReturn(List.of(progress("/batch1", StatusEnum.FAILED, 0)));
+        scheduledTask.run();
+        resource.subscribe(null, openSink());
+        var rerun = progress("/batch1", StatusEnum.RUNNING, 1);
+        when(area.getProgress(null)).thenReturn(List.of(rerun));
+        clearInvocations(eventBuilder);
+
+        // When
+        scheduledTask.run();
+
+        // Then
+        verify(eventBuilder).data(ImportJobProgress.class, rerun);
+    }
+
+    @Test
+    public void scheduled_task_should_drop_closed_subscribers() {
+        // Given
+        when(area.getProgress(null)).thenReturn(List.of());
+        var sink = openSink();
+        resource.subscribe(null, sink);
+        when(sink.isClosed()).thenReturn(true);
+        when(area.getProgress(null)).thenReturn(List.of(progress("/batch1", StatusEnum.RUNNING, 1)));
+
+        // When
+        scheduledTask.run();
+
+        // Then
+        verify(sink, never()).send(any());
+    }
+
+    @Test
+    public void scheduled_task_should_keep_running_when_progress_cannot_be_read() {
+        // Given
+        when(area.getProgress(null)).thenThrow(new IllegalStateException("boom"));
+
+        // When / Then
+        assertThatCode(scheduledTask::run).doesNotThrowAnyException();
+    }
+}